@@ -221,4 +221,15 @@ public interface MutationBatch extends Execution<Void> {
      * @return MutationBatch
      */
     MutationBatch withCaching(boolean condition);
+
+    /**
+     * Turn token aware splitting ON/OFF
+     * When ON the rows of the batch are grouped by the replicas that own them and each group is sent as 
+     * its own batch, in parallel, instead of one batch that the coordinator has to fan out to all replicas.
+     * Atomic batches are never split.
+     * This is to be used specifically with the CQL3 driver
+     * @param condition
+     * @return MutationBatch
+     */
+    MutationBatch withTokenAwareSplitting(boolean condition);
 }
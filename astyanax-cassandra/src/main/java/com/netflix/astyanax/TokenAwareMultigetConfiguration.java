@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax;
+
+/**
+ * Configuration that also splits multi row queries by token range.  Multi row queries send all
+ * keys to one coordinator unless the configuration implements this interface.
+ */
+public interface TokenAwareMultigetConfiguration extends AstyanaxConfiguration {
+    /**
+     * @return Maximum number of keys sent in one request by a multi row query, or 0 to send all keys to one
+     * coordinator.  When set the keys are split by the token range that owns them and the requests for the 
+     * ranges are executed in parallel, each on a replica of its range.
+     */
+    int getMaxKeysPerMultiget();
+}
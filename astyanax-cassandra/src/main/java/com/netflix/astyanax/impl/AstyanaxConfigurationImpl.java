@@ -23,8 +23,8 @@ import org.apache.commons.lang.builder.ToStringBuilder;
 
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
-import com.netflix.astyanax.AstyanaxConfiguration;
 import com.netflix.astyanax.Clock;
+import com.netflix.astyanax.TokenAwareMultigetConfiguration;
 import com.netflix.astyanax.clock.MicrosecondsSyncClock;
 import com.netflix.astyanax.connectionpool.NodeDiscoveryType;
 import com.netflix.astyanax.connectionpool.impl.ConnectionPoolType;
@@ -35,7 +35,7 @@ import com.netflix.astyanax.partitioner.Partitioner;
 import com.netflix.astyanax.retry.RetryPolicy;
 import com.netflix.astyanax.retry.RunOnce;
 
-public class AstyanaxConfigurationImpl implements AstyanaxConfiguration {
+public class AstyanaxConfigurationImpl implements TokenAwareMultigetConfiguration {
     private ConsistencyLevel   defaultReadConsistencyLevel  = ConsistencyLevel.CL_ONE;
     private ConsistencyLevel   defaultWriteConsistencyLevel = ConsistencyLevel.CL_ONE;
     private Clock              clock                        = new MicrosecondsSyncClock();
@@ -50,6 +50,7 @@ public class AstyanaxConfigurationImpl implements AstyanaxConfiguration {
     private String              cqlVersion                  = null;
     private String              targetCassandraVersion      = "1.1";
     private Map<String, Partitioner> partitioners           = Maps.newHashMap();
+    private int                 maxKeysPerMultiget          = 0;
 
     public AstyanaxConfigurationImpl() {
         partitioners.put(org.apache.cassandra.dht.RandomPartitioner.class.getCanonicalName(), BigInteger127Partitioner.get());
@@ -166,6 +167,20 @@ public class AstyanaxConfigurationImpl implements AstyanaxConfiguration {
         return this;
     }
 
+    @Override
+    public int getMaxKeysPerMultiget() {
+        return this.maxKeysPerMultiget;
+    }
+
+    /**
+     * Split multi row queries by token range into requests of at most this many keys, 0 to disable
+     * @param maxKeysPerMultiget
+     */
+    public AstyanaxConfigurationImpl setMaxKeysPerMultiget(int maxKeysPerMultiget) {
+        this.maxKeysPerMultiget = maxKeysPerMultiget;
+        return this;
+    }
+
     public AstyanaxConfigurationImpl registerPartitioner(String name, Partitioner partitioner) {
         this.partitioners.put(name, partitioner);
         return this;
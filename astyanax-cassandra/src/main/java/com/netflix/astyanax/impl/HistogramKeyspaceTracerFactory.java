@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.impl;
+
+import com.netflix.astyanax.CassandraOperationTracer;
+import com.netflix.astyanax.CassandraOperationType;
+import com.netflix.astyanax.KeyspaceTracerFactory;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.connectionpool.impl.HistogramConnectionPoolMonitor;
+import com.netflix.astyanax.model.ColumnFamily;
+
+/**
+ * Tracer factory that records the latency of every successful operation by its {@link CassandraOperationType}
+ * into a {@link HistogramConnectionPoolMonitor}.  Use the same monitor for the connection pool to see latencies
+ * by host and by operation type side by side.
+ */
+public class HistogramKeyspaceTracerFactory implements KeyspaceTracerFactory {
+    private final HistogramConnectionPoolMonitor monitor;
+
+    public HistogramKeyspaceTracerFactory(HistogramConnectionPoolMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    @Override
+    public CassandraOperationTracer newTracer(CassandraOperationType type) {
+        return new Tracer(type.name());
+    }
+
+    @Override
+    public CassandraOperationTracer newTracer(CassandraOperationType type, ColumnFamily<?, ?> columnFamily) {
+        return new Tracer(type.name());
+    }
+
+    private class Tracer implements CassandraOperationTracer {
+        private final String  operationType;
+        private volatile long startTime;
+
+        Tracer(String operationType) {
+            this.operationType = operationType;
+        }
+
+        @Override
+        public CassandraOperationTracer start() {
+            startTime = System.nanoTime();
+            return this;
+        }
+
+        @Override
+        public void success() {
+            monitor.recordOperationLatency(operationType, System.nanoTime() - startTime);
+        }
+
+        @Override
+        public void failure(ConnectionException e) {
+        }
+    }
+
+    public String toString() {
+        return "HistogramKeyspaceTracerFactory";
+    }
+}
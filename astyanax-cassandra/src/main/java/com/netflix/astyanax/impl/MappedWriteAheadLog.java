@@ -0,0 +1,625 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.impl;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.astyanax.MutationBatch;
+import com.netflix.astyanax.WriteAheadEntry;
+import com.netflix.astyanax.WriteAheadLog;
+import com.netflix.astyanax.connectionpool.exceptions.WalException;
+
+/**
+ * Durable {@link WriteAheadLog} on a directory of memory mapped, append only segment files.
+ *
+ * Each entry is appended as a CRC checked record holding the serialized mutation (see
+ * {@link MutationBatch#serialize()}).  Removing an entry appends a small remove record.  Once all entries
+ * of the oldest segments have been removed those segments are recycled for new entries, so the log does
+ * not keep mapping new files while the writes keep up.
+ *
+ * How appends are made durable depends on the {@link SyncPolicy}.  With {@link SyncPolicy#GROUP} a writer
+ * waits until its record has been synced to disk, but a single fsync covers all records appended by
+ * concurrent writers up to that point.
+ *
+ * On start all remaining segments are scanned.  Entries that were never removed are handed out by
+ * {@link #readNextEntry()}, e.g. by {@link com.netflix.astyanax.util.WriteAheadMutationBatchExecutor#replayWal(int)}.
+ * A torn or corrupt record ends the scan of its segment.
+ *
+ * <pre>
+ * MappedWriteAheadLog wal = new MappedWriteAheadLog.Builder(new File("/var/astyanax/wal"))
+ *     .withSyncPolicy(SyncPolicy.GROUP)
+ *     .build();
+ * </pre>
+ */
+public class MappedWriteAheadLog implements WriteAheadLog {
+    private static final Logger LOG = LoggerFactory.getLogger(MappedWriteAheadLog.class);
+
+    public enum SyncPolicy {
+        /**
+         * Leave it to the OS to write the mapped pages to disk.  Only survives a crash of the process.
+         */
+        NONE,
+
+        /**
+         * Sync in the background every syncInterval.  Up to syncInterval of writes may be lost on
+         * power failure.
+         */
+        PERIODIC,
+
+        /**
+         * Writers wait for their record to be synced.  Concurrent writers share one sync.
+         */
+        GROUP,
+    }
+
+    public static final int    DEFAULT_SEGMENT_SIZE      = 32 * 1024 * 1024;
+    public static final int    DEFAULT_RECYCLED_SEGMENTS = 2;
+    public static final long   DEFAULT_SYNC_INTERVAL     = 100;     // Millis
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String FREE_PREFIX    = "free-";
+
+    // length, crc, segment id, entry id, type
+    private static final int  HEADER_SIZE = 4 + 4 + 8 + 8 + 1;
+    private static final byte MUTATION    = 1;
+    private static final byte REMOVE      = 2;
+
+    public static class Builder {
+        private final File  directory;
+        private int         segmentSize      = DEFAULT_SEGMENT_SIZE;
+        private int         recycledSegments = DEFAULT_RECYCLED_SEGMENTS;
+        private SyncPolicy  syncPolicy       = SyncPolicy.GROUP;
+        private long        syncInterval     = DEFAULT_SYNC_INTERVAL;
+
+        public Builder(File directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * Size of a segment file.  Mutations larger than a segment get a segment of their own.
+         * @param segmentSize
+         */
+        public Builder withSegmentSize(int segmentSize) {
+            Preconditions.checkArgument(segmentSize > HEADER_SIZE, "Segment size too small");
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        /**
+         * Number of free segments to keep around for reuse
+         * @param recycledSegments
+         */
+        public Builder withRecycledSegments(int recycledSegments) {
+            this.recycledSegments = recycledSegments;
+            return this;
+        }
+
+        public Builder withSyncPolicy(SyncPolicy syncPolicy) {
+            this.syncPolicy = syncPolicy;
+            return this;
+        }
+
+        /**
+         * Interval for {@link SyncPolicy#PERIODIC}
+         * @param syncInterval
+         * @param units
+         */
+        public Builder withSyncInterval(long syncInterval, TimeUnit units) {
+            this.syncInterval = TimeUnit.MILLISECONDS.convert(syncInterval, units);
+            return this;
+        }
+
+        /**
+         * Open the log and recover the entries that were not removed
+         * @throws WalException
+         */
+        public MappedWriteAheadLog build() throws WalException {
+            MappedWriteAheadLog wal = new MappedWriteAheadLog(this);
+            wal.open();
+            return wal;
+        }
+    }
+
+    private static class Segment {
+        private final MappedByteBuffer buffer;
+        private final FileChannel      channel;
+        private final AtomicInteger    live = new AtomicInteger();
+        private File                   file;
+        private long                   id;
+        private volatile int           written;
+        private volatile int           synced;
+
+        Segment(long id, File file, FileChannel channel, MappedByteBuffer buffer) {
+            this.id      = id;
+            this.file    = file;
+            this.channel = channel;
+            this.buffer  = buffer;
+        }
+
+        int remaining() {
+            return buffer.capacity() - written;
+        }
+
+        void sync() {
+            int target = written;
+            if (synced < target) {
+                buffer.force();
+                synced = target;
+            }
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close WAL segment " + file, e);
+            }
+        }
+    }
+
+    private class Entry implements WriteAheadEntry {
+        private final long          id;
+        private final AtomicBoolean removed = new AtomicBoolean();
+        private Segment             segment;
+        private int                 offset;
+        private int                 length;
+
+        Entry(long id) {
+            this.id = id;
+        }
+
+        @Override
+        public void readMutation(MutationBatch mutation) throws WalException {
+            Preconditions.checkState(segment != null, "Entry was not written");
+            ByteBuffer data = segment.buffer.duplicate();
+            data.limit(offset + length);
+            data.position(offset);
+            try {
+                mutation.deserialize(data.slice());
+            } catch (Exception e) {
+                throw new WalException("Failed to read WAL entry " + id, e);
+            }
+        }
+
+        @Override
+        public void writeMutation(MutationBatch mutation) throws WalException {
+            Preconditions.checkState(segment == null, "Entry was already written");
+            ByteBuffer data;
+            try {
+                data = mutation.serialize();
+            } catch (Exception e) {
+                throw new WalException("Failed to serialize mutation for WAL entry " + id, e);
+            }
+            append(this, MUTATION, data);
+        }
+    }
+
+    private final File          directory;
+    private final int           segmentSize;
+    private final int           recycledSegments;
+    private final SyncPolicy    syncPolicy;
+    private final long          syncInterval;
+
+    private final AtomicLong    nextEntryId   = new AtomicLong(1);
+    private final LinkedList<Segment> sealed  = new LinkedList<Segment>();
+    private final LinkedList<Segment> free    = new LinkedList<Segment>();
+    private final ConcurrentLinkedQueue<Entry> pending = new ConcurrentLinkedQueue<Entry>();
+    private final Object        syncLock      = new Object();
+    private long                nextSegmentId = 1;
+    private volatile Segment    active;
+    private ScheduledExecutorService syncExecutor;
+
+    private MappedWriteAheadLog(Builder builder) {
+        this.directory        = builder.directory;
+        this.segmentSize      = builder.segmentSize;
+        this.recycledSegments = builder.recycledSegments;
+        this.syncPolicy       = builder.syncPolicy;
+        this.syncInterval     = builder.syncInterval;
+    }
+
+    private synchronized void open() throws WalException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new WalException("Unable to create WAL directory " + directory);
+        }
+
+        recover();
+        active = newSegment(segmentSize);
+
+        if (syncPolicy == SyncPolicy.PERIODIC) {
+            syncExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+                    .setNameFormat("AstyanaxWalSync-%d").build());
+            syncExecutor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        syncActive();
+                    } catch (Throwable t) {
+                        LOG.warn("Failed to sync WAL", t);
+                    }
+                }
+            }, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Scan the existing segments in order and queue up all entries that were not removed
+     */
+    private void recover() throws WalException {
+        File[] freeFiles = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(FREE_PREFIX);
+            }
+        });
+        for (File file : freeFiles) {
+            file.delete();
+        }
+
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return segmentId(name) > 0;
+            }
+        });
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                long id1 = segmentId(f1.getName());
+                long id2 = segmentId(f2.getName());
+                return id1 < id2 ? -1 : (id1 == id2 ? 0 : 1);
+            }
+        });
+
+        Map<Long, Entry> entries = new LinkedHashMap<Long, Entry>();
+        Set<Long> removed = Sets.newHashSet();
+        long maxEntryId = 0;
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[8192];
+
+        for (File file : files) {
+            long id = segmentId(file.getName());
+            Segment segment = mapSegment(id, file, (int) file.length());
+            nextSegmentId = Math.max(nextSegmentId, id + 1);
+
+            ByteBuffer buffer = segment.buffer.duplicate();
+            int position = 0;
+            int records  = 0;
+            while (buffer.capacity() - position >= HEADER_SIZE) {
+                buffer.position(position);
+                int  length    = buffer.getInt();
+                int  checksum  = buffer.getInt();
+                long segmentId = buffer.getLong();
+                long entryId   = buffer.getLong();
+                byte type      = buffer.get();
+                if (segmentId != id || (type != MUTATION && type != REMOVE) || length < 0
+                        || length > buffer.capacity() - position - HEADER_SIZE) {
+                    break;
+                }
+
+                ByteBuffer payload = buffer.duplicate();
+                payload.limit(buffer.position() + length);
+                crc.reset();
+                updateCrc(crc, length, entryId, type, payload, chunk);
+                if ((int) crc.getValue() != checksum) {
+                    LOG.warn("Corrupt record in WAL segment " + file + " at " + position);
+                    break;
+                }
+
+                maxEntryId = Math.max(maxEntryId, entryId);
+                if (type == MUTATION) {
+                    Entry entry = new Entry(entryId);
+                    entry.segment = segment;
+                    entry.offset  = position + HEADER_SIZE;
+                    entry.length  = length;
+                    entries.put(entryId, entry);
+                }
+                else {
+                    removed.add(entryId);
+                }
+                position += HEADER_SIZE + length;
+                records++;
+            }
+            segment.written = position;
+            segment.synced  = position;
+            sealed.add(segment);
+            LOG.info("Recovered " + records + " records from WAL segment " + file);
+        }
+
+        for (Entry entry : entries.values()) {
+            if (removed.contains(entry.id)) {
+                continue;
+            }
+            entry.segment.live.incrementAndGet();
+            pending.add(entry);
+        }
+        nextEntryId.set(maxEntryId + 1);
+        recycle();
+
+        if (!pending.isEmpty()) {
+            LOG.info("Recovered " + pending.size() + " WAL entries to replay");
+        }
+    }
+
+    @Override
+    public WriteAheadEntry createEntry() throws WalException {
+        return new Entry(nextEntryId.getAndIncrement());
+    }
+
+    @Override
+    public void removeEntry(WriteAheadEntry walEntry) {
+        Entry entry = (Entry) walEntry;
+        if (entry.segment == null || !entry.removed.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            append(entry, REMOVE, ByteBuffer.allocate(0));
+        } catch (WalException e) {
+            LOG.warn("Failed to remove WAL entry " + entry.id, e);
+            return;
+        }
+
+        if (entry.segment.live.decrementAndGet() == 0 && entry.segment != active) {
+            synchronized (this) {
+                recycle();
+            }
+        }
+    }
+
+    @Override
+    public WriteAheadEntry readNextEntry() {
+        return pending.poll();
+    }
+
+    @Override
+    public void retryEntry(WriteAheadEntry entry) {
+        pending.add((Entry) entry);
+    }
+
+    /**
+     * @return Number of segment files in use, including the active segment
+     */
+    public synchronized int getSegmentCount() {
+        return sealed.size() + 1;
+    }
+
+    /**
+     * Sync and close all segments.  The log may not be used after this.
+     */
+    public synchronized void close() {
+        if (syncExecutor != null) {
+            syncExecutor.shutdownNow();
+        }
+        if (syncPolicy != SyncPolicy.NONE) {
+            syncActive();
+        }
+        for (Segment segment : sealed) {
+            segment.close();
+        }
+        for (Segment segment : free) {
+            segment.close();
+        }
+        active.close();
+    }
+
+    private void append(Entry entry, byte type, ByteBuffer data) throws WalException {
+        int length = data.remaining();
+        CRC32 crc = new CRC32();
+        updateCrc(crc, length, entry.id, type, data.duplicate(), null);
+        int checksum = (int) crc.getValue();
+
+        Segment segment;
+        int end;
+        synchronized (this) {
+            segment = active;
+            if (segment.remaining() < HEADER_SIZE + length) {
+                segment = roll(HEADER_SIZE + length);
+            }
+
+            int position = segment.written;
+            ByteBuffer buffer = segment.buffer.duplicate();
+            buffer.position(position);
+            buffer.putInt(length)
+                  .putInt(checksum)
+                  .putLong(segment.id)
+                  .putLong(entry.id)
+                  .put(type)
+                  .put(data.duplicate());
+            end = position + HEADER_SIZE + length;
+            segment.written = end;
+
+            if (type == MUTATION) {
+                entry.segment = segment;
+                entry.offset  = position + HEADER_SIZE;
+                entry.length  = length;
+                segment.live.incrementAndGet();
+            }
+        }
+
+        // Removes are idempotent when replayed, so there is no need to wait for them
+        if (syncPolicy == SyncPolicy.GROUP && type == MUTATION) {
+            groupSync(segment, end);
+        }
+    }
+
+    /**
+     * Make sure the segment is synced up to the end of a record.  Whoever gets the lock first syncs
+     * everything that was appended so far, which covers the records of all threads waiting for the lock.
+     */
+    private void groupSync(Segment segment, int end) {
+        if (segment.synced >= end) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (segment.synced < end) {
+                segment.sync();
+            }
+        }
+    }
+
+    private void syncActive() {
+        Segment segment = active;
+        synchronized (syncLock) {
+            segment.sync();
+        }
+    }
+
+    /**
+     * Seal the active segment and start a new one that fits at least minSize bytes.  Called with
+     * the lock held.
+     */
+    private Segment roll(int minSize) throws WalException {
+        Segment previous = active;
+        if (syncPolicy != SyncPolicy.NONE) {
+            synchronized (syncLock) {
+                previous.sync();
+            }
+        }
+        sealed.add(previous);
+
+        active = newSegment(Math.max(segmentSize, minSize));
+        recycle();
+        return active;
+    }
+
+    /**
+     * Free the oldest sealed segments once all of their entries have been removed.  Segments are only
+     * freed in order since the remove records for a segment's entries may be in any later segment.
+     * Called with the lock held.
+     */
+    private void recycle() {
+        while (!sealed.isEmpty() && sealed.getFirst().live.get() == 0) {
+            Segment segment = sealed.removeFirst();
+
+            // Rename right away so that the segment is not recovered after a restart
+            if (free.size() < recycledSegments && segment.buffer.capacity() == segmentSize) {
+                File file = new File(directory, FREE_PREFIX + segment.id + SEGMENT_SUFFIX);
+                if (segment.file.renameTo(file)) {
+                    segment.file = file;
+                    free.add(segment);
+                    continue;
+                }
+            }
+
+            segment.close();
+            if (!segment.file.delete()) {
+                LOG.warn("Failed to delete WAL segment " + segment.file);
+            }
+        }
+    }
+
+    /**
+     * Get a segment from the free list, renaming its file, or map a new file.  Records left over from
+     * the segment's previous use don't carry its new id and are ignored on recovery.
+     */
+    private Segment newSegment(int size) throws WalException {
+        long id = nextSegmentId++;
+        File file = new File(directory, SEGMENT_PREFIX + id + SEGMENT_SUFFIX);
+
+        if (size == segmentSize && !free.isEmpty()) {
+            Segment segment = free.removeFirst();
+            if (segment.file.renameTo(file)) {
+                segment.id      = id;
+                segment.file    = file;
+                segment.written = 0;
+                segment.synced  = 0;
+                return segment;
+            }
+            segment.close();
+            segment.file.delete();
+        }
+
+        return mapSegment(id, file, size);
+    }
+
+    private Segment mapSegment(long id, File file, int size) throws WalException {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            if (raf.length() < size) {
+                raf.setLength(size);
+            }
+            FileChannel channel = raf.getChannel();
+            return new Segment(id, file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        } catch (IOException e) {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException e2) {
+                }
+            }
+            throw new WalException("Failed to map WAL segment " + file, e);
+        }
+    }
+
+    private static long segmentId(String name) {
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void updateCrc(CRC32 crc, int length, long entryId, byte type, ByteBuffer payload, byte[] chunk) {
+        ByteBuffer header = ByteBuffer.allocate(13);
+        header.putInt(length).putLong(entryId).put(type);
+        crc.update(header.array());
+
+        if (payload.hasArray()) {
+            crc.update(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+            return;
+        }
+
+        if (chunk == null) {
+            chunk = new byte[Math.min(8192, payload.remaining())];
+        }
+        while (payload.hasRemaining()) {
+            int count = Math.min(chunk.length, payload.remaining());
+            payload.get(chunk, 0, count);
+            crc.update(chunk, 0, count);
+        }
+    }
+}
@@ -19,17 +19,34 @@ import com.netflix.astyanax.serializers.StringSerializer;
 import com.netflix.astyanax.serializers.UUIDSerializer;
 
 public abstract class AbstractColumnImpl <C> implements Column<C> {
-    private final C name;
+    private C name;
 
     public AbstractColumnImpl(C name) {
         this.name = name;
     }
 
+    /**
+     * Constructor for columns that deserialize their name on first access.  See {@link #deserializeName()}
+     */
+    protected AbstractColumnImpl() {
+    }
+
     @Override
     public final C getName() {
+        if (name == null) {
+            name = deserializeName();
+        }
         return name;
     }
 
+    /**
+     * Called on the first call to getName() when the column was created without a name
+     * @return The column name
+     */
+    protected C deserializeName() {
+        return null;
+    }
+
     @Override
     public final String getStringValue() {
         return getValue(StringSerializer.get());
@@ -97,7 +114,7 @@ public abstract class AbstractColumnImpl <C> implements Column<C> {
 
     @Override
     public <C2> ColumnList<C2> getSubColumns(Serializer<C2> ser) {
-        throw new UnsupportedOperationException("SimpleColumn \'" + name + "\' has no children");
+        throw new UnsupportedOperationException("SimpleColumn \'" + getName() + "\' has no children");
     }
 
     @Override
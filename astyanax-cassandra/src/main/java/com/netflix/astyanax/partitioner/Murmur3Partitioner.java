@@ -6,12 +6,14 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+import org.apache.cassandra.utils.MurmurHash;
+
 import com.google.common.collect.Lists;
 import com.netflix.astyanax.Serializer;
 import com.netflix.astyanax.connectionpool.TokenRange;
 import com.netflix.astyanax.connectionpool.impl.TokenRangeImpl;
 
-public class Murmur3Partitioner implements Partitioner {
+public class Murmur3Partitioner implements LongTokenPartitioner {
     public static final BigInteger MINIMUM = new BigInteger(Long.toString(Long.MIN_VALUE));
     public static final BigInteger MAXIMUM = new BigInteger(Long.toString(Long.MAX_VALUE));
 
@@ -70,6 +72,18 @@ public class Murmur3Partitioner implements Partitioner {
         return partitioner.getToken(serializer.toByteBuffer(key)).toString();
     }
 
+    /**
+     * Same hash as org.apache.cassandra.dht.Murmur3Partitioner#getToken but without boxing 
+     * the result into a LongToken
+     */
+    @Override
+    public long getLongTokenForKey(ByteBuffer key) {
+        if (key.remaining() == 0)
+            return Long.MIN_VALUE;
+        long hash = MurmurHash.hash3_x64_128(key, key.position(), key.remaining(), 0)[0];
+        return hash == Long.MIN_VALUE ? Long.MAX_VALUE : hash;
+    }
+
     @Override
     public String getTokenMinusOne(String token) {
         Long lToken = Long.parseLong(token);
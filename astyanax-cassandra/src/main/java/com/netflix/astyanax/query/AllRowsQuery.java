@@ -11,6 +11,8 @@ import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
 import com.netflix.astyanax.model.ByteBufferRange;
 import com.netflix.astyanax.model.ColumnSlice;
 import com.netflix.astyanax.model.Rows;
+import com.netflix.astyanax.util.ScanProgress;
+import com.netflix.astyanax.util.TokenRangeScanner;
 
 /**
  * Specialized query to iterate the contents of a column family.
@@ -150,8 +152,8 @@ public interface AllRowsQuery<K, C> extends Execution<Rows<K, C>> {
     /**
      * Split the query into N threads with each thread processing an equal size chunk from the token range.
      * 
-     * Note that the actual number of threads is still limited by the available threads in the thread
-     * pool that was set with the AstyanaxConfiguration.
+     * Unless a scanner was provided the query runs on its own pool of N threads when N is more than
+     * the shared pool of {@link TokenRangeScanner#getShared()} has.
      * 
      * @param numberOfThreads
      */
@@ -161,7 +163,40 @@ public interface AllRowsQuery<K, C> extends Execution<Rows<K, C>> {
     AllRowsQuery<K, C> setThreadCount(int numberOfThreads);
     
     /**
-     * Execute the operation in a separate thread for each token range and
+     * Read the token ranges on the worker pool of this scanner.  The default is
+     * {@link TokenRangeScanner#getShared()}.
+     * 
+     * @param scanner
+     */
+    AllRowsQuery<K, C> withScanner(TokenRangeScanner scanner);
+    
+    /**
+     * Maximum number of pages that are read or being processed by the callback at
+     * any time.  Reading further pages is held back while the callback is busy.
+     * Defaults to the lower of the number of token ranges and the number of threads
+     * of the scanner.
+     * 
+     * @param maxInFlightPages
+     */
+    AllRowsQuery<K, C> setMaxInFlightPages(int maxInFlightPages);
+    
+    /**
+     * Adapt the page size of each token range to the observed row width and latency,
+     * starting at the row limit.  See {@link com.netflix.astyanax.util.AdaptivePageSize}
+     * 
+     * @param minPageSize
+     * @param maxPageSize
+     */
+    AllRowsQuery<K, C> setAdaptivePageSize(int minPageSize, int maxPageSize);
+    
+    /**
+     * @return Progress of the currently running or last scan started by executeWithCallback
+     *         or null if no scan was started yet.
+     */
+    ScanProgress getProgress();
+    
+    /**
+     * Execute the operation on the worker pool of the scanner and
      * provide the results in a callback.
      * 
      * @param predicate
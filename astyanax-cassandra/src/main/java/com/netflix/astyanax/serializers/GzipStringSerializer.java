@@ -50,7 +50,7 @@ public class GzipStringSerializer extends AbstractSerializer<String> {
         ByteBuffer dup = byteBuffer.duplicate();
         try {
             gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(
-                    dup.array(), 0, dup.limit()));
+                    dup.array(), dup.arrayOffset() + dup.position(), dup.remaining()));
 
             baos = new ByteArrayOutputStream();
             for (int value = 0; value != -1;) {
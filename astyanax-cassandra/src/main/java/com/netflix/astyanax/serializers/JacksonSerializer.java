@@ -33,7 +33,7 @@ public class JacksonSerializer<T> extends AbstractSerializer<T> {
     @Override
     public T fromByteBuffer(ByteBuffer byteBuffer) {
         try {
-            return mapper.readValue(new ByteArrayInputStream(byteBuffer.array()), clazz);
+            return mapper.readValue(new ByteArrayInputStream(byteBuffer.array(), byteBuffer.arrayOffset() + byteBuffer.position(), byteBuffer.remaining()), clazz);
         } catch (Exception e) {
             throw new RuntimeException("Error serializing entity ", e);
         }
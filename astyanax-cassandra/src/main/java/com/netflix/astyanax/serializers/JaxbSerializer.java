@@ -108,7 +108,7 @@ public class JaxbSerializer extends AbstractSerializer<Object> {
             return null;
         }
         ByteBuffer dup = bytes.duplicate();
-        ByteArrayInputStream bais = new ByteArrayInputStream(dup.array());
+        ByteArrayInputStream bais = new ByteArrayInputStream(dup.array(), dup.arrayOffset() + dup.position(), dup.remaining());
         try {
             XMLStreamReader reader = createStreamReader(bais);
             Object ret = unmarshaller.get().unmarshal(reader);
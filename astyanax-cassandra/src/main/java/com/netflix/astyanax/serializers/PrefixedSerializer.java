@@ -62,7 +62,8 @@ public class PrefixedSerializer<P, S> extends AbstractSerializer<S> {
             log.error("Unprefixed value received, throwing exception...");
             throw new SerializationException("Unexpected prefix value");
         } 
-        dup.position(prefixBytes.remaining());
+        // The buffer may be a window into a larger array, such as a frame read from the transport
+        dup.position(dup.position() + prefixBytes.remaining());
         S s = suffixSerializer.fromByteBuffer(dup);
         return s;
      }
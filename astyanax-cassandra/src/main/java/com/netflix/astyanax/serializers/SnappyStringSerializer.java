@@ -47,8 +47,8 @@ public class SnappyStringSerializer extends AbstractSerializer<String> {
         try {
             ByteBuffer dup = byteBuffer.duplicate();
             snappy = new SnappyInputStream(
-                    new ByteArrayInputStream(dup.array(), 0,
-                            dup.limit()));
+                    new ByteArrayInputStream(dup.array(), dup.arrayOffset() + dup.position(),
+                            dup.remaining()));
             
             baos = new ByteArrayOutputStream();
             for (int value = 0; value != -1;) {
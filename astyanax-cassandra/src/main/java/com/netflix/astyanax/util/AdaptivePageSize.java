@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.util;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Page size for paging through a token range that adapts to the observed row width and page latency.
+ *
+ * The page size doubles after each full page that was read well within the target latency and shrinks
+ * in proportion as soon as a page takes longer than the target latency.  Independently the page size is
+ * capped so that a page holds no more than the target number of bytes, based on a moving average of
+ * the row width.  The page size always stays within [minPageSize, maxPageSize].  A fixed page size
+ * is used when minPageSize == maxPageSize.
+ *
+ * Instances are not thread safe.  Pages of a single token range are read one at a time so each range
+ * gets its own instance.
+ */
+public class AdaptivePageSize {
+    public static final long   DEFAULT_TARGET_LATENCY  = 200;            // Millis
+    public static final long   DEFAULT_TARGET_BYTES    = 4 * 1024 * 1024;
+
+    private static final double ALPHA = 0.3;
+
+    private final int  minPageSize;
+    private final int  maxPageSize;
+    private final long targetLatency;
+    private final long targetBytes;
+
+    private int    pageSize;
+    private double avgRowBytes = -1;
+
+    /**
+     * Fixed page size
+     * @param pageSize
+     */
+    public AdaptivePageSize(int pageSize) {
+        this(pageSize, pageSize, pageSize, DEFAULT_TARGET_LATENCY, DEFAULT_TARGET_BYTES);
+    }
+
+    /**
+     * @param initialPageSize   Size of the first page
+     * @param minPageSize
+     * @param maxPageSize
+     * @param targetLatency     Target latency of a single page, in millis
+     * @param targetBytes       Target size of a single page, in bytes
+     */
+    public AdaptivePageSize(int initialPageSize, int minPageSize, int maxPageSize, long targetLatency, long targetBytes) {
+        Preconditions.checkArgument(minPageSize >= 1, "Min page size must be >= 1");
+        Preconditions.checkArgument(maxPageSize >= minPageSize, "Max page size must be >= min page size");
+        this.minPageSize   = minPageSize;
+        this.maxPageSize   = maxPageSize;
+        this.targetLatency = TimeUnit.NANOSECONDS.convert(targetLatency, TimeUnit.MILLISECONDS);
+        this.targetBytes   = targetBytes;
+        this.pageSize      = clamp(initialPageSize);
+    }
+
+    /**
+     * @return Number of rows to request for the next page
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Update the page size after a page was read
+     *
+     * @param requested     Number of rows that were requested
+     * @param rows          Number of rows that were returned
+     * @param bytes         Approximate size of the page
+     * @param latency       Time it took to read the page, in nanos
+     */
+    public void update(int requested, int rows, long bytes, long latency) {
+        if (minPageSize == maxPageSize || rows == 0) {
+            return;
+        }
+
+        double rowBytes = (double) bytes / rows;
+        avgRowBytes = avgRowBytes < 0 ? rowBytes : ALPHA * rowBytes + (1 - ALPHA) * avgRowBytes;
+
+        long next = pageSize;
+        if (latency > targetLatency) {
+            next = (long) (requested * ((double) targetLatency / latency));
+        }
+        // A partial page means we got to the end of the range and tells us nothing about larger pages
+        else if (rows >= requested && latency < targetLatency / 2) {
+            next = (long) requested * 2;
+        }
+
+        if (avgRowBytes > 0) {
+            next = Math.min(next, (long) (targetBytes / avgRowBytes));
+        }
+
+        pageSize = clamp(next);
+    }
+
+    private int clamp(long size) {
+        return (int) Math.max(minPageSize, Math.min(maxPageSize, size));
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder()
+            .append("AdaptivePageSize[")
+            .append("pageSize=").append(pageSize)
+            .append(",min=").append(minPageSize)
+            .append(",max=").append(maxPageSize)
+            .append(",avgRowBytes=").append((long) avgRowBytes)
+            .append("]")
+            .toString();
+    }
+}
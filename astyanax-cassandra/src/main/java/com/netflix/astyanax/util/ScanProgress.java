@@ -0,0 +1,257 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.util;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress and throughput of a token range scan, overall and per token range.  Can be polled from
+ * any thread while the scan is running.
+ */
+public class ScanProgress {
+    /**
+     * Progress of a single token range.  Pages of a range are read one at a time but not necessarily
+     * by the same thread.
+     */
+    public static class RangeProgress {
+        private final String           startToken;
+        private final String           endToken;
+        private final AdaptivePageSize pageSize;
+        private final AtomicLong       rowCount   = new AtomicLong();
+        private final AtomicLong       pageCount  = new AtomicLong();
+        private final AtomicLong       byteCount  = new AtomicLong();
+        private final AtomicLong       fetchTime  = new AtomicLong();
+        private volatile String        currentToken;
+        private volatile boolean       done;
+        private volatile long          startTime;
+        private volatile long          endTime;
+        private volatile long          pageStartTime;
+        private volatile int           requested;
+
+        public RangeProgress(String startToken, String endToken, AdaptivePageSize pageSize) {
+            this.startToken   = startToken;
+            this.endToken     = endToken;
+            this.currentToken = startToken;
+            this.pageSize     = pageSize;
+        }
+
+        /**
+         * @return Number of rows the next page should ask for
+         */
+        public int getPageSize() {
+            return pageSize.getPageSize();
+        }
+
+        void pageStarted() {
+            pageStartTime = System.nanoTime();
+            requested     = pageSize.getPageSize();
+            if (startTime == 0) {
+                startTime = pageStartTime;
+            }
+        }
+
+        /**
+         * Record a page that was just read from cassandra, before it is handed to the callback.
+         * Feeds the adaptive page size.
+         *
+         * @param rows      Number of rows in the page
+         * @param bytes     Approximate size of the page in bytes
+         */
+        public void pageFetched(int rows, long bytes) {
+            long latency = System.nanoTime() - pageStartTime;
+            rowCount.addAndGet(rows);
+            byteCount.addAndGet(bytes);
+            fetchTime.addAndGet(latency);
+            pageCount.incrementAndGet();
+            pageSize.update(requested, rows, bytes, latency);
+        }
+
+        /**
+         * Record the token the range has been read up to
+         * @param token
+         */
+        public void setCurrentToken(String token) {
+            this.currentToken = token;
+        }
+
+        void setDone() {
+            this.currentToken = endToken;
+            this.endTime      = System.nanoTime();
+            this.done         = true;
+        }
+
+        public String getStartToken() {
+            return startToken;
+        }
+
+        public String getEndToken() {
+            return endToken;
+        }
+
+        public String getCurrentToken() {
+            return currentToken;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        public long getRowCount() {
+            return rowCount.get();
+        }
+
+        public long getPageCount() {
+            return pageCount.get();
+        }
+
+        public long getByteCount() {
+            return byteCount.get();
+        }
+
+        /**
+         * @return Average time it took to read a page from cassandra, in millis
+         */
+        public long getAvgPageLatency() {
+            long pages = pageCount.get();
+            return pages == 0 ? 0 : TimeUnit.MILLISECONDS.convert(fetchTime.get() / pages, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return Rows per second since the first page of this range was requested
+         */
+        public double getRowsPerSecond() {
+            return perSecond(rowCount.get(), startTime, done ? endTime : System.nanoTime());
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder()
+                .append("RangeProgress[")
+                .append("start=").append(startToken)
+                .append(",end=").append(endToken)
+                .append(",current=").append(currentToken)
+                .append(",done=").append(done)
+                .append(",rows=").append(getRowCount())
+                .append(",pages=").append(getPageCount())
+                .append(",pageSize=").append(getPageSize())
+                .append(",rowsPerSec=").append((long) getRowsPerSecond())
+                .append("]")
+                .toString();
+        }
+    }
+
+    private final List<RangeProgress> ranges = new CopyOnWriteArrayList<RangeProgress>();
+    private volatile long startTime;
+    private volatile long endTime;
+
+    void addRange(RangeProgress range) {
+        ranges.add(range);
+    }
+
+    void started() {
+        startTime = System.nanoTime();
+    }
+
+    void finished() {
+        endTime = System.nanoTime();
+    }
+
+    public List<RangeProgress> getRanges() {
+        return Collections.unmodifiableList(ranges);
+    }
+
+    public int getRangeCount() {
+        return ranges.size();
+    }
+
+    public int getCompletedRangeCount() {
+        int count = 0;
+        for (RangeProgress range : ranges) {
+            if (range.isDone())
+                count++;
+        }
+        return count;
+    }
+
+    public long getRowCount() {
+        long count = 0;
+        for (RangeProgress range : ranges) {
+            count += range.getRowCount();
+        }
+        return count;
+    }
+
+    public long getPageCount() {
+        long count = 0;
+        for (RangeProgress range : ranges) {
+            count += range.getPageCount();
+        }
+        return count;
+    }
+
+    public long getByteCount() {
+        long count = 0;
+        for (RangeProgress range : ranges) {
+            count += range.getByteCount();
+        }
+        return count;
+    }
+
+    public boolean isFinished() {
+        return endTime != 0;
+    }
+
+    /**
+     * @return Time since the scan was started, in millis
+     */
+    public long getElapsedTime() {
+        if (startTime == 0)
+            return 0;
+        return TimeUnit.MILLISECONDS.convert((endTime != 0 ? endTime : System.nanoTime()) - startTime, TimeUnit.NANOSECONDS);
+    }
+
+    public double getRowsPerSecond() {
+        return perSecond(getRowCount(), startTime, endTime != 0 ? endTime : System.nanoTime());
+    }
+
+    public double getBytesPerSecond() {
+        return perSecond(getByteCount(), startTime, endTime != 0 ? endTime : System.nanoTime());
+    }
+
+    private static double perSecond(long count, long start, long end) {
+        if (start == 0 || end <= start)
+            return 0;
+        return count * 1e9 / (end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder()
+            .append("ScanProgress[")
+            .append("ranges=").append(getCompletedRangeCount()).append("/").append(getRangeCount())
+            .append(",rows=").append(getRowCount())
+            .append(",pages=").append(getPageCount())
+            .append(",bytes=").append(getByteCount())
+            .append(",elapsed=").append(getElapsedTime())
+            .append(",rowsPerSec=").append((long) getRowsPerSecond())
+            .append("]")
+            .toString();
+    }
+}
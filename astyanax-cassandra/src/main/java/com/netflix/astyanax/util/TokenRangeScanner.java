@@ -0,0 +1,420 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.util;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.astyanax.model.Column;
+import com.netflix.astyanax.model.Row;
+import com.netflix.astyanax.model.Rows;
+
+/**
+ * Engine for full table scans that pages through any number of token ranges using a fixed size
+ * pool of worker threads.
+ *
+ * Each page of a range is a separate task on the worker pool and a range is only put back in line for
+ * its next page once the previous page has been handed to the callback.  The number of pages being read
+ * or processed at any time is bounded per scan.  A slow callback therefore holds back reading of further
+ * pages instead of piling up pages in memory, and the number of token ranges (e.g. with vnodes) no longer
+ * determines the number of threads.
+ *
+ * Use {@link #getShared()} for a scanner on a pool that is shared by all scans in the JVM, or create a
+ * scanner on a provided executor.  {@link #forConcurrencyLevel(int)} creates a scanner with its own pool
+ * when a scan asks for more concurrency than the shared pool has threads.  A scan that is started from
+ * a callback of another scan on the same worker pool reads its pages on the calling thread, so nested
+ * scans can't exhaust the pool.
+ *
+ * <pre>
+ * TokenRangeScanner.Scan scan = TokenRangeScanner.getShared().newScan()
+ *     .withAdaptivePageSize(100, 10, 1000);
+ * for (TokenRange range : ranges)
+ *     scan.addRange(range.getStartToken(), range.getEndToken(), readerFor(range));
+ * scan.execute();
+ * </pre>
+ */
+public class TokenRangeScanner {
+    private static final Logger LOG = LoggerFactory.getLogger(TokenRangeScanner.class);
+
+    public static final int DEFAULT_THREAD_COUNT = Math.max(8, Runtime.getRuntime().availableProcessors() * 2);
+
+    private static final int SIZE_SAMPLE_ROWS = 8;
+
+    private static class SharedHolder {
+        static final TokenRangeScanner INSTANCE = new TokenRangeScanner(
+                Executors.newFixedThreadPool(DEFAULT_THREAD_COUNT,
+                        new ThreadFactoryBuilder().setDaemon(true)
+                            .setNameFormat("AstyanaxTokenRangeScanner-%d")
+                            .build()),
+                DEFAULT_THREAD_COUNT);
+    }
+
+    /**
+     * Reads the pages of a single token range.  Called for one page at a time.
+     */
+    public static interface PageReader {
+        /**
+         * Read the next page of the range and hand it to the callback.  The page should ask for
+         * {@link ScanProgress.RangeProgress#getPageSize()} rows and must be recorded with
+         * {@link ScanProgress.RangeProgress#pageFetched(int, long)} as soon as it is read.
+         *
+         * @param range
+         * @return True if there are more pages to read or false if the range is done
+         * @throws Exception Cancels the scan
+         */
+        boolean readPage(ScanProgress.RangeProgress range) throws Exception;
+    }
+
+    /**
+     * Worker pool that is running a page on the current thread
+     */
+    private static final ThreadLocal<ExecutorService> CURRENT_EXECUTOR = new ThreadLocal<ExecutorService>();
+
+    private final ExecutorService executor;
+    private final int             threadCount;
+    private final boolean         ownsExecutor;
+
+    /**
+     * @return Scanner on a fixed size worker pool shared by all scans
+     */
+    public static TokenRangeScanner getShared() {
+        return SharedHolder.INSTANCE;
+    }
+
+    public TokenRangeScanner(ExecutorService executor) {
+        this(executor, executor instanceof ThreadPoolExecutor
+                ? ((ThreadPoolExecutor)executor).getMaximumPoolSize()
+                : DEFAULT_THREAD_COUNT);
+    }
+
+    /**
+     * @param executor
+     * @param threadCount   Number of threads of the executor, used as the default number of pages in flight
+     */
+    public TokenRangeScanner(ExecutorService executor, int threadCount) {
+        this(executor, threadCount, false);
+    }
+
+    private TokenRangeScanner(ExecutorService executor, int threadCount, boolean ownsExecutor) {
+        Preconditions.checkArgument(executor != null, "Executor must not be null");
+        this.executor     = executor;
+        this.threadCount  = Math.max(1, threadCount);
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    /**
+     * @param concurrencyLevel  Number of token ranges that should be read in parallel
+     * @return The shared scanner if its pool has enough threads for the concurrency level, otherwise a
+     *         scanner with its own pool of concurrencyLevel threads that must be released with
+     *         {@link #shutdown()} once the scan is done
+     */
+    public static TokenRangeScanner forConcurrencyLevel(int concurrencyLevel) {
+        if (concurrencyLevel <= DEFAULT_THREAD_COUNT) {
+            return getShared();
+        }
+        return new TokenRangeScanner(
+                Executors.newFixedThreadPool(concurrencyLevel,
+                        new ThreadFactoryBuilder().setDaemon(true)
+                            .setNameFormat("AstyanaxTokenRangeScanner-" + concurrencyLevel + "-%d")
+                            .build()),
+                concurrencyLevel,
+                true);
+    }
+
+    /**
+     * Shut down the worker pool if it was created by {@link #forConcurrencyLevel(int)}.  The shared
+     * pool and provided executors are left running.
+     */
+    public void shutdown() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    public Scan newScan() {
+        return new Scan();
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Estimate the size of a page from the raw keys, column names and values of a sample of its rows
+     * @param rows
+     * @return Approximate number of bytes
+     */
+    public static long estimateSize(Rows<?, ?> rows) {
+        int size = rows.size();
+        if (size == 0)
+            return 0;
+
+        int samples = Math.min(size, SIZE_SAMPLE_ROWS);
+        long bytes = 0;
+        for (int i = 0; i < samples; i++) {
+            Row<?, ?> row = rows.getRowByIndex(i * size / samples);
+            bytes += remaining(row.getRawKey());
+            if (row.getColumns() != null) {
+                for (Column<?> column : row.getColumns()) {
+                    bytes += remaining(column.getRawName());
+                    if (column.hasValue())
+                        bytes += remaining(column.getByteBufferValue());
+                }
+            }
+        }
+        return bytes * size / samples;
+    }
+
+    private static int remaining(ByteBuffer bb) {
+        return bb == null ? 0 : bb.remaining();
+    }
+
+    /**
+     * A single scan over a set of token ranges
+     */
+    public class Scan {
+        private final List<RangeTask>       ranges    = Lists.newArrayList();
+        private final List<Exception>       errors    = Collections.synchronizedList(Lists.<Exception>newArrayList());
+        private final ScanProgress          progress  = new ScanProgress();
+        private final BlockingQueue<RangeTask> ready  = new LinkedBlockingQueue<RangeTask>();
+        private final AtomicInteger         remaining = new AtomicInteger();
+        private final RangeTask             poison    = new RangeTask(null, null);
+        private volatile boolean            cancelled = false;
+        private Semaphore                   permits;
+        private boolean                     started   = false;
+
+        private int  maxInFlightPages = 0;
+        private int  pageSize         = 100;
+        private int  minPageSize      = 0;
+        private int  maxPageSize      = 0;
+        private long targetLatency    = AdaptivePageSize.DEFAULT_TARGET_LATENCY;
+        private long targetBytes      = AdaptivePageSize.DEFAULT_TARGET_BYTES;
+
+        private Scan() {
+        }
+
+        /**
+         * Maximum number of pages that are read or being processed by the callback at any time.
+         * Defaults to the lower of the number of ranges and the number of worker threads.
+         * @param maxInFlightPages
+         */
+        public Scan withMaxInFlightPages(int maxInFlightPages) {
+            this.maxInFlightPages = maxInFlightPages;
+            return this;
+        }
+
+        /**
+         * Use a fixed page size
+         * @param pageSize
+         */
+        public Scan withPageSize(int pageSize) {
+            this.pageSize    = pageSize;
+            this.minPageSize = 0;
+            this.maxPageSize = 0;
+            return this;
+        }
+
+        /**
+         * Adapt the page size of each range to the observed row width and latency, see {@link AdaptivePageSize}
+         * @param initialPageSize
+         * @param minPageSize
+         * @param maxPageSize
+         */
+        public Scan withAdaptivePageSize(int initialPageSize, int minPageSize, int maxPageSize) {
+            this.pageSize    = initialPageSize;
+            this.minPageSize = minPageSize;
+            this.maxPageSize = maxPageSize;
+            return this;
+        }
+
+        /**
+         * Target latency and size of a single page when using an adaptive page size
+         * @param targetLatency   Millis
+         * @param targetBytes
+         */
+        public Scan withPageTarget(long targetLatency, long targetBytes) {
+            this.targetLatency = targetLatency;
+            this.targetBytes   = targetBytes;
+            return this;
+        }
+
+        public Scan addRange(String startToken, String endToken, PageReader reader) {
+            Preconditions.checkState(!started, "Scan already started");
+            AdaptivePageSize size = (minPageSize > 0 && maxPageSize > 0)
+                    ? new AdaptivePageSize(pageSize, minPageSize, maxPageSize, targetLatency, targetBytes)
+                    : new AdaptivePageSize(pageSize);
+            ScanProgress.RangeProgress range = new ScanProgress.RangeProgress(startToken, endToken, size);
+            ranges.add(new RangeTask(range, reader));
+            progress.addRange(range);
+            return this;
+        }
+
+        /**
+         * Read all ranges.  Blocks until all ranges are done, the scan was cancelled or a range failed,
+         * in which case the scan is cancelled as well.  No pages are in flight once this returns.
+         *
+         * @return True if all ranges were read or false if the scan was cancelled or failed
+         * @throws InterruptedException
+         */
+        public boolean execute() throws InterruptedException {
+            Preconditions.checkState(!started, "Scan already started");
+            started = true;
+            if (ranges.isEmpty()) {
+                return true;
+            }
+
+            // Started from a page of another scan on this worker pool.  Waiting for the pool could
+            // deadlock once all its threads are waiting for nested scans, so read on this thread instead.
+            boolean nested = CURRENT_EXECUTOR.get() == executor;
+            if (nested) {
+                LOG.debug("Nested scan, reading " + ranges.size() + " token ranges on the calling thread");
+            }
+
+            int inFlight = maxInFlightPages > 0 ? maxInFlightPages : Math.min(ranges.size(), threadCount);
+            permits = new Semaphore(inFlight);
+
+            remaining.set(ranges.size());
+            ready.addAll(ranges);
+            progress.started();
+
+            try {
+                while (remaining.get() > 0 && !cancelled) {
+                    permits.acquire();
+                    RangeTask task = ready.take();
+                    if (task == poison) {
+                        permits.release();
+                        continue;
+                    }
+
+                    if (nested) {
+                        task.run();
+                        continue;
+                    }
+
+                    try {
+                        executor.execute(task);
+                    }
+                    catch (RejectedExecutionException e) {
+                        permits.release();
+                        fail(e);
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                cancel();
+                throw e;
+            }
+            finally {
+                // Wait for the pages that are still being read or processed
+                permits.acquireUninterruptibly(inFlight);
+                progress.finished();
+            }
+
+            return !cancelled && errors.isEmpty();
+        }
+
+        /**
+         * Stop reading new pages.  Pages that are in flight will still be handed to the callback.
+         */
+        public void cancel() {
+            cancelled = true;
+            ready.add(poison);
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * @return Errors thrown by the page readers, in the order in which they happened
+         */
+        public List<Exception> getErrors() {
+            synchronized (errors) {
+                return Lists.newArrayList(errors);
+            }
+        }
+
+        public ScanProgress getProgress() {
+            return progress;
+        }
+
+        private void fail(Throwable t) {
+            errors.add(t instanceof Exception ? (Exception)t : new RuntimeException(t));
+            cancel();
+        }
+
+        private class RangeTask implements Runnable {
+            private final ScanProgress.RangeProgress range;
+            private final PageReader reader;
+
+            RangeTask(ScanProgress.RangeProgress range, PageReader reader) {
+                this.range  = range;
+                this.reader = reader;
+            }
+
+            @Override
+            public void run() {
+                ExecutorService previous = CURRENT_EXECUTOR.get();
+                CURRENT_EXECUTOR.set(executor);
+                boolean more = false;
+                try {
+                    if (!cancelled) {
+                        range.pageStarted();
+                        more = reader.readPage(range);
+                    }
+                }
+                catch (Throwable t) {
+                    LOG.warn("Failed to read token range " + range.getStartToken() + " - " + range.getEndToken(), t);
+                    fail(t);
+                }
+                finally {
+                    if (!cancelled) {
+                        if (more) {
+                            ready.add(this);
+                        }
+                        else {
+                            range.setDone();
+                            if (remaining.decrementAndGet() == 0) {
+                                ready.add(poison);
+                            }
+                        }
+                    }
+                    permits.release();
+                    CURRENT_EXECUTOR.set(previous);
+                }
+            }
+        }
+    }
+}
@@ -71,7 +71,8 @@ public class WriteAheadMutationBatchExecutor {
     public List<ListenableFuture<OperationResult<Void>>> replayWal(int count) {
         List<ListenableFuture<OperationResult<Void>>> futures = Lists.newArrayList();
         WriteAheadEntry walEntry;
-        while (null != (walEntry = wal.readNextEntry()) && count-- > 0) {
+        // Check the count first so that no entry is taken from the WAL and then dropped
+        while (count-- > 0 && null != (walEntry = wal.readNextEntry())) {
             MutationBatch m = keyspace.prepareMutationBatch();
             try {
                 walEntry.readMutation(m);
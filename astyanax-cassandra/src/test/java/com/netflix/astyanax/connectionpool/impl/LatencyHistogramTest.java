@@ -0,0 +1,84 @@
+package com.netflix.astyanax.connectionpool.impl;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.netflix.astyanax.connectionpool.Host;
+import com.netflix.astyanax.connectionpool.impl.LatencyHistogram.Snapshot;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        long previous = -1;
+        for (long value : new long[] { 0, 1, 63, 64, 65, 1000, 123456789, Long.MAX_VALUE / 3, Long.MAX_VALUE }) {
+            int bucket = LatencyHistogram.bucket(value);
+            Assert.assertTrue(LatencyHistogram.lowestValue(bucket) <= value);
+            Assert.assertTrue(LatencyHistogram.highestValue(bucket) >= value);
+            // Relative error is bounded by the sub bucket resolution
+            Assert.assertTrue(LatencyHistogram.highestValue(bucket) - LatencyHistogram.lowestValue(bucket) <= value / 32);
+            Assert.assertTrue(bucket >= previous);
+            previous = bucket;
+        }
+        Assert.assertEquals(LatencyHistogram.highestValue(LatencyHistogram.bucket(999)) + 1,
+                LatencyHistogram.lowestValue(LatencyHistogram.bucket(999) + 1));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        Snapshot snapshot = histogram.getSnapshot();
+        Assert.assertEquals(1000, snapshot.getCount());
+        assertClose(500000, snapshot.getPercentile(50));
+        assertClose(990000, snapshot.getPercentile(99));
+        assertClose(999000, snapshot.getPercentile(99.9));
+        assertClose(1000000, snapshot.getMax());
+        assertClose(500500, (long) snapshot.getMean());
+    }
+
+    @Test
+    public void testIntervalSnapshots() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.getIntervalSnapshot().getPercentile(99));
+
+        for (int i = 0; i < 100; i++) {
+            histogram.record(100);
+        }
+        Assert.assertEquals(100, histogram.getIntervalSnapshot().getCount());
+
+        for (int i = 0; i < 10; i++) {
+            histogram.record(5000);
+        }
+        Snapshot interval = histogram.getIntervalSnapshot();
+        Assert.assertEquals(10, interval.getCount());
+        assertClose(5000, interval.getPercentile(1));
+        Assert.assertEquals(110, histogram.getSnapshot().getCount());
+    }
+
+    @Test
+    public void testMonitor() {
+        HistogramConnectionPoolMonitor monitor = new HistogramConnectionPoolMonitor();
+        Host host = new Host("127.0.0.1", 9160);
+        for (int i = 0; i < 100; i++) {
+            monitor.incOperationSuccess(host, 2000000);
+            monitor.recordOperationLatency("GET_ROW", 3000000);
+        }
+
+        Assert.assertEquals(100, monitor.getOperationSuccessCount());
+        assertClose(2000000, monitor.getHostLatencySnapshots().get(host).getPercentile(99));
+        assertClose(3000000, monitor.getOperationLatencySnapshots().get("GET_ROW").getPercentile(50));
+        Assert.assertTrue(monitor.getLatencySummary().contains("GET_ROW count=100"));
+
+        monitor.onHostRemoved(host);
+        Assert.assertNull(monitor.getHostLatencySnapshots().get(host));
+    }
+
+    private static void assertClose(long expected, long actual) {
+        Assert.assertTrue("Expected " + expected + " but was " + actual, Math.abs(expected - actual) <= expected / 32);
+    }
+}
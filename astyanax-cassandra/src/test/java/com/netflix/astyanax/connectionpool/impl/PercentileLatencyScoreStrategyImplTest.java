@@ -0,0 +1,134 @@
+package com.netflix.astyanax.connectionpool.impl;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.netflix.astyanax.connectionpool.Host;
+import com.netflix.astyanax.connectionpool.HostConnectionPool;
+import com.netflix.astyanax.connectionpool.LatencyScoreStrategy;
+import com.netflix.astyanax.connectionpool.LatencyScoreStrategy.Instance;
+import com.netflix.astyanax.connectionpool.LatencyScoreStrategyType;
+import com.netflix.astyanax.test.TestClient;
+import com.netflix.astyanax.test.TestHostConnectionPool;
+
+public class PercentileLatencyScoreStrategyImplTest {
+
+    private static class ScoredHostConnectionPool extends TestHostConnectionPool {
+        private final double score;
+        private final int    busy;
+
+        ScoredHostConnectionPool(int id, double score, int busy) {
+            super(new Host("127.0.0." + id, 9160));
+            this.score = score;
+            this.busy  = busy;
+        }
+
+        @Override
+        public double getScore() {
+            return score;
+        }
+
+        @Override
+        public int getBusyConnectionCount() {
+            return busy;
+        }
+    }
+
+    @Test
+    public void testScoreUsesPercentiles() {
+        PercentileLatencyScoreStrategyImpl strategy = new PercentileLatencyScoreStrategyImpl(0, 0, 100, 0.5, 0.1, 10, 0.65, 2.0);
+        Instance instance = strategy.createInstance();
+
+        for (int i = 1; i <= 128; i++) {
+            instance.addSample(i == 128 ? 1000000 : 100);
+        }
+        instance.update();
+        // A single outlier moves neither the p50 nor the p99
+        Assert.assertEquals(100.0, instance.getScore());
+
+        for (int i = 0; i < 32; i++) {
+            instance.addSample(1000);
+        }
+        instance.update();
+        Assert.assertEquals(0.5 * 100 + 0.5 * 1000, instance.getScore());
+
+        instance.reset();
+        Assert.assertEquals(0.0, instance.getScore());
+        instance.update();
+        Assert.assertEquals(0.0, instance.getScore());
+    }
+
+    @Test
+    public void testHysteresis() {
+        PercentileLatencyScoreStrategyImpl strategy = new PercentileLatencyScoreStrategyImpl(0, 0, 4, 0.0, 0.1, 10, 0.65, 2.0);
+        Instance instance = strategy.createInstance();
+
+        for (int i = 0; i < 4; i++)
+            instance.addSample(100);
+        instance.update();
+        Assert.assertEquals(100.0, instance.getScore());
+
+        for (int i = 0; i < 4; i++)
+            instance.addSample(105);
+        instance.update();
+        Assert.assertEquals(100.0, instance.getScore());
+
+        for (int i = 0; i < 4; i++)
+            instance.addSample(150);
+        instance.update();
+        Assert.assertEquals(150.0, instance.getScore());
+    }
+
+    @Test
+    public void testSortAndFilter() {
+        PercentileLatencyScoreStrategyImpl strategy = new PercentileLatencyScoreStrategyImpl(0, 0, 100, 0.25, 0.1, 10, 0.5, 2.0);
+
+        List<HostConnectionPool<TestClient>> pools = Lists.newArrayList();
+        pools.add(new ScoredHostConnectionPool(1, 300, 0));
+        pools.add(new ScoredHostConnectionPool(2, 100, 0));
+        pools.add(new ScoredHostConnectionPool(3, 100, 0));
+        pools.add(new ScoredHostConnectionPool(4, 150, 30));
+        pools.add(new ScoredHostConnectionPool(5, 120, 0));
+        pools.add(new ScoredHostConnectionPool(6, 500, 0));
+
+        AtomicBoolean prioritized = new AtomicBoolean(true);
+        List<HostConnectionPool<TestClient>> result = strategy.sortAndfilterPartition(pools, prioritized);
+        Assert.assertFalse(prioritized.get());
+
+        // 300 and 500 are too slow, host 4 is too busy, equal scores keep their order
+        Assert.assertEquals(3, result.size());
+        Assert.assertSame(pools.get(1), result.get(0));
+        Assert.assertSame(pools.get(2), result.get(1));
+        Assert.assertSame(pools.get(4), result.get(2));
+    }
+
+    @Test
+    public void testKeepRatio() {
+        PercentileLatencyScoreStrategyImpl strategy = new PercentileLatencyScoreStrategyImpl(0, 0, 100, 0.25, 0.1, 10, 0.65, 2.0);
+
+        List<HostConnectionPool<TestClient>> pools = Lists.newArrayList();
+        pools.add(new ScoredHostConnectionPool(1, 1000, 0));
+        pools.add(new ScoredHostConnectionPool(2, 100, 0));
+        pools.add(new ScoredHostConnectionPool(3, 900, 0));
+
+        List<HostConnectionPool<TestClient>> result = strategy.sortAndfilterPartition(pools, new AtomicBoolean());
+        Assert.assertEquals(2, result.size());
+        Assert.assertSame(pools.get(1), result.get(0));
+        Assert.assertSame(pools.get(2), result.get(1));
+    }
+
+    @Test
+    public void testCreatedFromType() {
+        ConnectionPoolConfigurationImpl config = new ConnectionPoolConfigurationImpl("test")
+                .setLatencyScoreStrategyType(LatencyScoreStrategyType.PERCENTILE);
+
+        LatencyScoreStrategy strategy = config.getLatencyScoreStrategy();
+        Assert.assertTrue(strategy instanceof PercentileLatencyScoreStrategyImpl);
+        Assert.assertSame(strategy, config.getLatencyScoreStrategy());
+    }
+}
@@ -0,0 +1,120 @@
+package com.netflix.astyanax.connectionpool.impl;
+
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.netflix.astyanax.connectionpool.ConnectionPool;
+import com.netflix.astyanax.connectionpool.Host;
+import com.netflix.astyanax.connectionpool.HostConnectionPool;
+import com.netflix.astyanax.connectionpool.OperationResult;
+import com.netflix.astyanax.retry.RunOnce;
+import com.netflix.astyanax.test.TestClient;
+import com.netflix.astyanax.test.TestConnectionFactory;
+import com.netflix.astyanax.test.TestConstants;
+import com.netflix.astyanax.test.TestHostConnectionPool;
+import com.netflix.astyanax.test.TestHostType;
+import com.netflix.astyanax.test.TestOperation;
+
+public class PowerOfTwoChoicesExecuteWithFailoverTest {
+
+    private static class LoadedHostConnectionPool extends TestHostConnectionPool {
+        private final int  busy;
+        private final long latency;
+
+        LoadedHostConnectionPool(int id, int busy, long latency) {
+            super(new Host("127.0.0." + id, 9160));
+            this.busy    = busy;
+            this.latency = latency;
+        }
+
+        @Override
+        public int getBusyConnectionCount() {
+            return busy;
+        }
+
+        @Override
+        public long getLatencyEwma() {
+            return latency;
+        }
+    }
+
+    private static int[] select(List<HostConnectionPool<TestClient>> pools, int exclude, int count) {
+        Random random = new Random(1);
+        int[] counts = new int[pools.size()];
+        for (int i = 0; i < count; i++) {
+            counts[PowerOfTwoChoicesExecuteWithFailover.selectPool(pools, random.nextInt(), random.nextInt(), exclude)]++;
+        }
+        return counts;
+    }
+
+    @Test
+    public void testAvoidsMostLoadedHost() {
+        List<HostConnectionPool<TestClient>> pools = Lists.newArrayList();
+        pools.add(new LoadedHostConnectionPool(1, 1, 1000));
+        pools.add(new LoadedHostConnectionPool(2, 1, 1000));
+        pools.add(new LoadedHostConnectionPool(3, 20, 1000));
+        pools.add(new LoadedHostConnectionPool(4, 1, 1000));
+
+        int[] counts = select(pools, -1, 10000);
+        Assert.assertEquals(0, counts[2]);
+        for (int i : new int[] { 0, 1, 3 }) {
+            Assert.assertTrue(counts[i] > 2500);
+        }
+    }
+
+    @Test
+    public void testLatencyWeightsInFlight() {
+        List<HostConnectionPool<TestClient>> pools = Lists.newArrayList();
+        pools.add(new LoadedHostConnectionPool(1, 0, 10000000));
+        pools.add(new LoadedHostConnectionPool(2, 3, 1000000));
+
+        int[] counts = select(pools, -1, 1000);
+        Assert.assertEquals(0,    counts[0]);
+        Assert.assertEquals(1000, counts[1]);
+    }
+
+    @Test
+    public void testExclude() {
+        List<HostConnectionPool<TestClient>> pools = Lists.newArrayList();
+        pools.add(new LoadedHostConnectionPool(1, 0, 1000));
+
+        // The only host can't be excluded
+        Assert.assertEquals(1000, select(pools, 0, 1000)[0]);
+
+        pools.add(new LoadedHostConnectionPool(2, 10, 1000));
+        Assert.assertEquals(1000, select(pools, 0, 1000)[1]);
+
+        pools.add(new LoadedHostConnectionPool(3, 10, 1000));
+        int[] counts = select(pools, 0, 1000);
+        Assert.assertEquals(0, counts[0]);
+        Assert.assertEquals(1000, counts[1] + counts[2]);
+    }
+
+    @Test
+    public void testPrefersFasterHost() throws Exception {
+        CountingConnectionPoolMonitor monitor = new CountingConnectionPoolMonitor();
+        ConnectionPoolConfigurationImpl config = new ConnectionPoolConfigurationImpl(
+                TestConstants.CLUSTER_NAME + "_" + TestConstants.KEYSPACE_NAME);
+        config.setHostSelectorStrategy(HostSelectorStrategy.POWER_OF_TWO_CHOICES);
+        config.initialize();
+
+        ConnectionPool<TestClient> pool = new RoundRobinConnectionPoolImpl<TestClient>(
+                config, new TestConnectionFactory(config, monitor), monitor);
+        pool.addHost(new Host("127.0.0.1", TestHostType.GOOD_FAST.ordinal()), true);
+        pool.addHost(new Host("127.0.0.2", TestHostType.GOOD_IMMEDIATE.ordinal()), true);
+
+        int immediate = 0;
+        for (int i = 0; i < 50; i++) {
+            OperationResult<String> result = pool.executeWithFailover(new TestOperation(), RunOnce.get());
+            if (result.getHost().getPort() == TestHostType.GOOD_IMMEDIATE.ordinal())
+                immediate++;
+        }
+        Assert.assertTrue("Immediate host used " + immediate + " times", immediate >= 45);
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,82 @@
+package com.netflix.astyanax.connectionpool.impl;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.netflix.astyanax.connectionpool.BadHostDetector.SamplingInstance;
+
+public class SlidingWindowBadHostDetectorImplTest {
+
+    private static ConnectionPoolConfigurationImpl newConfig(int timeoutWindow, int maxTimeoutCount) {
+        ConnectionPoolConfigurationImpl config = new ConnectionPoolConfigurationImpl("test");
+        config.setTimeoutWindow(timeoutWindow);
+        config.setMaxTimeoutCount(maxTimeoutCount);
+        return config;
+    }
+
+    @Test
+    public void testTimeoutsArePerHost() {
+        SlidingWindowBadHostDetectorImpl detector = new SlidingWindowBadHostDetectorImpl(newConfig(10000, 3));
+        SamplingInstance host1 = detector.createInstance();
+        SamplingInstance host2 = detector.createInstance();
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertFalse(host1.addTimeoutSample());
+        }
+        Assert.assertFalse(host2.addTimeoutSample());
+        Assert.assertTrue(host1.addTimeoutSample());
+    }
+
+    @Test
+    public void testTimeoutsExpire() throws Exception {
+        SlidingWindowBadHostDetectorImpl detector = new SlidingWindowBadHostDetectorImpl(newConfig(100, 3));
+        SamplingInstance host = detector.createInstance();
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertFalse(host.addTimeoutSample());
+        }
+        Thread.sleep(150);
+        Assert.assertFalse(host.addTimeoutSample());
+    }
+
+    @Test
+    public void testErrorRate() {
+        SlidingWindowBadHostDetectorImpl detector = new SlidingWindowBadHostDetectorImpl(newConfig(10000, 100), 10, 0.5, 10, 0);
+        SamplingInstance host = detector.createInstance();
+
+        for (int i = 0; i < 5; i++) {
+            host.addSuccessSample();
+        }
+        // Too few operations to judge
+        for (int i = 0; i < 4; i++) {
+            Assert.assertFalse(host.addErrorSample());
+        }
+        // 5 of 10 failed
+        Assert.assertFalse(host.addTimeoutSample());
+        Assert.assertTrue(host.addErrorSample());
+    }
+
+    @Test
+    public void testLatencyOutlier() throws Exception {
+        SlidingWindowBadHostDetectorImpl detector = new SlidingWindowBadHostDetectorImpl(newConfig(1000, 100), 10, 0, 5, 3.0);
+        SamplingInstance fast1 = detector.createInstance();
+        SamplingInstance fast2 = detector.createInstance();
+        SamplingInstance slow  = detector.createInstance();
+
+        for (int i = 0; i < 10; i++) {
+            fast1.addLatencySample(100);
+            fast2.addLatencySample(120);
+            slow .addLatencySample(1000);
+        }
+
+        // Latency is checked once per bucket
+        Thread.sleep(110);
+        Assert.assertFalse(fast1.addLatencySample(100));
+        Assert.assertTrue(slow.addLatencySample(1000));
+
+        detector.removeInstance(fast2);
+        Thread.sleep(110);
+        Assert.assertFalse(slow.addLatencySample(1000));
+    }
+}
@@ -0,0 +1,149 @@
+package com.netflix.astyanax.connectionpool.impl;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.netflix.astyanax.connectionpool.ConnectionContext;
+import com.netflix.astyanax.connectionpool.ConnectionPool;
+import com.netflix.astyanax.connectionpool.Host;
+import com.netflix.astyanax.connectionpool.IdempotentOperation;
+import com.netflix.astyanax.connectionpool.OperationResult;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.connectionpool.exceptions.TimeoutException;
+import com.netflix.astyanax.retry.RunOnce;
+import com.netflix.astyanax.test.TestClient;
+import com.netflix.astyanax.test.TestConnectionFactory;
+import com.netflix.astyanax.test.TestConstants;
+import com.netflix.astyanax.test.TestHostType;
+import com.netflix.astyanax.test.TestOperation;
+
+public class SpeculativeExecutionTest {
+
+    /**
+     * Read that stalls on the caller's thread, but not when it is sent again by a speculative read
+     */
+    private static class StallingRead extends TestOperation implements IdempotentOperation<TestClient, String> {
+        private final long stall;
+
+        StallingRead(long stall) {
+            this.stall = stall;
+        }
+
+        @Override
+        public String execute(TestClient client, ConnectionContext state) throws ConnectionException {
+            if (stall > 0 && !Thread.currentThread().getName().startsWith("AstyanaxSpeculativeRead")) {
+                try {
+                    Thread.sleep(stall);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return Thread.currentThread().getName();
+        }
+    }
+
+    /**
+     * Read that fails on the caller's thread after a while and succeeds, more slowly, when sent again by a
+     * speculative read
+     */
+    private static class FailingRead extends TestOperation implements IdempotentOperation<TestClient, String> {
+        private final long failAfter;
+        private final long speculativeLatency;
+
+        FailingRead(long failAfter, long speculativeLatency) {
+            this.failAfter          = failAfter;
+            this.speculativeLatency = speculativeLatency;
+        }
+
+        @Override
+        public String execute(TestClient client, ConnectionContext state) throws ConnectionException {
+            boolean speculative = Thread.currentThread().getName().startsWith("AstyanaxSpeculativeRead");
+            try {
+                Thread.sleep(speculative ? speculativeLatency : failAfter);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!speculative)
+                throw new TimeoutException("first attempt");
+            return Thread.currentThread().getName();
+        }
+    }
+
+    private CountingConnectionPoolMonitor monitor;
+    private ConnectionPool<TestClient>    pool;
+
+    @Before
+    public void setUp() throws Exception {
+        monitor = new CountingConnectionPoolMonitor();
+        ConnectionPoolConfigurationImpl config = new ConnectionPoolConfigurationImpl(
+                TestConstants.CLUSTER_NAME + "_" + TestConstants.KEYSPACE_NAME);
+        config.setSpeculativeReadPercentile(99);
+        config.setMinSpeculativeReadDelay(5);
+        config.initialize();
+
+        pool = new RoundRobinConnectionPoolImpl<TestClient>(config, new TestConnectionFactory(config, monitor), monitor);
+        pool.addHost(new Host("127.0.0.1", TestHostType.GOOD_IMMEDIATE.ordinal()), true);
+        pool.addHost(new Host("127.0.0.2", TestHostType.GOOD_IMMEDIATE.ordinal()), true);
+
+        // Learn the latency of both hosts
+        for (int i = 0; i < 20; i++) {
+            pool.executeWithFailover(new StallingRead(0), RunOnce.get());
+        }
+        Assert.assertEquals(0, monitor.getSpeculativeReadCount());
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testSpeculativeReadWins() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            long startTime = System.currentTimeMillis();
+            OperationResult<String> result = pool.executeWithFailover(new StallingRead(300), RunOnce.get());
+            Assert.assertTrue(result.getResult().startsWith("AstyanaxSpeculativeRead"));
+            Assert.assertEquals(2, result.getAttemptsCount());
+            Assert.assertTrue(System.currentTimeMillis() - startTime >= 300);
+        }
+        Assert.assertEquals(3, monitor.getSpeculativeReadCount());
+        Assert.assertEquals(3, monitor.getSpeculativeReadWonCount());
+    }
+
+    @Test
+    public void testSpeculativeReadOutlivesFailedFirstAttempt() throws Exception {
+        // The first attempt fails before the speculative read is done, which still answers
+        OperationResult<String> result = pool.executeWithFailover(new FailingRead(100, 200), RunOnce.get());
+        Assert.assertTrue(result.getResult().startsWith("AstyanaxSpeculativeRead"));
+        Assert.assertEquals(1, monitor.getSpeculativeReadWonCount());
+    }
+
+    @Test
+    public void testOnlyIdempotentReads() throws Exception {
+        OperationResult<String> result = pool.executeWithFailover(new TestOperation() {
+            @Override
+            public String execute(TestClient client, ConnectionContext state) throws ConnectionException {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "RESULT";
+            }
+        }, RunOnce.get());
+        Assert.assertEquals("RESULT", result.getResult());
+        Assert.assertEquals(0, monitor.getSpeculativeReadCount());
+    }
+
+    @Test
+    public void testBudget() throws Exception {
+        // The budget starts with 10 speculative reads and earns 1 for every 20 reads
+        for (int i = 0; i < 15; i++) {
+            pool.executeWithFailover(new StallingRead(20), RunOnce.get());
+        }
+        Assert.assertEquals(10, monitor.getSpeculativeReadCount());
+    }
+}
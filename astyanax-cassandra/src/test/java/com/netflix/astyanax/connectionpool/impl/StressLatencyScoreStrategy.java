@@ -0,0 +1,71 @@
+package com.netflix.astyanax.connectionpool.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.astyanax.connectionpool.LatencyScoreStrategy;
+import com.netflix.astyanax.connectionpool.LatencyScoreStrategy.Instance;
+
+/**
+ * Measures the throughput of {@link Instance#addSample(long)} when many threads report
+ * latencies for the same host, while the score is being updated in the background.
+ */
+public class StressLatencyScoreStrategy {
+    private static final Logger LOG = LoggerFactory.getLogger(StressLatencyScoreStrategy.class);
+
+    private static final int THREAD_COUNT = 32;
+    private static final int WARMUP_TIME  = 2000;
+    private static final int RUN_TIME     = 5000;
+
+    public static void main(String[] args) throws Exception {
+        for (int i = 0; i < 2; i++) {
+            run("SMA",        new SmaLatencyScoreStrategyImpl(0, 0, 100, 2.0));
+            run("EMA",        new EmaLatencyScoreStrategyImpl(0, 0, 100));
+            run("PERCENTILE", new PercentileLatencyScoreStrategyImpl(0, 0, 100));
+        }
+    }
+
+    private static void run(String name, LatencyScoreStrategy strategy) throws Exception {
+        final Instance       instance = strategy.createInstance();
+        final AtomicLong     count    = new AtomicLong();
+        final CountDownLatch done     = new CountDownLatch(THREAD_COUNT);
+        final long           endTime  = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WARMUP_TIME + RUN_TIME);
+        final long           start    = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WARMUP_TIME);
+
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            final int seed = i + 1;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long samples = 0;
+                    long latency = seed;
+                    long now;
+                    while ((now = System.nanoTime()) < endTime) {
+                        for (int j = 0; j < 100; j++) {
+                            latency = (latency * 6364136223846793005L + 1442695040888963407L);
+                            instance.addSample(1000000 + (latency >>> 44));
+                        }
+                        if (now > start)
+                            samples += 100;
+                    }
+                    count.addAndGet(samples);
+                    done.countDown();
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        while (!done.await(100, TimeUnit.MILLISECONDS)) {
+            instance.update();
+        }
+
+        LOG.info(String.format("%-10s threads=%d addSample/sec=%,d score=%.0f", name, THREAD_COUNT,
+                count.get() * 1000 / RUN_TIME, instance.getScore()));
+        strategy.shutdown();
+    }
+}
@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.connectionpool.impl;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.netflix.astyanax.connectionpool.Host;
+import com.netflix.astyanax.connectionpool.HostConnectionPool;
+import com.netflix.astyanax.connectionpool.TokenRange;
+import com.netflix.astyanax.partitioner.Murmur3Partitioner;
+import com.netflix.astyanax.partitioner.Partitioner;
+import com.netflix.astyanax.shallows.EmptyLatencyScoreStrategyImpl;
+import com.netflix.astyanax.test.TestClient;
+import com.netflix.astyanax.test.TestHostConnectionPool;
+
+/**
+ * Measures row key to partition lookups in {@link TokenPartitionedTopology} for a vnode sized ring
+ * (100 hosts x 256 tokens) using the long token ring of {@link Murmur3Partitioner} and the BigInteger
+ * lookup used by all other partitioners.  Run from the command line.
+ */
+public class StressTokenPartitionedTopology {
+    private static final Logger LOG = LoggerFactory.getLogger(StressTokenPartitionedTopology.class);
+
+    private static final int HOST_COUNT       = 100;
+    private static final int TOKENS_PER_HOST  = 256;
+    private static final int KEY_COUNT        = 1024;
+    private static final int ITERATIONS       = 5000;
+
+    /**
+     * Partitioner that only exposes the String tokens so the topology takes the BigInteger path
+     */
+    public static class StringTokenPartitioner implements Partitioner {
+        private final Partitioner delegate;
+
+        public StringTokenPartitioner(Partitioner delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String getMinToken() {
+            return delegate.getMinToken();
+        }
+
+        @Override
+        public String getMaxToken() {
+            return delegate.getMaxToken();
+        }
+
+        @Override
+        public String getTokenMinusOne(String token) {
+            return delegate.getTokenMinusOne(token);
+        }
+
+        @Override
+        public List<TokenRange> splitTokenRange(String first, String last, int count) {
+            return delegate.splitTokenRange(first, last, count);
+        }
+
+        @Override
+        public List<TokenRange> splitTokenRange(int count) {
+            return delegate.splitTokenRange(count);
+        }
+
+        @Override
+        public String getTokenForKey(ByteBuffer key) {
+            return delegate.getTokenForKey(key);
+        }
+    }
+
+    /**
+     * Create pools for a ring of random Murmur3 tokens where each host owns tokensPerHost ranges
+     */
+    public static List<HostConnectionPool<TestClient>> makeVnodeRing(int hostCount, int tokensPerHost, Random random) {
+        List<HostConnectionPool<TestClient>> pools = Lists.newArrayList();
+        for (int i = 0; i < hostCount; i++) {
+            List<TokenRange> ranges = Lists.newArrayList();
+            for (int j = 0; j < tokensPerHost; j++) {
+                ranges.add(new TokenRangeImpl(null, Long.toString(random.nextLong()), null));
+            }
+            Host host = new Host("10.0." + (i / 256) + "." + (i % 256), 9160).setTokenRanges(ranges);
+            pools.add(new TestHostConnectionPool(host));
+        }
+        return pools;
+    }
+
+    public static List<ByteBuffer> makeKeys(int count, Random random) {
+        List<ByteBuffer> keys = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            keys.add(ByteBuffer.wrap(("row-" + random.nextLong()).getBytes()));
+        }
+        return keys;
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(1);
+        List<HostConnectionPool<TestClient>> ring = makeVnodeRing(HOST_COUNT, TOKENS_PER_HOST, random);
+        List<ByteBuffer> keys = makeKeys(KEY_COUNT, random);
+
+        TokenPartitionedTopology<TestClient> longTopology = new TokenPartitionedTopology<TestClient>(
+                Murmur3Partitioner.get(), new EmptyLatencyScoreStrategyImpl());
+        longTopology.setPools(ring);
+
+        TokenPartitionedTopology<TestClient> bigIntegerTopology = new TokenPartitionedTopology<TestClient>(
+                new StringTokenPartitioner(Murmur3Partitioner.get()), new EmptyLatencyScoreStrategyImpl());
+        bigIntegerTopology.setPools(ring);
+
+        LOG.info("Ring with " + longTopology.getPartitionCount() + " partitions");
+        for (int round = 0; round < 3; round++) {
+            run("long",       longTopology, keys);
+            run("BigInteger", bigIntegerTopology, keys);
+        }
+    }
+
+    private static void run(String name, TokenPartitionedTopology<TestClient> topology, List<ByteBuffer> keys) {
+        long check = 0;
+        long startTime = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (ByteBuffer key : keys) {
+                check += topology.getPartition(key).id().signum();
+            }
+        }
+        long elapsed = System.nanoTime() - startTime;
+        long lookups = (long)ITERATIONS * keys.size();
+        LOG.info(String.format("%-10s %6d ns/lookup %10d lookups/sec (%d)", 
+                name, elapsed / lookups, lookups * 1000000000L / elapsed, check));
+    }
+}
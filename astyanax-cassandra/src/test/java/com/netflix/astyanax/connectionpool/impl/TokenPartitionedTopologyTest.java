@@ -0,0 +1,53 @@
+package com.netflix.astyanax.connectionpool.impl;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.netflix.astyanax.connectionpool.HostConnectionPool;
+import com.netflix.astyanax.partitioner.LongTokenPartitioner;
+import com.netflix.astyanax.partitioner.Murmur3Partitioner;
+import com.netflix.astyanax.shallows.EmptyLatencyScoreStrategyImpl;
+import com.netflix.astyanax.test.TestClient;
+
+public class TokenPartitionedTopologyTest {
+    @Test
+    public void testMurmur3LongToken() {
+        LongTokenPartitioner partitioner = (LongTokenPartitioner) Murmur3Partitioner.get();
+        Random random = new Random(1);
+        for (ByteBuffer key : StressTokenPartitionedTopology.makeKeys(1000, random)) {
+            Assert.assertEquals(partitioner.getTokenForKey(key), Long.toString(partitioner.getLongTokenForKey(key)));
+        }
+        ByteBuffer empty = ByteBuffer.allocate(0);
+        Assert.assertEquals(partitioner.getTokenForKey(empty), Long.toString(partitioner.getLongTokenForKey(empty)));
+    }
+
+    @Test
+    public void testLongRingMatchesBigIntegerRing() {
+        Random random = new Random(1);
+        List<HostConnectionPool<TestClient>> ring = StressTokenPartitionedTopology.makeVnodeRing(10, 16, random);
+
+        TokenPartitionedTopology<TestClient> longTopology = new TokenPartitionedTopology<TestClient>(
+                Murmur3Partitioner.get(), new EmptyLatencyScoreStrategyImpl());
+        TokenPartitionedTopology<TestClient> bigIntegerTopology = new TokenPartitionedTopology<TestClient>(
+                new StressTokenPartitionedTopology.StringTokenPartitioner(Murmur3Partitioner.get()), 
+                new EmptyLatencyScoreStrategyImpl());
+
+        ByteBuffer key = ByteBuffer.wrap("key".getBytes());
+        Assert.assertSame(longTopology.getAllPools(), longTopology.getPartition(key));
+
+        longTopology.setPools(ring);
+        bigIntegerTopology.setPools(ring);
+
+        for (ByteBuffer rowKey : StressTokenPartitionedTopology.makeKeys(5000, random)) {
+            Assert.assertEquals(
+                    bigIntegerTopology.getPartition(rowKey).id(),
+                    longTopology.getPartition(rowKey).id());
+        }
+        Assert.assertSame(longTopology.getAllPools(), longTopology.getPartition((ByteBuffer)null));
+    }
+}
@@ -4,6 +4,7 @@ import java.lang.reflect.Field;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.UUID;
 
@@ -49,6 +50,38 @@ public class SerializersTest {
         Assert.assertEquals(val, deSerVal1);
     }
     
+    /**
+     * Deserialize a value from a buffer that wraps it at an offset into a larger array, the way
+     * the thrift transport returns names and values read from a frame
+     * @param ser
+     * @param val
+     */
+    public <T> void testSerializerInFrame(Serializer<T> ser, T val) {
+        ByteBuffer bb = ser.toByteBuffer(val);
+        byte[] frame = new byte[bb.remaining() + 40];
+        Arrays.fill(frame, (byte)' ');
+        bb.duplicate().get(frame, 20, bb.remaining());
+
+        Assert.assertEquals(val, ser.fromByteBuffer(ByteBuffer.wrap(frame, 20, bb.remaining())));
+        // Same window with a non zero array offset
+        ByteBuffer sliced = ByteBuffer.wrap(frame, 10, bb.remaining() + 10).slice();
+        sliced.position(10);
+        Assert.assertEquals(val, ser.fromByteBuffer(sliced));
+    }
+
+    @Test
+    public void testSerializersInFrame() {
+        String str = StringUtils.repeat("{The : 'quick', brown : 'fox'}", 10);
+        testSerializerInFrame(new PrefixedSerializer<String, String>("pre:", StringSerializer.get(), StringSerializer.get()), "hello");
+        testSerializerInFrame(new GzipStringSerializer(), str);
+        testSerializerInFrame(new SnappyStringSerializer(), str);
+        testSerializerInFrame(StringSerializer.get(), "hello");
+        testSerializerInFrame(LongSerializer.get(), 123L);
+        testSerializerInFrame(UUIDSerializer.get(), UUID.randomUUID());
+        testSerializerInFrame(new AnnotatedCompositeSerializer<Composite1>(Composite1.class),
+                new Composite1("Arielle", "Landau", 6, new BigInteger("1"), new BigDecimal(1)));
+    }
+
     @Test
     public void testMultiLongs() {
         try {
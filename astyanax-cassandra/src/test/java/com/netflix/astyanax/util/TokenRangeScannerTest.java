@@ -0,0 +1,260 @@
+package com.netflix.astyanax.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.Assert;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TokenRangeScannerTest {
+
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void setup() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public static void teardown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Reads a fixed number of pages and tracks the number of pages in flight across all ranges
+     */
+    private static class CountingReader implements TokenRangeScanner.PageReader {
+        private final int pages;
+        private final AtomicInteger inFlight;
+        private final AtomicInteger maxInFlight;
+        private final long delay;
+        private int page = 0;
+
+        CountingReader(int pages, AtomicInteger inFlight, AtomicInteger maxInFlight, long delay) {
+            this.pages       = pages;
+            this.inFlight    = inFlight;
+            this.maxInFlight = maxInFlight;
+            this.delay       = delay;
+        }
+
+        @Override
+        public boolean readPage(ScanProgress.RangeProgress range) throws Exception {
+            int current = inFlight.incrementAndGet();
+            try {
+                int max;
+                do {
+                    max = maxInFlight.get();
+                } while (current > max && !maxInFlight.compareAndSet(max, current));
+
+                range.pageFetched(range.getPageSize(), range.getPageSize() * 10);
+                Thread.sleep(delay);
+                return ++page < pages;
+            }
+            finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    @Test
+    public void testMoreRangesThanThreads() throws Exception {
+        TokenRangeScanner scanner = new TokenRangeScanner(executor);
+        Assert.assertEquals(4, scanner.getThreadCount());
+
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        TokenRangeScanner.Scan scan = scanner.newScan().withPageSize(10);
+        for (int i = 0; i < 50; i++) {
+            scan.addRange(Integer.toString(i), Integer.toString(i + 1), new CountingReader(3, inFlight, maxInFlight, 0));
+        }
+
+        Assert.assertTrue(scan.execute());
+
+        ScanProgress progress = scan.getProgress();
+        Assert.assertEquals(50, progress.getRangeCount());
+        Assert.assertEquals(50, progress.getCompletedRangeCount());
+        Assert.assertEquals(150, progress.getPageCount());
+        Assert.assertEquals(1500, progress.getRowCount());
+        Assert.assertTrue(progress.isFinished());
+        Assert.assertTrue(maxInFlight.get() <= 4);
+        for (ScanProgress.RangeProgress range : progress.getRanges()) {
+            Assert.assertTrue(range.isDone());
+            Assert.assertEquals(range.getEndToken(), range.getCurrentToken());
+            Assert.assertEquals(3, range.getPageCount());
+        }
+    }
+
+    @Test
+    public void testMaxInFlightPages() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        TokenRangeScanner.Scan scan = new TokenRangeScanner(executor).newScan()
+                .withMaxInFlightPages(2);
+        for (int i = 0; i < 8; i++) {
+            scan.addRange(Integer.toString(i), Integer.toString(i + 1), new CountingReader(5, inFlight, maxInFlight, 2));
+        }
+
+        Assert.assertTrue(scan.execute());
+        Assert.assertEquals(40, scan.getProgress().getPageCount());
+        Assert.assertTrue(maxInFlight.get() <= 2);
+        Assert.assertEquals(0, inFlight.get());
+    }
+
+    @Test
+    public void testFailureCancelsScan() throws Exception {
+        final AtomicInteger pages = new AtomicInteger();
+        TokenRangeScanner.Scan scan = new TokenRangeScanner(executor).newScan();
+        for (int i = 0; i < 4; i++) {
+            final int rangeIndex = i;
+            scan.addRange(Integer.toString(i), Integer.toString(i + 1), new TokenRangeScanner.PageReader() {
+                @Override
+                public boolean readPage(ScanProgress.RangeProgress range) throws Exception {
+                    pages.incrementAndGet();
+                    if (rangeIndex == 2) {
+                        throw new RuntimeException("Failed range");
+                    }
+                    Thread.sleep(1);
+                    return true;
+                }
+            });
+        }
+
+        Assert.assertFalse(scan.execute());
+        Assert.assertTrue(scan.isCancelled());
+        Assert.assertEquals(1, scan.getErrors().size());
+        Assert.assertEquals("Failed range", scan.getErrors().get(0).getMessage());
+        Assert.assertEquals(0, scan.getProgress().getCompletedRangeCount());
+
+        // No pages are read after execute returns
+        int count = pages.get();
+        Thread.sleep(20);
+        Assert.assertEquals(count, pages.get());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final TokenRangeScanner.Scan scan = new TokenRangeScanner(executor).newScan();
+        scan.addRange("0", "1", new TokenRangeScanner.PageReader() {
+            @Override
+            public boolean readPage(ScanProgress.RangeProgress range) throws Exception {
+                started.countDown();
+                Thread.sleep(1);
+                return true;
+            }
+        });
+
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    started.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                scan.cancel();
+            }
+        });
+
+        Assert.assertFalse(scan.execute());
+        Assert.assertTrue(scan.getErrors().isEmpty());
+        Assert.assertFalse(scan.getProgress().getRanges().get(0).isDone());
+    }
+
+    @Test(timeout = 10000)
+    public void testNestedScan() throws Exception {
+        final AtomicLong innerPages = new AtomicLong();
+        TokenRangeScanner.Scan scan = new TokenRangeScanner(executor).newScan();
+        for (int i = 0; i < 8; i++) {
+            scan.addRange(Integer.toString(i), Integer.toString(i + 1), new TokenRangeScanner.PageReader() {
+                @Override
+                public boolean readPage(ScanProgress.RangeProgress range) throws Exception {
+                    // Every thread of the pool waits for a nested scan on the same pool
+                    TokenRangeScanner.Scan inner = new TokenRangeScanner(executor).newScan();
+                    for (int j = 0; j < 4; j++) {
+                        inner.addRange(Integer.toString(j), Integer.toString(j + 1),
+                                new CountingReader(2, new AtomicInteger(), new AtomicInteger(), 1));
+                    }
+                    Assert.assertTrue(inner.execute());
+                    innerPages.addAndGet(inner.getProgress().getPageCount());
+                    return false;
+                }
+            });
+        }
+
+        Assert.assertTrue(scan.execute());
+        Assert.assertEquals(8 * 4 * 2, innerPages.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testForConcurrencyLevel() throws Exception {
+        Assert.assertSame(TokenRangeScanner.getShared(), TokenRangeScanner.forConcurrencyLevel(1));
+        TokenRangeScanner.getShared().shutdown();
+        Assert.assertFalse(TokenRangeScanner.getShared().getExecutor().isShutdown());
+
+        int concurrencyLevel = TokenRangeScanner.DEFAULT_THREAD_COUNT + 1;
+        TokenRangeScanner scanner = TokenRangeScanner.forConcurrencyLevel(concurrencyLevel);
+        Assert.assertEquals(concurrencyLevel, scanner.getThreadCount());
+
+        // Every range must be read at the same time for the scan to finish
+        final CountDownLatch allStarted = new CountDownLatch(concurrencyLevel);
+        TokenRangeScanner.Scan scan = scanner.newScan();
+        for (int i = 0; i < concurrencyLevel; i++) {
+            scan.addRange(Integer.toString(i), Integer.toString(i + 1), new TokenRangeScanner.PageReader() {
+                @Override
+                public boolean readPage(ScanProgress.RangeProgress range) throws Exception {
+                    allStarted.countDown();
+                    allStarted.await();
+                    return false;
+                }
+            });
+        }
+        Assert.assertTrue(scan.execute());
+
+        scanner.shutdown();
+        Assert.assertTrue(scanner.getExecutor().isShutdown());
+    }
+
+    @Test
+    public void testAdaptivePageSize() {
+        // Fixed
+        AdaptivePageSize fixed = new AdaptivePageSize(100);
+        fixed.update(100, 100, 1000, TimeUnit.NANOSECONDS.convert(10, TimeUnit.SECONDS));
+        Assert.assertEquals(100, fixed.getPageSize());
+
+        // Grows on fast full pages, up to the max
+        AdaptivePageSize size = new AdaptivePageSize(100, 10, 1000, 100, 1024 * 1024);
+        size.update(100, 100, 100 * 100, TimeUnit.NANOSECONDS.convert(1, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(200, size.getPageSize());
+        for (int i = 0; i < 10; i++) {
+            size.update(size.getPageSize(), size.getPageSize(), size.getPageSize() * 100, TimeUnit.NANOSECONDS.convert(1, TimeUnit.MILLISECONDS));
+        }
+        Assert.assertEquals(1000, size.getPageSize());
+
+        // Partial pages don't grow the page size
+        size = new AdaptivePageSize(100, 10, 1000, 100, 1024 * 1024);
+        size.update(100, 50, 50 * 100, TimeUnit.NANOSECONDS.convert(1, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(100, size.getPageSize());
+
+        // Shrinks in proportion to slow pages
+        size = new AdaptivePageSize(400, 10, 1000, 100, 1024 * 1024);
+        size.update(400, 400, 400 * 100, TimeUnit.NANOSECONDS.convert(200, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(200, size.getPageSize());
+
+        // Capped by the size of the rows
+        size = new AdaptivePageSize(400, 10, 1000, 100, 1024 * 1024);
+        size.update(400, 400, 400 * 10 * 1024, TimeUnit.NANOSECONDS.convert(1, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(102, size.getPageSize());
+
+        // Never below the min
+        size.update(100, 100, 100 * 1024 * 1024, TimeUnit.NANOSECONDS.convert(1, TimeUnit.SECONDS));
+        Assert.assertEquals(10, size.getPageSize());
+    }
+}
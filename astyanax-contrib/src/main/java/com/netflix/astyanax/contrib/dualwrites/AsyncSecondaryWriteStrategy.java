@@ -0,0 +1,190 @@
+package com.netflix.astyanax.contrib.dualwrites;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.astyanax.Execution;
+import com.netflix.astyanax.connectionpool.OperationResult;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+
+/**
+ * Impl of {@link DualWritesStrategy} that returns as soon as the primary write completes and writes to the
+ * secondary keyspace in the background. 
+ * 
+ * If the primary write fails, then the failure is propagated to the caller and the secondary is not written. 
+ * If it succeeds then the secondary write is queued for a bounded pool of threads.  Secondary writes that fail,
+ * or that can't be queued because the secondary is falling behind, are given to the provided {@link FailedWritesLogger}.
+ * The caller never waits for the secondary.  Executions handed to this strategy must not be modified after they were executed,
+ * {@link DualWritesMutationBatch} takes care of that by handing over a copy of its secondary batch.
+ * 
+ * Both {@link Execution#execute()} and {@link Execution#executeAsync()} are supported.  With execute() the secondary is 
+ * written by the bounded pool of threads.  With executeAsync() the secondary is written with its own executeAsync() once 
+ * the primary completed, and at most concurrency + queueSize of these writes are in flight.
+ * 
+ */
+public class AsyncSecondaryWriteStrategy implements DeferredSecondaryWriteStrategy {
+
+    private static final Logger Logger = LoggerFactory.getLogger(AsyncSecondaryWriteStrategy.class);
+    
+    public static final int DEFAULT_CONCURRENCY = 4;
+    public static final int DEFAULT_QUEUE_SIZE  = 10000;
+
+    private final FailedWritesLogger failedWritesLogger;
+    private final ThreadPoolExecutor executor;
+    private final int                asyncLimit;
+    private final Semaphore          asyncPermits;
+    private volatile boolean         shutdown = false;
+    
+    public AsyncSecondaryWriteStrategy(FailedWritesLogger logger) {
+        this(logger, DEFAULT_CONCURRENCY, DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * @param logger
+     * @param concurrency   Max number of secondary writes in flight
+     * @param queueSize     Max number of secondary writes waiting for a thread
+     */
+    public AsyncSecondaryWriteStrategy(FailedWritesLogger logger, int concurrency, int queueSize) {
+        this.failedWritesLogger = logger;
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS, 
+                new ArrayBlockingQueue<Runnable>(queueSize),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("DualWritesSecondary-%d").build());
+        this.asyncLimit   = concurrency + queueSize;
+        this.asyncPermits = new Semaphore(asyncLimit);
+    }
+
+    @Override
+    public <R> Execution<R> wrapExecutions(final Execution<R> primary, final Execution<R> secondary, Collection<WriteMetadata> writeMetadata) {
+        
+        // The caller may keep adding to the collection once we return
+        final List<WriteMetadata> writes = ImmutableList.copyOf(writeMetadata);
+        
+        return new Execution<R>() {
+
+            @Override
+            public OperationResult<R> execute() throws ConnectionException {
+                OperationResult<R> result = primary.execute();
+                writeSecondary(secondary, writes);
+                return result;
+            }
+
+            @Override
+            public ListenableFuture<OperationResult<R>> executeAsync() throws ConnectionException {
+                // The secondary write is started before the caller sees the primary result, 
+                // but its completion is not part of the returned future
+                return Futures.transform(primary.executeAsync(), new Function<OperationResult<R>, OperationResult<R>>() {
+                    @Override
+                    public OperationResult<R> apply(OperationResult<R> result) {
+                        writeSecondaryAsync(secondary, writes);
+                        return result;
+                    }
+                });
+            }
+        };
+    }
+
+    private <R> void writeSecondaryAsync(Execution<R> secondary, final List<WriteMetadata> writes) {
+        if (shutdown || !asyncPermits.tryAcquire()) {
+            Logger.warn("Secondary writes are backed up, logging write as failed");
+            logFailedWrites(writes);
+            return;
+        }
+
+        ListenableFuture<OperationResult<R>> future;
+        try {
+            future = secondary.executeAsync();
+        } catch (Exception e) {
+            asyncPermits.release();
+            Logger.debug("Secondary write failed", e);
+            logFailedWrites(writes);
+            return;
+        }
+
+        Futures.addCallback(future, new FutureCallback<OperationResult<R>>() {
+            @Override
+            public void onSuccess(OperationResult<R> result) {
+                asyncPermits.release();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                asyncPermits.release();
+                Logger.debug("Secondary write failed", t);
+                logFailedWrites(writes);
+            }
+        });
+    }
+
+    private <R> void writeSecondary(final Execution<R> secondary, final List<WriteMetadata> writes) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        secondary.execute();
+                    } catch (Exception e) {
+                        Logger.debug("Secondary write failed", e);
+                        logFailedWrites(writes);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Logger.warn("Secondary writes are backed up, logging write as failed");
+            logFailedWrites(writes);
+        }
+    }
+
+    private void logFailedWrites(List<WriteMetadata> writes) {
+        if (failedWritesLogger != null) {
+            for (WriteMetadata writeMD : writes) {
+                failedWritesLogger.logFailedWrite(writeMD);
+            }
+        }
+    }
+
+    /**
+     * @return Number of secondary writes that are queued or in flight
+     */
+    public int getPendingWriteCount() {
+        return executor.getQueue().size() + executor.getActiveCount() + asyncLimit - asyncPermits.availablePermits();
+    }
+
+    /**
+     * Stop accepting secondary writes and wait for the queued ones to complete
+     * 
+     * @param timeout
+     * @param units
+     * @return True if all queued writes completed
+     * @throws InterruptedException
+     */
+    public boolean shutdown(long timeout, TimeUnit units) throws InterruptedException {
+        long deadline = System.nanoTime() + units.toNanos(timeout);
+        shutdown = true;
+        executor.shutdown();
+        if (!executor.awaitTermination(timeout, units))
+            return false;
+        if (!asyncPermits.tryAcquire(asyncLimit, deadline - System.nanoTime(), TimeUnit.NANOSECONDS))
+            return false;
+        asyncPermits.release(asyncLimit);
+        return true;
+    }
+
+    @Override
+    public FailedWritesLogger getFailedWritesLogger() {
+        return failedWritesLogger;
+    }
+}
@@ -0,0 +1,10 @@
+package com.netflix.astyanax.contrib.dualwrites;
+
+/**
+ * {@link DualWritesStrategy} that may still write the secondary execution after the wrapped execution returned, 
+ * such as {@link AsyncSecondaryWriteStrategy}.  The secondary execution given to such a strategy must not be 
+ * modified afterwards, so {@link DualWritesMutationBatch} gives it a copy of its secondary batch.  Strategies 
+ * that wrap such a strategy should implement this interface too.
+ */
+public interface DeferredSecondaryWriteStrategy extends DualWritesStrategy {
+}
@@ -136,6 +136,7 @@ public class DualWritesKeyspace implements Keyspace, DualWritesUpdateListener {
                                                pair.getDualKSMetadata(), 
                                                pair.getPrimaryKS().prepareMutationBatch(), 
                                                pair.getSecondaryKS().prepareMutationBatch(),
+                                               pair.getSecondaryKS(),
                                                executionStrategy);
 	    } else {
 	        return getPrimaryKS().prepareMutationBatch();
@@ -7,13 +7,17 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.netflix.astyanax.ColumnListMutation;
+import com.netflix.astyanax.Keyspace;
 import com.netflix.astyanax.MutationBatch;
 import com.netflix.astyanax.WriteAheadLog;
 import com.netflix.astyanax.connectionpool.Host;
 import com.netflix.astyanax.connectionpool.OperationResult;
 import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.connectionpool.exceptions.UnknownException;
 import com.netflix.astyanax.model.ColumnFamily;
 import com.netflix.astyanax.model.ConsistencyLevel;
 import com.netflix.astyanax.retry.RetryPolicy;
@@ -25,6 +29,11 @@ import com.netflix.astyanax.retry.RetryPolicy;
  * It also tracks state of what row keys are being added to what column families. This is useful for reporting data when the dual writes fail partially,
  * and hence that metadata can be communicated to some {@link FailedWritesLogger} to be dealt with accordingly. 
  * 
+ * When the secondary keyspace is known and the strategy writes the secondary after execute returns, as a 
+ * {@link DeferredSecondaryWriteStrategy} does, the strategy gets a copy of the secondary batch with the same mutations, 
+ * timestamps included, and settings.  Once the primary was written the secondary batch is discarded like the primary, 
+ * so that this batch can be reused right away without touching the secondary write. 
+ * 
  * @author poberai
  *
  * @param <C>
@@ -34,16 +43,38 @@ public class DualWritesMutationBatch implements MutationBatch {
     private final DualKeyspaceMetadata dualKeyspaceMetadata;
 	private final MutationBatch primary; 
 	private final MutationBatch secondary; 
+	private final Keyspace secondaryKeyspace;
 	private final DualWritesStrategy writeExecutionStrategy;
 	
+	// Settings given to the secondary batch, applied again to its copies
+	private ConsistencyLevel consistencyLevel;
+	private RetryPolicy retryPolicy;
+	private Host pinnedHost;
+	private Long timeout;
+	private Boolean atomicBatch;
+	private Boolean caching;
+	private Boolean tokenAwareSplitting;
 	
 	private final AtomicReference<List<WriteMetadata>> writeMetada = new AtomicReference<List<WriteMetadata>>(new ArrayList<WriteMetadata>());
 	
 	public DualWritesMutationBatch(DualKeyspaceMetadata dualKSMetadata, 
 	        MutationBatch primaryMB, MutationBatch secondaryMB, DualWritesStrategy strategy) {
+	    this(dualKSMetadata, primaryMB, secondaryMB, null, strategy);
+	}
+
+	/**
+	 * @param dualKSMetadata
+	 * @param primaryMB
+	 * @param secondaryMB
+	 * @param secondaryKS    Keyspace of the secondary batch, used to copy the batch for a deferred secondary write
+	 * @param strategy
+	 */
+	public DualWritesMutationBatch(DualKeyspaceMetadata dualKSMetadata, 
+	        MutationBatch primaryMB, MutationBatch secondaryMB, Keyspace secondaryKS, DualWritesStrategy strategy) {
 	    this.dualKeyspaceMetadata = dualKSMetadata;
 		this.primary = primaryMB;
 		this.secondary = secondaryMB;
+		this.secondaryKeyspace = secondaryKS;
 		this.writeExecutionStrategy = strategy;
 	}
 
@@ -57,12 +88,79 @@ public class DualWritesMutationBatch implements MutationBatch {
 	
 	@Override
 	public OperationResult<Void> execute() throws ConnectionException {
-	    return writeExecutionStrategy.wrapExecutions(primary, secondary, writeMetada.get()).execute();
+	    if (!isSecondaryDeferred()) {
+	        return writeExecutionStrategy.wrapExecutions(primary, secondary, writeMetada.get()).execute();
+	    }
+	    
+	    OperationResult<Void> result = writeExecutionStrategy.wrapExecutions(primary, copySecondary(), writeMetada.get()).execute();
+	    primaryWritten();
+	    return result;
 	}
 
 	@Override
 	public ListenableFuture<OperationResult<Void>> executeAsync() throws ConnectionException {
-        return writeExecutionStrategy.wrapExecutions(primary, secondary, writeMetada.get()).executeAsync();
+	    if (!isSecondaryDeferred()) {
+	        return writeExecutionStrategy.wrapExecutions(primary, secondary, writeMetada.get()).executeAsync();
+	    }
+	    
+	    ListenableFuture<OperationResult<Void>> future = writeExecutionStrategy.wrapExecutions(primary, copySecondary(), writeMetada.get()).executeAsync();
+	    return Futures.transform(future, new Function<OperationResult<Void>, OperationResult<Void>>() {
+	        @Override
+	        public OperationResult<Void> apply(OperationResult<Void> result) {
+	            primaryWritten();
+	            return result;
+	        }
+	    });
+	}
+	
+	/**
+	 * @return True if the strategy may write the secondary after the execution returned, in which case 
+	 *         it gets a copy of the secondary batch
+	 */
+	private boolean isSecondaryDeferred() {
+	    return secondaryKeyspace != null && writeExecutionStrategy instanceof DeferredSecondaryWriteStrategy;
+	}
+	
+	/**
+	 * @return Batch of the secondary keyspace with the mutations and settings of the secondary batch
+	 * @throws ConnectionException
+	 */
+	@SuppressWarnings("deprecation")
+	private MutationBatch copySecondary() throws ConnectionException {
+	    MutationBatch copy = secondaryKeyspace.prepareMutationBatch();
+	    if (!secondary.isEmpty()) {
+	        try {
+	            copy.deserialize(secondary.serialize());
+	        } catch (ConnectionException e) {
+	            throw e;
+	        } catch (Exception e) {
+	            throw new UnknownException(e);
+	        }
+	    }
+	    if (consistencyLevel != null)
+	        copy.setConsistencyLevel(consistencyLevel);
+	    if (retryPolicy != null)
+	        copy.withRetryPolicy(retryPolicy);
+	    if (pinnedHost != null)
+	        copy.pinToHost(pinnedHost);
+	    if (timeout != null)
+	        copy.setTimeout(timeout);
+	    if (atomicBatch != null)
+	        copy.withAtomicBatch(atomicBatch);
+	    if (caching != null)
+	        copy.withCaching(caching);
+	    if (tokenAwareSplitting != null)
+	        copy.withTokenAwareSplitting(tokenAwareSplitting);
+	    return copy;
+	}
+	
+	/**
+	 * The primary batch discards its mutations once written, the secondary was copied so it follows along 
+	 * and the rows written so far are not reported again by a later failure
+	 */
+	private void primaryWritten() {
+	    secondary.discardMutations();
+	    writeMetada.set(new ArrayList<WriteMetadata>());
 	}
 
 	@Override
@@ -116,6 +214,7 @@ public class DualWritesMutationBatch implements MutationBatch {
 
 	@Override
 	public MutationBatch pinToHost(Host host) {
+		pinnedHost = host;
 		primary.pinToHost(host);
 		secondary.pinToHost(host);
 		return this;
@@ -123,6 +222,7 @@ public class DualWritesMutationBatch implements MutationBatch {
 
 	@Override
 	public MutationBatch setConsistencyLevel(ConsistencyLevel consistencyLevel) {
+		this.consistencyLevel = consistencyLevel;
 		primary.setConsistencyLevel(consistencyLevel);
 		secondary.setConsistencyLevel(consistencyLevel);
 		return this;
@@ -130,6 +230,7 @@ public class DualWritesMutationBatch implements MutationBatch {
 
 	@Override
 	public MutationBatch withConsistencyLevel(ConsistencyLevel consistencyLevel) {
+		this.consistencyLevel = consistencyLevel;
 		primary.withConsistencyLevel(consistencyLevel);
 		secondary.withConsistencyLevel(consistencyLevel);
 		return this;
@@ -137,6 +238,7 @@ public class DualWritesMutationBatch implements MutationBatch {
 
 	@Override
 	public MutationBatch withRetryPolicy(RetryPolicy retry) {
+		retryPolicy = retry;
 		primary.withRetryPolicy(retry);
 		secondary.withRetryPolicy(retry);
 		return this;
@@ -158,6 +260,7 @@ public class DualWritesMutationBatch implements MutationBatch {
 	@SuppressWarnings("deprecation")
 	@Override
 	public MutationBatch setTimeout(long timeout) {
+		this.timeout = timeout;
 		primary.setTimeout(timeout);
 		secondary.setTimeout(timeout);
 		return this;
@@ -179,6 +282,7 @@ public class DualWritesMutationBatch implements MutationBatch {
 
 	@Override
 	public MutationBatch withAtomicBatch(boolean condition) {
+		atomicBatch = condition;
 		primary.withAtomicBatch(condition);
 		secondary.withAtomicBatch(condition);
 		return this;
@@ -199,10 +303,19 @@ public class DualWritesMutationBatch implements MutationBatch {
 
 	@Override
 	public MutationBatch withCaching(boolean condition) {
+		caching = condition;
 		primary.withCaching(condition);
 		secondary.withCaching(condition);
 		return this;
 	}
+
+	@Override
+	public MutationBatch withTokenAwareSplitting(boolean condition) {
+		tokenAwareSplitting = condition;
+		primary.withTokenAwareSplitting(condition);
+		secondary.withTokenAwareSplitting(condition);
+		return this;
+	}
 	
 	private static ByteBuffer clone(ByteBuffer original) {
 		ByteBuffer clone = ByteBuffer.allocate(original.capacity());
@@ -0,0 +1,360 @@
+package com.netflix.astyanax.contrib.dualwrites;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.apache.cassandra.thrift.Mutation;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.netflix.astyanax.Clock;
+import com.netflix.astyanax.Execution;
+import com.netflix.astyanax.Keyspace;
+import com.netflix.astyanax.MutationBatch;
+import com.netflix.astyanax.connectionpool.Host;
+import com.netflix.astyanax.connectionpool.OperationResult;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.connectionpool.exceptions.OperationException;
+import com.netflix.astyanax.connectionpool.impl.OperationResultImpl;
+import com.netflix.astyanax.model.ColumnFamily;
+import com.netflix.astyanax.model.ConsistencyLevel;
+import com.netflix.astyanax.retry.RunOnce;
+import com.netflix.astyanax.serializers.StringSerializer;
+import com.netflix.astyanax.thrift.AbstractThriftMutationBatchImpl;
+
+public class AsyncSecondaryWriteStrategyTest {
+
+    private static final DualKeyspaceMetadata KEYSPACES = new DualKeyspaceMetadata("c1", "ks1", "c2", "ks2");
+    private static final WriteMetadata        WRITE     = new WriteMetadata(KEYSPACES, "cf", "key");
+
+    private static class TestExecution implements Execution<Void> {
+        private final CountDownLatch started  = new CountDownLatch(1);
+        private final CountDownLatch release;
+        private final boolean        fail;
+
+        TestExecution(CountDownLatch release, boolean fail) {
+            this.release = release;
+            this.fail    = fail;
+        }
+
+        @Override
+        public OperationResult<Void> execute() throws ConnectionException {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (fail)
+                throw new OperationException("Failed");
+            return new OperationResultImpl<Void>(Host.NO_HOST, null, 0);
+        }
+
+        @Override
+        public ListenableFuture<OperationResult<Void>> executeAsync() throws ConnectionException {
+            return Futures.immediateFuture(execute());
+        }
+    }
+
+    private static final ColumnFamily<String, String> CF = ColumnFamily.newColumnFamily("cf", StringSerializer.get(), StringSerializer.get());
+
+    private static class ManualClock implements Clock {
+        volatile long now;
+
+        ManualClock(long now) {
+            this.now = now;
+        }
+
+        @Override
+        public long getCurrentTime() {
+            return now;
+        }
+    }
+
+    /**
+     * Thrift mutation batch that records the rows and column timestamps it writes and then discards its
+     * mutations, like the batches of a keyspace do
+     */
+    private static class TestBatch extends AbstractThriftMutationBatchImpl {
+        private final List<Long>   timestamps;
+        private final boolean      fail;
+        private final List<String> writtenRows = Collections.synchronizedList(Lists.<String>newArrayList());
+
+        TestBatch(Clock clock, List<Long> timestamps) {
+            this(clock, timestamps, false);
+        }
+
+        TestBatch(Clock clock, List<Long> timestamps, boolean fail) {
+            super(clock, ConsistencyLevel.CL_ONE, RunOnce.get());
+            this.timestamps = timestamps;
+            this.fail       = fail;
+        }
+
+        @Override
+        public OperationResult<Void> execute() throws ConnectionException {
+            if (fail)
+                throw new OperationException("Failed");
+            for (Map.Entry<ByteBuffer, Map<String, List<Mutation>>> row : getMutationMap().entrySet()) {
+                writtenRows.add(StringSerializer.get().fromByteBuffer(row.getKey().duplicate()));
+                for (List<Mutation> mutations : row.getValue().values()) {
+                    for (Mutation mutation : mutations) {
+                        if (timestamps != null)
+                            timestamps.add(mutation.getColumn_or_supercolumn().getColumn().getTimestamp());
+                    }
+                }
+            }
+            discardMutations();
+            return new OperationResultImpl<Void>(Host.NO_HOST, null, 0);
+        }
+
+        @Override
+        public ListenableFuture<OperationResult<Void>> executeAsync() throws ConnectionException {
+            return Futures.immediateFuture(execute());
+        }
+    }
+
+    /**
+     * Keyspace stub that only prepares mutation batches, which record the timestamps they write
+     */
+    private static class TestKeyspace implements InvocationHandler {
+        final List<TestBatch> batches    = Collections.synchronizedList(Lists.<TestBatch>newArrayList());
+        final List<Long>      timestamps = Collections.synchronizedList(Lists.<Long>newArrayList());
+        final Keyspace        keyspace   = (Keyspace) Proxy.newProxyInstance(Keyspace.class.getClassLoader(),
+                new Class<?>[] { Keyspace.class }, this);
+        private final Clock   clock;
+        volatile boolean      fail = false;
+
+        TestKeyspace(Clock clock) {
+            this.clock = clock;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            TestBatch batch = new TestBatch(clock, timestamps, fail);
+            batches.add(batch);
+            return batch;
+        }
+    }
+
+    private static class TestFailedWritesLogger implements FailedWritesLogger {
+        private final List<WriteMetadata> failed = Collections.synchronizedList(Lists.<WriteMetadata>newArrayList());
+
+        @Override
+        public void init() {
+        }
+
+        @Override
+        public void logFailedWrite(WriteMetadata failedWrite) {
+            failed.add(failedWrite);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+
+    @Test
+    public void testPrimaryDoesNotWaitForSecondary() throws Exception {
+        TestFailedWritesLogger logger = new TestFailedWritesLogger();
+        AsyncSecondaryWriteStrategy strategy = new AsyncSecondaryWriteStrategy(logger, 1, 10);
+
+        CountDownLatch release = new CountDownLatch(1);
+        TestExecution secondary = new TestExecution(release, false);
+        Execution<Void> execution = strategy.wrapExecutions(new TestExecution(new CountDownLatch(0), false),
+                secondary, Collections.singletonList(WRITE));
+
+        execution.execute();
+        Assert.assertTrue(secondary.started.await(1, TimeUnit.SECONDS));
+        Assert.assertEquals(1, strategy.getPendingWriteCount());
+
+        release.countDown();
+        Assert.assertTrue(strategy.shutdown(1, TimeUnit.SECONDS));
+        Assert.assertTrue(logger.failed.isEmpty());
+    }
+
+    @Test
+    public void testFailedSecondaryIsLogged() throws Exception {
+        TestFailedWritesLogger logger = new TestFailedWritesLogger();
+        AsyncSecondaryWriteStrategy strategy = new AsyncSecondaryWriteStrategy(logger, 1, 10);
+
+        Execution<Void> execution = strategy.wrapExecutions(new TestExecution(new CountDownLatch(0), false),
+                new TestExecution(new CountDownLatch(0), true), Collections.singletonList(WRITE));
+
+        execution.executeAsync().get();
+        Assert.assertTrue(strategy.shutdown(1, TimeUnit.SECONDS));
+        Assert.assertEquals(1, logger.failed.size());
+        Assert.assertEquals(WRITE, logger.failed.get(0));
+    }
+
+    @Test
+    public void testFullQueueIsLogged() throws Exception {
+        TestFailedWritesLogger logger = new TestFailedWritesLogger();
+        AsyncSecondaryWriteStrategy strategy = new AsyncSecondaryWriteStrategy(logger, 1, 1);
+
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done    = new CountDownLatch(0);
+
+        // One running, one queued, the third doesn't fit
+        TestExecution running = new TestExecution(release, false);
+        strategy.wrapExecutions(new TestExecution(done, false), running, Collections.singletonList(WRITE)).execute();
+        Assert.assertTrue(running.started.await(1, TimeUnit.SECONDS));
+        strategy.wrapExecutions(new TestExecution(done, false), new TestExecution(release, false), Collections.singletonList(WRITE)).execute();
+        strategy.wrapExecutions(new TestExecution(done, false), new TestExecution(release, false), Collections.singletonList(WRITE)).execute();
+
+        Assert.assertEquals(1, logger.failed.size());
+
+        release.countDown();
+        Assert.assertTrue(strategy.shutdown(1, TimeUnit.SECONDS));
+        Assert.assertEquals(1, logger.failed.size());
+    }
+
+    @Test
+    public void testAsyncSecondaryIsComposed() throws Exception {
+        TestFailedWritesLogger logger = new TestFailedWritesLogger();
+        AsyncSecondaryWriteStrategy strategy = new AsyncSecondaryWriteStrategy(logger, 1, 1);
+
+        final SettableFuture<OperationResult<Void>> secondaryResult = SettableFuture.create();
+        Execution<Void> secondary = new Execution<Void>() {
+            @Override
+            public OperationResult<Void> execute() throws ConnectionException {
+                throw new AssertionError("The secondary must not block a thread");
+            }
+
+            @Override
+            public ListenableFuture<OperationResult<Void>> executeAsync() throws ConnectionException {
+                return secondaryResult;
+            }
+        };
+
+        strategy.wrapExecutions(new TestExecution(new CountDownLatch(0), false), secondary, Collections.singletonList(WRITE))
+                .executeAsync().get();
+        Assert.assertEquals(1, strategy.getPendingWriteCount());
+
+        // Only concurrency + queue size writes can be in flight
+        strategy.wrapExecutions(new TestExecution(new CountDownLatch(0), false), secondary, Collections.singletonList(WRITE))
+                .executeAsync().get();
+        strategy.wrapExecutions(new TestExecution(new CountDownLatch(0), false), secondary, Collections.singletonList(WRITE))
+                .executeAsync().get();
+        Assert.assertEquals(2, strategy.getPendingWriteCount());
+        Assert.assertEquals(1, logger.failed.size());
+
+        Assert.assertFalse(strategy.shutdown(10, TimeUnit.MILLISECONDS));
+        secondaryResult.setException(new OperationException("Failed"));
+        Assert.assertTrue(strategy.shutdown(1, TimeUnit.SECONDS));
+        Assert.assertEquals(0, strategy.getPendingWriteCount());
+        Assert.assertEquals(3, logger.failed.size());
+    }
+
+    @Test
+    public void testBatchReusedAfterExecute() throws Exception {
+        TestFailedWritesLogger logger = new TestFailedWritesLogger();
+        AsyncSecondaryWriteStrategy strategy = new AsyncSecondaryWriteStrategy(logger, 1, 10);
+        ManualClock clock = new ManualClock(1000);
+        TestKeyspace secondaryKeyspace = new TestKeyspace(clock);
+
+        MutationBatch secondary = secondaryKeyspace.keyspace.prepareMutationBatch();
+        MutationBatch dual = new DualWritesMutationBatch(KEYSPACES, new TestBatch(clock, null),
+                secondary, secondaryKeyspace.keyspace, strategy);
+        dual.setConsistencyLevel(ConsistencyLevel.CL_QUORUM);
+        dual.withRow(CF, "a").putColumn("c", "v");
+        dual.execute();
+
+        // The next rows don't go to the batch that is written in the background
+        dual.withRow(CF, "b").putColumn("c", "v");
+        Assert.assertTrue(strategy.shutdown(1, TimeUnit.SECONDS));
+
+        Assert.assertEquals(2, secondaryKeyspace.batches.size());
+        TestBatch copy = secondaryKeyspace.batches.get(1);
+        Assert.assertEquals(Lists.newArrayList("a"), copy.writtenRows);
+        Assert.assertEquals(ConsistencyLevel.CL_QUORUM, copy.getConsistencyLevel());
+        Assert.assertEquals(1, secondary.getRowCount());
+        Assert.assertTrue(secondary.getRowKeys().containsKey(StringSerializer.get().toByteBuffer("b")));
+        Assert.assertTrue(logger.failed.isEmpty());
+    }
+
+    @Test
+    public void testOnlyRowsOfFailedWriteAreLogged() throws Exception {
+        TestFailedWritesLogger logger = new TestFailedWritesLogger();
+        AsyncSecondaryWriteStrategy strategy = new AsyncSecondaryWriteStrategy(logger, 1, 10);
+        ManualClock clock = new ManualClock(1000);
+        TestKeyspace secondaryKeyspace = new TestKeyspace(clock);
+
+        MutationBatch dual = new DualWritesMutationBatch(KEYSPACES, new TestBatch(clock, null),
+                secondaryKeyspace.keyspace.prepareMutationBatch(), secondaryKeyspace.keyspace, strategy);
+        dual.withRow(CF, "a").putColumn("c", "v");
+        dual.execute();
+
+        secondaryKeyspace.fail = true;
+        dual.withRow(CF, "b").putColumn("c", "v");
+        dual.execute();
+
+        Assert.assertTrue(strategy.shutdown(1, TimeUnit.SECONDS));
+        Assert.assertEquals(1, logger.failed.size());
+        Assert.assertEquals("b", logger.failed.get(0).getRowKey());
+    }
+
+    @Test
+    public void testSecondaryKeepsTimestamps() throws Exception {
+        AsyncSecondaryWriteStrategy strategy = new AsyncSecondaryWriteStrategy(new TestFailedWritesLogger(), 1, 10);
+        ManualClock clock = new ManualClock(1000);
+        TestKeyspace secondaryKeyspace = new TestKeyspace(clock);
+        List<Long> primaryTimestamps = Collections.synchronizedList(Lists.<Long>newArrayList());
+
+        MutationBatch dual = new DualWritesMutationBatch(KEYSPACES, new TestBatch(clock, primaryTimestamps),
+                secondaryKeyspace.keyspace.prepareMutationBatch(), secondaryKeyspace.keyspace, strategy);
+
+        dual.lockCurrentTimestamp();
+        clock.now = 2000;
+        dual.withRow(CF, "a").putColumn("c", "v");
+        dual.execute();
+
+        // Reused with the clock of the next write
+        clock.now = 3000;
+        dual.withRow(CF, "b").putColumn("c", "v");
+        dual.execute();
+
+        // And with an explicit timestamp
+        dual.setTimestamp(5000);
+        clock.now = 4000;
+        dual.withRow(CF, "c").putColumn("c", "v");
+        dual.executeAsync().get();
+
+        Assert.assertTrue(strategy.shutdown(1, TimeUnit.SECONDS));
+        Assert.assertEquals(Lists.newArrayList(1000L, 3000L, 5000L), primaryTimestamps);
+        // The secondary writes may complete in any order
+        Assert.assertEquals(Sets.newHashSet(primaryTimestamps), Sets.newHashSet(secondaryKeyspace.timestamps));
+        Assert.assertEquals(3, secondaryKeyspace.timestamps.size());
+    }
+
+    @Test
+    public void testFailedPrimarySkipsSecondary() throws Exception {
+        TestFailedWritesLogger logger = new TestFailedWritesLogger();
+        AsyncSecondaryWriteStrategy strategy = new AsyncSecondaryWriteStrategy(logger, 1, 10);
+
+        TestExecution secondary = new TestExecution(new CountDownLatch(0), false);
+        Execution<Void> execution = strategy.wrapExecutions(new TestExecution(new CountDownLatch(0), true),
+                secondary, Collections.singletonList(WRITE));
+        try {
+            execution.execute();
+            Assert.fail();
+        } catch (OperationException e) {
+        }
+
+        Assert.assertTrue(strategy.shutdown(1, TimeUnit.SECONDS));
+        Assert.assertEquals(1, secondary.started.getCount());
+        Assert.assertTrue(logger.failed.isEmpty());
+    }
+}
@@ -33,6 +33,36 @@ public interface BadHostDetector {
         boolean addTimeoutSample();
     }
 
+    /**
+     * Instance that is also told about connection errors, successful operations and
+     * latencies.  The pool only reports samples other than timeouts to instances that
+     * implement this interface.
+     */
+    public interface SamplingInstance extends Instance {
+        /**
+         * Add a sample for an operation that failed because of the connection
+         * to the host, such as a transport error, and return true if the host
+         * should be quarantined
+         * 
+         * @return true to quarantine or false to continue using this host
+         */
+        boolean addErrorSample();
+
+        /**
+         * Add a sample for an operation that reached the host and completed
+         */
+        void addSuccessSample();
+
+        /**
+         * Add the latency of an operation and return true if the host should be
+         * quarantined because it is much slower than the other hosts
+         * 
+         * @param latency   In nanoseconds
+         * @return true to quarantine or false to continue using this host
+         */
+        boolean addLatencySample(long latency);
+    }
+
     Instance createInstance();
 
     void removeInstance(Instance instance);
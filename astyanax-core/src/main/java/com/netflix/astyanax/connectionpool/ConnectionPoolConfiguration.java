@@ -20,6 +20,7 @@ import java.util.concurrent.ScheduledExecutorService;
 
 import com.netflix.astyanax.AuthenticationCredentials;
 import com.netflix.astyanax.connectionpool.impl.HostSelectorStrategy;
+import com.netflix.astyanax.connectionpool.impl.IdleConnectionQueueType;
 import com.netflix.astyanax.partitioner.Partitioner;
 
 public interface ConnectionPoolConfiguration {
@@ -87,6 +88,32 @@ public interface ConnectionPoolConfiguration {
      */
     HostSelectorStrategy getHostSelectorStrategy();
 
+    /**
+     * @return Return the structure used to hold idle connections in each host's pool.
+     *
+     * @see com.netflix.astyanax.connectionpool.impl.IdleConnectionQueueType
+     */
+    IdleConnectionQueueType getIdleConnectionQueueType();
+
+    /**
+     * @return Percentile (0-100) of a host's recent latency after which a read is speculatively
+     * sent to another host as well.  The first response wins.  0 disables speculative reads.
+     *
+     * @see com.netflix.astyanax.connectionpool.IdempotentOperation
+     */
+    float getSpeculativeReadPercentile();
+
+    /**
+     * @return Maximum number of speculative reads as a ratio of all reads, so that a slow
+     * cluster isn't hit with twice the load
+     */
+    float getMaxSpeculativeReadRatio();
+
+    /**
+     * @return Minimum time in msec before a read is sent speculatively
+     */
+    int getMinSpeculativeReadDelay();
+
     /**
      * @return List of comma delimited host:port combinations. If port is not provided
      * then getPort() will be used by default. This list must contain at least
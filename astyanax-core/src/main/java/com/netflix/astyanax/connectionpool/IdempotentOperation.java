@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.connectionpool;
+
+/**
+ * Marker for an operation that has no side effects and may therefore be executed
+ * on more than one host at the same time, such as a read.  The connection pool may 
+ * send such an operation speculatively to a second host when the first host is slow.
+ * 
+ * @see ConnectionPoolConfiguration#getSpeculativeReadPercentile()
+ * 
+ * @param <CL>
+ * @param <R>
+ */
+public interface IdempotentOperation<CL, R> extends Operation<CL, R> {
+}
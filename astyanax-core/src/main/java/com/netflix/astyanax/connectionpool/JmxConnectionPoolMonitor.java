@@ -1,9 +1,14 @@
 package com.netflix.astyanax.connectionpool;
 
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.commons.lang.StringUtils;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
+import com.netflix.astyanax.connectionpool.impl.HistogramConnectionPoolMonitor;
+import com.netflix.astyanax.connectionpool.impl.LatencyHistogram.Snapshot;
 
 /**
  * MBean monitoring for a connection pool
@@ -12,12 +17,18 @@ import com.google.common.collect.Lists;
  * 
  */
 public class JmxConnectionPoolMonitor implements JmxConnectionPoolMonitorMBean {
-    private final ConnectionPool<?> pool;
+    private final ConnectionPool<?>     pool;
+    private final ConnectionPoolMonitor monitor;
 
     private final static int DEFAULT_PORT = 7102;
 
     public JmxConnectionPoolMonitor(ConnectionPool<?> pool) {
-        this.pool = pool;
+        this(pool, null);
+    }
+
+    public JmxConnectionPoolMonitor(ConnectionPool<?> pool, ConnectionPoolMonitor monitor) {
+        this.pool    = pool;
+        this.monitor = monitor;
     }
 
     @Override
@@ -49,4 +60,39 @@ public class JmxConnectionPoolMonitor implements JmxConnectionPoolMonitorMBean {
             }
         }), ",");
     }
+
+    @Override
+    public String getLatencySummary() {
+        if (!(monitor instanceof HistogramConnectionPoolMonitor))
+            return "";
+        return ((HistogramConnectionPoolMonitor) monitor).getLatencySummary();
+    }
+
+    @Override
+    public long getHostLatencyPercentile(String host, double percentile) {
+        if (!(monitor instanceof HistogramConnectionPoolMonitor))
+            return -1;
+
+        for (Entry<Host, Snapshot> entry : ((HistogramConnectionPoolMonitor) monitor).getHostLatencySnapshots().entrySet()) {
+            Host h = entry.getKey();
+            if (host.equals(h.getName()) || host.equals(h.getHostName()) || host.equals(h.getIpAddress()))
+                return toMicros(entry.getValue().getPercentile(percentile));
+        }
+        return -1;
+    }
+
+    @Override
+    public long getOperationLatencyPercentile(String operationType, double percentile) {
+        if (!(monitor instanceof HistogramConnectionPoolMonitor))
+            return -1;
+
+        Snapshot snapshot = ((HistogramConnectionPoolMonitor) monitor).getOperationLatencySnapshots().get(operationType);
+        if (snapshot == null)
+            return -1;
+        return toMicros(snapshot.getPercentile(percentile));
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.MICROSECONDS.convert(nanos, TimeUnit.NANOSECONDS);
+    }
 }
@@ -10,4 +10,20 @@ public interface JmxConnectionPoolMonitorMBean {
     boolean hasHost(String host);
 
     String getActiveHosts();
+
+    /**
+     * @return Latency percentiles in microseconds for each host and operation type, if the pool
+     *         uses a {@link com.netflix.astyanax.connectionpool.impl.HistogramConnectionPoolMonitor}
+     */
+    String getLatencySummary();
+
+    /**
+     * @return Latency at the percentile (0 to 100) in microseconds, or -1 if there is none for the host
+     */
+    long getHostLatencyPercentile(String host, double percentile);
+
+    /**
+     * @return Latency at the percentile (0 to 100) in microseconds, or -1 if there is none for the operation type
+     */
+    long getOperationLatencyPercentile(String operationType, double percentile);
 }
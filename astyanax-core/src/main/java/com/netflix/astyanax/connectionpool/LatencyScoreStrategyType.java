@@ -1,5 +1,5 @@
 package com.netflix.astyanax.connectionpool;
 
 public enum LatencyScoreStrategyType {
-    NONE, SMA, EMA
+    NONE, SMA, EMA, PERCENTILE
 }
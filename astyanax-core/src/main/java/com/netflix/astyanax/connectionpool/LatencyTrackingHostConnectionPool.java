@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.connectionpool;
+
+/**
+ * Host connection pool that keeps statistics of the latencies added with
+ * {@link #addLatencySample(long, long)}.  Host selection by load and speculative reads only
+ * use the latency of pools that implement this interface.
+ * 
+ * @param <CL>
+ */
+public interface LatencyTrackingHostConnectionPool<CL> extends HostConnectionPool<CL> {
+    /**
+     * @return Exponentially weighted moving average of the operation latency on this
+     * host in nanos, or 0 if no samples were added yet.  Unlike {@link #getScore()} this
+     * is tracked regardless of the configured latency score strategy.
+     */
+    long getLatencyEwma();
+
+    /**
+     * @param percentile 0 to 100
+     * @return Latency in nanos at the percentile of the most recent operations on this
+     * host, or 0 if no samples were added yet
+     */
+    long getLatencyPercentile(double percentile);
+}
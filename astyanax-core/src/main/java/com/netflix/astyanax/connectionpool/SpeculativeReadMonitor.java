@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.connectionpool;
+
+/**
+ * Monitor that also counts speculative reads.  The connection pool only reports speculative
+ * reads to monitors that implement this interface.
+ * 
+ * @see ConnectionPoolConfiguration#getSpeculativeReadPercentile()
+ */
+public interface SpeculativeReadMonitor extends ConnectionPoolMonitor {
+    /**
+     * A read took longer than expected and was sent speculatively to another host
+     * 
+     * @param host  Host the speculative read was sent to
+     */
+    void incSpeculativeRead(Host host);
+
+    long getSpeculativeReadCount();
+
+    /**
+     * A speculative read answered before the original read
+     * 
+     * @param host  Host that answered
+     */
+    void incSpeculativeReadWon(Host host);
+
+    long getSpeculativeReadWonCount();
+}
@@ -57,6 +57,7 @@ public abstract class AbstractExecuteWithFailoverImpl<CL, R> implements ExecuteW
     private int attemptCounter = 0;
     private final ConnectionPoolMonitor monitor;
     protected final ConnectionPoolConfiguration config;
+    private SpeculativeExecution<CL, R> speculativeExecution;
     
     /**
      * Public constructor
@@ -113,15 +114,26 @@ public abstract class AbstractExecuteWithFailoverImpl<CL, R> implements ExecuteW
         while (true) {
             attemptCounter++;
             
+            // Only the first attempt is raced by a speculative read
+            SpeculativeExecution<CL, R> speculative = speculativeExecution;
+            speculativeExecution = null;
             try {
+                if (filteredOperation instanceof AbstractOperationFilter)
+                    ((AbstractOperationFilter<CL, R>) filteredOperation).beforeBorrow();
                 connection = borrowConnection(filteredOperation);
+                if (speculative != null)
+                    speculative.start(connection, filteredOperation);
                 startTime = System.currentTimeMillis();
                 OperationResult<R> result = connection.execute(filteredOperation);
+                if (speculative != null && !speculative.firstAttemptDone(false))
+                    return speculativeResult(speculative);
                 result.setAttemptsCount(attemptCounter);
                 monitor.incOperationSuccess(getCurrentHost(), result.getLatency());
                 return result;
             }
             catch (Exception e) {
+                if (speculative != null && !speculative.firstAttemptDone(true))
+                    return speculativeResult(speculative);
                 ConnectionException ce = (e instanceof ConnectionException) ? (ConnectionException) e
                         : new UnknownException(e);
             	try {
@@ -145,6 +157,32 @@ public abstract class AbstractExecuteWithFailoverImpl<CL, R> implements ExecuteW
 	        connection = null;
 	    }
 	}
+
+    /**
+     * Close the current connection instead of returning it to the pool, e.g. because
+     * it was aborted by a speculative read
+     */
+    protected void discardConnection() {
+        if (connection != null) {
+            connection.getHostConnectionPool().closeConnection(connection);
+            connection = null;
+        }
+    }
+
+    /**
+     * Race the first attempt against a speculative read on another host
+     * @param speculativeExecution
+     */
+    void setSpeculativeExecution(SpeculativeExecution<CL, R> speculativeExecution) {
+        this.speculativeExecution = speculativeExecution;
+    }
+
+    private OperationResult<R> speculativeResult(SpeculativeExecution<CL, R> speculative) {
+        discardConnection();
+        OperationResult<R> result = speculative.getResult();
+        result.setAttemptsCount(attemptCounter + 1);
+        return result;
+    }
     
     private void informException(ConnectionException connectionException) throws ConnectionException {
         connectionException
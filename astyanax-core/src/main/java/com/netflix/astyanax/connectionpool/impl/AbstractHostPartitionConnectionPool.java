@@ -22,12 +22,20 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.cliffc.high_scale_lib.NonBlockingHashMap;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.netflix.astyanax.connectionpool.ConnectionFactory;
 import com.netflix.astyanax.connectionpool.ConnectionPool;
 import com.netflix.astyanax.connectionpool.ConnectionPoolConfiguration;
@@ -35,6 +43,7 @@ import com.netflix.astyanax.connectionpool.ConnectionPoolMonitor;
 import com.netflix.astyanax.connectionpool.ExecuteWithFailover;
 import com.netflix.astyanax.connectionpool.Host;
 import com.netflix.astyanax.connectionpool.HostConnectionPool;
+import com.netflix.astyanax.connectionpool.IdempotentOperation;
 import com.netflix.astyanax.connectionpool.LatencyScoreStrategy.Listener;
 import com.netflix.astyanax.connectionpool.Operation;
 import com.netflix.astyanax.connectionpool.OperationResult;
@@ -87,6 +96,16 @@ public abstract class AbstractHostPartitionConnectionPool<CL> implements Connect
     protected final Topology<CL>                                     topology;
     protected final Partitioner                                      partitioner;
 
+    /**
+     * Speculative reads earn credits at the configured ratio of reads and each one costs SPECULATIVE_READ_COST
+     */
+    private static final long SPECULATIVE_READ_COST        = 1000;
+    private static final long MAX_SPECULATIVE_READ_CREDITS = 10 * SPECULATIVE_READ_COST;
+
+    private final AtomicLong                 speculativeReadCredits = new AtomicLong(MAX_SPECULATIVE_READ_CREDITS);
+    private ScheduledExecutorService         speculativeReadTimer;
+    private ExecutorService                  speculativeReadExecutor;
+
     /**
      * @param config
      * @param factory
@@ -107,7 +126,7 @@ public abstract class AbstractHostPartitionConnectionPool<CL> implements Connect
      */
     @Override
     public void start() {
-        ConnectionPoolMBeanManager.getInstance().registerMonitor(config.getName(), this);
+        ConnectionPoolMBeanManager.getInstance().registerMonitor(config.getName(), this, monitor);
 
         String seeds = config.getSeeds();
         if (seeds != null && !seeds.isEmpty()) {
@@ -140,6 +159,13 @@ public abstract class AbstractHostPartitionConnectionPool<CL> implements Connect
 
         config.getLatencyScoreStrategy().shutdown();
         config.shutdown();
+
+        synchronized (this) {
+            if (speculativeReadTimer != null)
+                speculativeReadTimer.shutdownNow();
+            if (speculativeReadExecutor != null)
+                speculativeReadExecutor.shutdownNow();
+        }
     }
 
     protected HostConnectionPool<CL> newHostConnectionPool(Host host, ConnectionFactory<CL> factory,
@@ -335,7 +361,12 @@ public abstract class AbstractHostPartitionConnectionPool<CL> implements Connect
         ConnectionException lastException = null;
         do {
             try {
-                OperationResult<R> result = newExecuteWithFailover(op).tryOperation(op);
+                ExecuteWithFailover<CL, R> executeWithFailover = newExecuteWithFailover(op);
+                if (isSpeculativeRead(op) && executeWithFailover instanceof AbstractExecuteWithFailoverImpl) {
+                    ((AbstractExecuteWithFailoverImpl<CL, R>) executeWithFailover)
+                        .setSpeculativeExecution(new SpeculativeExecution<CL, R>(this, config, op));
+                }
+                OperationResult<R> result = executeWithFailover.tryOperation(op);
                 retry.success();
                 return result;
             }
@@ -362,6 +393,72 @@ public abstract class AbstractHostPartitionConnectionPool<CL> implements Connect
     protected abstract <R> ExecuteWithFailover<CL, R> newExecuteWithFailover(Operation<CL, R> op)
             throws ConnectionException;
 
+    /**
+     * Reads earn credits for speculative reads, which are only scheduled while there are credits left
+     * @param op
+     * @return True if the operation should be raced against a speculative read
+     */
+    private boolean isSpeculativeRead(Operation<?, ?> op) {
+        if (config.getSpeculativeReadPercentile() <= 0 || !(op instanceof IdempotentOperation) || op.getPinnedHost() != null)
+            return false;
+
+        long earned = (long)(config.getMaxSpeculativeReadRatio() * SPECULATIVE_READ_COST);
+        while (true) {
+            long credits = speculativeReadCredits.get();
+            if (credits >= MAX_SPECULATIVE_READ_CREDITS)
+                return true;
+            long topped = Math.min(credits + earned, MAX_SPECULATIVE_READ_CREDITS);
+            if (speculativeReadCredits.compareAndSet(credits, topped))
+                return topped >= SPECULATIVE_READ_COST;
+        }
+    }
+
+    /**
+     * Take the credit for a single speculative read
+     * @return False if the budget for speculative reads is used up
+     */
+    boolean acquireSpeculativeRead() {
+        while (true) {
+            long credits = speculativeReadCredits.get();
+            if (credits < SPECULATIVE_READ_COST)
+                return false;
+            if (speculativeReadCredits.compareAndSet(credits, credits - SPECULATIVE_READ_COST))
+                return true;
+        }
+    }
+
+    /**
+     * @return Single thread on which speculative reads are scheduled, created on first use.  It only hands
+     *         the reads to {@link #getSpeculativeReadExecutor()} so a slow read never delays another timer.
+     */
+    synchronized ScheduledExecutorService getSpeculativeReadTimer() {
+        if (speculativeReadTimer == null) {
+            speculativeReadTimer = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setDaemon(true)
+                        .setNameFormat("AstyanaxSpeculativeReadTimer-%d")
+                        .build());
+        }
+        return speculativeReadTimer;
+    }
+
+    /**
+     * @return Executor on which speculative reads run, created on first use.  It has a bounded number of threads
+     *         and no queue, a speculative read that finds all threads busy is dropped instead of starting late.
+     */
+    synchronized ExecutorService getSpeculativeReadExecutor() {
+        if (speculativeReadExecutor == null) {
+            int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(),
+                    new ThreadFactoryBuilder().setDaemon(true)
+                        .setNameFormat("AstyanaxSpeculativeRead-%d")
+                        .build());
+            executor.allowCoreThreadTimeOut(true);
+            speculativeReadExecutor = executor;
+        }
+        return speculativeReadExecutor;
+    }
+
     /**
      * Called every time a host is added, removed or is marked as down
      */
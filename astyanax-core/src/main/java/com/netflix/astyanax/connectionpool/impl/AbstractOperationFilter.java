@@ -29,6 +29,18 @@ public class AbstractOperationFilter<CL, R> implements Operation<CL, R>{
     public R execute(CL client, ConnectionContext state) throws ConnectionException {
         return next.execute(client, state);
     }
+
+    /**
+     * Called before each attempt borrows a connection for the operation.  Filters that may block, such as a rate
+     * limiter, should do so here rather than in {@link #execute} so that they don't hold on to a connection while
+     * waiting.  Filters further down the chain are called as long as they extend AbstractOperationFilter.
+     *
+     * @throws ConnectionException to fail the attempt without borrowing a connection
+     */
+    public void beforeBorrow() throws ConnectionException {
+        if (next instanceof AbstractOperationFilter)
+            ((AbstractOperationFilter<CL, R>) next).beforeBorrow();
+    }
     
     @Override
     public ByteBuffer getRowKey() {
@@ -24,7 +24,8 @@ import com.netflix.astyanax.connectionpool.exceptions.PoolTimeoutException;
  * Connection pool which puts all connections in a single queue. The load
  * balancing is essentially random here. <br/>
  * 
- * The class consults {@link Topology} for all the pools and then selects a pool at random using {@link #randomIndex}
+ * The class consults {@link Topology} for all the pools and then selects a pool at random using {@link #randomIndex},
+ * or the less loaded of two random pools with {@link HostSelectorStrategy#POWER_OF_TWO_CHOICES}, when a new connection is needed.
  * For {@link #executeWithFailover(Operation, com.netflix.astyanax.retry.RetryPolicy)} it just fails over to the next pool in the list of pools 
  * starting at the random index. 
  * 
@@ -88,7 +89,11 @@ public class BagOfConnectionsConnectionPoolImpl<CL> extends AbstractHostPartitio
                 // be created
                 List<HostConnectionPool<CL>> pools = topology.getAllPools().getPools();
                 if (pools != null && pools.size() > 0) {
-                    int index = randomIndex.nextInt(pools.size());
+                    int index;
+                    if (config.getHostSelectorStrategy() == HostSelectorStrategy.POWER_OF_TWO_CHOICES)
+                        index = PowerOfTwoChoicesExecuteWithFailover.selectPool(pools, randomIndex.nextInt(), randomIndex.nextInt(), -1);
+                    else
+                        index = randomIndex.nextInt(pools.size());
                     for (int i = 0; i < pools.size(); ++i, ++index) {
                         HostConnectionPool<CL> pool = pools.get(index % pools.size());
                         try {
@@ -182,6 +187,14 @@ public class BagOfConnectionsConnectionPoolImpl<CL> extends AbstractHostPartitio
             BagOfConnectionsConnectionPoolImpl.this.returnConnection(connection);
             connection = null;
         }
+
+        @Override
+        protected void discardConnection() {
+            if (connection != null) {
+                BagOfConnectionsConnectionPoolImpl.this.closeConnection(connection);
+                connection = null;
+            }
+        }
     }
 
     @Override
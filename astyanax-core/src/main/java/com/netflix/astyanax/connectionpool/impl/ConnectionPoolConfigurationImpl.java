@@ -22,6 +22,8 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 
 import org.apache.commons.lang.builder.ToStringBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
@@ -30,6 +32,7 @@ import com.netflix.astyanax.connectionpool.BadHostDetector;
 import com.netflix.astyanax.connectionpool.ConnectionPoolConfiguration;
 import com.netflix.astyanax.connectionpool.Host;
 import com.netflix.astyanax.connectionpool.LatencyScoreStrategy;
+import com.netflix.astyanax.connectionpool.LatencyScoreStrategyType;
 import com.netflix.astyanax.connectionpool.OperationFilterFactory;
 import com.netflix.astyanax.connectionpool.RetryBackoffStrategy;
 import com.netflix.astyanax.connectionpool.SSLConnectionContext;
@@ -45,6 +48,8 @@ import com.netflix.astyanax.shallows.EmptyOperationFilterFactory;
  * @author elandau
  */
 public class ConnectionPoolConfigurationImpl implements ConnectionPoolConfiguration {
+    private static final Logger LOG = LoggerFactory.getLogger(ConnectionPoolConfigurationImpl.class);
+
     /**
      * Default values
      */
@@ -73,6 +78,9 @@ public class ConnectionPoolConfigurationImpl implements ConnectionPoolConfigurat
     public static final int DEFAULT_MAX_OPERATIONS_PER_CONNECTION = 10000;
     public static final float DEFAULT_MIN_HOST_IN_POOL_RATIO = 0.65f;
     public static final int DEFAULT_BLOCKED_THREAD_THRESHOLD = 10;
+    public static final float DEFAULT_SPECULATIVE_READ_PERCENTILE = 0;
+    public static final float DEFAULT_MAX_SPECULATIVE_READ_RATIO = 0.05f;
+    public static final int DEFAULT_MIN_SPECULATIVE_READ_DELAY = 5;
     public static final BadHostDetector DEFAULT_BAD_HOST_DETECTOR = EmptyBadHostDetectorImpl.getInstance();
 //    public static final Partitioner DEFAULT_PARTITIONER = BigInteger127Partitioner.get();
     private static final int DEFAULT_RECONNECT_THREAD_COUNT = 5;
@@ -107,11 +115,17 @@ public class ConnectionPoolConfigurationImpl implements ConnectionPoolConfigurat
     private int maxTimeoutWhenExhausted          = DEFAULT_MAX_TIME_WHEN_EXHAUSTED;
     private float minHostInPoolRatio             = DEFAULT_MIN_HOST_IN_POOL_RATIO;
     private int blockedThreadThreshold           = DEFAULT_BLOCKED_THREAD_THRESHOLD;
+    private float speculativeReadPercentile      = DEFAULT_SPECULATIVE_READ_PERCENTILE;
+    private float maxSpeculativeReadRatio        = DEFAULT_MAX_SPECULATIVE_READ_RATIO;
+    private int minSpeculativeReadDelay          = DEFAULT_MIN_SPECULATIVE_READ_DELAY;
 
     private String seeds = null;
     private RetryBackoffStrategy hostRetryBackoffStrategy = null;
     private HostSelectorStrategy hostSelectorStrategy     = HostSelectorStrategy.ROUND_ROBIN;
-    private LatencyScoreStrategy latencyScoreStrategy     = new EmptyLatencyScoreStrategyImpl();
+    private IdleConnectionQueueType idleConnectionQueueType = IdleConnectionQueueType.LINKED_QUEUE;
+    private volatile LatencyScoreStrategy latencyScoreStrategy = null;
+    private boolean latencyScoreStrategyFromType          = false;
+    private LatencyScoreStrategyType latencyScoreStrategyType = LatencyScoreStrategyType.NONE;
     private BadHostDetector badHostDetector               = DEFAULT_BAD_HOST_DETECTOR;
     private AuthenticationCredentials credentials         = null;
     private OperationFilterFactory filterFactory          = EmptyOperationFilterFactory.getInstance();
@@ -326,6 +340,46 @@ public class ConnectionPoolConfigurationImpl implements ConnectionPoolConfigurat
         return this;
     }
 
+    @Override
+    public IdleConnectionQueueType getIdleConnectionQueueType() {
+        return this.idleConnectionQueueType;
+    }
+
+    public ConnectionPoolConfigurationImpl setIdleConnectionQueueType(IdleConnectionQueueType idleConnectionQueueType) {
+        this.idleConnectionQueueType = idleConnectionQueueType;
+        return this;
+    }
+
+    @Override
+    public float getSpeculativeReadPercentile() {
+        return this.speculativeReadPercentile;
+    }
+
+    public ConnectionPoolConfigurationImpl setSpeculativeReadPercentile(float speculativeReadPercentile) {
+        this.speculativeReadPercentile = speculativeReadPercentile;
+        return this;
+    }
+
+    @Override
+    public float getMaxSpeculativeReadRatio() {
+        return this.maxSpeculativeReadRatio;
+    }
+
+    public ConnectionPoolConfigurationImpl setMaxSpeculativeReadRatio(float maxSpeculativeReadRatio) {
+        this.maxSpeculativeReadRatio = maxSpeculativeReadRatio;
+        return this;
+    }
+
+    @Override
+    public int getMinSpeculativeReadDelay() {
+        return this.minSpeculativeReadDelay;
+    }
+
+    public ConnectionPoolConfigurationImpl setMinSpeculativeReadDelay(int minSpeculativeReadDelay) {
+        this.minSpeculativeReadDelay = minSpeculativeReadDelay;
+        return this;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -372,6 +426,7 @@ public class ConnectionPoolConfigurationImpl implements ConnectionPoolConfigurat
 
     public ConnectionPoolConfigurationImpl setLatencyAwareWindowSize(int latencyAwareWindowSize) {
         this.latencyAwareWindowSize = latencyAwareWindowSize;
+        latencyAwareSettingChanged();
         return this;
     }
 
@@ -392,6 +447,7 @@ public class ConnectionPoolConfigurationImpl implements ConnectionPoolConfigurat
 
     public ConnectionPoolConfigurationImpl setLatencyAwareBadnessThreshold(float threshold) {
         this.latencyAwareBadnessThreshold = threshold;
+        latencyAwareSettingChanged();
         return this;
     }
 
@@ -462,6 +518,7 @@ public class ConnectionPoolConfigurationImpl implements ConnectionPoolConfigurat
 
     public ConnectionPoolConfigurationImpl setLatencyAwareUpdateInterval(int latencyAwareUpdateInterval) {
         this.latencyAwareUpdateInterval = latencyAwareUpdateInterval;
+        latencyAwareSettingChanged();
         return this;
     }
 
@@ -472,6 +529,7 @@ public class ConnectionPoolConfigurationImpl implements ConnectionPoolConfigurat
 
     public ConnectionPoolConfigurationImpl setLatencyAwareResetInterval(int latencyAwareResetInterval) {
         this.latencyAwareResetInterval = latencyAwareResetInterval;
+        latencyAwareSettingChanged();
         return this;
     }
 
@@ -495,16 +553,74 @@ public class ConnectionPoolConfigurationImpl implements ConnectionPoolConfigurat
         return this;
     }
 
+    /**
+     * The strategy set with {@link #setLatencyScoreStrategy(LatencyScoreStrategy)} or, if none was set, one of
+     * the type set with {@link #setLatencyScoreStrategyType(LatencyScoreStrategyType)} that is created on first
+     * use from the latency aware settings.  Latency aware settings changed after that don't apply to it.
+     */
     @Override
     public LatencyScoreStrategy getLatencyScoreStrategy() {
-        return this.latencyScoreStrategy;
+        LatencyScoreStrategy strategy = this.latencyScoreStrategy;
+        if (strategy != null)
+            return strategy;
+
+        // The configuration is shared by all host pools, which must all get the same strategy
+        synchronized (this) {
+            if (this.latencyScoreStrategy == null) {
+                this.latencyScoreStrategy = newLatencyScoreStrategy(latencyScoreStrategyType);
+                this.latencyScoreStrategyFromType = true;
+            }
+            return this.latencyScoreStrategy;
+        }
     }
 
-    public ConnectionPoolConfigurationImpl setLatencyScoreStrategy(LatencyScoreStrategy latencyScoreStrategy) {
+    public synchronized ConnectionPoolConfigurationImpl setLatencyScoreStrategy(LatencyScoreStrategy latencyScoreStrategy) {
         this.latencyScoreStrategy = latencyScoreStrategy;
+        this.latencyScoreStrategyFromType = false;
+        return this;
+    }
+
+    public LatencyScoreStrategyType getLatencyScoreStrategyType() {
+        return this.latencyScoreStrategyType;
+    }
+
+    /**
+     * Use a latency score strategy of this type, configured with the window size, badness threshold, update
+     * interval and reset interval of this configuration.  Replaces a strategy set earlier.
+     */
+    public synchronized ConnectionPoolConfigurationImpl setLatencyScoreStrategyType(LatencyScoreStrategyType latencyScoreStrategyType) {
+        this.latencyScoreStrategyType = latencyScoreStrategyType;
+        this.latencyScoreStrategy = null;
+        this.latencyScoreStrategyFromType = false;
         return this;
     }
 
+    /**
+     * The strategy created from the type has its settings already, a connection pool may be using it
+     */
+    private synchronized void latencyAwareSettingChanged() {
+        if (latencyScoreStrategyFromType) {
+            LOG.warn("Latency aware setting changed after the latency score strategy was created, it only applies "
+                   + "to a strategy created by calling setLatencyScoreStrategyType again before the pool starts");
+        }
+    }
+
+    private LatencyScoreStrategy newLatencyScoreStrategy(LatencyScoreStrategyType type) {
+        switch (type) {
+        case SMA:
+            return new SmaLatencyScoreStrategyImpl(latencyAwareUpdateInterval, latencyAwareResetInterval,
+                    latencyAwareWindowSize, latencyAwareBadnessThreshold);
+        case EMA:
+            return new EmaLatencyScoreStrategyImpl(latencyAwareUpdateInterval, latencyAwareResetInterval,
+                    latencyAwareWindowSize);
+        case PERCENTILE:
+            return new PercentileLatencyScoreStrategyImpl(latencyAwareUpdateInterval, latencyAwareResetInterval,
+                    latencyAwareWindowSize);
+        default:
+            return new EmptyLatencyScoreStrategyImpl();
+        }
+    }
+
     @Override
     public BadHostDetector getBadHostDetector() {
         return badHostDetector;
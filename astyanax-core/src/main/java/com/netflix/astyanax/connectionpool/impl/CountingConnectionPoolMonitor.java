@@ -1,8 +1,8 @@
 package com.netflix.astyanax.connectionpool.impl;
 
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicLong;
 
+import org.cliffc.high_scale_lib.Counter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -10,6 +10,7 @@ import com.netflix.astyanax.connectionpool.ConnectionPoolMonitor;
 import com.netflix.astyanax.connectionpool.Host;
 import com.netflix.astyanax.connectionpool.HostConnectionPool;
 import com.netflix.astyanax.connectionpool.HostStats;
+import com.netflix.astyanax.connectionpool.SpeculativeReadMonitor;
 import com.netflix.astyanax.connectionpool.exceptions.PoolTimeoutException;
 import com.netflix.astyanax.connectionpool.exceptions.TimeoutException;
 import com.netflix.astyanax.connectionpool.exceptions.BadRequestException;
@@ -33,77 +34,79 @@ import com.netflix.astyanax.connectionpool.exceptions.InterruptedOperationExcept
  * 
  * @author elandau
  */
-public class CountingConnectionPoolMonitor implements ConnectionPoolMonitor {
+public class CountingConnectionPoolMonitor implements SpeculativeReadMonitor {
     private static Logger LOG = LoggerFactory.getLogger(CountingConnectionPoolMonitor.class);
     
-    private AtomicLong operationFailureCount  = new AtomicLong();
-    private AtomicLong operationSuccessCount  = new AtomicLong();
-    private AtomicLong connectionCreateCount  = new AtomicLong();
-    private AtomicLong connectionClosedCount  = new AtomicLong();
-    private AtomicLong connectionCreateFailureCount = new AtomicLong();
-    private AtomicLong connectionBorrowCount  = new AtomicLong();
-    private AtomicLong connectionReturnCount  = new AtomicLong();
+    private Counter operationFailureCount     = new Counter();
+    private Counter operationSuccessCount     = new Counter();
+    private Counter connectionCreateCount     = new Counter();
+    private Counter connectionClosedCount     = new Counter();
+    private Counter connectionCreateFailureCount    = new Counter();
+    private Counter connectionBorrowCount     = new Counter();
+    private Counter connectionReturnCount     = new Counter();
     
-    private AtomicLong operationFailoverCount = new AtomicLong();
+    private Counter operationFailoverCount    = new Counter();
+    private Counter speculativeReadCount       = new Counter();
+    private Counter speculativeReadWonCount    = new Counter();
     
-    private AtomicLong hostAddedCount         = new AtomicLong();
-    private AtomicLong hostRemovedCount       = new AtomicLong();
-    private AtomicLong hostDownCount          = new AtomicLong();
-    private AtomicLong hostReactivatedCount   = new AtomicLong();
+    private Counter hostAddedCount            = new Counter();
+    private Counter hostRemovedCount          = new Counter();
+    private Counter hostDownCount             = new Counter();
+    private Counter hostReactivatedCount      = new Counter();
     
-    private AtomicLong poolExhastedCount      = new AtomicLong();
-    private AtomicLong operationTimeoutCount  = new AtomicLong();
-    private AtomicLong socketTimeoutCount     = new AtomicLong();
-    private AtomicLong noHostsCount           = new AtomicLong();
-    private AtomicLong unknownErrorCount      = new AtomicLong();
-    private AtomicLong badRequestCount        = new AtomicLong();
-    private AtomicLong interruptedCount       = new AtomicLong();
-    private AtomicLong transportErrorCount    = new AtomicLong();
-
-    private AtomicLong notFoundCounter        = new AtomicLong();
+    private Counter poolExhastedCount         = new Counter();
+    private Counter operationTimeoutCount     = new Counter();
+    private Counter socketTimeoutCount        = new Counter();
+    private Counter noHostsCount              = new Counter();
+    private Counter unknownErrorCount         = new Counter();
+    private Counter badRequestCount           = new Counter();
+    private Counter interruptedCount          = new Counter();
+    private Counter transportErrorCount       = new Counter();
+
+    private Counter notFoundCounter           = new Counter();
     
     public CountingConnectionPoolMonitor() {
     }
     
     private void trackError(Host host, Exception reason) {
         if (reason instanceof PoolTimeoutException) {
-            this.poolExhastedCount.incrementAndGet();
+            this.poolExhastedCount.increment();
         }
         else if (reason instanceof TimeoutException) {
-            this.socketTimeoutCount.incrementAndGet();
+            this.socketTimeoutCount.increment();
         }
         else if (reason instanceof OperationTimeoutException) {
-            this.operationTimeoutCount.incrementAndGet();
+            this.operationTimeoutCount.increment();
         }
         else if (reason instanceof BadRequestException) {
-            this.badRequestCount.incrementAndGet();
+            this.badRequestCount.increment();
         }
         else if (reason instanceof NoAvailableHostsException ) {
-            this.noHostsCount.incrementAndGet();
+            this.noHostsCount.increment();
         }
         else if (reason instanceof InterruptedOperationException) {
-            this.interruptedCount.incrementAndGet();
+            this.interruptedCount.increment();
         }
         else if (reason instanceof HostDownException) {
-            this.hostDownCount.incrementAndGet();
+            this.hostDownCount.increment();
         }
         else if (reason instanceof TransportException) {
-            this.transportErrorCount.incrementAndGet();
+            this.transportErrorCount.increment();
         }
         else {
             LOG.error(reason.toString(), reason);
-            this.unknownErrorCount.incrementAndGet();
+            this.unknownErrorCount.increment();
         }
     }
 
     @Override
     public void incOperationFailure(Host host, Exception reason) {
         if (reason instanceof NotFoundException) {
-            this.notFoundCounter.incrementAndGet();
+            this.notFoundCounter.increment();
             return;
         }
         
-        this.operationFailureCount.incrementAndGet();
+        this.operationFailureCount.increment();
         trackError(host, reason);
     }
 
@@ -113,7 +116,7 @@ public class CountingConnectionPoolMonitor implements ConnectionPoolMonitor {
 
     @Override
     public void incOperationSuccess(Host host, long latency) {
-        this.operationSuccessCount.incrementAndGet();
+        this.operationSuccessCount.increment();
     }
 
     public long getOperationSuccessCount() {
@@ -122,7 +125,7 @@ public class CountingConnectionPoolMonitor implements ConnectionPoolMonitor {
 
     @Override
     public void incConnectionCreated(Host host) {
-        this.connectionCreateCount.incrementAndGet();
+        this.connectionCreateCount.increment();
     }
 
     public long getConnectionCreatedCount() {
@@ -131,7 +134,7 @@ public class CountingConnectionPoolMonitor implements ConnectionPoolMonitor {
 
     @Override
     public void incConnectionClosed(Host host, Exception reason) {
-        this.connectionClosedCount.incrementAndGet();
+        this.connectionClosedCount.increment();
     }
 
     public long getConnectionClosedCount() {
@@ -140,7 +143,7 @@ public class CountingConnectionPoolMonitor implements ConnectionPoolMonitor {
 
     @Override
     public void incConnectionCreateFailed(Host host, Exception reason) {
-        this.connectionCreateFailureCount.incrementAndGet();
+        this.connectionCreateFailureCount.increment();
     }
 
     public long getConnectionCreateFailedCount() {
@@ -149,7 +152,7 @@ public class CountingConnectionPoolMonitor implements ConnectionPoolMonitor {
 
     @Override
     public void incConnectionBorrowed(Host host, long delay) {
-        this.connectionBorrowCount.incrementAndGet();
+        this.connectionBorrowCount.increment();
     }
 
     public long getConnectionBorrowedCount() {
@@ -158,7 +161,7 @@ public class CountingConnectionPoolMonitor implements ConnectionPoolMonitor {
 
     @Override
     public void incConnectionReturned(Host host) {
-        this.connectionReturnCount.incrementAndGet();
+        this.connectionReturnCount.increment();
     }
 
     public long getConnectionReturnedCount() {
@@ -180,7 +183,7 @@ public class CountingConnectionPoolMonitor implements ConnectionPoolMonitor {
 
     @Override
     public void incFailover(Host host, Exception reason) {
-        this.operationFailoverCount.incrementAndGet();
+        this.operationFailoverCount.increment();
         trackError(host, reason);
     }
 
@@ -189,10 +192,30 @@ public class CountingConnectionPoolMonitor implements ConnectionPoolMonitor {
         return this.operationFailoverCount.get();
     }
 
+    @Override
+    public void incSpeculativeRead(Host host) {
+        this.speculativeReadCount.increment();
+    }
+
+    @Override
+    public long getSpeculativeReadCount() {
+        return this.speculativeReadCount.get();
+    }
+
+    @Override
+    public void incSpeculativeReadWon(Host host) {
+        this.speculativeReadWonCount.increment();
+    }
+
+    @Override
+    public long getSpeculativeReadWonCount() {
+        return this.speculativeReadWonCount.get();
+    }
+
     @Override
     public void onHostAdded(Host host, HostConnectionPool<?> pool) {
         LOG.info("AddHost: " + host.getHostName());
-        this.hostAddedCount.incrementAndGet();
+        this.hostAddedCount.increment();
     }
 
     @Override
@@ -203,7 +226,7 @@ public class CountingConnectionPoolMonitor implements ConnectionPoolMonitor {
     @Override
     public void onHostRemoved(Host host) {
         LOG.info("RemoveHost: " + host.getHostName());
-        this.hostRemovedCount.incrementAndGet();
+        this.hostRemovedCount.increment();
     }
 
     @Override
@@ -213,7 +236,7 @@ public class CountingConnectionPoolMonitor implements ConnectionPoolMonitor {
 
     @Override
     public void onHostDown(Host host, Exception reason) {
-        this.hostDownCount.incrementAndGet();
+        this.hostDownCount.increment();
     }
 
     @Override
@@ -224,7 +247,7 @@ public class CountingConnectionPoolMonitor implements ConnectionPoolMonitor {
     @Override
     public void onHostReactivated(Host host, HostConnectionPool<?> pool) {
         LOG.info("Reactivating " + host.getHostName());
-        this.hostReactivatedCount.incrementAndGet();
+        this.hostReactivatedCount.increment();
     }
 
     public long getHostReactivatedCount() {
@@ -297,6 +320,8 @@ public class CountingConnectionPoolMonitor implements ConnectionPoolMonitor {
                     .append(",optimeout="  ).append(operationTimeoutCount.get())
                     .append(",timeout="    ).append(socketTimeoutCount.get())
                     .append(",failover="   ).append(operationFailoverCount.get())
+                    .append(",speculative=").append(speculativeReadCount.get())
+                    .append(",specwon="    ).append(speculativeReadWonCount.get())
                     .append(",nohosts="    ).append(noHostsCount.get())
                     .append(",unknown="    ).append(unknownErrorCount.get())
                     .append(",interrupted=").append(interruptedCount.get())
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.connectionpool.impl;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import org.cliffc.high_scale_lib.NonBlockingHashMap;
+
+import com.google.common.collect.ImmutableMap;
+import com.netflix.astyanax.connectionpool.Host;
+import com.netflix.astyanax.connectionpool.impl.LatencyHistogram.Snapshot;
+
+/**
+ * {@link CountingConnectionPoolMonitor} that also keeps a latency histogram per host and per operation type.  <br/> <br/>
+ *
+ * Successful operations are recorded per host by the connection pool.  Operation types are recorded through
+ * {@link #recordOperationLatency(String, long)}, typically by a tracer that knows the type of each operation.
+ * Recording is lock free.  Snapshots cover the last complete interval and are rolled over when they are read,
+ * so readers such as JMX see stable percentiles without resetting each other's view.  Latencies are in nanoseconds.
+ *
+ * @see {@link LatencyHistogram}
+ * @see {@link com.netflix.astyanax.connectionpool.JmxConnectionPoolMonitor}
+ */
+public class HistogramConnectionPoolMonitor extends CountingConnectionPoolMonitor {
+    public static final long DEFAULT_SNAPSHOT_INTERVAL = 60000;
+
+    private final NonBlockingHashMap<Host, LatencyHistogram>   hostLatency      = new NonBlockingHashMap<Host, LatencyHistogram>();
+    private final NonBlockingHashMap<String, LatencyHistogram> operationLatency = new NonBlockingHashMap<String, LatencyHistogram>();
+    private final long snapshotInterval;
+
+    private long                           snapshotTime;
+    private volatile Map<Host, Snapshot>   hostSnapshots      = null;
+    private volatile Map<String, Snapshot> operationSnapshots = null;
+
+    /**
+     * @param snapshotInterval  Interval covered by snapshots, in milliseconds
+     */
+    public HistogramConnectionPoolMonitor(long snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+        this.snapshotTime     = System.currentTimeMillis();
+    }
+
+    public HistogramConnectionPoolMonitor() {
+        this(DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    @Override
+    public void incOperationSuccess(Host host, long latency) {
+        super.incOperationSuccess(host, latency);
+        getHistogram(hostLatency, host).record(latency);
+    }
+
+    @Override
+    public void onHostRemoved(Host host) {
+        super.onHostRemoved(host);
+        hostLatency.remove(host);
+    }
+
+    /**
+     * Record the latency of an operation by its type
+     *
+     * @param operationType
+     * @param latency       In nanoseconds
+     */
+    public void recordOperationLatency(String operationType, long latency) {
+        getHistogram(operationLatency, operationType).record(latency);
+    }
+
+    /**
+     * @return Latency of each host over the last interval, or since the monitor was created if no interval completed yet
+     */
+    public Map<Host, Snapshot> getHostLatencySnapshots() {
+        roll();
+        Map<Host, Snapshot> snapshots = hostSnapshots;
+        return snapshots != null ? snapshots : snapshot(hostLatency);
+    }
+
+    /**
+     * @return Latency of each operation type over the last interval, or since the monitor was created if no interval completed yet
+     */
+    public Map<String, Snapshot> getOperationLatencySnapshots() {
+        roll();
+        Map<String, Snapshot> snapshots = operationSnapshots;
+        return snapshots != null ? snapshots : snapshot(operationLatency);
+    }
+
+    /**
+     * @return One line per host and operation type with the count and latency percentiles in microseconds
+     */
+    public String getLatencySummary() {
+        StringBuilder sb = new StringBuilder();
+        for (Entry<Host, Snapshot> entry : getHostLatencySnapshots().entrySet()) {
+            appendSummary(sb, entry.getKey().getName(), entry.getValue());
+        }
+        for (Entry<String, Snapshot> entry : getOperationLatencySnapshots().entrySet()) {
+            appendSummary(sb, entry.getKey(), entry.getValue());
+        }
+        return sb.toString();
+    }
+
+    private static void appendSummary(StringBuilder sb, String name, Snapshot snapshot) {
+        sb.append(name)
+          .append(" count=").append(snapshot.getCount())
+          .append(",p50="  ).append(toMicros(snapshot.getPercentile(50)))
+          .append(",p99="  ).append(toMicros(snapshot.getPercentile(99)))
+          .append(",p999=" ).append(toMicros(snapshot.getPercentile(99.9)))
+          .append(",max="  ).append(toMicros(snapshot.getMax()))
+          .append("\n");
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.MICROSECONDS.convert(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private synchronized void roll() {
+        long now = System.currentTimeMillis();
+        if (now - snapshotTime < snapshotInterval)
+            return;
+
+        snapshotTime = now;
+        hostSnapshots      = intervalSnapshot(hostLatency);
+        operationSnapshots = intervalSnapshot(operationLatency);
+    }
+
+    private static <K> LatencyHistogram getHistogram(NonBlockingHashMap<K, LatencyHistogram> histograms, K key) {
+        LatencyHistogram histogram = histograms.get(key);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            LatencyHistogram existing = histograms.putIfAbsent(key, histogram);
+            if (existing != null)
+                histogram = existing;
+        }
+        return histogram;
+    }
+
+    private static <K> Map<K, Snapshot> snapshot(Map<K, LatencyHistogram> histograms) {
+        ImmutableMap.Builder<K, Snapshot> snapshots = ImmutableMap.builder();
+        for (Entry<K, LatencyHistogram> entry : histograms.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().getSnapshot());
+        }
+        return snapshots.build();
+    }
+
+    private static <K> Map<K, Snapshot> intervalSnapshot(Map<K, LatencyHistogram> histograms) {
+        ImmutableMap.Builder<K, Snapshot> snapshots = ImmutableMap.builder();
+        for (Entry<K, LatencyHistogram> entry : histograms.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().getIntervalSnapshot());
+        }
+        return snapshots.build();
+    }
+
+    public String toString() {
+        return new StringBuilder()
+            .append("HistogramConnectionPoolMonitor(")
+            .append(super.toString())
+            .append(",hosts=").append(hostLatency.size())
+            .append(",operations=").append(operationLatency.size())
+            .append(")").toString();
+    }
+}
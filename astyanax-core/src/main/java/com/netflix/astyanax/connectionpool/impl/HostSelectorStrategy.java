@@ -23,5 +23,10 @@ package com.netflix.astyanax.connectionpool.impl;
  *
  */
 public enum HostSelectorStrategy {
-    ROUND_ROBIN, LEAST_OUTSTANDING
+    ROUND_ROBIN, 
+    LEAST_OUTSTANDING,
+    /**
+     * Pick two random hosts and use the one with the lower load, see {@link PowerOfTwoChoicesExecuteWithFailover}
+     */
+    POWER_OF_TWO_CHOICES
 }
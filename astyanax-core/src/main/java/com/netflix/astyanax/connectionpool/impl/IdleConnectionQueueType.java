@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.connectionpool.impl;
+
+/**
+ * Structure used by {@link SimpleHostConnectionPool} to hold idle connections.
+ *
+ * <ul>
+ * <li>LINKED_QUEUE  - Single {@link java.util.concurrent.LinkedBlockingQueue} shared by all threads.  This is the default.</li>
+ * <li>STRIPED_STACK - Lock free {@link StripedConnectionStack} where threads tend to get back the connection they last returned.
+ *                     Better suited for high request rates with many client threads.</li>
+ * </ul>
+ */
+public enum IdleConnectionQueueType {
+    LINKED_QUEUE, STRIPED_STACK
+}
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.connectionpool.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free latency histogram with log linear buckets, in the style of HdrHistogram.  <br/> <br/>
+ *
+ * Values are counted in buckets that double in width every 32 buckets, so any value up to Long.MAX_VALUE is
+ * recorded with a relative error of at most 1/32.  Recording a value is a single atomic increment.  Percentiles
+ * are read from snapshots, either of everything recorded so far or of what was recorded since the previous
+ * interval snapshot.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS  = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF  = SUB_BUCKET_COUNT / 2;
+    private static final int MAX_SHIFT        = 63 - SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT     = (MAX_SHIFT + 1) * SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private long[] intervalStart = new long[BUCKET_COUNT];
+
+    /**
+     * Counts of a histogram at one point in time
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long   count;
+
+        Snapshot(long[] counts) {
+            long count = 0;
+            for (long c : counts) {
+                count += c;
+            }
+            this.counts = counts;
+            this.count  = count;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @param percentile    0 to 100
+         * @return Highest value of the bucket at the percentile or 0 if nothing was recorded
+         */
+        public long getPercentile(double percentile) {
+            if (count == 0)
+                return 0;
+
+            long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target)
+                    return highestValue(i);
+            }
+            return getMax();
+        }
+
+        public long getMax() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] > 0)
+                    return highestValue(i);
+            }
+            return 0;
+        }
+
+        public double getMean() {
+            if (count == 0)
+                return 0;
+
+            double sum = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0)
+                    sum += counts[i] * ((double) lowestValue(i) + highestValue(i)) / 2;
+            }
+            return sum / count;
+        }
+    }
+
+    public void record(long value) {
+        counts.incrementAndGet(bucket(value));
+    }
+
+    /**
+     * @return Snapshot of everything recorded so far
+     */
+    public Snapshot getSnapshot() {
+        long[] current = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            current[i] = counts.get(i);
+        }
+        return new Snapshot(current);
+    }
+
+    /**
+     * @return Snapshot of what was recorded since the previous call.  Meant for a single reader, such as a
+     *         reporter that runs at a fixed interval.
+     */
+    public synchronized Snapshot getIntervalSnapshot() {
+        long[] current  = new long[BUCKET_COUNT];
+        long[] interval = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            current[i]  = counts.get(i);
+            interval[i] = current[i] - intervalStart[i];
+        }
+        intervalStart = current;
+        return new Snapshot(interval);
+    }
+
+    static int bucket(long value) {
+        if (value < 0)
+            value = 0;
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1));
+        return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+    }
+
+    static long lowestValue(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT)
+            return bucket;
+        int shift = bucket / SUB_BUCKET_HALF - 1;
+        return (long) (bucket - shift * SUB_BUCKET_HALF) << shift;
+    }
+
+    static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT)
+            return bucket;
+        int shift = bucket / SUB_BUCKET_HALF - 1;
+        long next = (long) (bucket - shift * SUB_BUCKET_HALF + 1) << shift;
+        return next <= 0 ? Long.MAX_VALUE : next - 1;
+    }
+}
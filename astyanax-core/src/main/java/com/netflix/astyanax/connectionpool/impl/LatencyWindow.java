@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.connectionpool.impl;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free window of the most recent latency samples from which percentiles can be read.
+ *
+ * Samples are written to a ring buffer.  Percentiles are read from a sorted copy of the buffer which
+ * is refreshed by one reader once a quarter of the window has been overwritten, so adding a sample
+ * never blocks and reading a percentile is usually just an array lookup.  A sample that is being
+ * written while the copy is made may be missed, which is fine for latency tracking.
+ */
+public class LatencyWindow {
+    private final AtomicLongArray samples;
+    private final int             mask;
+    private final int             refreshInterval;
+    private final AtomicLong      count      = new AtomicLong();
+    private final AtomicBoolean   refreshing = new AtomicBoolean();
+    private volatile long[]       sorted     = new long[0];
+    private volatile long         sortedAt   = 0;
+    private volatile long         resetAt    = 0;
+
+    /**
+     * @param size  Number of samples to keep, rounded up to a power of 2
+     */
+    public LatencyWindow(int size) {
+        int capacity = Integer.highestOneBit(Math.max(size, 4) - 1) << 1;
+        this.samples         = new AtomicLongArray(capacity);
+        this.mask            = capacity - 1;
+        this.refreshInterval = capacity / 4;
+    }
+
+    public void addSample(long latency) {
+        long index = count.getAndIncrement();
+        samples.lazySet((int)(index & mask), latency);
+    }
+
+    /**
+     * @param percentile    0 to 100
+     * @return Latency at the percentile or 0 if there are no samples
+     */
+    public long getPercentile(double percentile) {
+        long[] values = sorted;
+        long current  = count.get();
+        if (current - sortedAt >= refreshInterval || (values.length == 0 && current > resetAt)) {
+            if (refreshing.compareAndSet(false, true)) {
+                try {
+                    values = refresh(current);
+                }
+                finally {
+                    refreshing.set(false);
+                }
+            }
+        }
+
+        if (values.length == 0)
+            return 0;
+
+        int index = (int)Math.ceil(percentile / 100 * values.length) - 1;
+        return values[Math.max(0, Math.min(values.length - 1, index))];
+    }
+
+    public long getSampleCount() {
+        return count.get();
+    }
+
+    /**
+     * Forget all samples added so far
+     */
+    public void reset() {
+        long current = count.get();
+        resetAt  = current;
+        sorted   = new long[0];
+        sortedAt = current;
+    }
+
+    private long[] refresh(long current) {
+        long first = Math.max(resetAt, current - samples.length());
+        int length = (int)Math.max(0, current - first);
+        long[] values = new long[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = samples.get((int)((first + i) & mask));
+        }
+        Arrays.sort(values);
+
+        sorted   = values;
+        sortedAt = current;
+        return values;
+    }
+}
@@ -0,0 +1,157 @@
+package com.netflix.astyanax.connectionpool.impl;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.collect.Lists;
+import com.netflix.astyanax.connectionpool.HostConnectionPool;
+
+/**
+ * Scores hosts on the median and the tail of their recent latency.  <br/> <br/>
+ *
+ * Each host records its samples into a lock free {@link LatencyWindow}, so adding a sample neither locks nor
+ * allocates.  The score is a weighted sum of the p50 and p99 of the window and is only republished when it
+ * moved by more than the hysteresis ratio, so the order of a partition doesn't churn on noise.  Partitions are
+ * sorted once on a snapshot of the scores with a stable sort and keep that order instead of being shuffled.
+ *
+ * @see {@link LatencyWindow}
+ */
+public class PercentileLatencyScoreStrategyImpl extends AbstractLatencyScoreStrategyImpl {
+    private static final String NAME = "PERCENTILE";
+
+    public static final int    DEFAULT_WINDOW_SIZE = 128;
+    public static final double DEFAULT_TAIL_WEIGHT = 0.25;
+    public static final double DEFAULT_HYSTERESIS  = 0.1;
+
+    private final int    windowSize;
+    private final double tailWeight;
+    private final double hysteresis;
+
+    /**
+     * @param updateInterval    In milliseconds
+     * @param resetInterval     In milliseconds
+     * @param windowSize        Number of recent samples from which the percentiles are taken
+     * @param tailWeight        Weight of the p99 in the score, the p50 makes up the rest
+     * @param hysteresis        Minimum relative change of a score before it is published
+     * @param blockedThreshold
+     * @param keepRatio
+     * @param scoreThreshold
+     */
+    public PercentileLatencyScoreStrategyImpl(int updateInterval, int resetInterval, int windowSize, double tailWeight,
+            double hysteresis, int blockedThreshold, double keepRatio, double scoreThreshold) {
+        super(NAME, updateInterval, resetInterval, blockedThreshold, keepRatio, scoreThreshold);
+        this.windowSize = windowSize;
+        this.tailWeight = tailWeight;
+        this.hysteresis = hysteresis;
+    }
+
+    public PercentileLatencyScoreStrategyImpl(int updateInterval, int resetInterval, int windowSize) {
+        this(updateInterval, resetInterval, windowSize, DEFAULT_TAIL_WEIGHT, DEFAULT_HYSTERESIS,
+                DEFAULT_BLOCKED_THREAD_THRESHOLD, DEFAULT_KEEP_RATIO, DEFAULT_SCORE_THRESHOLD);
+    }
+
+    public PercentileLatencyScoreStrategyImpl() {
+        this(DEFAULT_UPDATE_INTERVAL, DEFAULT_RESET_INTERVAL, DEFAULT_WINDOW_SIZE);
+    }
+
+    @Override
+    public final Instance newInstance() {
+        return new Instance() {
+            private final LatencyWindow window = new LatencyWindow(windowSize);
+            private volatile double cachedScore = 0.0d;
+
+            @Override
+            public void addSample(long sample) {
+                window.addSample(sample);
+            }
+
+            @Override
+            public double getScore() {
+                return cachedScore;
+            }
+
+            @Override
+            public void reset() {
+                window.reset();
+                cachedScore = 0.0;
+            }
+
+            @Override
+            public void update() {
+                double score = (1 - tailWeight) * window.getPercentile(50) + tailWeight * window.getPercentile(99);
+                double current = cachedScore;
+                if (current == 0.0 || score == 0.0 || Math.abs(score - current) > current * hysteresis) {
+                    cachedScore = score;
+                }
+            }
+        };
+    }
+
+    /**
+     * Score and load of a pool read once, so that the sort sees consistent values
+     */
+    private static class Candidate<CL> implements Comparable<Candidate<CL>> {
+        final HostConnectionPool<CL> pool;
+        final double                 score;
+        final int                    busy;
+
+        Candidate(HostConnectionPool<CL> pool) {
+            this.pool  = pool;
+            this.score = pool.getScore();
+            this.busy  = pool.getBusyConnectionCount() + pool.getBlockedThreadCount();
+        }
+
+        @Override
+        public int compareTo(Candidate<CL> other) {
+            return Double.compare(score, other.score);
+        }
+    }
+
+    @Override
+    public <CL> List<HostConnectionPool<CL>> sortAndfilterPartition(List<HostConnectionPool<CL>> srcPools,
+            AtomicBoolean prioritized) {
+        prioritized.set(false);
+
+        List<Candidate<CL>> candidates = Lists.newArrayListWithCapacity(srcPools.size());
+        for (HostConnectionPool<CL> pool : srcPools) {
+            if (!pool.isReconnecting())
+                candidates.add(new Candidate<CL>(pool));
+        }
+
+        // Stable, so hosts with equal scores keep their relative order
+        Collections.sort(candidates);
+        int size = candidates.size();
+
+        int keep = (int) Math.max(1, Math.ceil(srcPools.size() * getKeepRatio()));
+
+        // Drop hosts that are too slow compared to the fastest host with a score
+        int first = 0;
+        while (first < size && candidates.get(first).score == 0.0)
+            first++;
+        if (first < size) {
+            double limit = candidates.get(first).score * getScoreThreshold();
+            while (size > keep && size - 1 > first && candidates.get(size - 1).score > limit)
+                size--;
+        }
+
+        // Drop hosts that have many more operations in flight than the least busy host
+        if (size > keep) {
+            int leastBusy = Integer.MAX_VALUE;
+            for (int i = 0; i < size; i++)
+                leastBusy = Math.min(leastBusy, candidates.get(i).busy);
+
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (kept < keep || candidates.get(i).busy - leastBusy <= getBlockedThreshold())
+                    candidates.set(kept++, candidates.get(i));
+            }
+            size = kept;
+        }
+
+        List<HostConnectionPool<CL>> pools = Lists.newArrayListWithCapacity(size);
+        for (int i = 0; i < size; i++)
+            pools.add(candidates.get(i).pool);
+        return pools;
+    }
+}
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.connectionpool.impl;
+
+import java.util.List;
+
+import com.netflix.astyanax.connectionpool.Connection;
+import com.netflix.astyanax.connectionpool.ConnectionPoolConfiguration;
+import com.netflix.astyanax.connectionpool.ConnectionPoolMonitor;
+import com.netflix.astyanax.connectionpool.HostConnectionPool;
+import com.netflix.astyanax.connectionpool.LatencyTrackingHostConnectionPool;
+import com.netflix.astyanax.connectionpool.Operation;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.connectionpool.exceptions.NoAvailableHostsException;
+
+/**
+ * Borrows a connection from the less loaded of two randomly chosen {@link HostConnectionPool}(s).  <br/> <br/>
+ *
+ * The load of a host is its number of in flight operations (borrowed connections plus threads blocked
+ * waiting for one) weighted by the moving average of its latency, see {@link LatencyTrackingHostConnectionPool#getLatencyEwma()}.
+ * Comparing only two hosts makes the cost per operation independent of the cluster size while still steering
+ * traffic away from slow or overloaded hosts.  Selection uses a per instance xorshift generator and neither
+ * copies the list of pools nor allocates.  On failover the host that was just tried is excluded from the next draw.
+ *
+ * @param <CL>
+ * @param <R>
+ *
+ * @see {@link HostSelectorStrategy#POWER_OF_TWO_CHOICES}
+ */
+public class PowerOfTwoChoicesExecuteWithFailover<CL, R> extends AbstractExecuteWithFailoverImpl<CL, R> {
+    protected HostConnectionPool<CL> pool;
+    private int retryCountdown;
+    protected final List<HostConnectionPool<CL>> pools;
+    protected int waitDelta;
+    protected int waitMultiplier = 1;
+    private int seed;
+    private int lastIndex = -1;
+
+    /**
+     * @param config
+     * @param monitor
+     * @param pools
+     * @param index     Any value that differs between operations, used to seed the random host selection
+     * @throws ConnectionException
+     */
+    public PowerOfTwoChoicesExecuteWithFailover(ConnectionPoolConfiguration config, ConnectionPoolMonitor monitor,
+            List<HostConnectionPool<CL>> pools, int index) throws ConnectionException {
+        super(config, monitor);
+
+        this.pools = pools;
+
+        if (pools == null || pools.isEmpty()) {
+            throw new NoAvailableHostsException("No hosts to borrow from");
+        }
+
+        // Spread consecutive indexes over the whole int range
+        this.seed = index * 0x9E3779B9;
+        if (this.seed == 0)
+            this.seed = 1;
+
+        int size = pools.size();
+        retryCountdown = Math.min(config.getMaxFailoverCount(), size);
+        if (retryCountdown < 0)
+            retryCountdown = size;
+        else if (retryCountdown == 0)
+            retryCountdown = 1;
+
+        waitDelta = config.getMaxTimeoutWhenExhausted() / retryCountdown;
+    }
+
+    public boolean canRetry() {
+        return --retryCountdown > 0;
+    }
+
+    @Override
+    public HostConnectionPool<CL> getCurrentHostConnectionPool() {
+        return pool;
+    }
+
+    @Override
+    public Connection<CL> borrowConnection(Operation<CL, R> operation) throws ConnectionException {
+        lastIndex = selectPool(pools, nextRandom(), nextRandom(), lastIndex);
+        pool = pools.get(lastIndex);
+        return pool.borrowConnection(waitDelta * waitMultiplier);
+    }
+
+    private int nextRandom() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+
+    /**
+     * Choose the less loaded of two distinct pools
+     *
+     * @param pools
+     * @param random1   Random value used to pick the first candidate
+     * @param random2   Random value used to pick the second candidate
+     * @param exclude   Index of a pool that should not be picked, or -1.  Ignored if it is the only pool.
+     * @return Index of the chosen pool
+     */
+    static <CL> int selectPool(List<HostConnectionPool<CL>> pools, int random1, int random2, int exclude) {
+        int size = pools.size();
+        if (size == 1)
+            return 0;
+        if (exclude >= size)
+            exclude = -1;
+
+        int first = (random1 & Integer.MAX_VALUE) % size;
+        if (first == exclude)
+            first = (first + 1) % size;
+        if (size == 2 && exclude >= 0)
+            return first;
+
+        int second = (first + 1 + (random2 & Integer.MAX_VALUE) % (size - 1)) % size;
+        while (second == exclude || second == first)
+            second = (second + 1) % size;
+
+        return getLoad(pools.get(second)) < getLoad(pools.get(first)) ? second : first;
+    }
+
+    static long getLoad(HostConnectionPool<?> pool) {
+        long inFlight = pool.getBusyConnectionCount() + pool.getBlockedThreadCount();
+        long latency = (pool instanceof LatencyTrackingHostConnectionPool)
+                     ? ((LatencyTrackingHostConnectionPool<?>) pool).getLatencyEwma()
+                     : 0;
+        return (Math.max(inFlight, 0) + 1) * Math.max(latency, 1);
+    }
+}
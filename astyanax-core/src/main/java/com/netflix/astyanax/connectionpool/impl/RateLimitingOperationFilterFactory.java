@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.connectionpool.impl;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.cliffc.high_scale_lib.NonBlockingHashMap;
+
+import com.netflix.astyanax.connectionpool.Connection;
+import com.netflix.astyanax.connectionpool.ConnectionContext;
+import com.netflix.astyanax.connectionpool.Host;
+import com.netflix.astyanax.connectionpool.Operation;
+import com.netflix.astyanax.connectionpool.OperationFilterFactory;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.connectionpool.exceptions.InterruptedOperationException;
+import com.netflix.astyanax.connectionpool.exceptions.ThrottledException;
+
+/**
+ * {@link OperationFilterFactory} that limits the rate of operations with a {@link TokenBucketRateLimiterImpl}
+ * per {@link Scope}.  <br/> <br/>
+ *
+ * In fast fail mode (maxWait of 0) an operation that doesn't get a permit fails with a {@link ThrottledException},
+ * which the retry policy may retry.  Otherwise the operation waits up to maxWait for a permit.  The permit is taken
+ * before each attempt borrows a connection (see {@link AbstractOperationFilter#beforeBorrow()}), so a waiting
+ * operation doesn't tie up a connection.  The host of the {@link Scope#HOST} scope is only known once the
+ * operation has a connection, so that scope never waits and an operation over the limit of its host fails fast,
+ * leaving the retry policy to try another host.  Subclasses can limit on anything else the operation exposes,
+ * such as its column family, by overriding {@link #getLimiterKey}.
+ *
+ * Register it with {@link ConnectionPoolConfigurationImpl#setOperationFilterFactory(OperationFilterFactory)}, or
+ * through an {@link OperationFilterFactoryList} to combine it with other filters.
+ */
+public class RateLimitingOperationFilterFactory implements OperationFilterFactory {
+    public static enum Scope {
+        /**
+         * One limit shared by all operations
+         */
+        GLOBAL,
+
+        /**
+         * One limit per keyspace
+         */
+        KEYSPACE,
+
+        /**
+         * One limit per host the operation runs on.  Always fails fast.
+         */
+        HOST
+    }
+
+    private static final String GLOBAL_KEY = "<global>";
+
+    private final Scope  scope;
+    private final double permitsPerSecond;
+    private final int    burstSize;
+    private final long   maxWaitMillis;
+    private final ConcurrentMap<Object, TokenBucketRateLimiterImpl> limiters = new NonBlockingHashMap<Object, TokenBucketRateLimiterImpl>();
+
+    /**
+     * @param scope
+     * @param permitsPerSecond  Operations per second allowed in each scope
+     * @param burstSize         Operations allowed at once in each scope after a quiet period
+     * @param maxWaitMillis     Maximum time to wait for a permit, 0 to fail immediately.  Ignored by the
+     *                          {@link Scope#HOST} scope.
+     */
+    public RateLimitingOperationFilterFactory(Scope scope, double permitsPerSecond, int burstSize, long maxWaitMillis) {
+        this.scope            = scope;
+        this.permitsPerSecond = permitsPerSecond;
+        this.burstSize        = burstSize;
+        this.maxWaitMillis    = maxWaitMillis;
+    }
+
+    public RateLimitingOperationFilterFactory(Scope scope, double permitsPerSecond) {
+        this(scope, permitsPerSecond, Math.max(1, (int) permitsPerSecond), 0);
+    }
+
+    @Override
+    public <R, CL> Operation<R, CL> attachFilter(Operation<R, CL> operation) {
+        return new AbstractOperationFilter<R, CL>(operation) {
+            @Override
+            public void beforeBorrow() throws ConnectionException {
+                if (scope != Scope.HOST)
+                    acquire(getLimiterKey(this, null), maxWaitMillis);
+                super.beforeBorrow();
+            }
+
+            @Override
+            public CL execute(R client, ConnectionContext state) throws ConnectionException {
+                if (scope == Scope.HOST)
+                    acquire(getLimiterKey(this, state), 0);
+                return super.execute(client, state);
+            }
+        };
+    }
+
+    /**
+     * @param operation
+     * @param state         Context of the connection the operation is about to run on, null before the
+     *                      connection is borrowed
+     * @return Key of the limiter that applies to the operation
+     */
+    protected Object getLimiterKey(Operation<?, ?> operation, ConnectionContext state) {
+        switch (scope) {
+        case KEYSPACE:
+            String keyspace = operation.getKeyspace();
+            return keyspace == null ? GLOBAL_KEY : keyspace;
+        case HOST:
+            if (state instanceof Connection)
+                return ((Connection<?>) state).getHostConnectionPool().getHost();
+            Host host = operation.getPinnedHost();
+            return host == null ? GLOBAL_KEY : host;
+        default:
+            return GLOBAL_KEY;
+        }
+    }
+
+    /**
+     * @param key
+     * @return The limiter for the key, created on first use
+     */
+    public TokenBucketRateLimiterImpl getLimiter(Object key) {
+        TokenBucketRateLimiterImpl limiter = limiters.get(key);
+        if (limiter == null) {
+            limiter = new TokenBucketRateLimiterImpl(permitsPerSecond, burstSize);
+            TokenBucketRateLimiterImpl existing = limiters.putIfAbsent(key, limiter);
+            if (existing != null)
+                limiter = existing;
+        }
+        return limiter;
+    }
+
+    private void acquire(Object key, long maxWaitMillis) throws ConnectionException {
+        TokenBucketRateLimiterImpl limiter = getLimiter(key);
+        if (maxWaitMillis == 0) {
+            if (!limiter.check())
+                throw new ThrottledException("Rate limit exceeded for " + key);
+            return;
+        }
+
+        try {
+            if (!limiter.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS))
+                throw new ThrottledException("Timed out waiting for rate limit of " + key);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedOperationException("Interrupted waiting for rate limit of " + key, e);
+        }
+    }
+}
@@ -26,7 +26,8 @@ import java.util.concurrent.atomic.AtomicInteger;
  * Connection pool implementation using simple round robin. <br/> <br/>
  * It maintains a rotating index over a collection of {@link HostConnectionPool}(s) maintained using a {@link Topology} that reflects the given 
  * partitioned set of pools. Note that the impl uses the <b>pinned host</b> on the operation if it finds one. If there is none, then it uses 
- * all the host connection pools in the topology.
+ * all the host connection pools in the topology.  With {@link HostSelectorStrategy#POWER_OF_TWO_CHOICES} the index is only used
+ * to seed a {@link PowerOfTwoChoicesExecuteWithFailover}.
  * 
  * @see {@link RoundRobinExecuteWithFailover} for more details on how failover works with round robin connections.
  * @see {@link Topology} for details on where the collection of {@link HostConnectionPool}(s) are maintained. 
@@ -63,6 +64,8 @@ public class RoundRobinConnectionPoolImpl<CL> extends AbstractHostPartitionConne
                 roundRobinCounter.set(0);
             }
             
+            if (config.getHostSelectorStrategy() == HostSelectorStrategy.POWER_OF_TWO_CHOICES)
+                return new PowerOfTwoChoicesExecuteWithFailover<CL, R>(config, monitor, topology.getAllPools().getPools(), index);
             return new RoundRobinExecuteWithFailover<CL, R>(config, monitor, topology.getAllPools().getPools(), index);
         }
         catch (ConnectionException e) {
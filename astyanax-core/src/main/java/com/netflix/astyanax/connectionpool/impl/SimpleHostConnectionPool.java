@@ -24,6 +24,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.cliffc.high_scale_lib.Counter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,14 +38,17 @@ import com.netflix.astyanax.connectionpool.ConnectionPoolMonitor;
 import com.netflix.astyanax.connectionpool.Host;
 import com.netflix.astyanax.connectionpool.HostConnectionPool;
 import com.netflix.astyanax.connectionpool.LatencyScoreStrategy;
+import com.netflix.astyanax.connectionpool.LatencyTrackingHostConnectionPool;
 import com.netflix.astyanax.connectionpool.RetryBackoffStrategy;
 import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
 import com.netflix.astyanax.connectionpool.exceptions.InterruptedOperationException;
 import com.netflix.astyanax.connectionpool.exceptions.HostDownException;
 import com.netflix.astyanax.connectionpool.exceptions.IsDeadConnectionException;
+import com.netflix.astyanax.connectionpool.exceptions.OperationTimeoutException;
 import com.netflix.astyanax.connectionpool.exceptions.PoolTimeoutException;
 import com.netflix.astyanax.connectionpool.exceptions.ThrottledException;
 import com.netflix.astyanax.connectionpool.exceptions.TimeoutException;
+import com.netflix.astyanax.connectionpool.exceptions.TransportException;
 import com.netflix.astyanax.connectionpool.exceptions.UnknownException;
 
 /**
@@ -56,7 +60,8 @@ import com.netflix.astyanax.connectionpool.exceptions.UnknownException;
  *      The class provides a bunch of counters for visibility into the connection pool status e.g no of 
  *      that are available / active / pending / blocked  etc.  </br> </br>
  *      
- *      This class also provides an async mechanism to create / prime and borrow {@link Connection}(s) using a {@link LinkedBlockingQueue} <br/>
+ *      This class also provides an async mechanism to create / prime and borrow {@link Connection}(s) using a {@link LinkedBlockingQueue}
+ *      or a {@link StripedConnectionStack}, see {@link ConnectionPoolConfiguration#getIdleConnectionQueueType()} <br/>
  *      Clients borrowing connections can wait at the end of the queue for a connection to be available. They send a {@link SimpleHostConnectionPool#tryOpenAsync()} request 
  *      to create a new connection before waiting, but don't necessarily wait for the same connection to be opened, since they could be unblocked by 
  *      another client returning a previously used {@link Connection}
@@ -69,10 +74,12 @@ import com.netflix.astyanax.connectionpool.exceptions.UnknownException;
  * @author elandau
  * 
  */
-public class SimpleHostConnectionPool<CL> implements HostConnectionPool<CL> {
+public class SimpleHostConnectionPool<CL> implements LatencyTrackingHostConnectionPool<CL> {
     private final static Logger LOG = LoggerFactory.getLogger(SimpleHostConnectionPool.class);
     private final static int MAX_PRIME_CONNECTIONS_RETRY_ATTEMPT = 2;
     private final static int PRIME_CONNECTION_DELAY = 100;
+    private final static double LATENCY_EWMA_ALPHA = 0.1;
+    private final static int LATENCY_WINDOW_SIZE = 256;
 
     /**
      * Interface to notify the owning connection pool of up/down state changes.
@@ -95,16 +102,18 @@ public class SimpleHostConnectionPool<CL> implements HostConnectionPool<CL> {
     private final BlockingQueue<Connection<CL>> availableConnections;
     private final AtomicInteger                 activeCount          = new AtomicInteger(0);
     private final AtomicInteger                 pendingConnections   = new AtomicInteger(0);
-    private final AtomicInteger                 blockedThreads       = new AtomicInteger(0);
+    private final Counter                       blockedThreads       = new Counter();
     private final AtomicInteger                 openConnections      = new AtomicInteger(0);
     private final AtomicInteger                 failedOpenConnections= new AtomicInteger(0);
     private final AtomicInteger                 closedConnections    = new AtomicInteger(0);
-    private final AtomicLong                    borrowedCount        = new AtomicLong(0);
-    private final AtomicLong                    returnedCount        = new AtomicLong(0);
+    private final Counter                       borrowedCount        = new Counter();
+    private final Counter                       returnedCount        = new Counter();
     private final AtomicInteger                 connectAttempt       = new AtomicInteger(0);
     private final AtomicInteger                 markedDownCount      = new AtomicInteger(0);
     
     private final AtomicInteger                 errorsSinceLastSuccess = new AtomicInteger(0);
+    private volatile long                       latencyEwma          = 0;
+    private final LatencyWindow                 latencyWindow        = new LatencyWindow(LATENCY_WINDOW_SIZE);
 
     private final ConnectionFactory<CL>         factory;
     private final Host                          host;
@@ -113,6 +122,7 @@ public class SimpleHostConnectionPool<CL> implements HostConnectionPool<CL> {
     private final ScheduledExecutorService      executor;
     private final RetryBackoffStrategy.Instance retryContext;
     private final BadHostDetector.Instance      badHostDetector;
+    private final BadHostDetector.SamplingInstance hostSampler;
     private final LatencyScoreStrategy.Instance latencyStrategy;
     private final Listener<CL>                  listener;
     private final ConnectionPoolMonitor         monitor;
@@ -129,13 +139,21 @@ public class SimpleHostConnectionPool<CL> implements HostConnectionPool<CL> {
         this.retryContext    = config.getRetryBackoffStrategy().createInstance();
         this.latencyStrategy = config.getLatencyScoreStrategy().createInstance();
         this.badHostDetector = config.getBadHostDetector().createInstance();
+        this.hostSampler     = (badHostDetector instanceof BadHostDetector.SamplingInstance)
+                             ? (BadHostDetector.SamplingInstance) badHostDetector : null;
         this.monitor         = monitor;
-        this.availableConnections = new LinkedBlockingQueue<Connection<CL>>();
+        this.availableConnections = createIdleConnectionQueue(config);
         this.executor        = config.getHostReconnectExecutor();
         
         Preconditions.checkNotNull(config.getHostReconnectExecutor(), "HostReconnectExecutor cannot be null");
     }
 
+    private static <CL> BlockingQueue<Connection<CL>> createIdleConnectionQueue(ConnectionPoolConfiguration config) {
+        if (config.getIdleConnectionQueueType() == IdleConnectionQueueType.STRIPED_STACK) 
+            return new StripedConnectionStack<Connection<CL>>(config.getMaxConnsPerHost());
+        return new LinkedBlockingQueue<Connection<CL>>();
+    }
+
     @Override
     public int primeConnections(int numConnections) throws ConnectionException, InterruptedException {
         if (isReconnecting()) {
@@ -205,7 +223,7 @@ public class SimpleHostConnectionPool<CL> implements HostConnectionPool<CL> {
         }
         finally {
             if (connection != null) {
-                borrowedCount.incrementAndGet();
+                borrowedCount.increment();
                 monitor.incConnectionBorrowed(host, System.currentTimeMillis() - startTime);
             }
         }
@@ -223,7 +241,7 @@ public class SimpleHostConnectionPool<CL> implements HostConnectionPool<CL> {
         Connection<CL> connection = null;
         long startTime = System.currentTimeMillis();
         try {
-            blockedThreads.incrementAndGet();
+            blockedThreads.increment();
             connection = availableConnections.poll(timeout, TimeUnit.MILLISECONDS);
             if (connection != null)
                 return connection;
@@ -239,10 +257,32 @@ public class SimpleHostConnectionPool<CL> implements HostConnectionPool<CL> {
                 .setLatency(System.currentTimeMillis() - startTime);
         }
         finally {
-            blockedThreads.decrementAndGet();
+            blockedThreads.decrement();
         }
     }
 
+    /**
+     * Report the outcome of an operation to the bad host detector.  Only client side socket timeouts
+     * and transport errors count against the host.  Timeouts reported by the coordinator are not counted
+     * since the host we talk to may be fine.
+     * 
+     * @param ce    Exception of the last operation or null if it succeeded
+     * @return true if the host should be quarantined
+     */
+    private boolean isBadHost(ConnectionException ce) {
+        if (ce == null) {
+            hostSampler.addSuccessSample();
+            return false;
+        }
+        if (ce instanceof TimeoutException)
+            return hostSampler.addTimeoutSample();
+        if (ce instanceof TransportException)
+            return hostSampler.addErrorSample();
+        if (!(ce instanceof OperationTimeoutException))
+            hostSampler.addSuccessSample();
+        return false;
+    }
+
     /**
      * Return a connection to this host
      * 
@@ -250,10 +290,13 @@ public class SimpleHostConnectionPool<CL> implements HostConnectionPool<CL> {
      */
     @Override
     public boolean returnConnection(Connection<CL> connection) {
-        returnedCount.incrementAndGet();
+        returnedCount.increment();
         monitor.incConnectionReturned(host);
 
         ConnectionException ce = connection.getLastException();
+        if (hostSampler != null && isBadHost(ce)) {
+            markAsDown(ce);
+        }
         if (ce != null) {
             if (ce instanceof IsDeadConnectionException) {
                 noteError(ce);
@@ -261,7 +304,9 @@ public class SimpleHostConnectionPool<CL> implements HostConnectionPool<CL> {
                 return true;
             }
         }
-        errorsSinceLastSuccess.set(0);
+        // Most returns find no errors, skip the write to the shared counter for them
+        if (errorsSinceLastSuccess.get() != 0)
+            errorsSinceLastSuccess.set(0);
 
         // Still within the number of max active connection
         if (activeCount.get() <= config.getMaxConnsPerHost()) {
@@ -284,7 +329,7 @@ public class SimpleHostConnectionPool<CL> implements HostConnectionPool<CL> {
 
     @Override
     public boolean closeConnection(Connection<CL> connection) {
-        returnedCount.incrementAndGet();
+        returnedCount.increment();
         monitor.incConnectionReturned(host);
         internalCloseConnection(connection);
         return true;
@@ -504,7 +549,7 @@ public class SimpleHostConnectionPool<CL> implements HostConnectionPool<CL> {
 
     @Override
     public int getBlockedThreadCount() {
-        return blockedThreads.get();
+        return (int) blockedThreads.get();
     }
 
     @Override
@@ -541,6 +586,23 @@ public class SimpleHostConnectionPool<CL> implements HostConnectionPool<CL> {
     @Override
     public void addLatencySample(long latency, long now) {
         latencyStrategy.addSample(latency);
+        latencyWindow.addSample(latency);
+        if (hostSampler != null && hostSampler.addLatencySample(latency))
+            markAsDown(null);
+
+        // Racy updates may lose a sample now and then, which is fine for an average
+        long current = latencyEwma;
+        latencyEwma = (current == 0) ? latency : current + (long)((latency - current) * LATENCY_EWMA_ALPHA);
+    }
+
+    @Override
+    public long getLatencyEwma() {
+        return latencyEwma;
+    }
+
+    @Override
+    public long getLatencyPercentile(double percentile) {
+        return latencyWindow.getPercentile(percentile);
     }
     
     @Override
@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.connectionpool.impl;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.cliffc.high_scale_lib.NonBlockingHashSet;
+
+import com.netflix.astyanax.connectionpool.BadHostDetector;
+import com.netflix.astyanax.connectionpool.ConnectionPoolConfiguration;
+
+/**
+ * BadHostDetector which keeps separate counters for each host in a ring of time buckets that together
+ * span the timeout window.  <br/> <br/>
+ *
+ * A host is quarantined when
+ * <ul>
+ * <li>it timed out more than maxTimeoutCount times within the timeout window, or</li>
+ * <li>more than maxErrorRate of its operations within the window timed out or failed, once it served at
+ *     least minRequestCount operations, or</li>
+ * <li>its mean latency within the window is more than maxLatencyRatio times the median of the mean latencies
+ *     of the other hosts.  This is checked once per bucket.</li>
+ * </ul>
+ * The error rate and latency checks are disabled when their threshold is 0.  Samples are counted with atomic
+ * increments and never allocate.  A sample that races with the reuse of its bucket may be lost, which doesn't
+ * matter for detecting a struggling host.
+ *
+ * Only client side socket timeouts count as timeouts and only transport errors count as errors.  Timeouts
+ * reported by the coordinator say nothing about the host the client is talking to and are not counted.
+ * The default detector is {@link BadHostDetectorImpl}, use this one with
+ * <pre>
+ *     ConnectionPoolConfigurationImpl config = new ConnectionPoolConfigurationImpl(name);
+ *     config.setBadHostDetector(new SlidingWindowBadHostDetectorImpl(config));
+ * </pre>
+ *
+ * @see {@link ConnectionPoolConfiguration#getTimeoutWindow()}
+ * @see {@link ConnectionPoolConfiguration#getMaxTimeoutCount()}
+ */
+public class SlidingWindowBadHostDetectorImpl implements BadHostDetector {
+
+    public static final int    DEFAULT_BUCKET_COUNT      = 10;
+    public static final double DEFAULT_MAX_ERROR_RATE    = 0;
+    public static final int    DEFAULT_MIN_REQUEST_COUNT = 20;
+    public static final double DEFAULT_MAX_LATENCY_RATIO = 0;
+
+    private static final int TIMEOUTS      = 0;
+    private static final int ERRORS        = 1;
+    private static final int SUCCESSES     = 2;
+    private static final int LATENCY_SUM   = 3;
+    private static final int LATENCY_COUNT = 4;
+    private static final int STRIDE        = 5;
+
+    private final ConnectionPoolConfiguration config;
+    private final int                         bucketCount;
+    private final double                      maxErrorRate;
+    private final int                         minRequestCount;
+    private final double                      maxLatencyRatio;
+    private final Set<Window>                 instances = new NonBlockingHashSet<Window>();
+
+    /**
+     * @param config
+     * @param bucketCount       Number of buckets the timeout window is split into
+     * @param maxErrorRate      Ratio of failed operations above which a host is quarantined, 0 to disable
+     * @param minRequestCount   Minimum number of operations in the window before the error rate or latency of a host is judged
+     * @param maxLatencyRatio   Ratio to the median latency of the other hosts above which a host is quarantined, 0 to disable
+     */
+    public SlidingWindowBadHostDetectorImpl(ConnectionPoolConfiguration config, int bucketCount, double maxErrorRate,
+            int minRequestCount, double maxLatencyRatio) {
+        this.config          = config;
+        this.bucketCount     = bucketCount;
+        this.maxErrorRate    = maxErrorRate;
+        this.minRequestCount = minRequestCount;
+        this.maxLatencyRatio = maxLatencyRatio;
+    }
+
+    public SlidingWindowBadHostDetectorImpl(ConnectionPoolConfiguration config) {
+        this(config, DEFAULT_BUCKET_COUNT, DEFAULT_MAX_ERROR_RATE, DEFAULT_MIN_REQUEST_COUNT, DEFAULT_MAX_LATENCY_RATIO);
+    }
+
+    public String toString() {
+        return new StringBuilder()
+             .append("SlidingWindowBadHostDetectorImpl[")
+             .append("count=").append(config.getMaxTimeoutCount())
+             .append(",window=").append(config.getTimeoutWindow())
+             .append(",buckets=").append(bucketCount)
+             .append(",errorRate=").append(maxErrorRate)
+             .append(",latencyRatio=").append(maxLatencyRatio)
+             .append("]")
+             .toString();
+    }
+
+    @Override
+    public SamplingInstance createInstance() {
+        Window instance = new Window();
+        instances.add(instance);
+        return instance;
+    }
+
+    @Override
+    public void removeInstance(Instance instance) {
+        instances.remove(instance);
+    }
+
+    private class Window implements SamplingInstance {
+        private final AtomicLongArray epochs   = new AtomicLongArray(bucketCount);
+        private final AtomicLongArray counters = new AtomicLongArray(bucketCount * STRIDE);
+        private final AtomicLong      checked  = new AtomicLong();
+
+        @Override
+        public boolean addTimeoutSample() {
+            long epoch = currentEpoch();
+            counters.incrementAndGet(bucket(epoch) + TIMEOUTS);
+            return sum(TIMEOUTS, epoch) > config.getMaxTimeoutCount() || isErrorRateExceeded(epoch);
+        }
+
+        @Override
+        public boolean addErrorSample() {
+            long epoch = currentEpoch();
+            counters.incrementAndGet(bucket(epoch) + ERRORS);
+            return isErrorRateExceeded(epoch);
+        }
+
+        @Override
+        public void addSuccessSample() {
+            counters.incrementAndGet(bucket(currentEpoch()) + SUCCESSES);
+        }
+
+        @Override
+        public boolean addLatencySample(long latency) {
+            long epoch = currentEpoch();
+            int bucket = bucket(epoch);
+            counters.addAndGet(bucket + LATENCY_SUM, latency);
+            counters.incrementAndGet(bucket + LATENCY_COUNT);
+
+            if (maxLatencyRatio <= 0)
+                return false;
+
+            long last = checked.get();
+            if (last == epoch || !checked.compareAndSet(last, epoch))
+                return false;
+            return isLatencyOutlier(epoch);
+        }
+
+        /**
+         * @return Offset of the counters of the bucket for the epoch, after clearing the bucket if it was last used for an older epoch
+         */
+        private int bucket(long epoch) {
+            int slot = (int) (epoch % bucketCount);
+            long current = epochs.get(slot);
+            if (current < epoch && epochs.compareAndSet(slot, current, epoch)) {
+                for (int i = 0; i < STRIDE; i++) {
+                    counters.set(slot * STRIDE + i, 0);
+                }
+            }
+            return slot * STRIDE;
+        }
+
+        private long sum(int counter, long epoch) {
+            long sum = 0;
+            for (int i = 0; i < bucketCount; i++) {
+                long bucketEpoch = epochs.get(i);
+                if (bucketEpoch > epoch - bucketCount && bucketEpoch <= epoch)
+                    sum += counters.get(i * STRIDE + counter);
+            }
+            return sum;
+        }
+
+        private boolean isErrorRateExceeded(long epoch) {
+            if (maxErrorRate <= 0)
+                return false;
+
+            long failed = sum(TIMEOUTS, epoch) + sum(ERRORS, epoch);
+            long total  = failed + sum(SUCCESSES, epoch);
+            return total >= minRequestCount && failed > total * maxErrorRate;
+        }
+
+        /**
+         * @return Mean latency within the window or -1 if there are too few samples
+         */
+        private long getMeanLatency(long epoch) {
+            long count = sum(LATENCY_COUNT, epoch);
+            if (count < minRequestCount || count == 0)
+                return -1;
+            return sum(LATENCY_SUM, epoch) / count;
+        }
+
+        private boolean isLatencyOutlier(long epoch) {
+            long mean = getMeanLatency(epoch);
+            if (mean < 0)
+                return false;
+
+            long[] others = new long[instances.size()];
+            int count = 0;
+            for (Window other : instances) {
+                if (other == this || count == others.length)
+                    continue;
+                long otherMean = other.getMeanLatency(epoch);
+                if (otherMean >= 0)
+                    others[count++] = otherMean;
+            }
+
+            // Need a few other hosts to tell what normal is
+            if (count < 2)
+                return false;
+
+            Arrays.sort(others, 0, count);
+            return mean > others[count / 2] * maxLatencyRatio;
+        }
+    }
+
+    private long currentEpoch() {
+        return System.currentTimeMillis() / Math.max(1, config.getTimeoutWindow() / bucketCount);
+    }
+}
@@ -61,7 +61,7 @@ public class SmaLatencyScoreStrategyImpl extends AbstractLatencyScoreStrategyImp
                     sum += d;
                     count++;
                 }
-                return (count > 0) ? sum / count : 0.0;
+                return (count > 0) ? (double)sum / count : 0.0;
             }
         };
     }
@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.connectionpool.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.astyanax.connectionpool.Connection;
+import com.netflix.astyanax.connectionpool.ConnectionPoolConfiguration;
+import com.netflix.astyanax.connectionpool.ExecuteWithFailover;
+import com.netflix.astyanax.connectionpool.Host;
+import com.netflix.astyanax.connectionpool.HostConnectionPool;
+import com.netflix.astyanax.connectionpool.IdempotentOperation;
+import com.netflix.astyanax.connectionpool.LatencyTrackingHostConnectionPool;
+import com.netflix.astyanax.connectionpool.Operation;
+import com.netflix.astyanax.connectionpool.OperationResult;
+import com.netflix.astyanax.connectionpool.SpeculativeReadMonitor;
+
+/**
+ * Speculative read that races the first attempt of an {@link IdempotentOperation}.  <br/> <br/>
+ *
+ * Once the first attempt has been running for longer than the configured percentile of its host's recent
+ * latency the operation is also sent to another host on the speculative read executor of the pool.  A speculative
+ * read that finds all threads of the executor busy is dropped.  Whichever
+ * answers first wins and the connection of the loser is closed, which aborts the socket read of a blocked
+ * attempt.  A first attempt that fails waits for a running speculative read to finish instead, since that
+ * is the read hedging against the failure.  The caller's thread always runs the first attempt and picks up
+ * the result of the speculative read if that won.  Speculative reads draw from the budget of the connection
+ * pool and never retry.
+ *
+ * @param <CL>
+ * @param <R>
+ *
+ * @see {@link AbstractHostPartitionConnectionPool#executeWithFailover(Operation, com.netflix.astyanax.retry.RetryPolicy)}
+ * @see {@link AbstractExecuteWithFailoverImpl#tryOperation(Operation)}
+ */
+class SpeculativeExecution<CL, R> implements Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(SpeculativeExecution.class);
+
+    private static final int PENDING            = 0;
+    private static final int RUNNING            = 1;
+    private static final int FIRST_WON          = 2;
+    private static final int SPECULATIVE_WON    = 3;
+    private static final int SPECULATIVE_FAILED = 4;
+
+    /**
+     * Number of hosts to try for a host other than the one of the first attempt
+     */
+    private static final int MAX_BORROW_ATTEMPTS = 3;
+
+    private final AbstractHostPartitionConnectionPool<CL> pool;
+    private final ConnectionPoolConfiguration             config;
+    private final Operation<CL, R>                        operation;
+    private final AtomicInteger                           state = new AtomicInteger(PENDING);
+    private final CountDownLatch                          finished = new CountDownLatch(1);
+
+    private volatile Operation<CL, R>   filteredOperation;
+    private volatile Connection<CL>     firstConnection;
+    private volatile Connection<CL>     speculativeConnection;
+    private volatile OperationResult<R> result;
+    private volatile ScheduledFuture<?> timer;
+
+    SpeculativeExecution(AbstractHostPartitionConnectionPool<CL> pool, ConnectionPoolConfiguration config, Operation<CL, R> operation) {
+        this.pool      = pool;
+        this.config    = config;
+        this.operation = operation;
+    }
+
+    /**
+     * Called by the first attempt once it has a connection and before it executes the operation.  Schedules the
+     * speculative read for when the host of the connection is slower than usual.
+     *
+     * @param connection
+     * @param filteredOperation
+     */
+    void start(Connection<CL> connection, Operation<CL, R> filteredOperation) {
+        this.firstConnection   = connection;
+        this.filteredOperation = filteredOperation;
+
+        HostConnectionPool<CL> hostPool = connection.getHostConnectionPool();
+        long delay = (hostPool instanceof LatencyTrackingHostConnectionPool)
+                   ? ((LatencyTrackingHostConnectionPool<CL>) hostPool).getLatencyPercentile(config.getSpeculativeReadPercentile())
+                   : 0;
+        if (delay == 0) {
+            // Nothing known about this host yet
+            state.set(FIRST_WON);
+            return;
+        }
+        delay = Math.max(delay, TimeUnit.NANOSECONDS.convert(config.getMinSpeculativeReadDelay(), TimeUnit.MILLISECONDS));
+
+        try {
+            timer = pool.getSpeculativeReadTimer().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    submit();
+                }
+            }, delay, TimeUnit.NANOSECONDS);
+        }
+        catch (RejectedExecutionException e) {
+            state.set(FIRST_WON);
+        }
+    }
+
+    /**
+     * Called on the timer thread to hand the speculative read to a thread that may block on it
+     */
+    private void submit() {
+        if (state.get() != PENDING)
+            return;
+        try {
+            pool.getSpeculativeReadExecutor().execute(this);
+        }
+        catch (RejectedExecutionException e) {
+            state.compareAndSet(PENDING, SPECULATIVE_FAILED);
+        }
+    }
+
+    /**
+     * Called by the first attempt once it completed or failed.  A failed first attempt waits for a running
+     * speculative read to finish.
+     *
+     * @param failed    True if the first attempt failed
+     * @return True if the outcome of the first attempt should be used or false if the speculative read won,
+     *         in which case the connection of the first attempt has been closed and must be discarded
+     */
+    boolean firstAttemptDone(boolean failed) {
+        boolean await = failed;
+        while (true) {
+            int current = state.get();
+            if (current == SPECULATIVE_WON)
+                return false;
+            if (current == FIRST_WON)
+                return true;
+            if (current == RUNNING && await) {
+                try {
+                    finished.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                await = false;
+                continue;
+            }
+            if (state.compareAndSet(current, FIRST_WON)) {
+                if (current == PENDING) {
+                    ScheduledFuture<?> timer = this.timer;
+                    if (timer != null)
+                        timer.cancel(false);
+                }
+                else if (current == RUNNING) {
+                    Connection<CL> connection = speculativeConnection;
+                    if (connection != null)
+                        connection.close();
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return Result of the speculative read, once {@link #firstAttemptDone(boolean)} returned false
+     */
+    OperationResult<R> getResult() {
+        return result;
+    }
+
+    /**
+     * Runs the speculative read on the speculative read executor
+     */
+    @Override
+    public void run() {
+        if (!state.compareAndSet(PENDING, RUNNING))
+            return;
+
+        try {
+            read();
+        }
+        finally {
+            finished.countDown();
+        }
+    }
+
+    /**
+     * Borrows a connection to another host and runs the operation on it, leaves the RUNNING state on every path
+     */
+    private void read() {
+        if (!pool.acquireSpeculativeRead()) {
+            state.compareAndSet(RUNNING, SPECULATIVE_FAILED);
+            return;
+        }
+
+        AbstractExecuteWithFailoverImpl<CL, R> failover = null;
+        boolean keepConnection = false;
+        try {
+            failover = borrowFromOtherHost();
+            if (failover == null) {
+                keepConnection = state.compareAndSet(RUNNING, SPECULATIVE_FAILED);
+                return;
+            }
+
+            Connection<CL> connection = failover.connection;
+            Host host = connection.getHostConnectionPool().getHost();
+            speculativeConnection = connection;
+            if (state.get() != RUNNING)
+                return;
+
+            if (pool.monitor instanceof SpeculativeReadMonitor)
+                ((SpeculativeReadMonitor) pool.monitor).incSpeculativeRead(host);
+            OperationResult<R> result = connection.execute(filteredOperation);
+            this.result = result;
+            if (state.compareAndSet(RUNNING, SPECULATIVE_WON)) {
+                keepConnection = true;
+                if (pool.monitor instanceof SpeculativeReadMonitor)
+                    ((SpeculativeReadMonitor) pool.monitor).incSpeculativeReadWon(host);
+                pool.monitor.incOperationSuccess(host, result.getLatency());
+                firstConnection.close();
+            }
+        }
+        catch (Exception e) {
+            LOG.debug("Speculative read failed", e);
+            keepConnection = state.compareAndSet(RUNNING, SPECULATIVE_FAILED);
+        }
+        finally {
+            if (failover != null) {
+                // The first attempt closes the connection once it won
+                if (keepConnection)
+                    failover.releaseConnection();
+                else
+                    failover.discardConnection();
+            }
+        }
+    }
+
+    private AbstractExecuteWithFailoverImpl<CL, R> borrowFromOtherHost() throws Exception {
+        ExecuteWithFailover<CL, R> executeWithFailover = pool.newExecuteWithFailover(operation);
+        if (!(executeWithFailover instanceof AbstractExecuteWithFailoverImpl))
+            return null;
+
+        AbstractExecuteWithFailoverImpl<CL, R> failover = (AbstractExecuteWithFailoverImpl<CL, R>) executeWithFailover;
+        if (filteredOperation instanceof AbstractOperationFilter)
+            ((AbstractOperationFilter<CL, R>) filteredOperation).beforeBorrow();
+        Host firstHost = firstConnection.getHostConnectionPool().getHost();
+        for (int i = 0; i < MAX_BORROW_ATTEMPTS; i++) {
+            failover.connection = failover.borrowConnection(operation);
+            if (!failover.connection.getHostConnectionPool().getHost().equals(firstHost))
+                return failover;
+
+            failover.releaseConnection();
+            if (!failover.canRetry())
+                break;
+        }
+        return null;
+    }
+}
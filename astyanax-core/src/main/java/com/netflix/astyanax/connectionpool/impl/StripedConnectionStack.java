@@ -0,0 +1,256 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.connectionpool.impl;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Lock free holder for idle connections that may be used in place of a {@link java.util.concurrent.LinkedBlockingQueue}
+ * by {@link SimpleHostConnectionPool}.
+ *
+ * <p>
+ * Idle elements are kept in a fixed array of slots that are claimed and released with a single CAS, so
+ * neither offer nor poll allocate or take a lock.  Each thread starts probing at a slot derived from its
+ * thread id so that a thread will usually get back the connection it last returned and threads returning
+ * connections at the same time don't fight over the same slot.  Slots are spread out over separate cache lines
+ * to avoid false sharing.  Elements that don't fit into the slots (for example when maxConnsPerHost is
+ * increased at runtime) spill over into a {@link ConcurrentLinkedQueue}.
+ * </p>
+ *
+ * <p>
+ * Only threads that actually have to wait for an element touch the lock.  offer() will only signal when
+ * it sees a waiting thread.
+ * </p>
+ *
+ * @param <E>
+ */
+public class StripedConnectionStack<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+    /**
+     * Distance between two slots in the backing array.  16 references keeps each slot on its own cache line
+     */
+    private static final int SLOT_SPACING = 16;
+    private static final int MIN_SLOTS    = 8;
+
+    private final AtomicReferenceArray<E>   slots;
+    private final int                       mask;
+    private final ConcurrentLinkedQueue<E>  overflow  = new ConcurrentLinkedQueue<E>();
+    private final AtomicInteger             waiters   = new AtomicInteger(0);
+    private final ReentrantLock             lock      = new ReentrantLock();
+    private final Condition                 notEmpty  = lock.newCondition();
+
+    /**
+     * @param capacity  Expected max number of idle elements.  Will be rounded up to the next power of 2.
+     */
+    public StripedConnectionStack(int capacity) {
+        Preconditions.checkArgument(capacity > 0, "capacity must be >0");
+        int size = MIN_SLOTS;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.mask  = size - 1;
+        this.slots = new AtomicReferenceArray<E>(size * SLOT_SPACING);
+    }
+
+    /**
+     * @return Index of the first slot probed by the calling thread
+     */
+    private int homeSlot() {
+        long id = Thread.currentThread().getId();
+        return (int)((id * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        Preconditions.checkNotNull(e);
+        int start = homeSlot();
+        boolean added = false;
+        for (int i = 0; i <= mask; i++) {
+            int index = ((start + i) & mask) * SLOT_SPACING;
+            if (slots.get(index) == null && slots.compareAndSet(index, null, e)) {
+                added = true;
+                break;
+            }
+        }
+        if (!added) {
+            overflow.add(e);
+        }
+
+        if (waiters.get() > 0) {
+            lock.lock();
+            try {
+                notEmpty.signal();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public E poll() {
+        int start = homeSlot();
+        for (int i = 0; i <= mask; i++) {
+            int index = ((start + i) & mask) * SLOT_SPACING;
+            E e = slots.get(index);
+            if (e != null && slots.compareAndSet(index, e, null)) {
+                return e;
+            }
+        }
+        return overflow.poll();
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        E e = poll();
+        if (e != null)
+            return e;
+
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            // Register as a waiter before checking again so that a concurrent offer()
+            // either is seen here or sees us and signals.
+            waiters.incrementAndGet();
+            try {
+                for (;;) {
+                    e = poll();
+                    if (e != null)
+                        return e;
+                    if (nanos <= 0)
+                        return null;
+                    nanos = notEmpty.awaitNanos(nanos);
+                }
+            }
+            finally {
+                waiters.decrementAndGet();
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        for (;;) {
+            E e = poll(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            if (e != null)
+                return e;
+        }
+    }
+
+    @Override
+    public void put(E e) {
+        offer(e);
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) {
+        return offer(e);
+    }
+
+    @Override
+    public E peek() {
+        for (int i = 0; i <= mask; i++) {
+            E e = slots.get(i * SLOT_SPACING);
+            if (e != null)
+                return e;
+        }
+        return overflow.peek();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null)
+            return false;
+        for (int i = 0; i <= mask; i++) {
+            int index = i * SLOT_SPACING;
+            E e = slots.get(index);
+            if (e != null && e.equals(o) && slots.compareAndSet(index, e, null)) {
+                return true;
+            }
+        }
+        return overflow.remove(o);
+    }
+
+    /**
+     * Approximate number of idle elements.  This walks all the slots and should not be called on
+     * the hot path.
+     */
+    @Override
+    public int size() {
+        int count = 0;
+        for (int i = 0; i <= mask; i++) {
+            if (slots.get(i * SLOT_SPACING) != null)
+                count++;
+        }
+        return count + overflow.size();
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        Preconditions.checkArgument(c != this);
+        int count = 0;
+        while (count < maxElements) {
+            E e = poll();
+            if (e == null)
+                break;
+            c.add(e);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return Iterator over a snapshot of the idle elements.  Removal through the iterator is not supported.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        List<E> snapshot = Lists.newArrayList();
+        for (int i = 0; i <= mask; i++) {
+            E e = slots.get(i * SLOT_SPACING);
+            if (e != null)
+                snapshot.add(e);
+        }
+        snapshot.addAll(overflow);
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+}
@@ -85,6 +85,9 @@ public class TokenAwareConnectionPoolImpl<CL> extends AbstractHostPartitionConne
                 case LEAST_OUTSTANDING:
                     executeWithFailover = new LeastOutstandingExecuteWithFailover<CL, R>(config, monitor, pools);
                     break;
+                case POWER_OF_TWO_CHOICES:
+                    executeWithFailover = new PowerOfTwoChoicesExecuteWithFailover<CL, R>(config, monitor, pools, index);
+                    break;
                 default:
                     executeWithFailover = new RoundRobinExecuteWithFailover<CL, R>(config, monitor, pools, isSorted ? 0 : index);
                     break;
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.connectionpool.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.netflix.astyanax.connectionpool.RateLimiter;
+
+/**
+ * Lock free token bucket {@link RateLimiter} that refills continuously.  <br/> <br/>
+ *
+ * Instead of counting tokens the limiter keeps the time at which the bucket would be full again (the
+ * 'theoretical arrival time' of the generic cell rate algorithm).  Taking a permit moves that time forward by
+ * one refill interval, and a permit is only refused if the time would end up more than a full bucket ahead of
+ * now.  The whole state is one {@link AtomicLong}, so there is no window rollover and a thread that loses a
+ * CAS simply retries against the updated state rather than being rejected.  <br/> <br/>
+ *
+ * {@link #check()} and {@link #tryAcquire(long, TimeUnit)} measure time with {@link System#nanoTime()} while
+ * {@link #check(long)} takes wall clock milliseconds, so an instance should only be used with one of the two.
+ *
+ * @see {@link RateLimitingOperationFilterFactory}
+ */
+public class TokenBucketRateLimiterImpl implements RateLimiter {
+    private final long       intervalNanos;
+    private final long       capacityNanos;
+    private final AtomicLong fullAt = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * @param permitsPerSecond  Rate at which the bucket refills
+     * @param burstSize         Number of permits the bucket holds, i.e. that may be taken at once after a quiet period
+     */
+    public TokenBucketRateLimiterImpl(double permitsPerSecond, int burstSize) {
+        if (permitsPerSecond <= 0)
+            throw new IllegalArgumentException("permitsPerSecond must be positive");
+        if (burstSize <= 0)
+            throw new IllegalArgumentException("burstSize must be positive");
+
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.capacityNanos = intervalNanos * burstSize;
+    }
+
+    public TokenBucketRateLimiterImpl(double permitsPerSecond) {
+        this(permitsPerSecond, Math.max(1, (int) permitsPerSecond));
+    }
+
+    /**
+     * Take a permit if one is available right now
+     */
+    @Override
+    public boolean check() {
+        return reserve(System.nanoTime(), 0) == 0;
+    }
+
+    @Override
+    public boolean check(long currentTimeMillis) {
+        return reserve(TimeUnit.MILLISECONDS.toNanos(currentTimeMillis), 0) == 0;
+    }
+
+    /**
+     * Take a permit, waiting for one if the bucket is empty
+     *
+     * @param timeout   Maximum time to wait, 0 to not wait at all
+     * @param units
+     * @return True if a permit was taken or false if none would become available within the timeout
+     * @throws InterruptedException
+     */
+    public boolean tryAcquire(long timeout, TimeUnit units) throws InterruptedException {
+        long delay = reserve(System.nanoTime(), units.toNanos(timeout));
+        if (delay < 0)
+            return false;
+        if (delay > 0)
+            TimeUnit.NANOSECONDS.sleep(delay);
+        return true;
+    }
+
+    /**
+     * @return Approximate number of permits that can be taken without waiting
+     */
+    public int getAvailablePermits() {
+        // fullAt starts out far in the past, compare against now first so the subtraction can't overflow
+        long now   = System.nanoTime();
+        long ahead = Math.max(fullAt.get(), now) - now;
+        return (int) ((capacityNanos - Math.min(capacityNanos, ahead)) / intervalNanos);
+    }
+
+    public double getPermitsPerSecond() {
+        return (double) TimeUnit.SECONDS.toNanos(1) / intervalNanos;
+    }
+
+    /**
+     * Reserve a permit that becomes available within maxDelay
+     *
+     * @return Nanoseconds until the reserved permit may be used or -1 if no permit was reserved
+     */
+    private long reserve(long now, long maxDelay) {
+        while (true) {
+            long current = fullAt.get();
+            long next    = Math.max(current, now) + intervalNanos;
+            long delay   = next - now - capacityNanos;
+            if (delay > maxDelay)
+                return -1;
+            if (fullAt.compareAndSet(current, next))
+                return Math.max(0, delay);
+        }
+    }
+}
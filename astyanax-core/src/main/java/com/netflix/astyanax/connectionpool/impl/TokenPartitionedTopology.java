@@ -3,6 +3,7 @@ package com.netflix.astyanax.connectionpool.impl;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -23,6 +24,7 @@ import com.google.common.collect.Sets;
 import com.netflix.astyanax.connectionpool.HostConnectionPool;
 import com.netflix.astyanax.connectionpool.LatencyScoreStrategy;
 import com.netflix.astyanax.connectionpool.TokenRange;
+import com.netflix.astyanax.partitioner.LongTokenPartitioner;
 import com.netflix.astyanax.partitioner.Partitioner;
 
 /**
@@ -49,7 +51,9 @@ import com.netflix.astyanax.partitioner.Partitioner;
  * See the {@link #getPartition(ByteBuffer)} method for details on how the various data structures are consulted for retrieving the comprehensive list of 
  * host connection pools for a row key. <br/> 
  * Note that if the token range token is provided directly, then we can directly consult the tokenPartitionMap. But if we receive a row key, then that is converted 
- * to an integer which is then used to do a bin search over the list of all sorted tokens in the token ring. 
+ * to an integer which is then used to do a bin search over the list of all sorted tokens in the token ring. <br/>
+ * When the partitioner is a {@link LongTokenPartitioner} (e.g. Murmur3) a snapshot of the ring is also kept as a sorted long[] so 
+ * that the row key lookup does not need to allocate a String or BigInteger for the token.
  * </p>
  * 
  * 
@@ -67,6 +71,12 @@ public class TokenPartitionedTopology<CL> implements Topology<CL> {
     private AtomicReference<List<TokenHostConnectionPoolPartition<CL>>> sortedRing
     	= new AtomicReference<List<TokenHostConnectionPoolPartition<CL>>>(new ArrayList<TokenHostConnectionPoolPartition<CL>>());
 
+    /**
+     * Primitive copy of sortedRing used when the partitioner has long tokens.  null if the partitioner 
+     * does not support long tokens or a token in the ring is out of the long range.
+     */
+    private AtomicReference<LongTokenRing<CL>> longTokenRing = new AtomicReference<LongTokenRing<CL>>();
+
     /**
      * Lookup of end token to partition 
      */
@@ -88,6 +98,11 @@ public class TokenPartitionedTopology<CL> implements Topology<CL> {
      */
     private final Partitioner partitioner;
 
+    /**
+     * Same as partitioner if it supports long tokens, otherwise null
+     */
+    private final LongTokenPartitioner longTokenPartitioner;
+
     /**
      * Comparator used to find the partition mapping to a token
      */
@@ -119,9 +134,51 @@ public class TokenPartitionedTopology<CL> implements Topology<CL> {
     public TokenPartitionedTopology(Partitioner partitioner, LatencyScoreStrategy strategy) {
         this.strategy    = strategy;
         this.partitioner = partitioner;
+        this.longTokenPartitioner = (partitioner instanceof LongTokenPartitioner) ? (LongTokenPartitioner)partitioner : null;
         this.allPools    = new TokenHostConnectionPoolPartition<CL>(null, this.strategy);
     }
 
+    /**
+     * Immutable snapshot of the ring for partitioners with long tokens.  tokens[i] is the id of partitions[i].
+     */
+    private static class LongTokenRing<CL> {
+        private final long[] tokens;
+        private final List<TokenHostConnectionPoolPartition<CL>> partitions;
+
+        LongTokenRing(List<TokenHostConnectionPoolPartition<CL>> partitions, long[] tokens) {
+            this.partitions = partitions;
+            this.tokens     = tokens;
+        }
+
+        /**
+         * Same lookup as the binary search over sortedRing, but over a primitive array
+         */
+        TokenHostConnectionPoolPartition<CL> getPartition(long token) {
+            int partitionIndex = Arrays.binarySearch(tokens, token);
+            if (partitionIndex < 0) {
+                partitionIndex = -(partitionIndex + 1);
+            }
+            return partitions.get(partitionIndex % tokens.length);
+        }
+    }
+
+    /**
+     * Create a long token snapshot of the sorted partitions or return null if any token doesn't fit in a long
+     */
+    private LongTokenRing<CL> makeLongTokenRing(List<TokenHostConnectionPoolPartition<CL>> partitions) {
+        if (longTokenPartitioner == null)
+            return null;
+
+        long[] tokens = new long[partitions.size()];
+        for (int i = 0; i < tokens.length; i++) {
+            BigInteger id = partitions.get(i).id();
+            if (id.bitLength() > 63)
+                return null;
+            tokens[i] = id.longValue();
+        }
+        return new LongTokenRing<CL>(partitions, tokens);
+    }
+
     protected TokenHostConnectionPoolPartition<CL> makePartition(BigInteger partition) {
         return new TokenHostConnectionPoolPartition<CL>(partition, strategy);
     }
@@ -186,7 +243,9 @@ public class TokenPartitionedTopology<CL> implements Topology<CL> {
             Collections.sort(partitions, partitionComparator);
             this.allPools.setPools(allPools);
             refresh();
-            this.sortedRing.set(Collections.unmodifiableList(partitions));
+            partitions = Collections.unmodifiableList(partitions);
+            this.longTokenRing.set(makeLongTokenRing(partitions));
+            this.sortedRing.set(partitions);
         }
 
         return didChange;
@@ -221,6 +280,16 @@ public class TokenPartitionedTopology<CL> implements Topology<CL> {
         if (rowkey == null)
             return getAllPools();
         
+        // Fast path for partitioners with long tokens
+        if (longTokenPartitioner != null) {
+            LongTokenRing<CL> ring = this.longTokenRing.get();
+            if (ring != null) {
+                if (ring.tokens.length == 0)
+                    return getAllPools();
+                return ring.getPartition(longTokenPartitioner.getLongTokenForKey(rowkey));
+            }
+        }
+        
         BigInteger token = new BigInteger(partitioner.getTokenForKey(rowkey));
         
         // First, get a copy of the partitions.
@@ -0,0 +1,16 @@
+package com.netflix.astyanax.partitioner;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Partitioner whose tokens fit in a signed long, such as Murmur3.  Token aware routing uses
+ * this to look up the owning partition without converting the token to a String or BigInteger.
+ */
+public interface LongTokenPartitioner extends Partitioner {
+    /**
+     * Return the token for the specified key as a primitive long.  Must be equal to
+     * Long.parseLong(getTokenForKey(key))
+     * @param key
+     */
+    long getLongTokenForKey(ByteBuffer key);
+}
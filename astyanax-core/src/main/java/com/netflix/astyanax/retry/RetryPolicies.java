@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.retry;
+
+/**
+ * Helpers for driving a {@link RetryPolicy} from asynchronous code
+ */
+public final class RetryPolicies {
+    private RetryPolicies() {
+    }
+
+    /**
+     * Ask the policy if a retry is allowed without blocking the calling thread.  
+     * Sleeping policies return their backoff so that the caller can schedule the 
+     * next attempt.  Any other policy is asked through allowRetry().
+     * 
+     * @param retry
+     * @return Time in msec to wait before the next attempt or -1 if no more retries are allowed
+     */
+    public static long nextRetryDelay(RetryPolicy retry) {
+        if (retry instanceof SleepingRetryPolicy) {
+            return ((SleepingRetryPolicy)retry).nextRetryDelay();
+        }
+        return retry.allowRetry() ? 0 : -1;
+    }
+}
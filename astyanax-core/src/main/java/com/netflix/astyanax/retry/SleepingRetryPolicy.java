@@ -34,18 +34,33 @@ public abstract class SleepingRetryPolicy implements RetryPolicy {
     }
 
     public boolean allowRetry() {
+        long sleepTimeMs = nextRetryDelay();
+        if (sleepTimeMs < 0)
+            return false;
+
+        try {
+            Thread.sleep(sleepTimeMs);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Same as allowRetry() but returns the time to wait instead of sleeping, so that
+     * asynchronous callers can schedule the next attempt instead of blocking a thread.
+     * 
+     * @return Time in msec to wait before the next attempt or -1 if no more retries are allowed
+     */
+    public long nextRetryDelay() {
         if (maxAttempts == -1 || attempts < maxAttempts) {
-            try {
-                Thread.sleep(getSleepTimeMs());
-            }
-            catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return false;
-            }
+            long sleepTimeMs = getSleepTimeMs();
             attempts++;
-            return true;
+            return sleepTimeMs;
         }
-        return false;
+        return -1;
     }
 
     public abstract long getSleepTimeMs();
@@ -15,17 +15,17 @@
  ******************************************************************************/
 package com.netflix.astyanax.shallows;
 
-import com.netflix.astyanax.connectionpool.ConnectionPoolMonitor;
 import com.netflix.astyanax.connectionpool.Host;
 import com.netflix.astyanax.connectionpool.HostConnectionPool;
 import com.netflix.astyanax.connectionpool.HostStats;
+import com.netflix.astyanax.connectionpool.SpeculativeReadMonitor;
 
 import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class EmptyConnectionPoolMonitor implements ConnectionPoolMonitor {
+public class EmptyConnectionPoolMonitor implements SpeculativeReadMonitor {
     private static final Logger LOGGER = LoggerFactory.getLogger(EmptyConnectionPoolMonitor.class);
 
     private static EmptyConnectionPoolMonitor instance = new EmptyConnectionPoolMonitor();
@@ -149,6 +149,24 @@ public class EmptyConnectionPoolMonitor implements ConnectionPoolMonitor {
         return 0;
     }
 
+    @Override
+    public void incSpeculativeRead(Host host) {
+    }
+
+    @Override
+    public long getSpeculativeReadCount() {
+        return 0;
+    }
+
+    @Override
+    public void incSpeculativeReadWon(Host host) {
+    }
+
+    @Override
+    public long getSpeculativeReadWonCount() {
+        return 0;
+    }
+
     @Override
     public long getNoHostCount() {
         return 0;
@@ -19,10 +19,10 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.netflix.astyanax.connectionpool.Connection;
 import com.netflix.astyanax.connectionpool.Host;
-import com.netflix.astyanax.connectionpool.HostConnectionPool;
+import com.netflix.astyanax.connectionpool.LatencyTrackingHostConnectionPool;
 import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
 
-public class TestHostConnectionPool implements HostConnectionPool<TestClient> {
+public class TestHostConnectionPool implements LatencyTrackingHostConnectionPool<TestClient> {
 
     private final Host host;
     private AtomicBoolean isShutDown = new AtomicBoolean();
@@ -103,6 +103,16 @@ public class TestHostConnectionPool implements HostConnectionPool<TestClient> {
 
     }
 
+    @Override
+    public long getLatencyEwma() {
+        return 0;
+    }
+
+    @Override
+    public long getLatencyPercentile(double percentile) {
+        return 0;
+    }
+
     @Override
     public boolean closeConnection(Connection<TestClient> connection) {
         return false;
@@ -0,0 +1,178 @@
+package com.netflix.astyanax.connectionpool.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.netflix.astyanax.connectionpool.ConnectionContext;
+import com.netflix.astyanax.connectionpool.Operation;
+import com.netflix.astyanax.connectionpool.OperationFilterFactory;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.connectionpool.exceptions.ThrottledException;
+import com.netflix.astyanax.connectionpool.impl.RateLimitingOperationFilterFactory.Scope;
+import com.netflix.astyanax.test.TestClient;
+import com.netflix.astyanax.test.TestOperation;
+
+public class RateLimitingOperationFilterFactoryTest {
+    private static class CountingOperation extends TestOperation {
+        private final String        keyspace;
+        private final AtomicInteger count = new AtomicInteger();
+
+        CountingOperation(String keyspace) {
+            this.keyspace = keyspace;
+        }
+
+        @Override
+        public String getKeyspace() {
+            return keyspace;
+        }
+
+        @Override
+        public String execute(TestClient client, ConnectionContext state) throws ConnectionException {
+            count.incrementAndGet();
+            return super.execute(client, state);
+        }
+    }
+
+    /**
+     * Runs the operation the way an attempt of the connection pool does
+     */
+    private static String run(Operation<TestClient, String> operation) throws ConnectionException {
+        ((AbstractOperationFilter<TestClient, String>) operation).beforeBorrow();
+        return run(operation);
+    }
+
+    @Test
+    public void testRejectsPastBurst() throws Exception {
+        RateLimitingOperationFilterFactory factory = new RateLimitingOperationFilterFactory(Scope.GLOBAL, 1, 2, 0);
+        CountingOperation target = new CountingOperation(null);
+        Operation<TestClient, String> operation = factory.attachFilter(target);
+
+        Assert.assertEquals("RESULT", run(operation));
+        Assert.assertEquals("RESULT", run(operation));
+        try {
+            run(operation);
+            Assert.fail();
+        }
+        catch (ThrottledException e) {
+        }
+        // The rejected operation never reached the client
+        Assert.assertEquals(2, target.count.get());
+    }
+
+    @Test
+    public void testBlocksUntilPermit() throws Exception {
+        // One permit every 50 ms
+        RateLimitingOperationFilterFactory factory = new RateLimitingOperationFilterFactory(Scope.GLOBAL, 20, 1, 1000);
+        CountingOperation target = new CountingOperation(null);
+        Operation<TestClient, String> operation = factory.attachFilter(target);
+
+        Assert.assertEquals("RESULT", run(operation));
+        long start = System.nanoTime();
+        Assert.assertEquals("RESULT", run(operation));
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(30));
+        Assert.assertEquals(2, target.count.get());
+    }
+
+    @Test
+    public void testTimesOutWaiting() throws Exception {
+        // One permit every 10 seconds, never available within the wait
+        RateLimitingOperationFilterFactory factory = new RateLimitingOperationFilterFactory(Scope.GLOBAL, 0.1, 1, 10);
+        CountingOperation target = new CountingOperation(null);
+        Operation<TestClient, String> operation = factory.attachFilter(target);
+
+        run(operation);
+        try {
+            run(operation);
+            Assert.fail();
+        }
+        catch (ThrottledException e) {
+        }
+        Assert.assertEquals(1, target.count.get());
+    }
+
+    @Test
+    public void testKeyspaceScope() throws Exception {
+        RateLimitingOperationFilterFactory factory = new RateLimitingOperationFilterFactory(Scope.KEYSPACE, 1, 1, 0);
+        Operation<TestClient, String> first  = factory.attachFilter(new CountingOperation("first"));
+        Operation<TestClient, String> second = factory.attachFilter(new CountingOperation("second"));
+
+        run(first);
+        // Each keyspace has a bucket of its own
+        run(second);
+        try {
+            run(first);
+            Assert.fail();
+        }
+        catch (ThrottledException e) {
+        }
+        Assert.assertEquals(0, factory.getLimiter("first").getAvailablePermits());
+    }
+
+    @Test
+    public void testPermitTakenBeforeBorrow() throws Exception {
+        RateLimitingOperationFilterFactory factory = new RateLimitingOperationFilterFactory(Scope.GLOBAL, 0.1, 1, 0);
+        CountingOperation target = new CountingOperation(null);
+        AbstractOperationFilter<TestClient, String> operation =
+                (AbstractOperationFilter<TestClient, String>) factory.attachFilter(target);
+
+        operation.beforeBorrow();
+        Assert.assertEquals(0, factory.getLimiter("<global>").getAvailablePermits());
+        Assert.assertEquals(0, target.count.get());
+
+        // Running on the connection takes no further permit
+        Assert.assertEquals("RESULT", operation.execute(null, null));
+        Assert.assertEquals(1, target.count.get());
+        try {
+            operation.beforeBorrow();
+            Assert.fail();
+        }
+        catch (ThrottledException e) {
+        }
+    }
+
+    @Test
+    public void testPermitTakenThroughFilterList() throws Exception {
+        RateLimitingOperationFilterFactory factory = new RateLimitingOperationFilterFactory(Scope.GLOBAL, 0.1, 1, 0);
+        OperationFilterFactoryList filters = new OperationFilterFactoryList()
+                .addFilterFactory(factory)
+                .addFilterFactory(new OperationFilterFactory() {
+                    @Override
+                    public <R, CL> Operation<R, CL> attachFilter(Operation<R, CL> operation) {
+                        return new AbstractOperationFilter<R, CL>(operation);
+                    }
+                });
+        Operation<TestClient, String> operation = filters.attachFilter(new CountingOperation(null));
+
+        run(operation);
+        Assert.assertEquals(0, factory.getLimiter("<global>").getAvailablePermits());
+        try {
+            run(operation);
+            Assert.fail();
+        }
+        catch (ThrottledException e) {
+        }
+    }
+
+    @Test
+    public void testHostScopeFailsFast() throws Exception {
+        // Would wait 10 seconds for a permit in any other scope
+        RateLimitingOperationFilterFactory factory = new RateLimitingOperationFilterFactory(Scope.HOST, 0.1, 1, 10000);
+        CountingOperation target = new CountingOperation(null);
+        Operation<TestClient, String> operation = factory.attachFilter(target);
+
+        run(operation);
+        long start = System.nanoTime();
+        try {
+            run(operation);
+            Assert.fail();
+        }
+        catch (ThrottledException e) {
+        }
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        Assert.assertEquals(1, target.count.get());
+    }
+}
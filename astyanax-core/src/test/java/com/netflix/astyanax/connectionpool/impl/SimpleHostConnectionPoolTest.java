@@ -13,6 +13,7 @@ import com.netflix.astyanax.connectionpool.Host;
 import com.netflix.astyanax.connectionpool.HostConnectionPool;
 import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
 import com.netflix.astyanax.connectionpool.exceptions.HostDownException;
+import com.netflix.astyanax.connectionpool.exceptions.OperationTimeoutException;
 import com.netflix.astyanax.connectionpool.exceptions.PoolTimeoutException;
 import com.netflix.astyanax.connectionpool.exceptions.TimeoutException;
 import com.netflix.astyanax.shallows.EmptyPartitioner;
@@ -255,6 +256,33 @@ public class SimpleHostConnectionPoolTest {
         Assert.assertEquals(3,     pool.getIdleConnectionCount());
     }
 
+    @Test
+    public void testCoordinatorTimeoutsDoNotMarkHostDown() throws Exception {
+        Host host = new Host("127.0.0.1", TestHostType.OPERATION_TIMEOUT.ordinal());
+
+        ConnectionPoolConfigurationImpl config = createConfig();
+        config.setMaxTimeoutCount(1);
+        config.setBadHostDetector(new SlidingWindowBadHostDetectorImpl(config));
+        CountingConnectionPoolMonitor monitor = new CountingConnectionPoolMonitor();
+        SimpleHostConnectionPool<TestClient> pool = new SimpleHostConnectionPool<TestClient>(
+                host, new TestConnectionFactory(config, monitor), monitor,
+                config, new NoOpListener());
+
+        pool.primeConnections(1);
+        for (int i = 0; i < 5; i++) {
+            Connection<TestClient> connection = pool.borrowConnection(WAIT_TIMEOUT);
+            try {
+                connection.execute(new TestOperation());
+                Assert.fail();
+            } catch (OperationTimeoutException e) {
+            }
+            pool.returnConnection(connection);
+        }
+
+        Assert.assertEquals(false, pool.isReconnecting());
+        Assert.assertEquals(1,     pool.getIdleConnectionCount());
+    }
+
     @Test
     public void testCloseOrReturnConnection() {
         Host host = new Host("127.0.0.1", TestHostType.GOOD_FAST.ordinal());
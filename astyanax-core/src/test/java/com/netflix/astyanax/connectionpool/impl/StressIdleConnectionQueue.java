@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.connectionpool.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.astyanax.connectionpool.Connection;
+import com.netflix.astyanax.connectionpool.Host;
+import com.netflix.astyanax.connectionpool.HostConnectionPool;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.shallows.EmptyPartitioner;
+import com.netflix.astyanax.test.TestClient;
+import com.netflix.astyanax.test.TestConnectionFactory;
+import com.netflix.astyanax.test.TestHostType;
+
+/**
+ * Borrow/return throughput of {@link SimpleHostConnectionPool} for each {@link IdleConnectionQueueType}
+ * with 8 to 64 client threads sharing one host pool.  Run from the command line, optionally passing
+ * the duration in seconds of each run.
+ */
+public class StressIdleConnectionQueue {
+    private static final Logger LOG = LoggerFactory.getLogger(StressIdleConnectionQueue.class);
+
+    private static final int[] THREAD_COUNTS    = {8, 16, 32, 64};
+    private static final int   CONNS_PER_HOST   = 16;
+    private static final int   BORROW_TIMEOUT   = 1000;
+
+    public static class NoOpListener implements SimpleHostConnectionPool.Listener<TestClient> {
+        @Override
+        public void onHostDown(HostConnectionPool<TestClient> pool) {
+        }
+
+        @Override
+        public void onHostUp(HostConnectionPool<TestClient> pool) {
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        long durationMillis = TimeUnit.SECONDS.toMillis(args.length > 0 ? Integer.parseInt(args[0]) : 5);
+
+        for (int numThreads : THREAD_COUNTS) {
+            for (IdleConnectionQueueType type : IdleConnectionQueueType.values()) {
+                // Warm up then measure
+                run(type, numThreads, durationMillis / 2);
+                long ops = run(type, numThreads, durationMillis);
+                LOG.info(String.format("%-14s threads=%-3d ops/sec=%d",
+                        type, numThreads, ops * 1000 / durationMillis));
+            }
+        }
+    }
+
+    private static long run(IdleConnectionQueueType type, int numThreads, final long durationMillis) throws Exception {
+        ConnectionPoolConfigurationImpl config = new ConnectionPoolConfigurationImpl("cluster_keyspace");
+        config.setMaxConnsPerHost(CONNS_PER_HOST);
+        config.setIdleConnectionQueueType(type);
+        config.setPartitioner(new EmptyPartitioner());
+        config.initialize();
+
+        CountingConnectionPoolMonitor monitor = new CountingConnectionPoolMonitor();
+        Host host = new Host("127.0.0.1", TestHostType.GOOD_IMMEDIATE.ordinal());
+        final SimpleHostConnectionPool<TestClient> pool = new SimpleHostConnectionPool<TestClient>(
+                host, new TestConnectionFactory(config, monitor), monitor, config, new NoOpListener());
+        pool.primeConnections(CONNS_PER_HOST);
+
+        final AtomicBoolean  done      = new AtomicBoolean(false);
+        final AtomicLong     total     = new AtomicLong();
+        final CountDownLatch start     = new CountDownLatch(1);
+        final CountDownLatch finished  = new CountDownLatch(numThreads);
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        for (int i = 0; i < numThreads; i++) {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    long count = 0;
+                    try {
+                        start.await();
+                        while (!done.get()) {
+                            Connection<TestClient> conn = null;
+                            try {
+                                conn = pool.borrowConnection(BORROW_TIMEOUT);
+                                count++;
+                            }
+                            catch (ConnectionException e) {
+                            }
+                            finally {
+                                if (conn != null)
+                                    pool.returnConnection(conn);
+                            }
+                        }
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    finally {
+                        total.addAndGet(count);
+                        finished.countDown();
+                    }
+                }
+            });
+        }
+
+        start.countDown();
+        Thread.sleep(durationMillis);
+        done.set(true);
+        finished.await();
+        executor.shutdown();
+
+        LOG.debug(pool.toString());
+        pool.shutdown();
+        config.shutdown();
+        return total.get();
+    }
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.connectionpool.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.astyanax.connectionpool.RateLimiter;
+
+/**
+ * Throughput of {@link RateLimiter#check()} with 64 threads hammering one limiter, and how many of the calls
+ * were let through compared to the configured rate.  Run from the command line, optionally passing the duration
+ * in seconds of each run.
+ */
+public class StressRateLimiter {
+    private static final Logger LOG = LoggerFactory.getLogger(StressRateLimiter.class);
+
+    private static final int    NUM_THREADS = 64;
+    private static final int    RATE        = 100000;
+
+    private static interface LimiterFactory {
+        RateLimiter create();
+    }
+
+    public static void main(String[] args) throws Exception {
+        long durationMillis = TimeUnit.SECONDS.toMillis(args.length > 0 ? Integer.parseInt(args[0]) : 5);
+
+        final ConnectionPoolConfigurationImpl config = new ConnectionPoolConfigurationImpl("cluster_keyspace");
+        config.setConnectionLimiterMaxPendingCount(RATE / 10);
+        config.setConnectionLimiterWindowSize(100);
+
+        LimiterFactory simple = new LimiterFactory() {
+            @Override
+            public RateLimiter create() {
+                return new SimpleRateLimiterImpl(config);
+            }
+        };
+        LimiterFactory tokenBucket = new LimiterFactory() {
+            @Override
+            public RateLimiter create() {
+                return new TokenBucketRateLimiterImpl(RATE, RATE / 10);
+            }
+        };
+
+        for (int i = 0; i < 2; i++) {
+            // Warm up then measure
+            run("SIMPLE", simple, durationMillis / 2);
+            run("TOKEN_BUCKET", tokenBucket, durationMillis / 2);
+        }
+        run("SIMPLE", simple, durationMillis);
+        run("TOKEN_BUCKET", tokenBucket, durationMillis);
+    }
+
+    private static void run(String name, LimiterFactory factory, final long durationMillis) throws Exception {
+        final RateLimiter limiter = factory.create();
+        final AtomicBoolean done     = new AtomicBoolean();
+        final AtomicLong    calls    = new AtomicLong();
+        final AtomicLong    allowed  = new AtomicLong();
+        final CountDownLatch start   = new CountDownLatch(1);
+        final CountDownLatch stopped = new CountDownLatch(NUM_THREADS);
+
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+        for (int i = 0; i < NUM_THREADS; i++) {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    long localCalls   = 0;
+                    long localAllowed = 0;
+                    try {
+                        start.await();
+                        while (!done.get()) {
+                            localCalls++;
+                            if (limiter.check())
+                                localAllowed++;
+                        }
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    finally {
+                        calls.addAndGet(localCalls);
+                        allowed.addAndGet(localAllowed);
+                        stopped.countDown();
+                    }
+                }
+            });
+        }
+
+        start.countDown();
+        Thread.sleep(durationMillis);
+        done.set(true);
+        stopped.await();
+        executor.shutdown();
+
+        LOG.info(String.format("%-12s threads=%d checks/sec=%d allowed/sec=%d (limit %d)",
+                name, NUM_THREADS, calls.get() * 1000 / durationMillis, allowed.get() * 1000 / durationMillis, RATE));
+    }
+}
@@ -0,0 +1,114 @@
+package com.netflix.astyanax.connectionpool.impl;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class StripedConnectionStackTest {
+
+    @Test
+    public void testOfferPoll() {
+        StripedConnectionStack<Integer> stack = new StripedConnectionStack<Integer>(4);
+        Assert.assertNull(stack.poll());
+        Assert.assertEquals(0, stack.size());
+
+        stack.offer(1);
+        Assert.assertEquals(1, stack.size());
+        Assert.assertEquals(Integer.valueOf(1), stack.poll());
+        Assert.assertNull(stack.poll());
+    }
+
+    @Test
+    public void testOverflow() {
+        StripedConnectionStack<Integer> stack = new StripedConnectionStack<Integer>(2);
+        for (int i = 0; i < 100; i++) {
+            stack.offer(i);
+        }
+        Assert.assertEquals(100, stack.size());
+
+        List<Integer> drained = Lists.newArrayList();
+        Assert.assertEquals(100, stack.drainTo(drained));
+        Assert.assertEquals(0, stack.size());
+        Assert.assertEquals(100, drained.size());
+    }
+
+    @Test
+    public void testPollTimeout() throws Exception {
+        StripedConnectionStack<Integer> stack = new StripedConnectionStack<Integer>(2);
+        long startTime = System.currentTimeMillis();
+        Assert.assertNull(stack.poll(50, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(System.currentTimeMillis() - startTime >= 40);
+    }
+
+    @Test
+    public void testWaiterIsSignaled() throws Exception {
+        final StripedConnectionStack<Integer> stack = new StripedConnectionStack<Integer>(2);
+        final CountDownLatch waiting = new CountDownLatch(1);
+        final AtomicInteger result = new AtomicInteger();
+        Thread thread = new Thread() {
+            public void run() {
+                waiting.countDown();
+                try {
+                    Integer value = stack.poll(5, TimeUnit.SECONDS);
+                    if (value != null)
+                        result.set(value);
+                } catch (InterruptedException e) {
+                }
+            }
+        };
+        thread.start();
+        waiting.await();
+        Thread.sleep(50);
+        stack.offer(42);
+        thread.join(5000);
+        Assert.assertEquals(42, result.get());
+    }
+
+    @Test
+    public void testConcurrentBorrowReturn() throws Exception {
+        final int elements = 4;
+        final int threads  = 16;
+        final StripedConnectionStack<Integer> stack = new StripedConnectionStack<Integer>(elements);
+        for (int i = 0; i < elements; i++) {
+            stack.offer(i);
+        }
+
+        final AtomicInteger inUse   = new AtomicInteger();
+        final AtomicInteger maxUsed = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        try {
+                            Integer value = stack.poll(1, TimeUnit.SECONDS);
+                            if (value == null)
+                                continue;
+                            int current = inUse.incrementAndGet();
+                            if (current > maxUsed.get())
+                                maxUsed.set(current);
+                            inUse.decrementAndGet();
+                            stack.offer(value);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        Assert.assertEquals(elements, stack.size());
+        Assert.assertTrue(maxUsed.get() <= elements);
+    }
+}
@@ -0,0 +1,66 @@
+package com.netflix.astyanax.util;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.netflix.astyanax.connectionpool.impl.TokenBucketRateLimiterImpl;
+
+public class TokenBucketRateLimiterTest {
+    @Test
+    public void testBurstThenRefill() {
+        // 10 per second, i.e. one every 100 ms
+        TokenBucketRateLimiterImpl limit = new TokenBucketRateLimiterImpl(10, 5);
+
+        long time = 1000;
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(limit.check(time));
+        }
+        Assert.assertFalse(limit.check(time));
+        Assert.assertFalse(limit.check(time + 99));
+        Assert.assertTrue(limit.check(time + 100));
+        Assert.assertFalse(limit.check(time + 100));
+
+        // Refills up to the burst size only
+        time += 10000;
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(limit.check(time));
+        }
+        Assert.assertFalse(limit.check(time));
+    }
+
+    @Test
+    public void testSteadyRate() {
+        TokenBucketRateLimiterImpl limit = new TokenBucketRateLimiterImpl(100, 1);
+
+        int allowed = 0;
+        for (long time = 0; time < 1000; time++) {
+            if (limit.check(time))
+                allowed++;
+        }
+        Assert.assertEquals(100, allowed);
+    }
+
+    @Test
+    public void testTryAcquireWaits() throws Exception {
+        TokenBucketRateLimiterImpl limit = new TokenBucketRateLimiterImpl(20, 1);
+        Assert.assertTrue(limit.tryAcquire(0, TimeUnit.MILLISECONDS));
+        Assert.assertFalse(limit.tryAcquire(0, TimeUnit.MILLISECONDS));
+        Assert.assertFalse(limit.tryAcquire(10, TimeUnit.MILLISECONDS));
+
+        long start = System.nanoTime();
+        Assert.assertTrue(limit.tryAcquire(1, TimeUnit.SECONDS));
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(30));
+    }
+
+    @Test
+    public void testAvailablePermits() {
+        TokenBucketRateLimiterImpl limit = new TokenBucketRateLimiterImpl(1, 5);
+        Assert.assertEquals(5, limit.getAvailablePermits());
+        Assert.assertTrue(limit.check());
+        Assert.assertTrue(limit.check());
+        Assert.assertEquals(3, limit.getAvailablePermits());
+    }
+}
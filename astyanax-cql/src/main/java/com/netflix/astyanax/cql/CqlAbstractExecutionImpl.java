@@ -1,13 +1,21 @@
 package com.netflix.astyanax.cql;
 
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.datastax.driver.core.ResultSet;
-import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Session;
 import com.datastax.driver.core.Statement;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.netflix.astyanax.CassandraOperationCategory;
 import com.netflix.astyanax.CassandraOperationTracer;
 import com.netflix.astyanax.CassandraOperationType;
@@ -20,10 +28,10 @@ import com.netflix.astyanax.connectionpool.exceptions.NotFoundException;
 import com.netflix.astyanax.connectionpool.exceptions.OperationException;
 import com.netflix.astyanax.cql.CqlKeyspaceImpl.KeyspaceContext;
 import com.netflix.astyanax.cql.retrypolicies.JavaDriverBasedRetryPolicy;
-import com.netflix.astyanax.cql.util.AsyncOperationResult;
 import com.netflix.astyanax.cql.util.CFQueryContext;
 import com.netflix.astyanax.model.ColumnFamily;
 import com.netflix.astyanax.model.ConsistencyLevel;
+import com.netflix.astyanax.retry.RetryPolicies;
 import com.netflix.astyanax.retry.RetryPolicy;
 
 /**
@@ -40,6 +48,10 @@ public abstract class CqlAbstractExecutionImpl<R> implements Execution<R> {
 	
 	private static final Logger LOG = LoggerFactory.getLogger(CqlAbstractExecutionImpl.class);
 	
+	// Timer for re-issuing failed async operations.  Only schedules, the requests themselves are non blocking
+	private static final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactoryBuilder().setDaemon(true).setNameFormat("AstyanaxCqlAsyncRetry-%d").build());
+	
 	// The session for executing the query
 	protected final Session session;
 	// The keyspace being operated on
@@ -104,15 +116,144 @@ public abstract class CqlAbstractExecutionImpl<R> implements Execution<R> {
 
 	
 	private OperationResult<R> executeOp() throws ConnectionException {
-		CassandraOperationTracer tracer = null;
+		CassandraOperationTracer tracer = newTracer();
+		
+		tracer.start();
+		try {
+			Statement query = prepareQuery();
+			
+	        ResultSet resultSet = session.execute(query);
+	        R result = parseResultSet(resultSet);
+			OperationResult<R> opResult = new CqlOperationResultImpl<R>(resultSet, result);
+			opResult.setAttemptsCount(retry.getAttemptCount());
+			tracer.success();
+			return opResult;
+		} catch (ConnectionException ex) {
+			tracer.failure(ex);
+			throw ex;
+		} catch (RuntimeException ex) {
+			tracer.failure(new OperationException(ex));
+			throw ex;
+		}
+	}
+	
+	/**
+	 * Non blocking version of {@link #execute()}.  Failed attempts are re-issued according to a copy of the 
+	 * {@link RetryPolicy}, with the backoff scheduled on a timer thread instead of sleeping.  The returned
+	 * future is completed from the driver's callback thread.
+	 */
+	@Override
+	public ListenableFuture<OperationResult<R>> executeAsync() throws ConnectionException {
+		SettableFuture<OperationResult<R>> future = SettableFuture.create();
+		// Attempts of concurrent async executions must not share the policy's state.  Policies 
+		// that delegate to the java driver have no state and don't duplicate.
+		RetryPolicy asyncRetry = retry.duplicate();
+		if (asyncRetry == null) {
+			asyncRetry = retry;
+		}
+		asyncRetry.begin();
+		executeOpAsync(asyncRetry, future);
+		return future;
+	}
+	
+	private void executeOpAsync(final RetryPolicy asyncRetry, final SettableFuture<OperationResult<R>> future) {
+		final CassandraOperationTracer tracer = newTracer();
+		tracer.start();
+		
+		ListenableFuture<ResultSet> rsFuture;
+		try {
+			rsFuture = executeQueryAsync(prepareQuery());
+		} catch (RuntimeException ex) {
+			OperationException oe = new OperationException(ex);
+			tracer.failure(oe);
+			retryAsync(asyncRetry, future, oe);
+			return;
+		}
+		
+		Futures.addCallback(rsFuture, new FutureCallback<ResultSet>() {
+			@Override
+			public void onSuccess(ResultSet resultSet) {
+				OperationResult<R> opResult;
+				try {
+					R result = parseResultSet(resultSet);
+					opResult = new CqlOperationResultImpl<R>(resultSet, result);
+					opResult.setAttemptsCount(asyncRetry.getAttemptCount());
+				} catch (ConnectionException ex) {
+					tracer.failure(ex);
+					future.setException(ex);
+					return;
+				} catch (RuntimeException ex) {
+					OperationException oe = new OperationException(ex);
+					tracer.failure(oe);
+					future.setException(oe);
+					return;
+				}
+				tracer.success();
+				future.set(opResult);
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				if (t instanceof ConnectionException) {
+					ConnectionException ce = (ConnectionException) t;
+					tracer.failure(ce);
+					if (ce instanceof IsRetryableException) {
+						retryAsync(asyncRetry, future, ce);
+					} else {
+						future.setException(ce);
+					}
+				} else {
+					OperationException oe = new OperationException(t);
+					tracer.failure(oe);
+					retryAsync(asyncRetry, future, oe);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Same retry rules as {@link #execute()}: driver errors and retryable exceptions are re-issued for as long 
+	 * as the retry policy allows.  The next attempt always runs on the timer thread so that the driver's I/O 
+	 * thread is never used to send a request.
+	 */
+	private void retryAsync(final RetryPolicy asyncRetry, final SettableFuture<OperationResult<R>> future, ConnectionException lastException) {
+		long delay = RetryPolicies.nextRetryDelay(asyncRetry);
+		if (delay < 0) {
+			future.setException(lastException);
+			return;
+		}
 		
+		try {
+			retryScheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					executeOpAsync(asyncRetry, future);
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException ex) {
+			future.setException(lastException);
+		}
+	}
+	
+	/**
+	 * Send the query without waiting for the result
+	 */
+	ListenableFuture<ResultSet> executeQueryAsync(Statement query) {
+		return session.executeAsync(query);
+	}
+	
+	private CassandraOperationTracer newTracer() {
 		if (cf != null) {
-			tracer = tracerFactory.newTracer(getOperationType(), cf);
+			return tracerFactory.newTracer(getOperationType(), cf);
 		} else {
-			tracer = tracerFactory.newTracer(getOperationType());
+			return tracerFactory.newTracer(getOperationType());
 		}
-		
-		tracer.start();
+	}
+	
+	/**
+	 * Get the query for this operation and apply the consistency level and driver retry policy to it
+	 */
+	private Statement prepareQuery() {
 		Statement query = getQuery();
 		
 		if (LOG.isDebugEnabled()) {
@@ -127,42 +268,7 @@ public abstract class CqlAbstractExecutionImpl<R> implements Execution<R> {
         	JavaDriverBasedRetryPolicy jdRetryPolicy = (JavaDriverBasedRetryPolicy) retry;
         	query.setRetryPolicy(jdRetryPolicy.getJDRetryPolicy());
         }
-
-        ResultSet resultSet = session.execute(query);
-        R result = parseResultSet(resultSet);
-		OperationResult<R> opResult = new CqlOperationResultImpl<R>(resultSet, result);
-		opResult.setAttemptsCount(retry.getAttemptCount());
-		tracer.success();
-		return opResult;
-	}
-	
-	@Override
-	public ListenableFuture<OperationResult<R>> executeAsync() throws ConnectionException {
-		final CassandraOperationTracer tracer = tracerFactory.newTracer(getOperationType());
-		tracer.start();
-		
-		Statement query = getQuery();
-		
-		if (LOG.isDebugEnabled()) {
-			LOG.debug("Query: " + query);
-		}
-		
-		ResultSetFuture rsFuture = session.executeAsync(query);
-		return new AsyncOperationResult<R>(rsFuture) {
-			@Override
-			public OperationResult<R> getOperationResult(ResultSet resultSet) {
-				R result = null;
-				try {
-					result = parseResultSet(resultSet);
-				} catch (NotFoundException e) {
-					e.printStackTrace();
-				}
-				tracer.success();
-				OperationResult<R> opResult = new CqlOperationResultImpl<R>(resultSet, result);
-				opResult.setAttemptsCount(retry.getAttemptCount());
-				return opResult;
-			}
-		};
+        return query;
 	}
 	
 	private RetryPolicy getRetryPolicy(RetryPolicy policy) {
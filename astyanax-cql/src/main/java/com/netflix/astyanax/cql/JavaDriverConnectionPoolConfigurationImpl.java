@@ -14,6 +14,7 @@ import com.netflix.astyanax.connectionpool.OperationFilterFactory;
 import com.netflix.astyanax.connectionpool.RetryBackoffStrategy;
 import com.netflix.astyanax.connectionpool.SSLConnectionContext;
 import com.netflix.astyanax.connectionpool.impl.HostSelectorStrategy;
+import com.netflix.astyanax.connectionpool.impl.IdleConnectionQueueType;
 import com.netflix.astyanax.partitioner.Partitioner;
 
 /**
@@ -94,6 +95,29 @@ public class JavaDriverConnectionPoolConfigurationImpl implements ConnectionPool
 		return null;
 	}
 
+	/**
+	 * The java driver manages its own connections, this only reports the default for callers that switch on it
+	 */
+	@Override
+	public IdleConnectionQueueType getIdleConnectionQueueType() {
+		return IdleConnectionQueueType.LINKED_QUEUE;
+	}
+
+	@Override
+	public float getSpeculativeReadPercentile() {
+		return 0;
+	}
+
+	@Override
+	public float getMaxSpeculativeReadRatio() {
+		return 0;
+	}
+
+	@Override
+	public int getMinSpeculativeReadDelay() {
+		return 0;
+	}
+
 	@Override
 	public String getSeeds() {
 		return null;
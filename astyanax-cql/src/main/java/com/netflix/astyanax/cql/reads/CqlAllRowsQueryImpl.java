@@ -7,19 +7,13 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.netflix.astyanax.ExceptionCallback;
 import com.netflix.astyanax.Keyspace;
 import com.netflix.astyanax.RowCallback;
@@ -46,6 +40,8 @@ import com.netflix.astyanax.query.CheckpointManager;
 import com.netflix.astyanax.query.ColumnFamilyQuery;
 import com.netflix.astyanax.query.RowSliceQuery;
 import com.netflix.astyanax.shallows.EmptyCheckpointManager;
+import com.netflix.astyanax.util.ScanProgress;
+import com.netflix.astyanax.util.TokenRangeScanner;
 
 /**
  * Impl for {@link AllRowsQuery} that uses the java driver underneath. 
@@ -69,7 +65,11 @@ public class CqlAllRowsQueryImpl<K,C> implements AllRowsQuery<K,C> {
     
     private    Integer                 rowLimit = DEFAULT_PAGE_SIZE;
     private    Integer             concurrencyLevel;   // Default to null will force ring describe
-    private    ExecutorService     executor;
+    private    TokenRangeScanner   scanner;
+    private    int                 maxInFlightPages;
+    private    int                 minPageSize;
+    private    int                 maxPageSize;
+    private    volatile TokenRangeScanner.Scan scan;
     private    CheckpointManager   checkpointManager = new EmptyCheckpointManager();
     private    RowCallback<K, C>   rowCallback;
     private    boolean             repeatLastToken;
@@ -77,7 +77,6 @@ public class CqlAllRowsQueryImpl<K,C> implements AllRowsQuery<K,C> {
     private    String              startToken;
     private    String              endToken;
     private    Boolean             includeEmptyRows;  // Default to null will discard tombstones
-    private    List<Future<Boolean>> futures = Lists.newArrayList();
     private    AtomicBoolean       cancelling = new AtomicBoolean(false);
     private    Partitioner         partitioner = DEFAULT_PARTITIONER;
     private    ConsistencyLevel	consistencyLevel;
@@ -189,6 +188,31 @@ public class CqlAllRowsQueryImpl<K,C> implements AllRowsQuery<K,C> {
 		return this;
 	}
 
+	@Override
+	public AllRowsQuery<K, C> withScanner(TokenRangeScanner scanner) {
+		this.scanner = scanner;
+		return this;
+	}
+
+	@Override
+	public AllRowsQuery<K, C> setMaxInFlightPages(int maxInFlightPages) {
+		this.maxInFlightPages = maxInFlightPages;
+		return this;
+	}
+
+	@Override
+	public AllRowsQuery<K, C> setAdaptivePageSize(int minPageSize, int maxPageSize) {
+		this.minPageSize = minPageSize;
+		this.maxPageSize = maxPageSize;
+		return this;
+	}
+
+	@Override
+	public ScanProgress getProgress() {
+		TokenRangeScanner.Scan scan = this.scan;
+		return scan != null ? scan.getProgress() : null;
+	}
+
 	@Override
 	public void executeWithCallback(RowCallback<K, C> callback) throws ConnectionException {
 		this.rowCallback = callback;
@@ -251,7 +275,9 @@ public class CqlAllRowsQueryImpl<K,C> implements AllRowsQuery<K,C> {
 	private Boolean executeTasks() throws ConnectionException {
         error.set(null);
         
-        List<Callable<Boolean>> subtasks = Lists.newArrayList();
+        final TokenRangeScanner rangeScanner = newScanner();
+        final TokenRangeScanner.Scan scan = newScan(rangeScanner);
+        this.scan = scan;
         
         // We are iterating the entire ring using an arbitrary number of threads
         if (this.concurrencyLevel != null || startToken != null || endToken != null) {
@@ -262,7 +288,8 @@ public class CqlAllRowsQueryImpl<K,C> implements AllRowsQuery<K,C> {
                     this.concurrencyLevel == null ? 1 : this.concurrencyLevel);
             
             for (TokenRange range : tokens) {
-                subtasks.add(makeTokenRangeTask(range.getStartToken(), range.getEndToken()));
+                scan.addRange(range.getStartToken(), range.getEndToken(),
+                        makeTokenRangeReader(range.getStartToken(), range.getEndToken()));
             }
         }
         // We are iterating through each token range
@@ -270,133 +297,137 @@ public class CqlAllRowsQueryImpl<K,C> implements AllRowsQuery<K,C> {
             List<TokenRange> ranges = keyspace.describeRing(null, null);
             for (TokenRange range : ranges) {
                 if (range.getStartToken().equals(range.getEndToken())) {
-                    subtasks.add(makeTokenRangeTask(range.getStartToken(), range.getEndToken()));
+                    scan.addRange(range.getStartToken(), range.getEndToken(),
+                        makeTokenRangeReader(range.getStartToken(), range.getEndToken()));
                 } else {
-                    subtasks.add(makeTokenRangeTask(partitioner.getTokenMinusOne(range.getStartToken()), range.getEndToken()));
+                    scan.addRange(partitioner.getTokenMinusOne(range.getStartToken()), range.getEndToken(),
+                            makeTokenRangeReader(partitioner.getTokenMinusOne(range.getStartToken()), range.getEndToken()));
                 }
             }
         }
         
         try {
-            // Use a local executor
-            if (executor == null) {
-                ExecutorService localExecutor = Executors
-                        .newFixedThreadPool(subtasks.size(),
-                            new ThreadFactoryBuilder().setDaemon(true)
-                                .setNameFormat("AstyanaxAllRowsQuery-%d")
-                                .build());
-                
-                try {
-                	futures.addAll(startTasks(localExecutor, subtasks));
-                    return waitForTasksToFinish();
-                }
-                finally {
-                    localExecutor.shutdownNow();
-                }
+            if (scan.execute()) {
+                return true;
             }
-            // Use an externally provided executor
-            else {
-                futures.addAll(startTasks(executor, subtasks));
-                return waitForTasksToFinish();
+            
+            List<Exception> errors = scan.getErrors();
+            if (!errors.isEmpty()) {
+                error.compareAndSet(null, errors.get(0));
+                throw new RuntimeException(error.get());
             }
+            return false;
         }
-        catch (Exception e) {
+        catch (InterruptedException e) {
             error.compareAndSet(null, e);
             LOG.warn("AllRowsReader terminated. " + e.getMessage(), e);
             cancel();
             
             throw new RuntimeException(error.get());
         }
+        finally {
+            if (rangeScanner != scanner) {
+                rangeScanner.shutdown();
+            }
+        }
     }
 
+    private TokenRangeScanner newScanner() {
+        if (scanner != null) {
+            return scanner;
+        }
+        return concurrencyLevel != null 
+                ? TokenRangeScanner.forConcurrencyLevel(concurrencyLevel) 
+                : TokenRangeScanner.getShared();
+    }
 
-    private Callable<Boolean> makeTokenRangeTask(final String startToken, final String endToken) {
-        return new Callable<Boolean>() {
+    private TokenRangeScanner.Scan newScan(TokenRangeScanner rangeScanner) {
+        TokenRangeScanner.Scan scan = rangeScanner.newScan()
+                .withMaxInFlightPages(maxInFlightPages);
+        if (minPageSize > 0 && maxPageSize > 0) {
+            scan.withAdaptivePageSize(rowLimit, minPageSize, maxPageSize);
+        }
+        else {
+            scan.withPageSize(rowLimit);
+        }
+        return scan;
+    }
+
+    private TokenRangeScanner.PageReader makeTokenRangeReader(final String startToken, final String endToken) {
+        return new TokenRangeScanner.PageReader() {
+            private String currentToken;
+            
             @Override
-            public Boolean call() {
+            public boolean readPage(ScanProgress.RangeProgress progress) throws Exception {
                 try {
-                    String currentToken;
-                    try {
-                        currentToken = checkpointManager.getCheckpoint(startToken);
-                        if (currentToken == null) {
-                            currentToken = startToken;
-                        }
-                        else if (currentToken.equals(endToken)) {
-                            return true;
+                    if (currentToken == null) {
+                        try {
+                            currentToken = checkpointManager.getCheckpoint(startToken);
+                            if (currentToken == null) {
+                                currentToken = startToken;
+                            }
+                            else if (currentToken.equals(endToken)) {
+                                return false;
+                            }
+                        } catch (Exception e) {
+                            error.compareAndSet(null, e);
+                            LOG.error("Failed to get checkpoint for startToken " + startToken, e);
+                            cancel();
+                            throw new RuntimeException("Failed to get checkpoint for startToken " + startToken, e);
                         }
-                    } catch (Exception e) {
-                        error.compareAndSet(null, e);
-                        LOG.error("Failed to get checkpoint for startToken " + startToken, e);
+                    }
+                    
+                    if (cancelling.get()) {
                         cancel();
-                        throw new RuntimeException("Failed to get checkpoint for startToken " + startToken, e);
+                        return false;
                     }
                     
-                    int localPageSize = rowLimit;
-                    int rowsToSkip = 0;
-                    while (!cancelling.get()) {
-                        RowSliceQuery<K, C> query = prepareQuery().getKeyRange(null, null, currentToken, endToken, -1);
-                        
-                        if (columnSlice != null)
-                            query.withColumnSlice(columnSlice);
-                        
-                        Rows<K, C> rows = query.execute().getResult();
-                        if (!rows.isEmpty()) {
-                           try {
-                                if (rowCallback != null) {
-                                    try { 
-                                    	rowCallback.success(rows);
-                                    } catch (Exception e) {
-                                    	LOG.error("Failed to process rows", e);
-                                        cancel();
-                                        return false;
-                                    }
-                                } else {
-                                	LOG.error("Row function is empty");
+                    // The row range is read as a single page, paging is left to the driver
+                    RowSliceQuery<K, C> query = prepareQuery().getKeyRange(null, null, currentToken, endToken, -1);
+                    
+                    if (columnSlice != null)
+                        query.withColumnSlice(columnSlice);
+                    
+                    Rows<K, C> rows = query.execute().getResult();
+                    progress.pageFetched(rows.size(), TokenRangeScanner.estimateSize(rows));
+                    if (!rows.isEmpty()) {
+                        try {
+                            if (rowCallback != null) {
+                                try { 
+                                	rowCallback.success(rows);
+                                } catch (Exception e) {
+                                	LOG.error("Failed to process rows", e);
+                                    cancel();
+                                    return false;
                                 }
-                            } catch (Exception e) {
-                                error.compareAndSet(null, e);
-                                LOG.warn(e.getMessage(), e);
-                                cancel();
-                                throw new RuntimeException("Error processing row", e);
+                            } else {
+                            	LOG.error("Row function is empty");
                             }
-                                
-                            // Get the next block
-                            if (rows.size() == rowLimit) {
-                                Row<K, C> lastRow = rows.getRowByIndex(rows.size() - 1);
-                                String lastToken = partitioner.getTokenForKey(lastRow.getRawKey());
-                                checkpointManager.trackCheckpoint(startToken, currentToken);
-                                if (repeatLastToken) {
-                                    // Start token is non-inclusive
-                                    currentToken = partitioner.getTokenMinusOne(lastToken);
-                                    
-                                 // Determine the number of rows to skip in the response.  Since we are repeating the
-                                 // last token it's possible (although unlikely) that there is more than one key mapping to the
-                                 // token.  We therefore count backwards the number of keys that have the same token and skip 
-                                 // that number in the next iteration of the loop.  If, for example, 3 keys matched but only 2 were
-                                    // returned in this iteration then the first 2 keys will be skipped from the next response.
-                                    rowsToSkip = 1;
-                                    for (int i = rows.size() - 2; i >= 0; i--, rowsToSkip++) {
-                                        if (!lastToken.equals(partitioner.getTokenForKey(rows.getRowByIndex(i).getRawKey()))) {
-                                            break;
-                                        }
-                                    }
-
-                                    if (rowsToSkip == localPageSize) {
-                                        localPageSize++;
-                                    }
-                                } else {
-                                    currentToken = lastToken;
-                                }
-                                
-                                continue;
+                        } catch (Exception e) {
+                            error.compareAndSet(null, e);
+                            LOG.warn(e.getMessage(), e);
+                            cancel();
+                            throw new RuntimeException("Error processing row", e);
+                        }
+                            
+                        // Get the next block
+                        if (rows.size() == rowLimit) {
+                            Row<K, C> lastRow = rows.getRowByIndex(rows.size() - 1);
+                            String lastToken = partitioner.getTokenForKey(lastRow.getRawKey());
+                            checkpointManager.trackCheckpoint(startToken, currentToken);
+                            if (repeatLastToken) {
+                                // Start token is non-inclusive
+                                currentToken = partitioner.getTokenMinusOne(lastToken);
+                            } else {
+                                currentToken = lastToken;
                             }
+                            progress.setCurrentToken(currentToken);
+                            return true;
                         }
-                        
-                        // We're done!
-                        checkpointManager.trackCheckpoint(startToken, endToken);
-                        return true;
                     }
-                    cancel();
+                    
+                    // We're done!
+                    checkpointManager.trackCheckpoint(startToken, endToken);
                     return false;
                 } catch (Exception e) {
                     error.compareAndSet(null, e);
@@ -407,46 +438,6 @@ public class CqlAllRowsQueryImpl<K,C> implements AllRowsQuery<K,C> {
             }
         };
     }
-
-
-    /**
-     * Submit all the callables to the executor by synchronize their execution so they all start
-     * AFTER the have all been submitted.
-     * @param executor
-     * @param callables
-     * @return
-     */
-    private List<Future<Boolean>> startTasks(ExecutorService executor, List<Callable<Boolean>> callables) {
-        List<Future<Boolean>> tasks = Lists.newArrayList();
-        for (Callable<Boolean> callable : callables) {
-            tasks.add(executor.submit(callable));
-        }
-        return tasks;
-    }
-    
-    /**
-     * Wait for all tasks to finish.
-     * 
-     * @param futures
-     * @return true if all tasks returned true or false otherwise.  
-     */
-    private boolean waitForTasksToFinish() throws Exception {
-        for (Future<Boolean> future : futures) {
-            try {
-                if (!future.get()) {
-                    cancel();
-                    return false;
-                }
-            } catch (Exception e) {
-                error.compareAndSet(null, e);
-                cancel();
-                throw e;
-            }
-        }
-        return true;
-    }
-    
-
     
     private ColumnFamilyQuery<K, C> prepareQuery() {
     	ColumnFamilyQuery<K, C> query = keyspace.prepareQuery(columnFamily);
@@ -462,5 +453,8 @@ public class CqlAllRowsQueryImpl<K,C> implements AllRowsQuery<K,C> {
      */
     public synchronized void cancel() {
         cancelling.compareAndSet(false, true);
+        if (scan != null) {
+            scan.cancel();
+        }
     }
 }
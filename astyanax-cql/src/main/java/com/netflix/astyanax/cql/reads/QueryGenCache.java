@@ -10,11 +10,12 @@ import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.RegularStatement;
 import com.datastax.driver.core.Session;
+import com.netflix.astyanax.cql.util.PreparedStatementCache;
 
 /**
  * Template for {@link PreparedStatement} caching for a query Q. 
- * The class provides the basic functionality to store a cached reference to the PreparedStatement 
- * that is generated by the extending class. Hence actual logic for constructing the PrepatedStatement
+ * The class provides the basic functionality to look up the PreparedStatement for the query that is 
+ * generated by the extending class in the session's {@link PreparedStatementCache}. Hence actual logic for constructing the PrepatedStatement
  * and binding values to that statement is not defined here. That must be provided by the extending classes.  
  * 
  * @author poberai
@@ -27,8 +28,6 @@ public abstract class QueryGenCache<Q> {
 
 	// reference to the session object. This is required for "preparing" a statement
 	private AtomicReference<Session> sessionRef = new AtomicReference<Session>(null); 
-	// The cached reference to the query constructed by extending classes
-	private final AtomicReference<PreparedStatement> cachedStatement = new AtomicReference<PreparedStatement>(null);
 
 	/**
 	 * Constructor
@@ -51,11 +50,12 @@ public abstract class QueryGenCache<Q> {
 	}
 
 	/**
-	 * Get the bound statemnent by either constructing the query or using the cached statement underneath.
-	 * Note that the caller can provide useCaching as a knob to turn caching ON/OFF. 
-	 * If false, then the query is just constructed using the extending class and returned. 
-	 * If true, then the cached reference is consulted. If the cache is empty, then the query is constructed
-	 * and used to seed the cache. 
+	 * Get the prepared statement by constructing the query and looking it up in the {@link PreparedStatementCache}
+	 * of the session. Note that the caller can provide useCaching as a knob to turn caching ON/OFF. 
+	 * If false, then the query is just constructed using the extending class, prepared and returned. 
+	 * If true, then the session's cache is consulted with the constructed query as the key. Since the key captures the
+	 * full shape of the query (column family, number of columns, slice type etc), queries of different shapes get their 
+	 * own statements. 
 	 * 
 	 * @param query
 	 * @param useCaching
@@ -63,28 +63,16 @@ public abstract class QueryGenCache<Q> {
 	 */
 	public PreparedStatement getPreparedStatement(Q query, boolean useCaching) {
 
-		PreparedStatement pStatement = null;
-
-		if (useCaching) {
-			pStatement = cachedStatement.get();
-		}
-
-		if (pStatement == null) {
-			try {
-				RegularStatement stmt = getQueryGen(query).call();
-				if (LOG.isDebugEnabled()) {
-					LOG.debug("Query: " + stmt.getQueryString());
-				}
-				pStatement = sessionRef.get().prepare(stmt.getQueryString());
-			} catch (Exception e) {
-				throw new RuntimeException(e);
-			}
+		RegularStatement stmt;
+		try {
+			stmt = getQueryGen(query).call();
+		} catch (Exception e) {
+			throw new RuntimeException(e);
 		}
-
-		if (useCaching && cachedStatement.get() == null) {
-			cachedStatement.set(pStatement);
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Query: " + stmt.getQueryString());
 		}
-		return pStatement;
+		return PreparedStatementCache.forSession(sessionRef.get()).getStatement(stmt.getQueryString(), useCaching);
 	}
 	
 	/**
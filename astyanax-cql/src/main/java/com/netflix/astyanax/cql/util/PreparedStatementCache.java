@@ -0,0 +1,134 @@
+package com.netflix.astyanax.cql.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Session;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Size bounded LRU cache of {@link PreparedStatement}s for a single {@link Session}.
+ *
+ * Statements are keyed by their query signature, which is the generated CQL query string. The query string
+ * already captures everything that decides the shape of the statement, i.e the column family, the kind of query,
+ * the number of columns / bind markers and which write options are set. The values of the write options such as TTL
+ * and timestamp are bind markers too, so they don't multiply the number of statements. Hence the same
+ * query gen can safely serve queries of varying shape from the cache.
+ *
+ * Concurrent requests for a signature that is not in the cache result in exactly one call to prepare, the other
+ * callers wait for that result. Hit, miss and eviction counts are available via {@link #getStats()}
+ *
+ * Use {@link #forSession(Session)} to get the cache for a session.
+ */
+public class PreparedStatementCache {
+
+	private static final Logger LOG = LoggerFactory.getLogger(PreparedStatementCache.class);
+
+	public static final int DEFAULT_MAX_SIZE = 1000;
+
+	// One cache per session. Sessions are compared by identity and the cache goes away with the session
+	private static final Cache<Session, PreparedStatementCache> sessionCaches = CacheBuilder.newBuilder().weakKeys().build();
+
+	private final Session session;
+	private final Cache<String, PreparedStatement> statements;
+
+	public PreparedStatementCache(Session session, int maxSize) {
+		this.session = session;
+		this.statements = CacheBuilder.newBuilder()
+				.maximumSize(maxSize)
+				.recordStats()
+				.build();
+	}
+
+	/**
+	 * Get the shared cache for the given session, creating it if required
+	 * @param session
+	 * @return PreparedStatementCache
+	 */
+	public static PreparedStatementCache forSession(final Session session) {
+		PreparedStatementCache cache = sessionCaches.getIfPresent(session);
+		if (cache != null) {
+			return cache;
+		}
+		try {
+			return sessionCaches.get(session, new Callable<PreparedStatementCache>() {
+				@Override
+				public PreparedStatementCache call() throws Exception {
+					return new PreparedStatementCache(session, DEFAULT_MAX_SIZE);
+				}
+			});
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * Get the prepared statement for the query, preparing it if it isn't in the cache already
+	 * @param query
+	 * @return PreparedStatement
+	 */
+	public PreparedStatement getStatement(final String query) {
+		try {
+			return statements.get(query, new Callable<PreparedStatement>() {
+				@Override
+				public PreparedStatement call() throws Exception {
+					if (LOG.isDebugEnabled()) {
+						LOG.debug("Preparing query: " + query);
+					}
+					return session.prepare(query);
+				}
+			});
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} catch (UncheckedExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * Prepare the query, bypassing the cache when useCaching is false
+	 * @param query
+	 * @param useCaching
+	 * @return PreparedStatement
+	 */
+	public PreparedStatement getStatement(String query, boolean useCaching) {
+		if (useCaching) {
+			return getStatement(query);
+		}
+		return session.prepare(query);
+	}
+
+	/**
+	 * @return hit, miss and eviction counts of the cache
+	 */
+	public CacheStats getStats() {
+		return statements.stats();
+	}
+
+	public long getHitCount() {
+		return statements.stats().hitCount();
+	}
+
+	public long getMissCount() {
+		return statements.stats().missCount();
+	}
+
+	public long getEvictionCount() {
+		return statements.stats().evictionCount();
+	}
+
+	public long size() {
+		return statements.size();
+	}
+
+	public void clear() {
+		statements.invalidateAll();
+	}
+}
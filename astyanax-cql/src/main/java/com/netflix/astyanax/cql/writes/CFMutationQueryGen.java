@@ -2,7 +2,6 @@ package com.netflix.astyanax.cql.writes;
 
 import java.util.Iterator;
 import java.util.concurrent.Callable;
-import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,6 +11,7 @@ import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.Session;
 import com.netflix.astyanax.cql.schema.CqlColumnFamilyDefinitionImpl;
+import com.netflix.astyanax.cql.util.PreparedStatementCache;
 import com.netflix.astyanax.ddl.ColumnDefinition;
 import com.netflix.astyanax.model.ColumnFamily;
 import com.netflix.astyanax.serializers.AnnotatedCompositeSerializer;
@@ -47,15 +47,20 @@ public class CFMutationQueryGen {
 
 	private final String keyspace; 
 	private final CqlColumnFamilyDefinitionImpl cfDef;
-	private final Session session;
+	private final PreparedStatementCache statementCache;
 
 	public CFMutationQueryGen(Session session, String keyspaceName, CqlColumnFamilyDefinitionImpl cfDefinition) {
 
 		this.keyspace = keyspaceName;
 		this.cfDef = cfDefinition;
-		this.session = session;
+		this.statementCache = PreparedStatementCache.forSession(session);
 	}
 
+	/**
+	 * Append the write options as bind markers so that the query only depends on which options are set and
+	 * not on their values. Otherwise every distinct TTL or timestamp would be a new prepared statement.
+	 * The values are bound with {@link #bindWriteOptions(Object[], int, Integer, Long)}
+	 */
 	private static void appendWriteOptions(StringBuilder sb, Integer ttl, Long timestamp) {
 
 		if (ttl != null || timestamp != null) {
@@ -63,21 +68,37 @@ public class CFMutationQueryGen {
 		}
 
 		if (ttl != null) {
-			sb.append(TTL + ttl);
+			sb.append(TTL + LAST_BIND_MARKER);
 		}
 
 		if (timestamp != null) {
 			if (ttl != null) {
 				sb.append(AND);
 			}
-			sb.append(TIMESTAMP + timestamp);
+			sb.append(TIMESTAMP + LAST_BIND_MARKER);
 		}	
 	}	
 	
+	private static int writeOptionCount(Integer ttl, Long timestamp) {
+		return (ttl != null ? 1 : 0) + (timestamp != null ? 1 : 0);
+	}
+	
+	/**
+	 * Add the values for the bind markers written by appendWriteOptions
+	 * @return the index after the last value
+	 */
+	private static int bindWriteOptions(Object[] arr, int index, Integer ttl, Long timestamp) {
+		if (ttl != null) {
+			arr[index++] = ttl;
+		}
+		if (timestamp != null) {
+			arr[index++] = timestamp;
+		}
+		return index;
+	}
+	
 	abstract class MutationQueryCache<M> {
 
-		private final AtomicReference<PreparedStatement> cachedStatement = new AtomicReference<PreparedStatement>(null);
-
 		public abstract Callable<String> getQueryGen(M mutation);
 
 		public void addToBatch(BatchStatement batch, M mutation, boolean useCaching) {
@@ -94,29 +115,17 @@ public class CFMutationQueryGen {
 		
 		public PreparedStatement getPreparedStatement(M mutation, boolean useCaching) {
 			
-			PreparedStatement pStatement = null;
-			
-			if (useCaching) {
-				pStatement = cachedStatement.get();
-			}
-			
-			if (pStatement == null) {
-				try {
-					String query = getQueryGen(mutation).call();
-					pStatement = session.prepare(query);
-					
-					if (Logger.isDebugEnabled()) {
-						Logger.debug("Query: " + pStatement.getQueryString());
-					}
-				} catch (Exception e) {
-					throw new RuntimeException(e);
-				}
+			String query;
+			try {
+				query = getQueryGen(mutation).call();
+			} catch (Exception e) {
+				throw new RuntimeException(e);
 			}
 			
-			if (useCaching && cachedStatement.get() == null) {
-				cachedStatement.set(pStatement);
+			if (Logger.isDebugEnabled()) {
+				Logger.debug("Query: " + query);
 			}
-			return pStatement;
+			return statementCache.getStatement(query, useCaching);
 		}
 	}
 
@@ -155,11 +164,17 @@ public class CFMutationQueryGen {
 			} else {
 				// we don't need to add the value component here. Just the partition key and the clustering key
 			}
+			size += writeOptionCount(colMutation.getTTL(), colMutation.getTimestamp());
 
 			Object[] arr = new Object[size];
 
 			int index = 0;
 
+			// The write options of a delete come before the where clause
+			if (isDeleteQuery()) {
+				index = bindWriteOptions(arr, index, colMutation.getTTL(), colMutation.getTimestamp());
+			}
+
 			arr[index++] = colMutation.getRowKey();
 
 			ColumnFamily<?,?> cf = colMutation.cfContext.getColumnFamily();
@@ -180,6 +195,7 @@ public class CFMutationQueryGen {
 
 			if (!isDeleteQuery()) {
 				arr[index++] = colMutation.columnValue;
+				bindWriteOptions(arr, index, colMutation.getTTL(), colMutation.getTimestamp());
 			}
 
 			return pStatement.bind(arr);
@@ -363,12 +379,15 @@ public class CFMutationQueryGen {
 		@Override
 		public BoundStatement bindValues(PreparedStatement pStatement, CqlColumnMutationImpl<?, ?> mutation) {
 			
-			int size = 1 + cfDef.getPartitionKeyColumnDefinitionList().size() + cfDef.getClusteringKeyColumnDefinitionList().size();
+			int size = 1 + cfDef.getPartitionKeyColumnDefinitionList().size() + cfDef.getClusteringKeyColumnDefinitionList().size()
+					+ writeOptionCount(mutation.getTTL(), mutation.getTimestamp());
 
 			Object[] arr = new Object[size];
 
 			int index = 0;
 
+			// The write options come before the set clause
+			index = bindWriteOptions(arr, index, mutation.getTTL(), mutation.getTimestamp());
 			arr[index++] = mutation.columnValue;
 			arr[index++] = mutation.getRowKey();
 
@@ -508,7 +527,7 @@ public class CFMutationQueryGen {
 
 			// Init the object array for the bind values
 			int size = colListMutation.getMutationList().size() + 1;
-			Object[] values = new Object[size];
+			Object[] values = new Object[size + writeOptionCount(colListMutation.getDefaultTtl(), colListMutation.getTimestamp())];
 			int index = 0;
 			
 			// Add in the primary key
@@ -536,6 +555,7 @@ public class CFMutationQueryGen {
 			sb.append(CLOSE_PARA);
 			
 			appendWriteOptions(sb, colListMutation.getDefaultTtl(), colListMutation.getTimestamp());
+			bindWriteOptions(values, size, colListMutation.getDefaultTtl(), colListMutation.getTimestamp());
 			
 			String query = sb.toString(); 
 			
@@ -543,12 +563,8 @@ public class CFMutationQueryGen {
 				Logger.debug("Query: " + query);
 			}
 			
-			try {
-				PreparedStatement pStatement = session.prepare(query);
-				batch.add(pStatement.bind(values));
-			} catch (Exception e) {
-				throw new RuntimeException(e);
-			}
+			PreparedStatement pStatement = statementCache.getStatement(query, useCaching);
+			batch.add(pStatement.bind(values));
 		}
 
 		@Override
@@ -605,16 +621,13 @@ public class CFMutationQueryGen {
 			}
 
 			// Init the object array for the bind values
-			Object[] values = new Object[2];
+			Object[] values = new Object[2 + writeOptionCount(mutation.getTTL(), mutation.getTimestamp())];
 			values[0] = mutation.getRowKey();
 			values[1] = mutation.columnValue;
+			bindWriteOptions(values, 2, mutation.getTTL(), mutation.getTimestamp());
 			
-			try {
-				PreparedStatement pStatement = session.prepare(query);
-				return pStatement.bind(values);
-			} catch (Exception e) {
-				throw new RuntimeException(e);
-			}
+			PreparedStatement pStatement = statementCache.getStatement(query, useCaching);
+			return pStatement.bind(values);
 		}
 	};
 
@@ -2,21 +2,31 @@ package com.netflix.astyanax.cql.writes;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import com.datastax.driver.core.BatchStatement;
 import com.datastax.driver.core.BatchStatement.Type;
+import com.datastax.driver.core.Metadata;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Statement;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.netflix.astyanax.CassandraOperationType;
 import com.netflix.astyanax.Clock;
 import com.netflix.astyanax.ColumnListMutation;
 import com.netflix.astyanax.MutationBatch;
 import com.netflix.astyanax.connectionpool.OperationResult;
 import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.connectionpool.exceptions.OperationException;
+import com.netflix.astyanax.connectionpool.impl.OperationResultImpl;
 import com.netflix.astyanax.cql.ConsistencyLevelMapping;
 import com.netflix.astyanax.cql.CqlAbstractExecutionImpl;
 import com.netflix.astyanax.cql.CqlKeyspaceImpl.KeyspaceContext;
@@ -32,6 +42,9 @@ public class CqlMutationBatchImpl extends AbstractMutationBatchImpl {
 	// Control to turn use of prepared statement caching ON/OFF
 	private boolean useCaching = false;
 	
+	// Control to split the batch into one batch per replica set
+	private boolean tokenAwareSplitting = false;
+	
 	public CqlMutationBatchImpl(KeyspaceContext ksCtx, Clock clock, ConsistencyLevel consistencyLevel, RetryPolicy retry) {
 		super(clock, consistencyLevel, retry);
 		this.ksContext = ksCtx;
@@ -54,45 +67,136 @@ public class CqlMutationBatchImpl extends AbstractMutationBatchImpl {
 	@Override
 	public OperationResult<Void> execute() throws ConnectionException {
 		
-		return new CqlAbstractExecutionImpl<Void>(ksContext, getRetryPolicy()) {
-
-			@Override
-			public CassandraOperationType getOperationType() {
-				return CassandraOperationType.BATCH_MUTATE;
+		if (useTokenAwareSplitting()) {
+			List<List<CqlColumnListMutationImpl<?, ?>>> groups = groupByReplicas();
+			if (groups.size() > 1) {
+				try {
+					return Uninterruptibles.getUninterruptibly(executeGroupsAsync(groups));
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof ConnectionException) {
+						throw (ConnectionException) e.getCause();
+					}
+					throw new OperationException(e.getCause());
+				}
 			}
-
-			@Override
-			public Statement getQuery() {
-				return getCachedPreparedStatement();
-			}
-
-			@Override
-			public Void parseResultSet(ResultSet resultSet) {
-				return null; // do nothing for mutations
-			}
-		}.execute();
+		}
+		return new BatchExecution(getColumnMutations()).execute();
 	}
 
 	@Override
 	public ListenableFuture<OperationResult<Void>> executeAsync() throws ConnectionException {
 		
-		return new CqlAbstractExecutionImpl<Void>(ksContext, getRetryPolicy()) {
-
-			@Override
-			public CassandraOperationType getOperationType() {
-				return CassandraOperationType.BATCH_MUTATE;
+		if (useTokenAwareSplitting()) {
+			List<List<CqlColumnListMutationImpl<?, ?>>> groups = groupByReplicas();
+			if (groups.size() > 1) {
+				return executeGroupsAsync(groups);
 			}
+		}
+		return new BatchExecution(getColumnMutations()).executeAsync();
+	}
+	
+	private class BatchExecution extends CqlAbstractExecutionImpl<Void> {
+		
+		private final List<CqlColumnListMutationImpl<?, ?>> colListMutations;
+		
+		private BatchExecution(List<CqlColumnListMutationImpl<?, ?>> colListMutations) {
+			super(ksContext, getRetryPolicy());
+			this.colListMutations = colListMutations;
+		}
+
+		@Override
+		public CassandraOperationType getOperationType() {
+			return CassandraOperationType.BATCH_MUTATE;
+		}
+
+		@Override
+		public Statement getQuery() {
+			return getCachedPreparedStatement(colListMutations);
+		}
 
+		@Override
+		public Void parseResultSet(ResultSet resultSet) {
+			return null; // do nothing for mutations
+		}
+	}
+	
+	private boolean useTokenAwareSplitting() {
+		// Splitting an atomic batch would break its guarantee
+		return tokenAwareSplitting && !useAtomicBatch() && getRowCount() > 1;
+	}
+	
+	/**
+	 * Group the row mutations by the set of replicas that own the row key, according to the 
+	 * token metadata of the java driver. Row keys that the driver can't map end up in the same group.
+	 * @return List<List<CqlColumnListMutationImpl<?, ?>>>
+	 */
+	private List<List<CqlColumnListMutationImpl<?, ?>>> groupByReplicas() {
+		
+		final Metadata metadata = ksContext.getSession().getCluster().getMetadata();
+		
+		return groupByReplicas(new Function<ByteBuffer, Set<com.datastax.driver.core.Host>>() {
 			@Override
-			public Statement getQuery() {
-				return getCachedPreparedStatement();
+			public Set<com.datastax.driver.core.Host> apply(ByteBuffer rowKey) {
+				return metadata.getReplicas(ksContext.getKeyspace(), rowKey);
 			}
-
+		});
+	}
+	
+	/**
+	 * Group the row mutations by the replicas that the lookup returns for their row key. Groups are in the 
+	 * order of their first row and keep the order of the rows.
+	 * @param replicas
+	 * @return List<List<CqlColumnListMutationImpl<?, ?>>>
+	 */
+	<R> List<List<CqlColumnListMutationImpl<?, ?>>> groupByReplicas(Function<ByteBuffer, R> replicas) {
+		
+		Map<R, List<CqlColumnListMutationImpl<?, ?>>> groups = new LinkedHashMap<R, List<CqlColumnListMutationImpl<?, ?>>>();
+		
+		for (Entry<ByteBuffer, Map<String, ColumnListMutation<?>>> entry : super.getMutationMap().entrySet()) {
+			R key = replicas.apply(entry.getKey().duplicate());
+			List<CqlColumnListMutationImpl<?, ?>> group = groups.get(key);
+			if (group == null) {
+				group = new ArrayList<CqlColumnListMutationImpl<?, ?>>();
+				groups.put(key, group);
+			}
+			for (ColumnListMutation<?> colMutation : entry.getValue().values()) {
+				group.add((CqlColumnListMutationImpl<?, ?>) colMutation);
+			}
+		}
+		return new ArrayList<List<CqlColumnListMutationImpl<?, ?>>>(groups.values());
+	}
+	
+	/**
+	 * Execute each group as its own batch, all in parallel. The result is reported once all the batches succeed 
+	 * with the host of the first batch, the highest latency and the highest attempt count of all the batches.
+	 * The first failure fails the returned future. Batches that were already sent are not rolled back, 
+	 * just like with a single unlogged batch. 
+	 *  
+	 * @param groups
+	 * @return ListenableFuture<OperationResult<Void>>
+	 * @throws ConnectionException
+	 */
+	private ListenableFuture<OperationResult<Void>> executeGroupsAsync(List<List<CqlColumnListMutationImpl<?, ?>>> groups) throws ConnectionException {
+		
+		List<ListenableFuture<OperationResult<Void>>> futures = new ArrayList<ListenableFuture<OperationResult<Void>>>(groups.size());
+		for (List<CqlColumnListMutationImpl<?, ?>> group : groups) {
+			futures.add(new BatchExecution(group).executeAsync());
+		}
+		
+		return Futures.transform(Futures.allAsList(futures), new Function<List<OperationResult<Void>>, OperationResult<Void>>() {
 			@Override
-			public Void parseResultSet(ResultSet resultSet) {
-				return null; // do nothing for mutations
+			public OperationResult<Void> apply(List<OperationResult<Void>> results) {
+				long latency = 0L;
+				int attempts = 0;
+				for (OperationResult<Void> result : results) {
+					latency = Math.max(latency, result.getLatency(TimeUnit.NANOSECONDS));
+					attempts = Math.max(attempts, result.getAttemptsCount());
+				}
+				OperationResult<Void> opResult = new OperationResultImpl<Void>(results.get(0).getHost(), null, latency);
+				opResult.setAttemptsCount(attempts);
+				return opResult;
 			}
-		}.executeAsync();
+		});
 	}
 
 	private List<CqlColumnListMutationImpl<?, ?>> getColumnMutations() {
@@ -107,10 +211,8 @@ public class CqlMutationBatchImpl extends AbstractMutationBatchImpl {
 		return colListMutation;
 	}
 
-	private BatchStatement getCachedPreparedStatement() {
+	private BatchStatement getCachedPreparedStatement(List<CqlColumnListMutationImpl<?, ?>> colListMutations) {
 		
-		final List<CqlColumnListMutationImpl<?, ?>> colListMutations = getColumnMutations();
-
 		if (colListMutations == null || colListMutations.size() == 0) {
 			return new BatchStatement(Type.UNLOGGED);
 		}
@@ -140,4 +242,10 @@ public class CqlMutationBatchImpl extends AbstractMutationBatchImpl {
 		useCaching = condition;
 		return this;
 	}
+
+	@Override
+	public MutationBatch withTokenAwareSplitting(boolean condition) {
+		tokenAwareSplitting = condition;
+		return this;
+	}
 }
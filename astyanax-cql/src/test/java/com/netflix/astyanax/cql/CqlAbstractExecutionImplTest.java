@@ -0,0 +1,241 @@
+package com.netflix.astyanax.cql;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.netflix.astyanax.CassandraOperationTracer;
+import com.netflix.astyanax.CassandraOperationType;
+import com.netflix.astyanax.KeyspaceTracerFactory;
+import com.netflix.astyanax.connectionpool.OperationResult;
+import com.netflix.astyanax.connectionpool.exceptions.BadRequestException;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.connectionpool.exceptions.NotFoundException;
+import com.netflix.astyanax.connectionpool.exceptions.TimeoutException;
+import com.netflix.astyanax.cql.CqlKeyspaceImpl.KeyspaceContext;
+import com.netflix.astyanax.cql.retrypolicies.ChangeConsistencyLevelRetryPolicy;
+import com.netflix.astyanax.impl.AstyanaxConfigurationImpl;
+import com.netflix.astyanax.model.ColumnFamily;
+import com.netflix.astyanax.model.ConsistencyLevel;
+import com.netflix.astyanax.retry.RetryNTimes;
+import com.netflix.astyanax.retry.RetryPolicy;
+
+public class CqlAbstractExecutionImplTest {
+
+	private static final String RESULT = "result";
+
+	/**
+	 * Counts the tracer calls of all operations
+	 */
+	private static class CountingTracerFactory implements KeyspaceTracerFactory {
+		final AtomicInteger starts    = new AtomicInteger();
+		final AtomicInteger successes = new AtomicInteger();
+		final AtomicInteger failures  = new AtomicInteger();
+
+		@Override
+		public CassandraOperationTracer newTracer(CassandraOperationType type) {
+			return new CassandraOperationTracer() {
+				@Override
+				public CassandraOperationTracer start() {
+					starts.incrementAndGet();
+					return this;
+				}
+
+				@Override
+				public void success() {
+					successes.incrementAndGet();
+				}
+
+				@Override
+				public void failure(ConnectionException e) {
+					failures.incrementAndGet();
+				}
+			};
+		}
+
+		@Override
+		public CassandraOperationTracer newTracer(CassandraOperationType type, ColumnFamily<?, ?> columnFamily) {
+			return newTracer(type);
+		}
+	}
+
+	/**
+	 * Execution that answers every attempt with the next of the given responses instead of sending the query
+	 */
+	private static class StubExecution extends CqlAbstractExecutionImpl<String> {
+		final List<Statement> queries = new CopyOnWriteArrayList<Statement>();
+		final Queue<ListenableFuture<ResultSet>> responses = new ConcurrentLinkedQueue<ListenableFuture<ResultSet>>();
+
+		StubExecution(KeyspaceContext ksContext, RetryPolicy retryPolicy) {
+			super(ksContext, retryPolicy);
+		}
+
+		StubExecution respond(ListenableFuture<ResultSet> response) {
+			responses.add(response);
+			return this;
+		}
+
+		@Override
+		ListenableFuture<ResultSet> executeQueryAsync(Statement query) {
+			queries.add(query);
+			return responses.poll();
+		}
+
+		@Override
+		public CassandraOperationType getOperationType() {
+			return CassandraOperationType.GET_ROW;
+		}
+
+		@Override
+		public Statement getQuery() {
+			return new SimpleStatement("SELECT * FROM test");
+		}
+
+		@Override
+		public String parseResultSet(ResultSet resultSet) throws NotFoundException {
+			return RESULT;
+		}
+	}
+
+	private final CountingTracerFactory tracerFactory = new CountingTracerFactory();
+
+	private KeyspaceContext newKeyspaceContext(ConsistencyLevel readConsistencyLevel) {
+		CqlKeyspaceImpl ks = new CqlKeyspaceImpl(null, "ks",
+				new AstyanaxConfigurationImpl().setDefaultReadConsistencyLevel(readConsistencyLevel),
+				tracerFactory, new JavaDriverConnectionPoolMonitorImpl());
+		return ks.new KeyspaceContext(ks);
+	}
+
+	private static ListenableFuture<ResultSet> success() {
+		return Futures.immediateFuture(null);
+	}
+
+	private static ListenableFuture<ResultSet> failure(Throwable t) {
+		return Futures.immediateFailedFuture(t);
+	}
+
+	@Test
+	public void testRetryThenSuccess() throws Exception {
+		StubExecution execution = new StubExecution(newKeyspaceContext(ConsistencyLevel.CL_ONE), new RetryNTimes(2))
+				.respond(failure(new TimeoutException("first attempt")))
+				.respond(success());
+
+		OperationResult<String> result = execution.executeAsync().get(5, TimeUnit.SECONDS);
+
+		Assert.assertEquals(RESULT, result.getResult());
+		Assert.assertEquals(1, result.getAttemptsCount());
+		Assert.assertEquals(2, execution.queries.size());
+		Assert.assertEquals(2, tracerFactory.starts.get());
+		Assert.assertEquals(1, tracerFactory.failures.get());
+		Assert.assertEquals(1, tracerFactory.successes.get());
+	}
+
+	@Test
+	public void testRetriesExhausted() throws Exception {
+		TimeoutException last = new TimeoutException("third attempt");
+		StubExecution execution = new StubExecution(newKeyspaceContext(ConsistencyLevel.CL_ONE), new RetryNTimes(2))
+				.respond(failure(new TimeoutException("first attempt")))
+				.respond(failure(new TimeoutException("second attempt")))
+				.respond(failure(last));
+
+		try {
+			execution.executeAsync().get(5, TimeUnit.SECONDS);
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertSame(last, e.getCause());
+		}
+
+		Assert.assertEquals(3, execution.queries.size());
+		Assert.assertEquals(3, tracerFactory.starts.get());
+		Assert.assertEquals(3, tracerFactory.failures.get());
+		Assert.assertEquals(0, tracerFactory.successes.get());
+	}
+
+	@Test
+	public void testDriverErrorIsRetried() throws Exception {
+		StubExecution execution = new StubExecution(newKeyspaceContext(ConsistencyLevel.CL_ONE), new RetryNTimes(1))
+				.respond(failure(new RuntimeException("driver error")))
+				.respond(success());
+
+		Assert.assertEquals(RESULT, execution.executeAsync().get(5, TimeUnit.SECONDS).getResult());
+		Assert.assertEquals(2, tracerFactory.starts.get());
+		Assert.assertEquals(1, tracerFactory.failures.get());
+	}
+
+	@Test
+	public void testNotRetryable() throws Exception {
+		BadRequestException error = new BadRequestException("bad request");
+		StubExecution execution = new StubExecution(newKeyspaceContext(ConsistencyLevel.CL_ONE), new RetryNTimes(2))
+				.respond(failure(error))
+				.respond(success());
+
+		try {
+			execution.executeAsync().get(5, TimeUnit.SECONDS);
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertSame(error, e.getCause());
+		}
+
+		Assert.assertEquals(1, execution.queries.size());
+		Assert.assertEquals(1, tracerFactory.starts.get());
+		Assert.assertEquals(1, tracerFactory.failures.get());
+	}
+
+	@Test
+	public void testConsistencyLevelAndRetryPolicyApplied() throws Exception {
+		ChangeConsistencyLevelRetryPolicy retryPolicy = new ChangeConsistencyLevelRetryPolicy()
+				.withNextConsistencyLevel(ConsistencyLevel.CL_ONE)
+				.withNumRetries(1);
+		StubExecution execution = new StubExecution(newKeyspaceContext(ConsistencyLevel.CL_QUORUM), retryPolicy)
+				.respond(success());
+
+		execution.executeAsync().get(5, TimeUnit.SECONDS);
+
+		Statement query = execution.queries.get(0);
+		Assert.assertEquals(com.datastax.driver.core.ConsistencyLevel.QUORUM, query.getConsistencyLevel());
+		Assert.assertSame(retryPolicy.getJDRetryPolicy(), query.getRetryPolicy());
+	}
+
+	@Test
+	public void testSharedDriverRetryPolicy() throws Exception {
+		// The policy doesn't duplicate, so concurrent executions share it.  The driver retries on its own
+		// and the failure of an attempt is final.
+		ChangeConsistencyLevelRetryPolicy retryPolicy = new ChangeConsistencyLevelRetryPolicy();
+		Assert.assertNull(retryPolicy.duplicate());
+
+		TimeoutException error = new TimeoutException("driver gave up");
+		StubExecution failing = new StubExecution(newKeyspaceContext(ConsistencyLevel.CL_ONE), retryPolicy)
+				.respond(failure(error))
+				.respond(success());
+		StubExecution succeeding = new StubExecution(newKeyspaceContext(ConsistencyLevel.CL_ONE), retryPolicy)
+				.respond(success());
+
+		ListenableFuture<OperationResult<String>> failed    = failing.executeAsync();
+		ListenableFuture<OperationResult<String>> succeeded = succeeding.executeAsync();
+
+		Assert.assertEquals(RESULT, succeeded.get(5, TimeUnit.SECONDS).getResult());
+		try {
+			failed.get(5, TimeUnit.SECONDS);
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertSame(error, e.getCause());
+		}
+		Assert.assertEquals(1, failing.queries.size());
+		Assert.assertEquals(2, tracerFactory.starts.get());
+		Assert.assertEquals(1, tracerFactory.failures.get());
+		Assert.assertEquals(1, tracerFactory.successes.get());
+	}
+}
@@ -0,0 +1,122 @@
+package com.netflix.astyanax.cql.writes;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Session;
+import com.google.common.collect.Lists;
+import com.netflix.astyanax.Keyspace;
+import com.netflix.astyanax.cql.schema.CqlColumnFamilyDefinitionImpl;
+import com.netflix.astyanax.cql.util.CFQueryContext;
+import com.netflix.astyanax.ddl.KeyspaceDefinition;
+import com.netflix.astyanax.model.ColumnFamily;
+import com.netflix.astyanax.serializers.StringSerializer;
+
+public class CFMutationQueryGenTest {
+
+	private static final ColumnFamily<String, String> CF_TEST =
+			new ColumnFamily<String, String>("test", StringSerializer.get(), StringSerializer.get());
+
+	private final List<String> prepared = Lists.newArrayList();
+	private final List<Object[]> bound = Lists.newArrayList();
+
+	private CFMutationQueryGen queryGen;
+
+	@Before
+	public void setup() throws Exception {
+		Session session = stub(Session.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("prepare")) {
+					prepared.add((String) args[0]);
+					return preparedStatement();
+				}
+				return null;
+			}
+		});
+
+		final CqlColumnFamilyDefinitionImpl cfDef = new CqlColumnFamilyDefinitionImpl(session, "ks", CF_TEST, null);
+		cfDef.execute();
+		// Creating the table consumes the key validator, reading the definition back from the cluster would restore it
+		cfDef.setKeyValidationClass(StringSerializer.get().getComparatorType().getClassName());
+
+		final KeyspaceDefinition ksDef = stub(KeyspaceDefinition.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				return method.getName().equals("getColumnFamily") ? cfDef : null;
+			}
+		});
+		CF_TEST.describe(stub(Keyspace.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				return method.getName().equals("describeKeyspace") ? ksDef : null;
+			}
+		}));
+
+		queryGen = new CFMutationQueryGen(session, "ks", cfDef);
+		prepared.clear();
+	}
+
+	@Test
+	public void testTimestampIsBound() {
+		queryGen.getColumnMutationStatement(mutation("v1", 1000), true);
+		queryGen.getColumnMutationStatement(mutation("v2", 2000), true);
+
+		Assert.assertEquals(1, prepared.size());
+		Assert.assertTrue(prepared.get(0), prepared.get(0).contains("TIMESTAMP ?"));
+		Assert.assertFalse(prepared.get(0), prepared.get(0).contains("1000"));
+
+		Assert.assertEquals(Arrays.<Object>asList("key", "col", "v1", 1000L), Arrays.asList(bound.get(0)));
+		Assert.assertEquals(Arrays.<Object>asList("key", "col", "v2", 2000L), Arrays.asList(bound.get(1)));
+	}
+
+	@Test
+	public void testWriteOptionsChangeShape() {
+		queryGen.getColumnMutationStatement(mutation("v1"), true);
+		queryGen.getColumnMutationStatement(mutation("v2", 1000), true);
+		queryGen.getColumnMutationStatement(mutation("v3", 2000), true);
+
+		Assert.assertEquals(2, prepared.size());
+		Assert.assertEquals(3, bound.get(0).length);
+		Assert.assertEquals(4, bound.get(2).length);
+	}
+
+	private CqlColumnMutationImpl<String, String> mutation(Object value) {
+		CqlColumnMutationImpl<String, String> mutation =
+				new CqlColumnMutationImpl<String, String>(null, new CFQueryContext<String, String>(CF_TEST, "key"), "col");
+		mutation.columnValue = value;
+		return mutation;
+	}
+
+	private CqlColumnMutationImpl<String, String> mutation(Object value, long timestamp) {
+		CqlColumnMutationImpl<String, String> mutation = mutation(value);
+		mutation.withTimestamp(timestamp);
+		return mutation;
+	}
+
+	private PreparedStatement preparedStatement() {
+		return stub(PreparedStatement.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("bind")) {
+					bound.add((Object[]) args[0]);
+				}
+				return null;
+			}
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T stub(Class<T> type, InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+	}
+}
@@ -0,0 +1,123 @@
+package com.netflix.astyanax.cql.writes;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import junit.framework.Assert;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.netflix.astyanax.Keyspace;
+import com.netflix.astyanax.clock.MicrosecondsSyncClock;
+import com.netflix.astyanax.cql.schema.CqlColumnFamilyDefinitionImpl;
+import com.netflix.astyanax.ddl.KeyspaceDefinition;
+import com.netflix.astyanax.model.ColumnFamily;
+import com.netflix.astyanax.model.ConsistencyLevel;
+import com.netflix.astyanax.retry.RunOnce;
+import com.netflix.astyanax.serializers.LongSerializer;
+import com.netflix.astyanax.serializers.StringSerializer;
+
+public class CqlMutationBatchImplTest {
+
+	private static final ColumnFamily<Long, String> CF_TEST =
+			new ColumnFamily<Long, String>("test", LongSerializer.get(), StringSerializer.get());
+
+	/**
+	 * Ring of three nodes with a replication factor of two. The row key is its own token, and a node owns
+	 * the range from the token of the previous node, exclusive, up to its own token, inclusive.
+	 */
+	private static final Function<ByteBuffer, Set<String>> RING = new Function<ByteBuffer, Set<String>>() {
+		private final TreeMap<Long, String> tokens = new TreeMap<Long, String>();
+		{
+			tokens.put(-100L, "a");
+			tokens.put(0L, "b");
+			tokens.put(100L, "c");
+		}
+
+		@Override
+		public Set<String> apply(ByteBuffer rowKey) {
+			Map.Entry<Long, String> owner = tokens.ceilingEntry(LongSerializer.get().fromByteBuffer(rowKey));
+			if (owner == null) {
+				owner = tokens.firstEntry();
+			}
+			Map.Entry<Long, String> next = tokens.higherEntry(owner.getKey());
+			if (next == null) {
+				next = tokens.firstEntry();
+			}
+			// A new set for every key, rows are grouped by equal replicas and not by the same instance
+			return Sets.newHashSet(owner.getValue(), next.getValue());
+		}
+	};
+
+	@BeforeClass
+	public static void setup() throws Exception {
+		// Row mutations look up the key validator of the column family definition
+		final CqlColumnFamilyDefinitionImpl cfDef = new CqlColumnFamilyDefinitionImpl(null, "ks", CF_TEST, null);
+		final KeyspaceDefinition ksDef = stub(KeyspaceDefinition.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				return method.getName().equals("getColumnFamily") ? cfDef : null;
+			}
+		});
+		CF_TEST.describe(stub(Keyspace.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				return method.getName().equals("describeKeyspace") ? ksDef : null;
+			}
+		}));
+	}
+
+	@Test
+	public void testGroupByReplicas() {
+		CqlMutationBatchImpl batch = new CqlMutationBatchImpl(null, new MicrosecondsSyncClock(),
+				ConsistencyLevel.CL_ONE, RunOnce.get());
+		for (long key : new long[] { -99, -100, 0, 1, 100, 101, -200, 50 }) {
+			batch.withRow(CF_TEST, key);
+		}
+
+		List<List<CqlColumnListMutationImpl<?, ?>>> groups = batch.groupByReplicas(RING);
+
+		Assert.assertEquals(3, groups.size());
+		// -99 and 0 are owned by b, 0 is on the boundary of its range and -100 on the boundary of a's range
+		Assert.assertEquals(Lists.<Object>newArrayList(-99L, 0L), rowKeys(groups.get(0)));
+		// 101 and -200 wrap around to a
+		Assert.assertEquals(Lists.<Object>newArrayList(-100L, 101L, -200L), rowKeys(groups.get(1)));
+		Assert.assertEquals(Lists.<Object>newArrayList(1L, 100L, 50L), rowKeys(groups.get(2)));
+	}
+
+	@Test
+	public void testSingleGroup() {
+		CqlMutationBatchImpl batch = new CqlMutationBatchImpl(null, new MicrosecondsSyncClock(),
+				ConsistencyLevel.CL_ONE, RunOnce.get());
+		for (long key : new long[] { -99, -50, 0 }) {
+			batch.withRow(CF_TEST, key);
+		}
+
+		List<List<CqlColumnListMutationImpl<?, ?>>> groups = batch.groupByReplicas(RING);
+		Assert.assertEquals(1, groups.size());
+		Assert.assertEquals(Lists.<Object>newArrayList(-99L, -50L, 0L), rowKeys(groups.get(0)));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T stub(Class<T> type, InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+	}
+
+	private static List<Object> rowKeys(List<CqlColumnListMutationImpl<?, ?>> group) {
+		List<Object> keys = Lists.newArrayList();
+		for (CqlColumnListMutationImpl<?, ?> mutation : group) {
+			keys.add(mutation.getRowKey());
+		}
+		return keys;
+	}
+}
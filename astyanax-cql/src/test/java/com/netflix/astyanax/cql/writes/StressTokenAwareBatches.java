@@ -0,0 +1,135 @@
+package com.netflix.astyanax.cql.writes;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.Configuration;
+import com.datastax.driver.core.MetricsOptions;
+import com.datastax.driver.core.PoolingOptions;
+import com.datastax.driver.core.ProtocolOptions;
+import com.datastax.driver.core.QueryOptions;
+import com.datastax.driver.core.SocketOptions;
+import com.datastax.driver.core.policies.Policies;
+import com.datastax.driver.core.policies.RoundRobinPolicy;
+import com.datastax.driver.core.policies.TokenAwarePolicy;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableMap;
+import com.netflix.astyanax.AstyanaxContext;
+import com.netflix.astyanax.Keyspace;
+import com.netflix.astyanax.MutationBatch;
+import com.netflix.astyanax.connectionpool.Host;
+import com.netflix.astyanax.cql.CqlFamilyFactory;
+import com.netflix.astyanax.cql.JavaDriverConnectionPoolConfigurationImpl;
+import com.netflix.astyanax.impl.AstyanaxConfigurationImpl;
+import com.netflix.astyanax.model.ColumnFamily;
+import com.netflix.astyanax.serializers.StringSerializer;
+
+/**
+ * Compares the latency of large mutation batches sent as a single unlogged batch with the same batches split
+ * into one batch per replica set using {@link MutationBatch#withTokenAwareSplitting(boolean)}.
+ *
+ * Needs a running cluster. Run from the command line with the contact point as the optional first argument
+ * and the replication factor as the optional second argument.
+ */
+public class StressTokenAwareBatches {
+
+	private static final Logger LOG = LoggerFactory.getLogger(StressTokenAwareBatches.class);
+
+	private static final String KEYSPACE_NAME = "astyanax_batch_stress";
+	private static final ColumnFamily<String, String> CF_BATCH =
+			ColumnFamily.newColumnFamily("batch_stress", StringSerializer.get(), StringSerializer.get());
+
+	private static final int ROWS_PER_BATCH = 500;
+	private static final int COLUMNS_PER_ROW = 4;
+	private static final int WARMUP_BATCHES = 20;
+	private static final int BATCHES = 200;
+
+	public static void main(String[] args) throws Exception {
+
+		final String seed = args.length > 0 ? args[0] : "localhost";
+		int replicationFactor = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+
+		Supplier<List<Host>> hostSupplier = new Supplier<List<Host>>() {
+			@Override
+			public List<Host> get() {
+				return Collections.singletonList(new Host(seed, -1));
+			}
+		};
+
+		// Token aware routing makes the driver send each sub batch to a replica of its rows
+		Configuration jdConfig = new Configuration(
+				new Policies(new TokenAwarePolicy(new RoundRobinPolicy()), Policies.defaultReconnectionPolicy(), Policies.defaultRetryPolicy()),
+				new ProtocolOptions(9042),
+				new PoolingOptions(),
+				new SocketOptions(),
+				new MetricsOptions(),
+				new QueryOptions());
+
+		AstyanaxContext<Keyspace> context = new AstyanaxContext.Builder()
+				.forKeyspace(KEYSPACE_NAME)
+				.withHostSupplier(hostSupplier)
+				.withAstyanaxConfiguration(new AstyanaxConfigurationImpl())
+				.withConnectionPoolConfiguration(new JavaDriverConnectionPoolConfigurationImpl(jdConfig))
+				.buildKeyspace(CqlFamilyFactory.getInstance());
+		context.start();
+
+		try {
+			Keyspace keyspace = context.getClient();
+			keyspace.createKeyspaceIfNotExists(ImmutableMap.<String, Object>builder()
+					.put("strategy_options", ImmutableMap.<String, Object>builder()
+							.put("replication_factor", String.valueOf(replicationFactor))
+							.build())
+					.put("strategy_class", "SimpleStrategy")
+					.build());
+			keyspace.createColumnFamily(CF_BATCH, null);
+
+			for (boolean split : new boolean[] { false, true, false, true }) {
+				run(keyspace, split, WARMUP_BATCHES);
+				long[] latencies = run(keyspace, split, BATCHES);
+				report(split, latencies);
+			}
+		} finally {
+			context.shutdown();
+		}
+	}
+
+	private static long[] run(Keyspace keyspace, boolean split, int batches) throws Exception {
+		long[] latencies = new long[batches];
+		for (int i = 0; i < batches; i++) {
+			MutationBatch m = keyspace.prepareMutationBatch()
+					.withCaching(true)
+					.withTokenAwareSplitting(split);
+			for (int row = 0; row < ROWS_PER_BATCH; row++) {
+				String rowKey = "row_" + i + "_" + row;
+				for (int column = 0; column < COLUMNS_PER_ROW; column++) {
+					m.withRow(CF_BATCH, rowKey).putColumn("column" + column, "value" + column);
+				}
+			}
+
+			long startTime = System.nanoTime();
+			m.execute();
+			latencies[i] = System.nanoTime() - startTime;
+		}
+		return latencies;
+	}
+
+	private static void report(boolean split, long[] latencies) {
+		Arrays.sort(latencies);
+		long total = 0;
+		for (long latency : latencies) {
+			total += latency;
+		}
+		LOG.info(String.format("%-12s rows/batch=%d batches=%d avg=%.2fms p50=%.2fms p99=%.2fms max=%.2fms",
+				split ? "split" : "single",
+				ROWS_PER_BATCH,
+				latencies.length,
+				total / latencies.length / 1e6,
+				latencies[latencies.length / 2] / 1e6,
+				latencies[(int) (latencies.length * 0.99)] / 1e6,
+				latencies[latencies.length - 1] / 1e6));
+	}
+}
@@ -0,0 +1,55 @@
+package com.netflix.astyanax.recipes.queue;
+
+/**
+ * Queue stats that also count the batches written by an {@link AsyncMessageAcker}.
+ * The acker only reports batches to stats that implement this interface.
+ */
+public interface AsyncAckerStats extends MessageQueueStats {
+
+    /**
+     * A batch of acks from an {@link AsyncMessageAcker} was written
+     * @param messageCount  Number of acks in the batch
+     * @param latency       Micros from the time the first message of the batch was acked until it was written
+     */
+    void incAckBatch(int messageCount, long latency);
+
+    /**
+     * A batch of acks from an {@link AsyncMessageAcker} failed to be written after all retries
+     * @param messageCount  Number of acks in the batch
+     */
+    void incAckBatchError(int messageCount);
+
+    /**
+     * Number of mutation batches written by async ackers.  Together with
+     * getAckBatchMessageCount() this gives the average batch size.
+     * @return
+     */
+    long getAckBatchCount();
+
+    /**
+     * Number of acks written by async ackers
+     * @return
+     */
+    long getAckBatchMessageCount();
+
+    /**
+     * Number of acks that async ackers failed to write after all retries.  These
+     * messages are redelivered after their timeout.
+     * @return
+     */
+    long getAckErrorCount();
+
+    /**
+     * Average time in micros from acking a message with an async acker until
+     * its batch was written, including the time spent waiting for the batch to fill up
+     * and for retries
+     * @return
+     */
+    long getAckAverageLatency();
+
+    /**
+     * Highest latency in micros of a batch written by async ackers
+     * @return
+     */
+    long getAckMaxLatency();
+}
@@ -0,0 +1,33 @@
+package com.netflix.astyanax.recipes.queue;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Acks messages asynchronously.  Acks from any number of threads are grouped by the
+ * shard of the message and written with a single mutation batch per shard.  Failed
+ * batches are retried before their acks fail.
+ */
+public interface AsyncMessageAcker {
+    /**
+     * Ack a message without waiting for the ack to be written.  Blocks only when too
+     * many acks are waiting to be written.
+     * 
+     * @param message
+     * @return Future that completes once the ack has been written.  Fails with a
+     *         {@link MessageQueueException} once all retries failed, in which case the message
+     *         is redelivered after its timeout.
+     */
+    ListenableFuture<Void> ackMessageAsync(MessageContext message);
+
+    /**
+     * Write all acks that are waiting for their batch to fill up and wait until all acks
+     * made before the call have been written or have failed
+     * @throws MessageQueueException
+     */
+    void flush() throws MessageQueueException;
+
+    /**
+     * Write all pending acks and stop the acker
+     */
+    void close();
+}
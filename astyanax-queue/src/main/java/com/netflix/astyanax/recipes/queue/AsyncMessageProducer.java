@@ -0,0 +1,34 @@
+package com.netflix.astyanax.recipes.queue;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Producer that sends messages asynchronously.  Messages sent concurrently are grouped
+ * by shard and written with a single mutation batch per shard.
+ * 
+ * Messages with a unique key still go through the two phase uniqueness check and are
+ * sent synchronously.
+ */
+public interface AsyncMessageProducer extends MessageProducer {
+    /**
+     * Schedule a job for execution without waiting for it to be written.  Blocks only when 
+     * too many messages are waiting to be sent.
+     * 
+     * @param message
+     * @return Future with the id assigned to the message, which completes once the message has
+     *         been written.  Fails with a {@link MessageQueueException}.
+     */
+    ListenableFuture<String> sendMessageAsync(Message message);
+    
+    /**
+     * Send all messages that are waiting for their batch to fill up and wait until
+     * all messages sent before the call have been written
+     * @throws MessageQueueException
+     */
+    void flush() throws MessageQueueException;
+    
+    /**
+     * Send all pending messages and stop the producer
+     */
+    void close();
+}
@@ -0,0 +1,47 @@
+package com.netflix.astyanax.recipes.queue;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Message queue that also batches writes and acks from any number of threads.
+ */
+public interface AsyncMessageQueue extends MessageQueue {
+    /**
+     * Create a producer that coalesces messages sent from any number of threads into
+     * one mutation batch per shard, using default batching settings.  The producer must
+     * be closed when no longer used.
+     * @return
+     */
+    AsyncMessageProducer createAsyncProducer();
+
+    /**
+     * Create a producer that coalesces messages sent from any number of threads into
+     * one mutation batch per shard.  The producer must be closed when no longer used.
+     * 
+     * @param lingerTime    Maximum time a message waits for other messages to the same shard
+     * @param units
+     * @param maxBatchSize  Maximum number of messages in a batch.  A batch is sent as soon as it is full.
+     * @return
+     */
+    AsyncMessageProducer createAsyncProducer(long lingerTime, TimeUnit units, int maxBatchSize);
+
+    /**
+     * Create an acker that coalesces acks from any number of threads into one mutation
+     * batch per shard, using default batching settings.  The acker must be closed when
+     * no longer used.
+     * @return
+     */
+    AsyncMessageAcker createAsyncAcker();
+
+    /**
+     * Create an acker that coalesces acks from any number of threads into one mutation
+     * batch per shard.  The acker must be closed when no longer used.
+     * 
+     * @param lingerTime    Maximum time an ack waits for other acks to the same shard
+     * @param units
+     * @param maxBatchSize  Maximum number of acks in a batch.  A batch is sent as soon as it is full.
+     * @param maxRetries    Number of times a failed batch is retried
+     * @return
+     */
+    AsyncMessageAcker createAsyncAcker(long lingerTime, TimeUnit units, int maxBatchSize, int maxRetries);
+}
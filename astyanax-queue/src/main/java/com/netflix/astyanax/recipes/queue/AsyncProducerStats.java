@@ -0,0 +1,54 @@
+package com.netflix.astyanax.recipes.queue;
+
+/**
+ * Queue stats that also count the batches written by an {@link AsyncMessageProducer}.
+ * The producer only reports batches to stats that implement this interface.
+ */
+public interface AsyncProducerStats extends MessageQueueStats {
+
+    /**
+     * A batch of messages from an {@link AsyncMessageProducer} was written
+     * @param messageCount  Number of messages in the batch
+     * @param latency       Micros from the time the first message of the batch was sent until it was written
+     */
+    void incProducerBatch(int messageCount, long latency);
+
+    /**
+     * A batch of messages from an {@link AsyncMessageProducer} failed to be written
+     * @param messageCount  Number of messages in the batch
+     */
+    void incProducerBatchError(int messageCount);
+
+    /**
+     * Number of mutation batches written by async producers.  Together with
+     * getProducerMessageCount() this gives the average batch size.
+     * @return
+     */
+    long getProducerBatchCount();
+
+    /**
+     * Number of messages written by async producers.  Sample this periodically
+     * to get the producer throughput.
+     * @return
+     */
+    long getProducerMessageCount();
+
+    /**
+     * Number of messages that async producers failed to write
+     * @return
+     */
+    long getProducerErrorCount();
+
+    /**
+     * Average time in micros from sending a message with an async producer until
+     * its batch was written, including the time spent waiting for the batch to fill up
+     * @return
+     */
+    long getProducerAverageLatency();
+
+    /**
+     * Highest latency in micros of a batch written by async producers
+     * @return
+     */
+    long getProducerMaxLatency();
+}
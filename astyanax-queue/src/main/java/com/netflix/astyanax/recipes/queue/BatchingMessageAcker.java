@@ -0,0 +1,264 @@
+package com.netflix.astyanax.recipes.queue;
+
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.netflix.astyanax.MutationBatch;
+import com.netflix.astyanax.connectionpool.OperationResult;
+
+/**
+ * Acker that coalesces acks from any number of threads into one mutation batch per shard.
+ *
+ * A {@link BatchingSender} groups the acks by the shard row of the message and writes a shard's batch
+ * with executeAsync once it has maxBatchSize acks or its first ack has waited for the linger time, so
+ * batches for different shards are written concurrently.  A failed batch is executed again after a
+ * backoff that grows with each attempt, up to maxRetries times.  The mutations of a batch are only built
+ * once so a retry writes exactly the same columns, including any next message of a trigger.
+ *
+ * Messages without a timeout have no entry to remove.  Their ack is only written when it has a next
+ * message to send.
+ */
+class BatchingMessageAcker implements AsyncMessageAcker {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchingMessageAcker.class);
+
+    static final long DEFAULT_LINGER_TIME        = 10;
+    static final int  DEFAULT_MAX_BATCH_SIZE     = 100;
+    static final int  DEFAULT_MAX_RETRIES        = 3;
+    static final long RETRY_BACKOFF              = TimeUnit.NANOSECONDS.convert(50, TimeUnit.MILLISECONDS);
+
+    // Acks of messages without a timeout only write the next message, which isn't assigned a shard yet
+    private static final String NO_SHARD = "";
+
+    /**
+     * An ack waiting to be written
+     */
+    private static class PendingAck {
+        final MessageContext                    context;
+        final SettableFuture<Void>              future = SettableFuture.create();
+
+        PendingAck(MessageContext context) {
+            this.context  = context;
+        }
+    }
+
+    /**
+     * Acks of one shard and the mutation that writes them
+     */
+    private static class AckBatch implements Delayed {
+        final List<PendingAck>      acks;
+        final MutationBatch         mb;
+        final long                  startTime;
+        final SettableFuture<Void>  done = SettableFuture.create();
+        int                         attempts  = 0;
+        long                        retryTime = 0;
+
+        AckBatch(List<PendingAck> acks, MutationBatch mb, long startTime) {
+            this.acks      = acks;
+            this.mb        = mb;
+            this.startTime = startTime;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(retryTime - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            long diff = retryTime - ((AckBatch)other).retryTime;
+            return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+        }
+    }
+
+    private final ShardedDistributedMessageQueue queue;
+    private final MessageConsumerImpl            consumer;
+    private final int                            maxRetries;
+    private final DelayQueue<AckBatch>           retries  = new DelayQueue<AckBatch>();
+    private final BatchingSender<PendingAck>     sender;
+    private final AsyncAckerStats                stats;
+    private volatile boolean                     stopped  = false;
+
+    /**
+     * @param queue
+     * @param lingerTime    Nanos
+     * @param maxBatchSize
+     * @param maxRetries
+     */
+    BatchingMessageAcker(ShardedDistributedMessageQueue queue, long lingerTime, int maxBatchSize, int maxRetries) {
+        Preconditions.checkArgument(maxRetries >= 0, "Retries must not be negative");
+
+        this.queue      = queue;
+        this.consumer   = new MessageConsumerImpl(queue);
+        this.maxRetries = maxRetries;
+        this.stats      = queue.stats instanceof AsyncAckerStats ? (AsyncAckerStats) queue.stats : null;
+        this.sender     = new BatchingSender<PendingAck>("MessageQueueAcker-" + queue.getName(), lingerTime, maxBatchSize) {
+            @Override
+            protected void send(List<PendingAck> acks, long startTime) {
+                sendBatch(acks, startTime);
+            }
+
+            @Override
+            protected void failed(List<PendingAck> acks, Throwable t) {
+                failAcks(acks, t);
+            }
+
+            @Override
+            protected long nextDeadline() {
+                AckBatch retry = retries.peek();
+                return retry != null ? retry.retryTime : Long.MAX_VALUE;
+            }
+
+            @Override
+            protected void poll() {
+                AckBatch retry;
+                while ((retry = retries.poll()) != null) {
+                    execute(retry);
+                }
+            }
+
+            @Override
+            protected void stopped() {
+                // Failures from here on are not retried any more
+                stopped = true;
+                for (AckBatch retry : retries) {
+                    // drainTo would only take the batches whose backoff is over
+                    if (retries.remove(retry))
+                        execute(retry);
+                }
+            }
+        };
+        this.sender.start();
+    }
+
+    @Override
+    public ListenableFuture<Void> ackMessageAsync(MessageContext context) {
+        if (sender.isClosed())
+            return Futures.immediateFailedFuture(new MessageQueueException("Acker is closed"));
+
+        Message message = context.getMessage();
+        if (message.getToken() == null && context.getNextMessage() == null) {
+            queue.stats.incAckMessageCount();
+            return Futures.immediateFuture(null);
+        }
+
+        PendingAck ack = new PendingAck(context);
+        try {
+            if (!sender.add(ack, message.getToken() != null ? queue.getShardKey(message) : NO_SHARD))
+                return Futures.immediateFailedFuture(new MessageQueueException("Acker is closed"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Futures.immediateFailedFuture(new MessageQueueException("Interrupted acking message", e));
+        }
+        return ack.future;
+    }
+
+    @Override
+    public void flush() throws MessageQueueException {
+        try {
+            sender.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessageQueueException("Interrupted flushing acks", e);
+        } catch (ExecutionException e) {
+            throw new MessageQueueException("Failed to flush acks", e.getCause());
+        }
+    }
+
+    /**
+     * Write all pending acks and wait for the batches in flight.  Batches that are waiting to be
+     * retried get one last attempt.
+     */
+    @Override
+    public void close() {
+        sender.close();
+    }
+
+    private void sendBatch(List<PendingAck> acks, long startTime) {
+        MutationBatch mb = queue.keyspace.prepareMutationBatch().setConsistencyLevel(queue.consistencyLevel);
+        for (PendingAck ack : acks) {
+            consumer.fillAckMutation(ack.context, mb);
+        }
+
+        // Nothing to write if the next messages of the batch couldn't be serialized
+        if (mb.isEmpty()) {
+            for (PendingAck ack : acks) {
+                ack.future.set(null);
+            }
+            return;
+        }
+
+        AckBatch batch = new AckBatch(acks, mb, startTime);
+        sender.inFlight(batch.done);
+        execute(batch);
+    }
+
+    private void execute(final AckBatch batch) {
+        batch.attempts++;
+
+        ListenableFuture<OperationResult<Void>> future;
+        try {
+            future = batch.mb.executeAsync();
+        } catch (Exception e) {
+            failed(batch, e);
+            return;
+        }
+
+        Futures.addCallback(future, new FutureCallback<OperationResult<Void>>() {
+            @Override
+            public void onSuccess(OperationResult<Void> result) {
+                if (stats != null) {
+                    stats.incAckBatch(batch.acks.size(),
+                            TimeUnit.MICROSECONDS.convert(System.nanoTime() - batch.startTime, TimeUnit.NANOSECONDS));
+                }
+                for (PendingAck ack : batch.acks) {
+                    ack.future.set(null);
+                }
+                batch.done.set(null);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                failed(batch, t);
+            }
+        });
+    }
+
+    private void failed(AckBatch batch, Throwable t) {
+        queue.stats.incPersistError();
+        if (!stopped && batch.attempts <= maxRetries) {
+            LOG.info("Failed to ack " + batch.acks.size() + " messages in queue " + queue.getName() + ", retrying", t);
+            batch.retryTime = System.nanoTime() + RETRY_BACKOFF * batch.attempts;
+            retries.add(batch);
+            sender.wakeup();
+
+            // The sender may have stopped before seeing the retry
+            if (!stopped || !retries.remove(batch))
+                return;
+        }
+
+        failAcks(batch.acks, t);
+        batch.done.set(null);
+    }
+
+    private void failAcks(List<PendingAck> acks, Throwable t) {
+        LOG.warn("Failed to ack " + acks.size() + " messages in queue " + queue.getName(), t);
+        if (stats != null) {
+            stats.incAckBatchError(acks.size());
+        }
+        MessageQueueException e = new MessageQueueException("Failed to ack messages.", t);
+        for (PendingAck ack : acks) {
+            ack.future.setException(e);
+        }
+    }
+}
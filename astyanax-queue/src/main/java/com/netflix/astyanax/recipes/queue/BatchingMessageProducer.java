@@ -0,0 +1,218 @@
+package com.netflix.astyanax.recipes.queue;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.netflix.astyanax.MutationBatch;
+import com.netflix.astyanax.connectionpool.OperationResult;
+
+/**
+ * Producer that coalesces messages from any number of threads into one mutation batch per shard.
+ *
+ * The token and shard of a message are assigned and the message is serialized in the calling thread.
+ * A {@link BatchingSender} groups the messages by shard and writes a shard's batch with executeAsync once
+ * it has maxBatchSize messages or its first message has waited for the linger time.  A batch that can't
+ * be built or written fails the futures of its messages.
+ *
+ * Messages with a unique key need a round trip to check the key and are sent synchronously
+ * by the regular producer.
+ */
+class BatchingMessageProducer implements AsyncMessageProducer {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchingMessageProducer.class);
+
+    static final long DEFAULT_LINGER_TIME        = 5;
+    static final int  DEFAULT_MAX_BATCH_SIZE     = 100;
+
+    /**
+     * A message waiting to be sent
+     */
+    private static class PendingMessage {
+        final Message                           message;
+        final MessageQueueEntry                 entry;
+        final String                            shardKey;
+        final byte[]                            body;
+        final SettableFuture<String>            future = SettableFuture.create();
+
+        PendingMessage(Message message, MessageQueueEntry entry, String shardKey, byte[] body) {
+            this.message  = message;
+            this.entry    = entry;
+            this.shardKey = shardKey;
+            this.body     = body;
+        }
+    }
+
+    private final ShardedDistributedMessageQueue queue;
+    private final MessageProducer                producer;
+    private final BatchingSender<PendingMessage> sender;
+    private final AsyncProducerStats             stats;
+
+    /**
+     * @param queue
+     * @param lingerTime    Nanos
+     * @param maxBatchSize
+     */
+    BatchingMessageProducer(ShardedDistributedMessageQueue queue, long lingerTime, int maxBatchSize) {
+        this.queue    = queue;
+        this.producer = queue.createProducer();
+        this.stats    = queue.stats instanceof AsyncProducerStats ? (AsyncProducerStats) queue.stats : null;
+        this.sender   = new BatchingSender<PendingMessage>("MessageQueueProducer-" + queue.getName(), lingerTime, maxBatchSize) {
+            @Override
+            protected void send(List<PendingMessage> batch, long startTime) throws Exception {
+                sendBatch(batch, startTime);
+            }
+
+            @Override
+            protected void failed(List<PendingMessage> batch, Throwable t) {
+                failBatch(batch, t);
+            }
+        };
+        this.sender.start();
+    }
+
+    @Override
+    public ListenableFuture<String> sendMessageAsync(Message message) {
+        if (sender.isClosed())
+            return Futures.immediateFailedFuture(new MessageQueueException("Producer is closed"));
+
+        // Unique keys need to be checked first
+        if (message.hasUniqueKey()) {
+            try {
+                return Futures.immediateFuture(producer.sendMessage(message));
+            } catch (MessageQueueException e) {
+                return Futures.immediateFailedFuture(e);
+            }
+        }
+
+        PendingMessage pendingMessage;
+        try {
+            MessageQueueEntry entry = queue.newMessageEntry(message);
+            pendingMessage = new PendingMessage(message, entry, queue.getShardKey(message), queue.serializeMessage(message));
+        } catch (MessageQueueException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+
+        try {
+            if (!sender.add(pendingMessage, pendingMessage.shardKey))
+                return Futures.immediateFailedFuture(new MessageQueueException("Producer is closed"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Futures.immediateFailedFuture(new MessageQueueException("Interrupted sending message", e));
+        }
+        return pendingMessage.future;
+    }
+
+    @Override
+    public String sendMessage(Message message) throws MessageQueueException {
+        return waitFor(sendMessageAsync(message));
+    }
+
+    @Override
+    public SendMessageResponse sendMessages(Collection<Message> messages) throws MessageQueueException {
+        List<Message>                  unique  = Lists.newArrayList();
+        Map<Message, ListenableFuture<String>> futures = Maps.newLinkedHashMap();
+        for (Message message : messages) {
+            if (message.hasUniqueKey())
+                unique.add(message);
+            else
+                futures.put(message, sendMessageAsync(message));
+        }
+
+        Map<String, Message> success   = Maps.newLinkedHashMap();
+        Collection<Message>  notUnique = Lists.newArrayList();
+        if (!unique.isEmpty()) {
+            SendMessageResponse response = producer.sendMessages(unique);
+            success.putAll(response.getMessages());
+            notUnique = response.getNotUnique();
+        }
+
+        for (Map.Entry<Message, ListenableFuture<String>> future : futures.entrySet()) {
+            success.put(waitFor(future.getValue()), future.getKey());
+        }
+        return new SendMessageResponse(success, notUnique);
+    }
+
+    @Override
+    public void flush() throws MessageQueueException {
+        try {
+            sender.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessageQueueException("Interrupted flushing messages", e);
+        } catch (ExecutionException e) {
+            throw new MessageQueueException("Failed to flush messages", e.getCause());
+        }
+    }
+
+    /**
+     * Send all pending messages and wait for the batches in flight
+     */
+    @Override
+    public void close() {
+        sender.close();
+    }
+
+    private String waitFor(ListenableFuture<String> future) throws MessageQueueException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessageQueueException("Interrupted sending message", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof MessageQueueException)
+                throw (MessageQueueException)e.getCause();
+            throw new MessageQueueException("Failed to send message", e.getCause());
+        }
+    }
+
+    private void sendBatch(final List<PendingMessage> batch, final long startTime) throws Exception {
+        final List<String> ids = Lists.newArrayListWithCapacity(batch.size());
+        MutationBatch mb = queue.keyspace.prepareMutationBatch().setConsistencyLevel(queue.consistencyLevel);
+        for (PendingMessage message : batch) {
+            ids.add(queue.fillMessageMutation(mb, message.message, message.entry, message.shardKey, message.body));
+        }
+
+        ListenableFuture<OperationResult<Void>> future = mb.executeAsync();
+        sender.inFlight(future);
+        Futures.addCallback(future, new FutureCallback<OperationResult<Void>>() {
+            @Override
+            public void onSuccess(OperationResult<Void> result) {
+                if (stats != null) {
+                    stats.incProducerBatch(batch.size(),
+                            TimeUnit.MICROSECONDS.convert(System.nanoTime() - startTime, TimeUnit.NANOSECONDS));
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).future.set(ids.get(i));
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                failBatch(batch, t);
+            }
+        });
+    }
+
+    private void failBatch(List<PendingMessage> batch, Throwable t) {
+        LOG.warn("Failed to insert " + batch.size() + " messages into queue " + queue.getName(), t);
+        queue.stats.incPersistError();
+        if (stats != null) {
+            stats.incProducerBatchError(batch.size());
+        }
+        MessageQueueException e = new MessageQueueException("Failed to insert messages into queue.", t);
+        for (PendingMessage message : batch) {
+            message.future.setException(e);
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.netflix.astyanax.recipes.queue;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Single sender thread shared by the batching producer and acker.  Items added from any number of
+ * threads are grouped by shard and a shard's batch is handed to {@link #send(List, long)} once it has
+ * maxBatchSize items or its first item has waited for the linger time.  The number of items waiting to
+ * be sent is bounded so that callers block when the cluster can't keep up.
+ *
+ * Anything thrown while sending a batch is passed to {@link #failed(List, Throwable)} and the sender
+ * keeps going.  Items are only added while holding the read side of a lock that close() takes before
+ * stopping the sender, so every item that was added is either sent or failed.
+ *
+ * @param <T>
+ */
+abstract class BatchingSender<T> {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchingSender.class);
+
+    static final int PENDING_BATCHES_PER_SENDER = 100;
+
+    /**
+     * An item waiting to be sent, a request to send all open batches or a signal to the sender
+     */
+    private static class Pending<T> {
+        final T                                 item;
+        final String                            shardKey;
+        final long                              addTime;
+        final SettableFuture<List<ListenableFuture<?>>> flush;
+
+        Pending(T item, String shardKey, SettableFuture<List<ListenableFuture<?>>> flush) {
+            this.item     = item;
+            this.shardKey = shardKey;
+            this.addTime  = System.nanoTime();
+            this.flush    = flush;
+        }
+    }
+
+    private final String                        name;
+    private final long                          lingerTime;
+    private final int                           maxBatchSize;
+    private final BlockingQueue<Pending<T>>     pending;
+    private final Set<ListenableFuture<?>>      inFlight  = Sets.newSetFromMap(new ConcurrentHashMap<ListenableFuture<?>, Boolean>());
+    private final Pending<T>                    poison    = new Pending<T>(null, null, null);
+    private final Pending<T>                    wakeup    = new Pending<T>(null, null, null);
+    private final ReadWriteLock                 closeLock = new ReentrantReadWriteLock();
+    private final Thread                        sender;
+    private volatile boolean                    closed    = false;
+
+    /**
+     * @param name          Name of the sender thread
+     * @param lingerTime    Nanos
+     * @param maxBatchSize
+     */
+    BatchingSender(String name, long lingerTime, int maxBatchSize) {
+        Preconditions.checkArgument(maxBatchSize > 0, "Batch size must be greater than 0");
+
+        this.name         = name;
+        this.lingerTime   = lingerTime;
+        this.maxBatchSize = maxBatchSize;
+        this.pending      = new LinkedBlockingQueue<Pending<T>>(maxBatchSize * PENDING_BATCHES_PER_SENDER);
+
+        this.sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                sendBatches();
+            }
+        }, name);
+        this.sender.setDaemon(true);
+    }
+
+    /**
+     * Start the sender thread.  Called by the subclass once it is fully constructed.
+     */
+    void start() {
+        sender.start();
+    }
+
+    /**
+     * Send a batch of items of the same shard.  Called on the sender thread so this should not block
+     * on the write.  Writes that haven't completed yet are registered with {@link #inFlight(ListenableFuture)}.
+     *
+     * @param batch
+     * @param startTime     Time at which the first item of the batch was added, in nanos
+     * @throws Exception
+     */
+    protected abstract void send(List<T> batch, long startTime) throws Exception;
+
+    /**
+     * Fail all items of a batch that could not be sent
+     */
+    protected abstract void failed(List<T> batch, Throwable t);
+
+    /**
+     * @return Time at which the sender should call {@link #poll()} even when nothing was added, in nanos
+     */
+    protected long nextDeadline() {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Called on the sender thread each time it wakes up, until it stops
+     */
+    protected void poll() {
+    }
+
+    /**
+     * Called on the sender thread once all pending batches were sent, before close() waits
+     * for the batches in flight
+     */
+    protected void stopped() {
+    }
+
+    /**
+     * Add an item to the batch of its shard, blocking while too many items are waiting to be sent
+     *
+     * @return False if the sender is closed
+     * @throws InterruptedException
+     */
+    boolean add(T item, String shardKey) throws InterruptedException {
+        closeLock.readLock().lock();
+        try {
+            if (closed)
+                return false;
+            pending.put(new Pending<T>(item, shardKey, null));
+            return true;
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Send all open batches and wait until everything added before the call has been written or has failed.
+     * Returns immediately once the sender is closed.
+     *
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    void flush() throws InterruptedException, ExecutionException {
+        SettableFuture<List<ListenableFuture<?>>> flush = SettableFuture.create();
+        closeLock.readLock().lock();
+        try {
+            if (closed)
+                return;
+            pending.put(new Pending<T>(null, null, flush));
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        Futures.successfulAsList(flush.get()).get();
+    }
+
+    /**
+     * Send all pending items, stop the sender and wait for the batches in flight
+     */
+    void close() {
+        closeLock.writeLock().lock();
+        try {
+            if (closed)
+                return;
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+
+        try {
+            pending.put(poison);
+            sender.join();
+            Futures.successfulAsList(Lists.newArrayList(inFlight)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // successfulAsList doesn't fail
+        }
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Track a write until it completes so that flush() and close() wait for it
+     */
+    void inFlight(final ListenableFuture<?> future) {
+        inFlight.add(future);
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                inFlight.remove(future);
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    /**
+     * Wake up the sender so that it checks {@link #nextDeadline()} again
+     */
+    void wakeup() {
+        pending.offer(wakeup);
+    }
+
+    /**
+     * Sender thread loop.  Batches are kept in the order in which they were opened so the first
+     * batch is always the next one to reach its linger time.
+     */
+    private void sendBatches() {
+        Map<String, List<Pending<T>>> batches = Maps.newLinkedHashMap();
+        List<Pending<T>>              drained = Lists.newArrayList();
+        boolean done = false;
+
+        while (!done) {
+            try {
+                long deadline = nextDeadline();
+                if (!batches.isEmpty())
+                    deadline = Math.min(deadline, batches.values().iterator().next().get(0).addTime + lingerTime);
+
+                Pending<T> next;
+                if (deadline == Long.MAX_VALUE) {
+                    next = pending.take();
+                }
+                else {
+                    next = pending.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+                if (next != null) {
+                    drained.add(next);
+                    pending.drainTo(drained, maxBatchSize);
+                }
+            } catch (InterruptedException e) {
+                LOG.warn(name + " interrupted, sending pending batches");
+                // Close under the lock like close() so nothing is added after the drain.  Adders blocked
+                // on a full queue hold the read lock, so keep making room until the lock is free.
+                while (!closeLock.writeLock().tryLock()) {
+                    pending.drainTo(drained);
+                    Thread.yield();
+                }
+                try {
+                    closed = true;
+                    pending.drainTo(drained);
+                } finally {
+                    closeLock.writeLock().unlock();
+                }
+                done = true;
+            }
+
+            for (Pending<T> item : drained) {
+                if (item == poison) {
+                    done = true;
+                }
+                else if (item == wakeup) {
+                    // Deadline is checked by poll()
+                }
+                else if (item.flush != null) {
+                    sendAll(batches);
+                    item.flush.set(Lists.<ListenableFuture<?>>newArrayList(inFlight));
+                }
+                else {
+                    List<Pending<T>> batch = batches.get(item.shardKey);
+                    if (batch == null) {
+                        batch = Lists.newArrayListWithCapacity(Math.min(maxBatchSize, 16));
+                        batches.put(item.shardKey, batch);
+                    }
+                    batch.add(item);
+                    if (batch.size() >= maxBatchSize) {
+                        batches.remove(item.shardKey);
+                        send(batch);
+                    }
+                }
+            }
+            drained.clear();
+
+            if (done) {
+                sendAll(batches);
+            }
+            else {
+                long now = System.nanoTime();
+                Iterator<List<Pending<T>>> iter = batches.values().iterator();
+                while (iter.hasNext()) {
+                    List<Pending<T>> batch = iter.next();
+                    if (now - batch.get(0).addTime < lingerTime)
+                        break;
+                    iter.remove();
+                    send(batch);
+                }
+                try {
+                    poll();
+                } catch (Throwable t) {
+                    LOG.error(name + " failed to poll", t);
+                }
+            }
+        }
+
+        try {
+            stopped();
+        } catch (Throwable t) {
+            LOG.error(name + " failed to stop", t);
+        }
+    }
+
+    private void sendAll(Map<String, List<Pending<T>>> batches) {
+        for (List<Pending<T>> batch : batches.values()) {
+            send(batch);
+        }
+        batches.clear();
+    }
+
+    private void send(List<Pending<T>> batch) {
+        List<T> items = Lists.newArrayListWithCapacity(batch.size());
+        for (Pending<T> item : batch) {
+            items.add(item.item);
+        }
+
+        // Anything going wrong here only fails this batch, this is the only thread sending batches
+        try {
+            send(items, batch.get(0).addTime);
+        } catch (Throwable t) {
+            try {
+                failed(items, t);
+            } catch (Throwable t2) {
+                LOG.error(name + " failed to fail a batch of " + items.size() + " items", t2);
+            }
+        }
+    }
+}
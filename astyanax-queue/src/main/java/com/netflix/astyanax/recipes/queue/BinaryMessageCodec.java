@@ -0,0 +1,413 @@
+package com.netflix.astyanax.recipes.queue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.netflix.astyanax.recipes.queue.triggers.AbstractTrigger;
+import com.netflix.astyanax.recipes.queue.triggers.RepeatingTrigger;
+import com.netflix.astyanax.recipes.queue.triggers.RunOnceTrigger;
+import com.netflix.astyanax.recipes.queue.triggers.Trigger;
+
+/**
+ * Compact binary encoding of messages.
+ *
+ * A message starts with a magic byte, which can't start a JSON document, and the format version,
+ * followed by a bit set of the fields that are present and the fields themselves.  Integers are
+ * written as zig zag varints, UUIDs as two longs and strings as UTF8 with a varint length.  The
+ * built in triggers and parameter values that are strings, numbers or booleans are written
+ * field by field.  Other triggers and parameter maps with other values fall back to embedded JSON
+ * with the class name, so every message that can be written as JSON can also be written by this codec.
+ *
+ * Format version 1:
+ * <pre>
+ *  message     := MAGIC VERSION fields:varint priority:byte timeout:varint
+ *                 [token:uuid] [random:uuid] [key:string] [taskClass:string] [trigger] [parameters]
+ *  trigger     := RUN_ONCE triggerTime:varint executionCount:varint
+ *               | REPEATING triggerTime:varint executionCount:varint interval:varint endTime:varint
+ *                           [delay:varint] [repeatCount:varint]   (preceded by a flags byte)
+ *               | OTHER className:string json:string
+ *  parameters  := count:varint (name:string value)*  |  json:string
+ *  value       := NULL | STRING string | INTEGER varint | LONG varint | TRUE | FALSE | DOUBLE 8 bytes
+ * </pre>
+ */
+public class BinaryMessageCodec implements MessageCodec {
+    public static final String NAME    = "binary-v1";
+
+    static final byte  MAGIC           = (byte) 0xB1;
+    static final byte  VERSION         = 1;
+
+    // Fields of a message
+    private static final int TOKEN          = 1;
+    private static final int RANDOM         = 1 << 1;
+    private static final int KEY            = 1 << 2;
+    private static final int UNIQUE_KEY     = 1 << 3;
+    private static final int TASK_CLASS     = 1 << 4;
+    private static final int TRIGGER        = 1 << 5;
+    private static final int PARAMETERS     = 1 << 6;
+    private static final int JSON_PARAMETERS = 1 << 7;
+    private static final int KEEP_HISTORY   = 1 << 8;
+    private static final int AUTO_COMMIT    = 1 << 9;
+
+    // Triggers
+    private static final byte RUN_ONCE      = 1;
+    private static final byte REPEATING     = 2;
+    private static final byte OTHER         = 3;
+
+    // Fields of a repeating trigger
+    private static final byte DELAY         = 1;
+    private static final byte REPEAT_COUNT  = 1 << 1;
+
+    // Parameter values
+    private static final byte NULL          = 0;
+    private static final byte STRING        = 1;
+    private static final byte INTEGER       = 2;
+    private static final byte LONG          = 3;
+    private static final byte TRUE          = 4;
+    private static final byte FALSE         = 5;
+    private static final byte DOUBLE        = 6;
+
+    private static final BinaryMessageCodec instance = new BinaryMessageCodec();
+
+    public static BinaryMessageCodec get() {
+        return instance;
+    }
+
+    private final ObjectMapper mapper = ShardedDistributedMessageQueue.mapper;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean canDecode(byte[] data) {
+        return data.length > 0 && data[0] == MAGIC;
+    }
+
+    @Override
+    public byte[] encode(Message message) throws MessageQueueException {
+        try {
+            Writer out = new Writer();
+            out.writeByte(MAGIC);
+            out.writeByte(VERSION);
+
+            Map<String, Object> parameters = message.getParameters();
+            boolean simpleParameters = parameters == null || hasSimpleValues(parameters);
+
+            int fields = 0;
+            if (message.getToken() != null)     fields |= TOKEN;
+            if (message.getRandom() != null)    fields |= RANDOM;
+            if (message.hasKey())               fields |= KEY;
+            if (message.hasUniqueKey())         fields |= UNIQUE_KEY;
+            if (message.hasTaskClass())         fields |= TASK_CLASS;
+            if (message.hasTrigger())           fields |= TRIGGER;
+            if (parameters != null)             fields |= simpleParameters ? PARAMETERS : JSON_PARAMETERS;
+            if (message.isKeepHistory())        fields |= KEEP_HISTORY;
+            if (message.isAutoCommitTrigger())  fields |= AUTO_COMMIT;
+
+            out.writeVarLong(fields);
+            out.writeByte(message.getPriority());
+            out.writeVarLong(message.getTimeout());
+
+            if ((fields & TOKEN) != 0)
+                out.writeUUID(message.getToken());
+            if ((fields & RANDOM) != 0)
+                out.writeUUID(message.getRandom());
+            if ((fields & KEY) != 0)
+                out.writeString(message.getKey());
+            if ((fields & TASK_CLASS) != 0)
+                out.writeString(message.getTaskClass());
+            if ((fields & TRIGGER) != 0)
+                writeTrigger(out, message.getTrigger());
+
+            if ((fields & PARAMETERS) != 0) {
+                out.writeVarLong(parameters.size());
+                for (Entry<String, Object> parameter : parameters.entrySet()) {
+                    out.writeString(parameter.getKey());
+                    writeValue(out, parameter.getValue());
+                }
+            }
+            else if ((fields & JSON_PARAMETERS) != 0) {
+                out.writeString(mapper.writeValueAsString(parameters));
+            }
+            return out.toByteArray();
+        } catch (Exception e) {
+            throw new MessageQueueException("Failed to serialize message data: " + message, e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Message decode(byte[] data) throws MessageQueueException {
+        if (!canDecode(data))
+            throw new MessageQueueException("Not a binary message");
+        if (data.length < 2 || data[1] != VERSION)
+            throw new MessageQueueException("Unsupported binary message version " + (data.length < 2 ? "?" : data[1]));
+
+        try {
+            Reader in = new Reader(data, 2);
+            int fields = (int) in.readVarLong();
+
+            Message message = new Message();
+            message.setPriority(in.readByte());
+            message.setTimeout((int) in.readVarLong());
+            if ((fields & TOKEN) != 0)
+                message.setToken(in.readUUID());
+            if ((fields & RANDOM) != 0)
+                message.setRandom(in.readUUID());
+            if ((fields & KEY) != 0) {
+                if ((fields & UNIQUE_KEY) != 0)
+                    message.setUniqueKey(in.readString());
+                else
+                    message.setKey(in.readString());
+            }
+            if ((fields & TASK_CLASS) != 0)
+                message.setTaskClass(in.readString());
+            if ((fields & TRIGGER) != 0)
+                message.setTrigger(readTrigger(in));
+
+            if ((fields & PARAMETERS) != 0) {
+                int count = (int) in.readVarLong();
+                Map<String, Object> parameters = Maps.newHashMapWithExpectedSize(count);
+                for (int i = 0; i < count; i++) {
+                    String name = in.readString();
+                    parameters.put(name, readValue(in));
+                }
+                message.setParameters(parameters);
+            }
+            else if ((fields & JSON_PARAMETERS) != 0) {
+                // The root map is written with its concrete type, so it is read back without type information
+                message.setParameters(mapper.readValue(in.readString(), HashMap.class));
+            }
+
+            message.setKeepHistory((fields & KEEP_HISTORY) != 0);
+            message.setAutoCommitTrigger((fields & AUTO_COMMIT) != 0);
+            return message;
+        } catch (MessageQueueException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new MessageQueueException("Failed to parse binary message", e);
+        }
+    }
+
+    private static boolean hasSimpleValues(Map<String, Object> parameters) {
+        for (Object value : parameters.values()) {
+            if (value != null
+                && !(value instanceof String)
+                && !(value instanceof Integer)
+                && !(value instanceof Long)
+                && !(value instanceof Boolean)
+                && !(value instanceof Double))
+                return false;
+        }
+        return true;
+    }
+
+    private void writeValue(Writer out, Object value) {
+        if (value == null) {
+            out.writeByte(NULL);
+        }
+        else if (value instanceof String) {
+            out.writeByte(STRING);
+            out.writeString((String) value);
+        }
+        else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeVarLong((Integer) value);
+        }
+        else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeVarLong((Long) value);
+        }
+        else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        }
+        else {
+            out.writeByte(DOUBLE);
+            out.writeLong(Double.doubleToLongBits((Double) value));
+        }
+    }
+
+    private Object readValue(Reader in) throws MessageQueueException {
+        byte type = in.readByte();
+        switch (type) {
+        case NULL:      return null;
+        case STRING:    return in.readString();
+        case INTEGER:   return (int) in.readVarLong();
+        case LONG:      return in.readVarLong();
+        case TRUE:      return Boolean.TRUE;
+        case FALSE:     return Boolean.FALSE;
+        case DOUBLE:    return Double.longBitsToDouble(in.readLong());
+        default:
+            throw new MessageQueueException("Unknown parameter type " + type);
+        }
+    }
+
+    private void writeTrigger(Writer out, Trigger trigger) throws Exception {
+        if (trigger.getClass() == RunOnceTrigger.class) {
+            out.writeByte(RUN_ONCE);
+            writeAbstractTrigger(out, (AbstractTrigger) trigger);
+        }
+        else if (trigger.getClass() == RepeatingTrigger.class) {
+            RepeatingTrigger repeating = (RepeatingTrigger) trigger;
+            out.writeByte(REPEATING);
+            writeAbstractTrigger(out, repeating);
+            out.writeVarLong(repeating.getInterval());
+            out.writeVarLong(repeating.getEndTime());
+            byte flags = 0;
+            if (repeating.getDelay() != null)       flags |= DELAY;
+            if (repeating.getRepeatCount() != null) flags |= REPEAT_COUNT;
+            out.writeByte(flags);
+            if (repeating.getDelay() != null)
+                out.writeVarLong(repeating.getDelay());
+            if (repeating.getRepeatCount() != null)
+                out.writeVarLong(repeating.getRepeatCount());
+        }
+        else {
+            out.writeByte(OTHER);
+            out.writeString(trigger.getClass().getName());
+            out.writeString(mapper.writeValueAsString(trigger));
+        }
+    }
+
+    private Trigger readTrigger(Reader in) throws Exception {
+        byte type = in.readByte();
+        switch (type) {
+        case RUN_ONCE: {
+            RunOnceTrigger trigger = new RunOnceTrigger();
+            readAbstractTrigger(in, trigger);
+            return trigger;
+        }
+        case REPEATING: {
+            RepeatingTrigger trigger = new RepeatingTrigger();
+            readAbstractTrigger(in, trigger);
+            trigger.setInterval(in.readVarLong());
+            trigger.setEndTime(in.readVarLong());
+            byte flags = in.readByte();
+            if ((flags & DELAY) != 0)
+                trigger.setDelay(in.readVarLong());
+            if ((flags & REPEAT_COUNT) != 0)
+                trigger.setRepeatCount(in.readVarLong());
+            return trigger;
+        }
+        case OTHER: {
+            String className = in.readString();
+            return (Trigger) mapper.readValue(in.readString(), Class.forName(className));
+        }
+        default:
+            throw new MessageQueueException("Unknown trigger type " + type);
+        }
+    }
+
+    private static void writeAbstractTrigger(Writer out, AbstractTrigger trigger) {
+        out.writeVarLong(trigger.getTriggerTime());
+        out.writeVarLong(trigger.getExecutionCount());
+    }
+
+    private static void readAbstractTrigger(Reader in, AbstractTrigger trigger) {
+        trigger.setTriggerTime(in.readVarLong());
+        trigger.setExecutionCount(in.readVarLong());
+    }
+
+    /**
+     * Growable byte array, cheaper than a stream since nothing is synchronized
+     */
+    private static class Writer {
+        private byte[] buffer = new byte[128];
+        private int    length = 0;
+
+        void writeByte(int b) {
+            ensureCapacity(1);
+            buffer[length++] = (byte) b;
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8)
+                buffer[length++] = (byte) (value >>> shift);
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            long zigzag = (value << 1) ^ (value >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                buffer[length++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buffer[length++] = (byte) zigzag;
+        }
+
+        void writeUUID(UUID uuid) {
+            writeLong(uuid.getMostSignificantBits());
+            writeLong(uuid.getLeastSignificantBits());
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(Charsets.UTF_8);
+            writeVarLong(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, length, bytes.length);
+            length += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, length);
+        }
+
+        private void ensureCapacity(int size) {
+            if (length + size > buffer.length)
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + size));
+        }
+    }
+
+    private static class Reader {
+        private final byte[] buffer;
+        private int          position;
+
+        Reader(byte[] buffer, int position) {
+            this.buffer   = buffer;
+            this.position = position;
+        }
+
+        byte readByte() {
+            return buffer[position++];
+        }
+
+        long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++)
+                value = (value << 8) | (buffer[position++] & 0xFF);
+            return value;
+        }
+
+        long readVarLong() {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer[position++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        UUID readUUID() {
+            return new UUID(readLong(), readLong());
+        }
+
+        String readString() {
+            int size = (int) readVarLong();
+            String value = new String(buffer, position, size, Charsets.UTF_8);
+            position += size;
+            return value;
+        }
+    }
+}
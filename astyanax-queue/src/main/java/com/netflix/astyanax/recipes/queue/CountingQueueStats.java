@@ -3,7 +3,7 @@ package com.netflix.astyanax.recipes.queue;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
-public class CountingQueueStats implements MessageQueueStats {
+public class CountingQueueStats implements AsyncProducerStats, AsyncAckerStats {
     private AtomicLong emptyPartitionCount = new AtomicLong();
     private AtomicLong lockContentionCount = new AtomicLong();
     private AtomicLong eventProcessCount   = new AtomicLong();
@@ -13,6 +13,16 @@ public class CountingQueueStats implements MessageQueueStats {
     private AtomicLong sendMessageCount    = new AtomicLong();
     private AtomicLong invalidTaskCount    = new AtomicLong();
     private AtomicLong persistErrorCount   = new AtomicLong();
+    private AtomicLong producerBatchCount   = new AtomicLong();
+    private AtomicLong producerMessageCount = new AtomicLong();
+    private AtomicLong producerErrorCount   = new AtomicLong();
+    private AtomicLong producerLatency      = new AtomicLong();
+    private AtomicLong producerMaxLatency   = new AtomicLong();
+    private AtomicLong ackBatchCount        = new AtomicLong();
+    private AtomicLong ackBatchMessageCount = new AtomicLong();
+    private AtomicLong ackErrorCount        = new AtomicLong();
+    private AtomicLong ackLatency           = new AtomicLong();
+    private AtomicLong ackMaxLatency        = new AtomicLong();
     
     @Override
     public void incEmptyPartitionCount() {
@@ -59,6 +69,40 @@ public class CountingQueueStats implements MessageQueueStats {
         persistErrorCount.incrementAndGet();
     }
 
+    @Override
+    public void incProducerBatch(int messageCount, long latency) {
+        producerBatchCount.incrementAndGet();
+        producerMessageCount.addAndGet(messageCount);
+        producerLatency.addAndGet(latency);
+
+        long max;
+        do {
+            max = producerMaxLatency.get();
+        } while (latency > max && !producerMaxLatency.compareAndSet(max, latency));
+    }
+
+    @Override
+    public void incProducerBatchError(int messageCount) {
+        producerErrorCount.addAndGet(messageCount);
+    }
+
+    @Override
+    public void incAckBatch(int messageCount, long latency) {
+        ackBatchCount.incrementAndGet();
+        ackBatchMessageCount.addAndGet(messageCount);
+        ackLatency.addAndGet(latency);
+
+        long max;
+        do {
+            max = ackMaxLatency.get();
+        } while (latency > max && !ackMaxLatency.compareAndSet(max, latency));
+    }
+
+    @Override
+    public void incAckBatchError(int messageCount) {
+        ackErrorCount.addAndGet(messageCount);
+    }
+
     @Override
     public long getEmptyPartitionCount() {
         return this.emptyPartitionCount.get();
@@ -104,6 +148,58 @@ public class CountingQueueStats implements MessageQueueStats {
         return this.persistErrorCount.get();
     }
     
+    @Override
+    public long getProducerBatchCount() {
+        return this.producerBatchCount.get();
+    }
+
+    @Override
+    public long getProducerMessageCount() {
+        return this.producerMessageCount.get();
+    }
+
+    @Override
+    public long getProducerErrorCount() {
+        return this.producerErrorCount.get();
+    }
+
+    @Override
+    public long getProducerAverageLatency() {
+        long batches = this.producerBatchCount.get();
+        return batches == 0 ? 0 : this.producerLatency.get() / batches;
+    }
+
+    @Override
+    public long getProducerMaxLatency() {
+        return this.producerMaxLatency.get();
+    }
+
+    @Override
+    public long getAckBatchCount() {
+        return this.ackBatchCount.get();
+    }
+
+    @Override
+    public long getAckBatchMessageCount() {
+        return this.ackBatchMessageCount.get();
+    }
+
+    @Override
+    public long getAckErrorCount() {
+        return this.ackErrorCount.get();
+    }
+
+    @Override
+    public long getAckAverageLatency() {
+        long batches = this.ackBatchCount.get();
+        return batches == 0 ? 0 : this.ackLatency.get() / batches;
+    }
+
+    @Override
+    public long getAckMaxLatency() {
+        return this.ackMaxLatency.get();
+    }
+
     @Override
     public String toString() {
         return "CountingQueueStats [empty=" + emptyPartitionCount.get() 
@@ -113,6 +209,14 @@ public class CountingQueueStats implements MessageQueueStats {
                 + ", exp="      + expiredLockCount .get()
                 + ", released=" + ackMessageCount .get()
                 + ", new="      + sendMessageCount .get()
-                + ", invalid="  + invalidTaskCount + "]";
+                + ", invalid="  + invalidTaskCount
+                + ", batches="  + producerBatchCount.get()
+                + ", batched="  + producerMessageCount.get()
+                + ", batchErr=" + producerErrorCount.get()
+                + ", batchLat=" + getProducerAverageLatency()
+                + ", ackBatches=" + ackBatchCount.get()
+                + ", acked="    + ackBatchMessageCount.get()
+                + ", ackErr="   + ackErrorCount.get()
+                + ", ackLat="   + getAckAverageLatency() + "]";
     }
 }
@@ -0,0 +1,51 @@
+package com.netflix.astyanax.recipes.queue;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+/**
+ * The original JSON encoding of messages, which includes the class name of the trigger
+ * and of all non trivial parameter values.
+ */
+public class JsonMessageCodec implements MessageCodec {
+    public static final String NAME = "json";
+
+    private static final JsonMessageCodec instance = new JsonMessageCodec();
+
+    public static JsonMessageCodec get() {
+        return instance;
+    }
+
+    private final ObjectMapper mapper = ShardedDistributedMessageQueue.mapper;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean canDecode(byte[] data) {
+        for (byte b : data) {
+            if (!Character.isWhitespace(b))
+                return b == '{';
+        }
+        return false;
+    }
+
+    @Override
+    public byte[] encode(Message message) throws MessageQueueException {
+        try {
+            return mapper.writeValueAsBytes(message);
+        } catch (Exception e) {
+            throw new MessageQueueException("Failed to serialize message data: " + message, e);
+        }
+    }
+
+    @Override
+    public Message decode(byte[] data) throws MessageQueueException {
+        try {
+            return mapper.readValue(data, Message.class);
+        } catch (Exception e) {
+            throw new MessageQueueException("Failed to parse message data", e);
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package com.netflix.astyanax.recipes.queue;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.netflix.astyanax.MutationBatch;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.recipes.locks.BusyLockException;
+
+/**
+ * Consumer that keeps the shards it reads from for a lease period instead of locking a shard for every read.
+ *
+ * A shard is claimed through the queue's {@link ShardLockManager} the first time the shard reader policy hands
+ * it to this consumer, and the lock is kept for as long as the consumer keeps reading from the shard.  The
+ * consumer reads its leased shards directly, in turn, and only asks the shard reader policy for another shard
+ * when none of them had messages.  Every read of a shard that has messages renews its lease.  Leases that
+ * weren't renewed within the lease time are released so that the shard can move to another consumer, which
+ * is how shards rebalance when consumers come and go or fall behind.  A read from a leased shard is a single
+ * slice read plus one mutation batch, without lock columns.  Locks of a {@link RenewableShardLockManager} are
+ * renewed once half the lease time has passed since they were acquired or last renewed, and a shard whose
+ * lock was lost is given up.
+ *
+ * The policy keeps handing out shards that are leased by other consumers.  Shards leased by another consumer
+ * of the same queue instance are skipped without touching the lock.  A shard that couldn't be locked, because
+ * a consumer in another process holds it, isn't tried again by this consumer for the lease time.
+ *
+ * Each read fetches up to the prefetch size and readMessages is served from that local buffer.  Buffered
+ * messages have already been popped from the queue, so their timeout runs while they wait in the buffer.
+ * Buffered messages whose timeout has passed are dropped since they will be redelivered from their timeout
+ * entry.  Keep the prefetch size small compared to the rate at which messages are processed.
+ *
+ * Prefetching relies on message timeouts.  A message without a timeout has no timeout entry, so if the
+ * consumer dies while the message is buffered the message is lost.  close() writes buffered messages
+ * without a timeout back to the queue under their original entry.  Queues with messages without a timeout
+ * should use a prefetch size of 0, which only reads as many messages as are requested.
+ *
+ * A consumer must only be used by one thread because lock managers may tie a lock to the thread that
+ * acquired it.  Call close() to release the leases.
+ */
+class LeasingMessageConsumer implements MessageConsumer, Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(LeasingMessageConsumer.class);
+
+    private static class Lease {
+        final ShardLock         lock;
+        final MessageQueueShard shard;
+        int                     lastCount;
+        long                    renewTime;
+        long                    lockRenewTime;
+
+        Lease(ShardLock lock, MessageQueueShard shard) {
+            this.lock          = lock;
+            this.shard         = shard;
+            this.lockRenewTime = System.currentTimeMillis();
+        }
+    }
+
+    private static class BufferedMessage {
+        final MessageContext context;
+        final long           expireTime;
+
+        BufferedMessage(MessageContext context, long expireTime) {
+            this.context    = context;
+            this.expireTime = expireTime;
+        }
+    }
+
+    private final ShardedDistributedMessageQueue queue;
+    private final MessageConsumerImpl            reader;
+    private final long                           leaseTime;
+    private final int                            prefetchSize;
+    private final Map<String, Lease>             leases = Maps.newLinkedHashMap();
+    private final Map<String, Long>              lockedElsewhere = Maps.newHashMap();
+    private final Deque<BufferedMessage>         buffer = new ArrayDeque<BufferedMessage>();
+
+    /**
+     * @param queue
+     * @param leaseTime     Millis after which a shard that wasn't read from is released
+     * @param prefetchSize  Number of messages to read from a shard at once, at least the number of requested messages
+     */
+    LeasingMessageConsumer(ShardedDistributedMessageQueue queue, long leaseTime, int prefetchSize) {
+        Preconditions.checkNotNull(queue.lockManager, "Shard leases require a ShardLockManager");
+        this.queue        = queue;
+        this.reader       = new MessageConsumerImpl(queue);
+        this.leaseTime    = leaseTime;
+        this.prefetchSize = prefetchSize;
+    }
+
+    @Override
+    public List<MessageContext> readMessages(int itemsToPop) throws MessageQueueException, BusyLockException, InterruptedException {
+        return readMessages(itemsToPop, 0, null);
+    }
+
+    @Override
+    public List<MessageContext> readMessages(int itemsToPop, long timeout, TimeUnit units) throws MessageQueueException, BusyLockException, InterruptedException {
+        long timeoutTime = (timeout == 0) ? 0 : System.currentTimeMillis() + TimeUnit.MILLISECONDS.convert(timeout, units);
+        while (true) {
+            List<MessageContext> messages = takeBufferedMessages(itemsToPop);
+            if (!messages.isEmpty()) {
+                return messages;
+            }
+
+            releaseExpiredLeases();
+
+            if (readLeasedShards(itemsToPop) > 0) {
+                continue;
+            }
+
+            MessageQueueShard shard = queue.shardReaderPolicy.nextShard();
+            if (shard != null) {
+                int count = 0;
+                try {
+                    count = claim(shard, itemsToPop);
+                } finally {
+                    queue.shardReaderPolicy.releaseShard(shard, count);
+                }
+                if (count > 0) {
+                    continue;
+                }
+            }
+            if (timeoutTime != 0 && System.currentTimeMillis() > timeoutTime) {
+                return Lists.newLinkedList();
+            }
+            Thread.sleep(queue.shardReaderPolicy.getPollInterval());
+        }
+    }
+
+    @Override
+    public List<MessageContext> readMessagesFromShard(String shardName, int itemsToPop) throws MessageQueueException, BusyLockException {
+        if (leases.containsKey(shardName)) {
+            return reader.readMessagesFromLockedShard(shardName, itemsToPop);
+        }
+        return reader.readMessagesFromShard(shardName, itemsToPop);
+    }
+
+    @Override
+    public Collection<Message> peekMessages(int itemsToPop) throws MessageQueueException {
+        return reader.peekMessages(itemsToPop);
+    }
+
+    @Override
+    public void ackMessage(MessageContext message) throws MessageQueueException {
+        reader.ackMessage(message);
+    }
+
+    @Override
+    public void ackMessages(Collection<MessageContext> messages) throws MessageQueueException {
+        reader.ackMessages(messages);
+    }
+
+    @Override
+    public void ackPoisonMessage(MessageContext message) throws MessageQueueException {
+        reader.ackPoisonMessage(message);
+    }
+
+    /**
+     * @return Number of messages waiting in the local buffer
+     */
+    int getBufferedMessageCount() {
+        return buffer.size();
+    }
+
+    /**
+     * @return Number of shards this consumer holds a lease on
+     */
+    int getLeaseCount() {
+        return leases.size();
+    }
+
+    /**
+     * Release all leases.  Buffered messages without a timeout would otherwise be lost and are written back
+     * under the entry they were read from so they keep their message id.  The others are redelivered once
+     * their timeout passes.
+     */
+    @Override
+    public void close() {
+        MutationBatch mb = queue.keyspace.prepareMutationBatch().setConsistencyLevel(queue.consistencyLevel);
+        int returned = 0;
+        for (BufferedMessage buffered : buffer) {
+            if (buffered.expireTime == Long.MAX_VALUE) {
+                MessageContext    context = buffered.context;
+                Message           message = context.getMessage();
+                MessageQueueEntry entry   = context.getReadEntry();
+                try {
+                    // The reader clears the token of messages without a timeout
+                    message.setToken(entry.getTimestamp());
+                    message.setRandom(entry.getRandom());
+                    queue.fillMessageMutation(mb, message, entry, context.getReadShard(), queue.serializeMessage(message));
+                    returned++;
+                } catch (MessageQueueException e) {
+                    LOG.warn("Failed to return buffered message " + message.getKey(), e);
+                }
+            }
+        }
+        buffer.clear();
+
+        if (returned > 0) {
+            try {
+                mb.execute();
+            } catch (ConnectionException e) {
+                queue.stats.incPersistError();
+                LOG.warn("Failed to return " + returned + " buffered messages", e);
+            }
+        }
+
+        for (Lease lease : leases.values()) {
+            release(lease);
+        }
+        leases.clear();
+    }
+
+    /**
+     * Read ahead from the leased shards, starting with the shard that was read longest ago, until one of
+     * them has messages
+     * @return Number of messages read
+     */
+    private int readLeasedShards(int itemsToPop) throws MessageQueueException, BusyLockException {
+        for (Lease lease : Lists.newArrayList(leases.values())) {
+            // A shard that was empty last time is probed before reading it in full.  Its lease isn't
+            // renewed, so a shard that stays empty is given up after the lease time.
+            if (lease.lastCount == 0 && !queue.hasMessages(lease.shard.getName())) {
+                queue.stats.incEmptyPartitionCount();
+                continue;
+            }
+
+            int count = prefetch(lease, itemsToPop);
+            lease.shard.setLastCount(count);
+            if (count > 0) {
+                // Move the shard to the end so the other leased shards are read first next time
+                leases.remove(lease.shard.getName());
+                leases.put(lease.shard.getName(), lease);
+                return count;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Lease a shard handed out by the shard reader policy and read ahead from it
+     * @return Number of messages read
+     */
+    private int claim(MessageQueueShard shard, int itemsToPop) throws MessageQueueException, BusyLockException {
+        String shardName = shard.getName();
+
+        // Leased shards are read directly by the consumer that holds the lease
+        if (leases.containsKey(shardName) || queue.shardLeases.containsKey(shardName)) {
+            return 0;
+        }
+
+        long now = System.currentTimeMillis();
+        Long retryTime = lockedElsewhere.get(shardName);
+        if (retryTime != null) {
+            if (now < retryTime) {
+                return 0;
+            }
+            lockedElsewhere.remove(shardName);
+        }
+
+        // A shard that was empty last time is probed before claiming it
+        if (shard.getLastReadCount() == 0 && !queue.hasMessages(shardName)) {
+            queue.stats.incEmptyPartitionCount();
+            return 0;
+        }
+
+        Lease lease;
+        try {
+            lease = new Lease(queue.lockManager.acquireLock(shardName), shard);
+        } catch (BusyLockException e) {
+            // Leased by a consumer in another process
+            queue.stats.incLockContentionCount();
+            lockedElsewhere.put(shardName, now + leaseTime);
+            return 0;
+        }
+        if (queue.shardLeases.putIfAbsent(shardName, this) != null) {
+            // Another consumer of this queue leased the shard in the meantime
+            queue.lockManager.releaseLock(lease.lock);
+            return 0;
+        }
+        leases.put(shardName, lease);
+
+        return prefetch(lease, itemsToPop);
+    }
+
+    /**
+     * Read ahead from a leased shard, renewing the lease
+     * @return Number of messages read
+     */
+    private int prefetch(Lease lease, int itemsToPop) throws MessageQueueException, BusyLockException {
+        String shardName = lease.shard.getName();
+        if (!renewLock(shardName, lease)) {
+            return 0;
+        }
+        lease.renewTime = System.currentTimeMillis();
+
+        List<MessageContext> messages = reader.readMessagesFromLockedShard(shardName, Math.max(itemsToPop, prefetchSize));
+        lease.lastCount = messages.size();
+        if (messages.isEmpty()) {
+            queue.stats.incEmptyPartitionCount();
+            return 0;
+        }
+
+        long now = System.currentTimeMillis();
+        for (MessageContext context : messages) {
+            int messageTimeout = context.getMessage().getTimeout();
+            buffer.add(new BufferedMessage(context, messageTimeout > 0
+                    ? now + TimeUnit.MILLISECONDS.convert(messageTimeout, TimeUnit.SECONDS)
+                    : Long.MAX_VALUE));
+        }
+        return messages.size();
+    }
+
+    /**
+     * Renew the lock of a lease once half the lease time has passed since it was last renewed
+     * @return False if the lock was lost and the lease was given up
+     */
+    private boolean renewLock(String shardName, Lease lease) {
+        if (!(queue.lockManager instanceof RenewableShardLockManager))
+            return true;
+
+        long now = System.currentTimeMillis();
+        if (now - lease.lockRenewTime < leaseTime / 2)
+            return true;
+
+        try {
+            ((RenewableShardLockManager)queue.lockManager).renewLock(lease.lock);
+            lease.lockRenewTime = now;
+            return true;
+        } catch (BusyLockException e) {
+            LOG.warn("Lost the lock on shard " + shardName + ", giving up its lease");
+            queue.stats.incLockContentionCount();
+            leases.remove(shardName);
+            queue.shardLeases.remove(shardName, this);
+            return false;
+        }
+    }
+
+    private List<MessageContext> takeBufferedMessages(int itemsToPop) {
+        List<MessageContext> messages = Lists.newArrayList();
+        long now = System.currentTimeMillis();
+        while (messages.size() < itemsToPop && !buffer.isEmpty()) {
+            BufferedMessage buffered = buffer.poll();
+            if (buffered.expireTime > now) {
+                messages.add(buffered.context);
+            }
+            else {
+                LOG.debug("Dropping buffered message after its timeout: " + buffered.context.getMessage().getKey());
+            }
+        }
+        return messages;
+    }
+
+    private void releaseExpiredLeases() {
+        long now = System.currentTimeMillis();
+        Iterator<Entry<String, Lease>> iter = leases.entrySet().iterator();
+        while (iter.hasNext()) {
+            Lease lease = iter.next().getValue();
+            if (now - lease.renewTime > leaseTime) {
+                iter.remove();
+                release(lease);
+            }
+        }
+    }
+
+    private void release(Lease lease) {
+        queue.shardLeases.remove(lease.shard.getName(), this);
+        queue.lockManager.releaseLock(lease.lock);
+    }
+}
@@ -0,0 +1,29 @@
+package com.netflix.astyanax.recipes.queue;
+
+/**
+ * Encoding of the message stored in a queue column.
+ *
+ * The codec a queue writes with is negotiated through {@link MessageQueueMetadata#getMessageCodec()} so that
+ * all readers can be upgraded before writers switch to a new format.  Readers pick the codec for each column
+ * with {@link #canDecode(byte[])}, which lets messages in different formats share a queue.
+ *
+ * @see JsonMessageCodec
+ * @see BinaryMessageCodec
+ */
+public interface MessageCodec {
+    /**
+     * @return Name under which the codec is recorded in the queue metadata.  Must change with every
+     * incompatible change of the format.
+     */
+    String getName();
+
+    /**
+     * @param data  Column value
+     * @return true if the value was written by this codec
+     */
+    boolean canDecode(byte[] data);
+
+    byte[] encode(Message message) throws MessageQueueException;
+
+    Message decode(byte[] data) throws MessageQueueException;
+}
@@ -70,6 +70,12 @@ class MessageConsumerImpl implements MessageConsumer {
     }
 
     private List<MessageContext> readAndReturnShard(MessageQueueShard shard, int itemsToPop) throws MessageQueueException, BusyLockException, InterruptedException {
+        // A shard that was empty last time is probed before paying for the lock and the full read
+        if (shard.getLastReadCount() == 0 && !queue.hasMessages(shard.getName())) {
+            queue.stats.incEmptyPartitionCount();
+            return Lists.newArrayList();
+        }
+        
         List<MessageContext> messages = null;
         try {
             messages = readMessagesFromShard(shard.getName(), itemsToPop);
@@ -93,10 +99,7 @@ class MessageConsumerImpl implements MessageConsumer {
         ShardLock lock = null;
         try {
             lock = queue.lockManager.acquireLock(shardName);
-            MutationBatch m = queue.keyspace.prepareMutationBatch().setConsistencyLevel(queue.consistencyLevel);
-            ColumnListMutation<MessageQueueEntry> rowMutation = m.withRow(queue.queueColumnFamily, shardName);
-            long curTimeMicros = TimeUUIDUtils.getMicrosTimeFromUUID(TimeUUIDUtils.getUniqueTimeUUIDinMicros());
-            return readMessagesInternal(shardName, itemToPop, 0, null, rowMutation, m, curTimeMicros);
+            return readMessagesFromLockedShard(shardName, itemToPop);
         } catch (BusyLockException e) {
             queue.stats.incLockContentionCount();
             throw e;
@@ -108,6 +111,16 @@ class MessageConsumerImpl implements MessageConsumer {
         }
     }
 
+    /**
+     * Read messages from a shard that the caller already holds a lock on through the lock manager
+     */
+    List<MessageContext> readMessagesFromLockedShard(String shardName, int itemsToPop) throws MessageQueueException, BusyLockException {
+        MutationBatch m = queue.keyspace.prepareMutationBatch().setConsistencyLevel(queue.consistencyLevel);
+        ColumnListMutation<MessageQueueEntry> rowMutation = m.withRow(queue.queueColumnFamily, shardName);
+        long curTimeMicros = TimeUUIDUtils.getMicrosTimeFromUUID(TimeUUIDUtils.getUniqueTimeUUIDinMicros());
+        return readMessagesInternal(shardName, itemsToPop, 0, null, rowMutation, m, curTimeMicros);
+    }
+
     List<MessageContext> readMessagesFromShardUsingDefaultLock(String shardName, int itemsToPop) throws MessageQueueException, BusyLockException {
         MutationBatch m = null;
         MessageQueueEntry lockColumn = null;
@@ -206,7 +219,7 @@ class MessageConsumerImpl implements MessageConsumer {
         }
     }
 
-    private void fillAckMutation(MessageContext context, MutationBatch mb) {
+    void fillAckMutation(MessageContext context, MutationBatch mb) {
         queue.stats.incAckMessageCount();
         Message message = context.getMessage();
         // Token refers to the timeout event.  If 0 (i.e. no) timeout was specified
@@ -313,6 +326,7 @@ class MessageConsumerImpl implements MessageConsumer {
                                 if (message != null) {
                                     MessageContext context = new MessageContext();
                                     context.setMessage(message);
+                                    context.setReadEntry(shardName, entry);
                                     // Message has a trigger so we need to figure out if it is an
                                     // unfinished repeating trigger and re-add it.
                                     if (message.hasTrigger()) {
@@ -399,7 +413,7 @@ class MessageConsumerImpl implements MessageConsumer {
                                         message.setToken(timeoutEntry.getTimestamp());
                                         message.setRandom(timeoutEntry.getRandom());
                                         m.withRow(queue.queueColumnFamily, queue.getShardKey(message))
-                                                .putColumn(timeoutEntry, column.getStringValue(), queue.metadata.getRetentionTimeout());
+                                                .putColumn(timeoutEntry, column.getByteArrayValue(), queue.metadata.getRetentionTimeout());
                                         MessageMetadataEntry messageIdEntry = MessageMetadataEntry.newMessageId(queue.getCompositeKey(queue.getShardKey(message), timeoutEntry.getMessageId()));
                                         // Add the timeout column to the key
                                         if (message.hasKey()) {
@@ -30,6 +30,12 @@ public class MessageContext {
      */
     private MessageHistory history = new MessageHistory();
     
+    /**
+     * Shard and queue entry the message was read from
+     */
+    private String            readShard;
+    private MessageQueueEntry readEntry;
+    
     public Message getMessage() {
         return message;
     }
@@ -73,6 +79,20 @@ public class MessageContext {
         return this;
     }
     
+    String getReadShard() {
+        return readShard;
+    }
+    
+    MessageQueueEntry getReadEntry() {
+        return readEntry;
+    }
+    
+    MessageContext setReadEntry(String shardName, MessageQueueEntry entry) {
+        this.readShard = shardName;
+        this.readEntry = entry;
+        return this;
+    }
+    
     @Override
     public String toString() {
     	StringBuilder sb = new StringBuilder();
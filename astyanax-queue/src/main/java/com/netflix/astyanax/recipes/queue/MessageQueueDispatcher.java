@@ -1,11 +1,14 @@
 package com.netflix.astyanax.recipes.queue;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
@@ -15,7 +18,11 @@ import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Queues;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.netflix.astyanax.recipes.locks.BusyLockException;
+import com.netflix.astyanax.recipes.queue.shard.ShardReaderPolicy;
+import com.netflix.astyanax.recipes.queue.shard.ThreadAffineShardReaderPolicy;
 
 /**
  * The message queue dispatcher reads message from the message queue
@@ -33,6 +40,7 @@ public class MessageQueueDispatcher {
     public final static int   DEFAULT_CONSUMER_COUNT        = 1;
     public final static int   DEFAULT_ACK_SIZE              = 100;
     public final static int   DEFAULT_ACK_INTERVAL          = 100;
+    public final static int   DEFAULT_ACK_RETRIES           = 3;
     public final static int   DEFAULT_BACKLOG_SIZE          = 1000;
     
     public static class Builder {
@@ -100,7 +108,8 @@ public class MessageQueueDispatcher {
         }
         
         /**
-         * Flush the ack queue on this interval.
+         * Maximum time an ack waits for other acks to the same shard before it is written.  Queues that
+         * don't implement {@link AsyncMessageQueue} flush all acks on this interval.
          * @param interval
          * @param units
          */
@@ -109,6 +118,28 @@ public class MessageQueueDispatcher {
             return this;
         }
         
+        /**
+         * Maximum number of acks to the same shard that are written in one mutation batch.
+         * A batch is written as soon as it is full.  Only used by queues that implement
+         * {@link AsyncMessageQueue}.
+         * @param size
+         */
+        public Builder withAckBatchSize(int size) {
+            dispatcher.ackSize = size;
+            return this;
+        }
+        
+        /**
+         * Number of times a failed ack batch is retried before its messages are left to
+         * time out and be redelivered.  Only used by queues that implement {@link AsyncMessageQueue},
+         * otherwise failed acks are retried until they succeed.
+         * @param retries
+         */
+        public Builder withAckRetries(int retries) {
+            dispatcher.ackRetries = retries;
+            return this;
+        }
+        
         /**
          * Interval for polling from the queue.  
          * @param interval
@@ -153,15 +184,18 @@ public class MessageQueueDispatcher {
     private int             consumerCount = DEFAULT_CONSUMER_COUNT;
     private int             ackSize       = DEFAULT_ACK_SIZE;
     private long            ackInterval   = DEFAULT_ACK_INTERVAL;
+    private int             ackRetries    = DEFAULT_ACK_RETRIES;
     private int             backlogSize   = DEFAULT_BACKLOG_SIZE;
     private long            pollingInterval = DEFAULT_POLLING_INTERVAL;
     private boolean         terminate     = false;
     private MessageQueue    messageQueue;
     private ExecutorService executor;
+    private AsyncMessageAcker acker;
     private MessageConsumer ackConsumer;
+    private LinkedBlockingQueue<MessageContext> toAck = Queues.newLinkedBlockingQueue();
+    private final AtomicLong ackErrorCount = new AtomicLong();
     private Function<MessageContext, Boolean>   callback;
     private MessageHandlerFactory handlerFactory;
-    private LinkedBlockingQueue<MessageContext> toAck = Queues.newLinkedBlockingQueue();
     private LinkedBlockingQueue<MessageContext> toProcess = Queues.newLinkedBlockingQueue(500);
     
     private MessageQueueDispatcher() {
@@ -176,9 +210,17 @@ public class MessageQueueDispatcher {
     }
     
     public void start() {
-        executor = Executors.newScheduledThreadPool(processorThreadCount + consumerCount + 1);
+        // Acks are grouped by shard and written asynchronously by queues that support it, 
+        // otherwise a thread writes all acks on the ack interval
+        boolean asyncAck = messageQueue instanceof AsyncMessageQueue;
+        executor = Executors.newScheduledThreadPool(processorThreadCount + consumerCount + (asyncAck ? 0 : 1));
         
-        startAckThread();
+        if (asyncAck) {
+            acker = ((AsyncMessageQueue)messageQueue).createAsyncAcker(ackInterval, TimeUnit.MILLISECONDS, ackSize, ackRetries);
+        }
+        else {
+            startAckThread();
+        }
         
         for (int i = 0; i < consumerCount; i++) {
             startConsumer(i);
@@ -192,6 +234,36 @@ public class MessageQueueDispatcher {
     public void stop() {
         terminate = true;
         executor.shutdownNow();
+        if (acker != null) {
+            acker.close();
+        }
+    }
+    
+    /**
+     * @return Number of messages whose ack failed after all retries.  These messages are
+     *         redelivered once their timeout expires.
+     */
+    public long getAckErrorCount() {
+        return ackErrorCount.get();
+    }
+    
+    private void ack(final MessageContext context) {
+        if (acker == null) {
+            toAck.add(context);
+            return;
+        }
+        
+        Futures.addCallback(acker.ackMessageAsync(context), new FutureCallback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                ackErrorCount.incrementAndGet();
+                LOG.warn("Failed to ack message " + context.getMessage().getKey() + ", it will be redelivered after its timeout", t);
+            }
+        });
     }
     
     private void startAckThread() {
@@ -241,36 +313,58 @@ public class MessageQueueDispatcher {
                 // Create the consumer context
                 final MessageConsumer consumer = messageQueue.createConsumer();
                 
-                while (!terminate) {
-                    // Process events in a tight loop, until asked to terminate
-                    Collection<MessageContext> messages = null;
-                    try {
-                        messages = consumer.readMessages(batchSize);
-                        if (messages.isEmpty()) {
-                            Thread.sleep(pollingInterval);
-                        }
-                        else {
-                            for (MessageContext context : messages) {
-                                toProcess.put(context);
-                            }
-                        }
-                    } 
-                    catch (BusyLockException e) {
+                try {
+                    consume(consumer);
+                }
+                finally {
+                    // Release shards held by the consumer
+                    if (consumer instanceof Closeable) {
                         try {
-                            Thread.sleep(pollingInterval);
-                        } catch (InterruptedException e1) {
-                            Thread.interrupted();
-                            return;
+                            ((Closeable)consumer).close();
+                        } catch (IOException e) {
+                            LOG.warn("Error closing consumer " + name, e);
                         }
                     }
-                    catch (Throwable t) {
-                        LOG.warn("Error consuming messages ", t);
+                    // And whatever the shard reader policy keeps for this thread
+                    if (messageQueue instanceof ShardedDistributedMessageQueue) {
+                        ShardReaderPolicy policy = ((ShardedDistributedMessageQueue)messageQueue).getShardReaderPolicy();
+                        if (policy instanceof ThreadAffineShardReaderPolicy)
+                            ((ThreadAffineShardReaderPolicy)policy).releaseCurrentThread();
                     }
                 }
             }
         });
     }
     
+    private void consume(MessageConsumer consumer) {
+        while (!terminate) {
+            // Process events in a tight loop, until asked to terminate
+            Collection<MessageContext> messages = null;
+            try {
+                messages = consumer.readMessages(batchSize);
+                if (messages.isEmpty()) {
+                    Thread.sleep(pollingInterval);
+                }
+                else {
+                    for (MessageContext context : messages) {
+                        toProcess.put(context);
+                    }
+                }
+            } 
+            catch (BusyLockException e) {
+                try {
+                    Thread.sleep(pollingInterval);
+                } catch (InterruptedException e1) {
+                    Thread.interrupted();
+                    return;
+                }
+            }
+            catch (Throwable t) {
+                LOG.warn("Error consuming messages ", t);
+            }
+        }
+    }
+    
     private void startProcessor(final int id) {
         executor.submit(new Runnable() {
             @Override
@@ -299,7 +393,7 @@ public class MessageQueueDispatcher {
                                 @SuppressWarnings("unchecked")
                                 Function<MessageContext, Boolean> task = handlerFactory.createInstance(message.getTaskClass());
                                 if (task.apply(context)) {
-                                    toAck.add(context);
+                                    ack(context);
                                 }
                                 continue;
                             }
@@ -307,13 +401,13 @@ public class MessageQueueDispatcher {
                             // Use default callback
                             if (callback.apply(context)) {
                                 context.setStatus(MessageStatus.DONE);
-                                toAck.add(context);
+                                ack(context);
                                 continue;
                             }
                         }
                         catch (Throwable t) {
                             context.setException(t);
-                            toAck.add(context);
+                            ack(context);
                             LOG.error("Error processing message " + message.getKey(), t);
 //                            try {
 //                                ackConsumer.ackPoisonMessage(context);
@@ -22,6 +22,7 @@ public class MessageQueueMetadata  {
     private int       shardCount        = DEFAULT_SHARD_COUNT;
     private Integer   historyTtl        = DEFAULT_HISTORY_TTL;
     private String    queueName         = DEFAULT_QUEUE_NAME;
+    private String    messageCodec      = null;
     
     @Deprecated
     private long      pollInterval      = DEFAULT_POLL_WAIT;
@@ -65,6 +66,15 @@ public class MessageQueueMetadata  {
     public void setQueueName(String queueName) {
         this.queueName = queueName;
     }
+    /**
+     * @return Name of the {@link MessageCodec} that writers use, or null for JSON
+     */
+    public String getMessageCodec() {
+        return messageCodec;
+    }
+    public void setMessageCodec(String messageCodec) {
+        this.messageCodec = messageCodec;
+    }
     
     /**
      * Define this on the ShardReaderPolicy
@@ -87,6 +97,6 @@ public class MessageQueueMetadata  {
     public String toString() {
         return "MessageQueueSettings [partitionDuration=" + partitionDuration + ", partitionCount=" + partitionCount
                 + ", retentionTimeout=" + retentionTimeout + ", shardCount=" + shardCount + ", historyTtl=" + historyTtl
-                + ", queueName=" + queueName + ", pollInterval=" + pollInterval + "]";
+                + ", queueName=" + queueName + ", pollInterval=" + pollInterval + ", messageCodec=" + messageCodec + "]";
     }
 }
@@ -8,7 +8,14 @@ import java.util.concurrent.atomic.AtomicLong;
  * @author elandau
  */
 public class MessageQueueShard implements MessageQueueShardStats {
+    /**
+     * Millis over which the arrival rate decays
+     */
+    private static final double RATE_WINDOW = 10000;
+
     private volatile int   lastCount = 0;
+    private volatile long  lastReadTime = 0;
+    private volatile double arrivalRate = 0;
     private final String   name;
     private final int      partition;
     private final int      shard;
@@ -26,8 +33,25 @@ public class MessageQueueShard implements MessageQueueShardStats {
     }
     
     public void setLastCount(int count) {
+        setLastCount(count, System.currentTimeMillis());
+    }
+    
+    /**
+     * Record the count of a read and update the arrival rate, an exponentially weighted rate of the
+     * messages found by consecutive reads, weighted by the time between the reads so that it doesn't
+     * depend on how often the shard is read
+     * @param count
+     * @param now   Time of the read in millis
+     */
+    public synchronized void setLastCount(int count, long now) {
         this.lastCount = count;
         this.readCount.addAndGet(count);
+        if (lastReadTime != 0 && now > lastReadTime) {
+            long elapsed = now - lastReadTime;
+            double alpha = 1 - Math.exp(-elapsed / RATE_WINDOW);
+            arrivalRate += alpha * (count * 1000.0 / elapsed - arrivalRate);
+        }
+        lastReadTime = now;
     }
     
     @Override
@@ -45,6 +69,14 @@ public class MessageQueueShard implements MessageQueueShardStats {
         return this.lastCount;
     }
     
+    /**
+     * @return Messages per second read from the shard, averaged over roughly the last ten seconds
+     *         of reads.  Only tracks reads by this client.
+     */
+    public double getArrivalRate() {
+        return this.arrivalRate;
+    }
+    
     public void incInsertCount(int count) {
         this.writeCount.addAndGet(count);
     }
@@ -59,6 +91,6 @@ public class MessageQueueShard implements MessageQueueShardStats {
 
     @Override
     public String toString() {
-        return "Partition [lastCount=" + lastCount + ", name=" + name + ", partition=" + partition + ", shard=" + shard + "]";
+        return "Partition [lastCount=" + lastCount + ", rate=" + arrivalRate + ", name=" + name + ", partition=" + partition + ", shard=" + shard + "]";
     }
 }
\ No newline at end of file
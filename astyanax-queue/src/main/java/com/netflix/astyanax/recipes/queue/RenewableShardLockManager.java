@@ -0,0 +1,18 @@
+package com.netflix.astyanax.recipes.queue;
+
+import com.netflix.astyanax.recipes.locks.BusyLockException;
+
+/**
+ * Shard lock manager whose locks expire unless they are renewed, such as a lock kept in
+ * cassandra with a TTL.  Consumers that keep a shard for a lease period renew its lock
+ * while they keep reading from the shard.
+ */
+public interface RenewableShardLockManager extends ShardLockManager {
+
+    /**
+     * Extend a lock that is still held
+     * @param lock
+     * @throws BusyLockException if the lock expired and was acquired by someone else
+     */
+    void renewLock(ShardLock lock) throws BusyLockException;
+}
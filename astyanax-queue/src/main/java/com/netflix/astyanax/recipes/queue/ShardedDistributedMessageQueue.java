@@ -10,6 +10,7 @@ import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -121,7 +122,7 @@ import com.netflix.astyanax.util.TimeUUIDUtils;
  * @author elandau
  *
  */
-public class ShardedDistributedMessageQueue implements MessageQueue {
+public class ShardedDistributedMessageQueue implements AsyncMessageQueue {
     private static final Logger LOG = LoggerFactory.getLogger(ShardedDistributedMessageQueue.class);
 
     public static final char             COMPOSITE_ID_DELIMITER          = ':';
@@ -137,6 +138,7 @@ public class ShardedDistributedMessageQueue implements MessageQueue {
     public static final String           DEFAULT_METADATA_SUFFIX         = "_metadata";
     public static final String           DEFAULT_HISTORY_SUFFIX          = "_history";
     public static final long             SCHEMA_CHANGE_DELAY             = 3000;
+    public static final long             METADATA_RETRY_INTERVAL         = TimeUnit.MILLISECONDS.convert(1, TimeUnit.MINUTES);
     public static final ImmutableMap<String, Object> DEFAULT_COLUMN_FAMILY_SETTINGS = ImmutableMap.<String, Object>builder()
             .put("read_repair_chance",       1.0)
             .put("gc_grace_seconds",         5)     // TODO: Calculate gc_grace_seconds
@@ -150,7 +152,7 @@ public class ShardedDistributedMessageQueue implements MessageQueue {
 
     static final ObjectMapper mapper = new ObjectMapper();
 
-    {
+    static {
         mapper.getSerializationConfig().setSerializationInclusion(JsonSerialize.Inclusion.NON_NULL);
         mapper.enableDefaultTyping();
     }
@@ -176,6 +178,9 @@ public class ShardedDistributedMessageQueue implements MessageQueue {
         private Map<String, Object>             columnFamilySettings = DEFAULT_COLUMN_FAMILY_SETTINGS;
         private ShardReaderPolicy.Factory       shardReaderPolicyFactory;
         private ModShardPolicy                  modShardPolicy;
+        private long                            shardLeaseTime      = 0;
+        private int                             prefetchSize        = 0;
+        private List<MessageCodec>              messageCodecs       = Lists.newArrayList();
                                                
         public Builder() {
             metadata.setQueueName(queueName);
@@ -301,11 +306,45 @@ public class ShardedDistributedMessageQueue implements MessageQueue {
             return this;
         }
 
+        /**
+         * Consumers keep the shards they read from for this long instead of locking a shard for
+         * every read.  Requires a ShardLockManager.
+         * @param leaseTime     0 to lock a shard for every read
+         * @param units
+         */
+        public Builder withShardLeaseTime(Long leaseTime, TimeUnit units) {
+            this.shardLeaseTime = TimeUnit.MILLISECONDS.convert(leaseTime, units);
+            return this;
+        }
+
+        /**
+         * Number of messages a consumer with shard leases reads ahead into its local buffer.  Buffered
+         * messages are already popped, so only prefetch from queues whose messages have a timeout.
+         * @param prefetchSize  0 to only read the requested number of messages
+         */
+        public Builder withPrefetchSize(int prefetchSize) {
+            this.prefetchSize = prefetchSize;
+            return this;
+        }
+
+        /**
+         * Write messages with this codec once the queue metadata names it.  createQueue() records the codec
+         * in the metadata, so upgrade all readers of an existing queue before calling it.  Messages written
+         * by any known codec, including JSON, can always be read.
+         * @param codec
+         */
+        public Builder withMessageCodec(MessageCodec codec) {
+            this.metadata.setMessageCodec(codec.getName());
+            this.messageCodecs.add(codec);
+            return this;
+        }
+
         public ShardedDistributedMessageQueue build() throws MessageQueueException {
             Preconditions.checkArgument(
                     TimeUnit.SECONDS.convert(lockTimeout, TimeUnit.MICROSECONDS) < lockTtl,
                     "Timeout " + lockTtl + " seconds must be less than TTL " + TimeUnit.SECONDS.convert(lockTtl, TimeUnit.MICROSECONDS) + " seconds");
             Preconditions.checkNotNull(keyspace, "Must specify keyspace");
+            Preconditions.checkArgument(shardLeaseTime == 0 || lockManager != null, "Shard leases require a ShardLockManager");
             
             if (shardReaderPolicyFactory == null)
                 shardReaderPolicyFactory = TimePartitionedShardReaderPolicy.Factory.builder().build();
@@ -337,6 +376,12 @@ public class ShardedDistributedMessageQueue implements MessageQueue {
     final Map<String, Object>             columnFamilySettings;
     final ShardReaderPolicy               shardReaderPolicy;
     final ModShardPolicy                  modShardPolicy;
+    final long                            shardLeaseTime;
+    final ConcurrentMap<String, LeasingMessageConsumer> shardLeases = Maps.newConcurrentMap();
+    final Map<String, MessageCodec>       messageCodecs = Maps.newLinkedHashMap();
+    private volatile MessageCodec         writeCodec;
+    private long                          metadataRetryTime   = 0;
+    final int                             prefetchSize;
     final Function<String, Message>       invalidMessageHandler  = new Function<String, Message>() {
                                                                 @Override
                                                                 public Message apply(String input) {
@@ -365,9 +410,19 @@ public class ShardedDistributedMessageQueue implements MessageQueue {
         this.columnFamilySettings = builder.columnFamilySettings;
         this.metadataDeleteTTL    = builder.metadataDeleteTTL;
         this.stats                = builder.stats;
+        this.shardLeaseTime       = builder.shardLeaseTime;
+        this.prefetchSize         = builder.prefetchSize;
 
         this.shardReaderPolicy    = builder.shardReaderPolicyFactory.create(metadata);
 
+        for (MessageCodec codec : builder.messageCodecs) {
+            this.messageCodecs.put(codec.getName(), codec);
+        }
+        if (!this.messageCodecs.containsKey(BinaryMessageCodec.NAME))
+            this.messageCodecs.put(BinaryMessageCodec.NAME, BinaryMessageCodec.get());
+        if (!this.messageCodecs.containsKey(JsonMessageCodec.NAME))
+            this.messageCodecs.put(JsonMessageCodec.NAME, JsonMessageCodec.get());
+
 //        try {
 //            Column<MessageQueueEntry> column = keyspace.prepareQuery(queueColumnFamily)
 //                    .setConsistencyLevel(consistencyLevel)
@@ -542,8 +597,7 @@ public class ShardedDistributedMessageQueue implements MessageQueue {
                     .getColumn(entry)
                     .execute().getResult();
             try {
-                ByteArrayInputStream bais = new ByteArrayInputStream(column.getByteArrayValue());
-                return mapper.readValue(bais, Message.class);
+                return decodeMessage(column.getByteArrayValue());
             } catch (Exception e) {
                 LOG.warn("Error parsing message", e);
                 // Error parsing the message so we pass it on to the invalid message handler.
@@ -804,6 +858,7 @@ public class ShardedDistributedMessageQueue implements MessageQueue {
             keyspace.prepareColumnMutation(queueColumnFamily, getName(), MessageQueueEntry.newMetadataEntry())
                     .putValue(baos.toByteArray(), null)
                     .execute();
+            writeCodec = getWriteCodec(metadata);
         } catch (ConnectionException e) {
             throw new MessageQueueException("Failed to create column family for " + queueColumnFamily.getName(), e);
         } catch (Exception e) {
@@ -813,6 +868,8 @@ public class ShardedDistributedMessageQueue implements MessageQueue {
 
     @Override
     public MessageConsumer createConsumer() {
+        if (shardLeaseTime > 0)
+            return new LeasingMessageConsumer(this, shardLeaseTime, prefetchSize);
         return new MessageConsumerImpl(this);
     }
 
@@ -911,7 +968,38 @@ public class ShardedDistributedMessageQueue implements MessageQueue {
         };
     }
 
+    @Override
+    public AsyncMessageProducer createAsyncProducer() {
+        return createAsyncProducer(BatchingMessageProducer.DEFAULT_LINGER_TIME, TimeUnit.MILLISECONDS, BatchingMessageProducer.DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    @Override
+    public AsyncMessageProducer createAsyncProducer(long lingerTime, TimeUnit units, int maxBatchSize) {
+        return new BatchingMessageProducer(this, TimeUnit.NANOSECONDS.convert(lingerTime, units), maxBatchSize);
+    }
+
+    @Override
+    public AsyncMessageAcker createAsyncAcker() {
+        return createAsyncAcker(BatchingMessageAcker.DEFAULT_LINGER_TIME, TimeUnit.MILLISECONDS,
+                BatchingMessageAcker.DEFAULT_MAX_BATCH_SIZE, BatchingMessageAcker.DEFAULT_MAX_RETRIES);
+    }
+
+    @Override
+    public AsyncMessageAcker createAsyncAcker(long lingerTime, TimeUnit units, int maxBatchSize, int maxRetries) {
+        return new BatchingMessageAcker(this, TimeUnit.NANOSECONDS.convert(lingerTime, units), maxBatchSize, maxRetries);
+    }
+
     String fillMessageMutation(MutationBatch mb, Message message) throws MessageQueueException {
+        MessageQueueEntry entry = newMessageEntry(message);
+        return fillMessageMutation(mb, message, entry, getShardKey(message), serializeMessage(message));
+    }
+
+    /**
+     * Assign a new token to the message and create its queue entry
+     * @param message
+     * @return
+     */
+    MessageQueueEntry newMessageEntry(Message message) {
         // Get the execution time from the message or set to current time so it runs immediately
         long curTimeMicros;
         if (!message.hasTrigger()) {
@@ -926,24 +1014,100 @@ public class ShardedDistributedMessageQueue implements MessageQueue {
         message.setToken(TimeUUIDUtils.getMicrosTimeUUID(curTimeMicros));
 
         // Set up the queue entry
-        MessageQueueEntry entry = MessageQueueEntry.newMessageEntry(
+        return MessageQueueEntry.newMessageEntry(
                 message.getPriority(),
                 message.getToken(),
                 MessageQueueEntryState.Waiting);
+    }
+
+    /**
+     * Encode the message with the codec negotiated through the queue metadata
+     * @param message
+     * @return
+     * @throws MessageQueueException
+     */
+    byte[] serializeMessage(Message message) throws MessageQueueException {
+        MessageCodec codec = writeCodec;
+        if (codec == null)
+            codec = resolveWriteCodec();
+        return codec.encode(message);
+    }
+
+    /**
+     * Decode a message with the codec that wrote it
+     * @param data
+     * @return
+     * @throws MessageQueueException
+     */
+    Message decodeMessage(byte[] data) throws MessageQueueException {
+        for (MessageCodec codec : messageCodecs.values()) {
+            if (codec.canDecode(data))
+                return codec.decode(data);
+        }
+        throw new MessageQueueException("Unknown message format");
+    }
+
+    /**
+     * @return Codec that the metadata names if this client knows it, otherwise JSON which every client can read
+     */
+    private MessageCodec getWriteCodec(MessageQueueMetadata persisted) {
+        if (persisted != null && persisted.getMessageCodec() != null) {
+            MessageCodec codec = messageCodecs.get(persisted.getMessageCodec());
+            if (codec != null)
+                return codec;
+            LOG.warn("Unknown message codec '" + persisted.getMessageCodec() + "' in metadata of queue " + getName() + ", writing JSON");
+        }
+        return JsonMessageCodec.get();
+    }
+
+    /**
+     * Read the metadata on the first write to pick the codec.  If it can't be read write JSON, which every
+     * client can read, and try again on a later write once METADATA_RETRY_INTERVAL has passed.
+     */
+    private synchronized MessageCodec resolveWriteCodec() {
+        if (writeCodec != null)
+            return writeCodec;
+        if (System.currentTimeMillis() < metadataRetryTime)
+            return JsonMessageCodec.get();
 
-        // Convert the message object to JSON
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
         try {
-            mapper.writeValue(baos, message);
-            baos.flush();
+            writeCodec = getWriteCodec(readPersistedMetadata());
+            return writeCodec;
+        } catch (MessageQueueException e) {
+            metadataRetryTime = System.currentTimeMillis() + METADATA_RETRY_INTERVAL;
+            LOG.warn("Unable to read metadata of queue " + getName() + ", writing JSON until it can be read", e);
+            return JsonMessageCodec.get();
+        }
+    }
+
+    /**
+     * @return Metadata written by createQueue() or null if the queue wasn't created
+     * @throws MessageQueueException if the metadata can't be read
+     */
+    private MessageQueueMetadata readPersistedMetadata() throws MessageQueueException {
+        try {
+            Column<MessageQueueEntry> column = keyspace.prepareQuery(queueColumnFamily)
+                    .setConsistencyLevel(consistencyLevel)
+                    .getKey(getName())
+                    .getColumn(MessageQueueEntry.newMetadataEntry())
+                    .execute()
+                    .getResult();
+            return mapper.readValue(column.getByteArrayValue(), MessageQueueMetadata.class);
+        } catch (NotFoundException e) {
+            return null;
         } catch (Exception e) {
-            throw new MessageQueueException("Failed to serialize message data: " + message, e);
+            throw new MessageQueueException("Failed to read metadata of queue " + getName(), e);
         }
+    }
 
+    /**
+     * Add the mutations for a message that already has its token and serialized form
+     * @return Id of the message
+     */
+    String fillMessageMutation(MutationBatch mb, Message message, MessageQueueEntry entry, String shardKey, byte[] body) {
         // Write the queue entry
-        String shardKey = getShardKey(message);
         mb.withRow(queueColumnFamily, shardKey)
-          .putColumn(entry, new String(baos.toByteArray()), metadata.getRetentionTimeout());
+          .putColumn(entry, body, metadata.getRetentionTimeout());
 
         // Write the lookup from queue key to queue entry
         if (message.hasKey()) {
@@ -1059,8 +1223,7 @@ public class ShardedDistributedMessageQueue implements MessageQueue {
         // Next, parse the message metadata and add a timeout entry
         Message message = null;
         try {
-            ByteArrayInputStream bais = new ByteArrayInputStream(column.getByteArrayValue());
-            message = mapper.readValue(bais, Message.class);
+            message = decodeMessage(column.getByteArrayValue());
         } catch (Exception e) {
             LOG.warn("Error processing message ", e);
             try {
@@ -1074,11 +1237,12 @@ public class ShardedDistributedMessageQueue implements MessageQueue {
     }
 
     /**
-     * Fast check to see if a shard has messages to process
+     * Fast check to see if a shard has messages to process.  Reads a single column and, unlike
+     * a full read, doesn't need a lock on the shard.
      * @param shardName
      * @throws MessageQueueException
      */
-    private boolean hasMessages(String shardName) throws MessageQueueException {
+    boolean hasMessages(String shardName) throws MessageQueueException {
         UUID currentTime = TimeUUIDUtils.getUniqueTimeUUIDinMicros();
 
         try {
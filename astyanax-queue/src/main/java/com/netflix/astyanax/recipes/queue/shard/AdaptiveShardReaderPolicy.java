@@ -0,0 +1,334 @@
+package com.netflix.astyanax.recipes.queue.shard;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.netflix.astyanax.Clock;
+import com.netflix.astyanax.clock.MillisecondsClock;
+import com.netflix.astyanax.recipes.queue.MessageQueueMetadata;
+import com.netflix.astyanax.recipes.queue.MessageQueueShard;
+import com.netflix.astyanax.recipes.queue.MessageQueueShardStats;
+
+/**
+ * Shard reader policy that reads busy shards continuously and backs off idle shards.
+ *
+ * Every consumer thread has its own queue of shards that are ready to be read.  A shard that had messages
+ * goes back to the end of the queue of the thread that read it.  A shard that was empty is parked until its
+ * backoff passes, which doubles with every consecutive empty read from minBackoff up to maxBackoff.  Shards
+ * that receive messages at a steady rate are read at least as often as their arrival rate predicts the
+ * next message, so a moderately busy shard is not backed off just because one read came up empty.  Shards
+ * outside the current time partition go straight to maxBackoff and all shards of a partition are made
+ * ready when the partition becomes current.
+ *
+ * A thread whose own queue is empty steals a shard from the queue of another thread before waiting for
+ * the next parked shard, so work spreads over the threads and nothing is stuck behind a slow thread or
+ * one that stopped consuming.  Threads wait in nextShard() for at most the steal interval, so the policy
+ * paces the reads itself and {@link #getPollInterval()} is 0.  A thread that stops consuming calls
+ * {@link #releaseCurrentThread()}, which hands its ready shards to the other threads and drops its queue.
+ * {@link com.netflix.astyanax.recipes.queue.MessageQueueDispatcher} does so when a consumer stops.
+ *
+ * Consumers probe shards whose last read was empty with a single column read before the full read.
+ *
+ * <code>
+ *      new ShardedDistributedMessageQueue.Builder()
+ *          .withShardReaderPolicy(AdaptiveShardReaderPolicy.Factory.builder()
+ *              .withBackoff(10, 1000, TimeUnit.MILLISECONDS)
+ *              .build())
+ *          ...
+ * </code>
+ */
+public class AdaptiveShardReaderPolicy implements ThreadAffineShardReaderPolicy {
+    public static final long DEFAULT_MIN_BACKOFF    = 10;
+    public static final long DEFAULT_MAX_BACKOFF    = 1000;
+    public static final long DEFAULT_STEAL_INTERVAL = 10;
+
+    public static class Factory implements ShardReaderPolicy.Factory {
+        public static class Builder {
+            private long minBackoff    = DEFAULT_MIN_BACKOFF;
+            private long maxBackoff    = DEFAULT_MAX_BACKOFF;
+            private long stealInterval = DEFAULT_STEAL_INTERVAL;
+            private Clock clock         = new MillisecondsClock();
+
+            /**
+             * Time to wait before reading a shard again after its first empty read and the
+             * limit up to which the time doubles with each further empty read
+             * @param minBackoff
+             * @param maxBackoff
+             * @param units
+             */
+            public Builder withBackoff(long minBackoff, long maxBackoff, TimeUnit units) {
+                this.minBackoff = TimeUnit.MILLISECONDS.convert(minBackoff, units);
+                this.maxBackoff = TimeUnit.MILLISECONDS.convert(maxBackoff, units);
+                return this;
+            }
+
+            /**
+             * Maximum time a thread waits for a parked shard before it looks for shards to steal again
+             * @param stealInterval
+             * @param units
+             */
+            public Builder withStealInterval(long stealInterval, TimeUnit units) {
+                this.stealInterval = TimeUnit.MILLISECONDS.convert(stealInterval, units);
+                return this;
+            }
+
+            /**
+             * Clock in millis by which shards are scheduled
+             * @param clock
+             */
+            public Builder withClock(Clock clock) {
+                this.clock = clock;
+                return this;
+            }
+
+            public Factory build() {
+                return new Factory(this);
+            }
+        }
+
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public Factory(Builder builder) {
+            this.builder = builder;
+        }
+
+        private final Builder builder;
+
+        @Override
+        public ShardReaderPolicy create(MessageQueueMetadata metadata) {
+            return new AdaptiveShardReaderPolicy(builder, metadata);
+        }
+    }
+
+    private static final String SEPARATOR = ":";
+
+    /**
+     * Scheduling state of a shard.  A shard is in exactly one ready queue, in the parked queue
+     * or held by the consumer reading it.
+     */
+    private static class ScheduledShard implements Delayed {
+        final MessageQueueShard shard;
+        final Clock             clock;
+        int                     emptyReads = 0;
+        volatile long           readTime   = 0;
+
+        ScheduledShard(MessageQueueShard shard, Clock clock) {
+            this.shard = shard;
+            this.clock = clock;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(readTime - clock.getCurrentTime(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            long diff = readTime - ((ScheduledShard)other).readTime;
+            return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+        }
+    }
+
+    private final MessageQueueMetadata                      settings;
+    private final List<MessageQueueShard>                   shards;
+    private final Map<String, MessageQueueShardStats>       shardStats;
+    private final Map<String, ScheduledShard>               scheduled;
+    final List<LinkedBlockingDeque<ScheduledShard>>         readyQueues = new CopyOnWriteArrayList<LinkedBlockingDeque<ScheduledShard>>();
+    private final LinkedBlockingDeque<ScheduledShard>       unassigned  = new LinkedBlockingDeque<ScheduledShard>();
+    private final DelayQueue<ScheduledShard>                parked      = new DelayQueue<ScheduledShard>();
+    private final ThreadLocal<LinkedBlockingDeque<ScheduledShard>> readyQueue = new ThreadLocal<LinkedBlockingDeque<ScheduledShard>>() {
+        @Override
+        protected LinkedBlockingDeque<ScheduledShard> initialValue() {
+            LinkedBlockingDeque<ScheduledShard> queue = new LinkedBlockingDeque<ScheduledShard>();
+            readyQueues.add(queue);
+            return queue;
+        }
+    };
+    private final Random random = new Random();
+    private final long   minBackoff;
+    private final long   maxBackoff;
+    private final long   stealInterval;
+    private final Clock  clock;
+
+    private volatile int currentTimePartition = -1;
+
+    private AdaptiveShardReaderPolicy(Factory.Builder builder, MessageQueueMetadata metadata) {
+        this.settings      = metadata;
+        this.minBackoff    = Math.max(1, builder.minBackoff);
+        this.maxBackoff    = Math.max(this.minBackoff, builder.maxBackoff);
+        this.stealInterval = builder.stealInterval;
+        this.clock         = builder.clock;
+
+        shards = Lists.newArrayListWithCapacity(metadata.getPartitionCount() * metadata.getShardCount());
+        for (int i = 0; i < metadata.getPartitionCount(); i++) {
+            for (int j = 0; j < metadata.getShardCount(); j++) {
+                shards.add(new MessageQueueShard(metadata.getQueueName() + SEPARATOR + i + SEPARATOR + j, i, j));
+            }
+        }
+
+        List<ScheduledShard> queues = Lists.newArrayList();
+        Map<String, ScheduledShard> scheduled = Maps.newHashMapWithExpectedSize(shards.size());
+        shardStats = Maps.newHashMapWithExpectedSize(shards.size());
+        for (MessageQueueShard shard : shards) {
+            ScheduledShard s = new ScheduledShard(shard, clock);
+            queues.add(s);
+            scheduled.put(shard.getName(), s);
+            shardStats.put(shard.getName(), shard);
+        }
+        this.scheduled = ImmutableMap.copyOf(scheduled);
+
+        // All shards are read once, by whichever threads get to them first
+        Collections.shuffle(queues);
+        unassigned.addAll(queues);
+        readyQueues.add(unassigned);
+    }
+
+    private int getCurrentPartitionIndex() {
+        if (settings.getPartitionCount() <= 1)
+            return 0;
+        return    (int) ((TimeUnit.MICROSECONDS.convert(clock.getCurrentTime(), TimeUnit.MILLISECONDS)
+                        / settings.getPartitionDuration())%settings.getPartitionCount());
+    }
+
+    @Override
+    public MessageQueueShard nextShard() throws InterruptedException {
+        LinkedBlockingDeque<ScheduledShard> own = readyQueue.get();
+
+        // We transitioned to a new time partition so its shards are read right away
+        int timePartition = getCurrentPartitionIndex();
+        if (timePartition != currentTimePartition) {
+            synchronized (this) {
+                // Double check
+                if (timePartition != currentTimePartition) {
+                    currentTimePartition = timePartition;
+                    for (ScheduledShard s : parked) {
+                        if (s.shard.getPartition() == timePartition && parked.remove(s)) {
+                            s.emptyReads = 0;
+                            own.add(s);
+                        }
+                    }
+                }
+            }
+        }
+
+        // Shards whose backoff is over join the shards that are ready
+        ScheduledShard s;
+        while ((s = parked.poll()) != null) {
+            own.add(s);
+        }
+
+        s = own.poll();
+        if (s == null)
+            s = steal(own);
+        if (s == null)
+            s = parked.poll(stealInterval, TimeUnit.MILLISECONDS);
+        return s == null ? null : s.shard;
+    }
+
+    /**
+     * Take a shard from the end of another thread's ready queue, starting at a random thread
+     */
+    private ScheduledShard steal(LinkedBlockingDeque<ScheduledShard> own) {
+        int count = readyQueues.size();
+        int start = random.nextInt(count);
+        for (int i = 0; i < count; i++) {
+            LinkedBlockingDeque<ScheduledShard> queue = readyQueues.get((start + i) % count);
+            if (queue != own) {
+                ScheduledShard s = queue.pollLast();
+                if (s != null)
+                    return s;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void releaseShard(MessageQueueShard shard, int messagesRead) {
+        long now = clock.getCurrentTime();
+        shard.setLastCount(messagesRead, now);
+
+        ScheduledShard s = scheduled.get(shard.getName());
+        if (messagesRead > 0) {
+            s.emptyReads = 0;
+            readyQueue.get().add(s);
+            return;
+        }
+
+        s.emptyReads++;
+        long backoff;
+        if (shard.getPartition() != currentTimePartition) {
+            backoff = maxBackoff;
+        }
+        else {
+            backoff = Math.min(maxBackoff, minBackoff << Math.min(s.emptyReads - 1, 30));
+
+            // Read the shard about twice per expected arrival
+            double rate = shard.getArrivalRate();
+            if (rate > 0)
+                backoff = Math.max(minBackoff, Math.min(backoff, (long)(500 / rate)));
+        }
+        s.readTime = now + backoff;
+        parked.add(s);
+    }
+
+    @Override
+    public void releaseCurrentThread() {
+        LinkedBlockingDeque<ScheduledShard> own = readyQueue.get();
+        readyQueue.remove();
+        readyQueues.remove(own);
+
+        // Nothing adds to the queue of this thread any more, but others may still be stealing from it
+        ScheduledShard s;
+        while ((s = own.poll()) != null) {
+            unassigned.add(s);
+        }
+    }
+
+    @Override
+    public Collection<MessageQueueShard> listShards() {
+        return Collections.unmodifiableList(shards);
+    }
+
+    @Override
+    public Map<String, MessageQueueShardStats> getShardStats() {
+        return shardStats;
+    }
+
+    @Override
+    public int getWorkQueueDepth() {
+        int depth = 0;
+        for (LinkedBlockingDeque<ScheduledShard> queue : readyQueues) {
+            depth += queue.size();
+        }
+        return depth;
+    }
+
+    @Override
+    public int getIdleQueueDepth() {
+        return parked.size();
+    }
+
+    @Override
+    public boolean isCatchingUp() {
+        // if the work queue is larger than two partitions worth of shards we are still playing catch up.
+        return getWorkQueueDepth() > (settings.getShardCount() * 2);
+    }
+
+    @Override
+    public long getPollInterval() {
+        return 0;
+    }
+}
@@ -0,0 +1,15 @@
+package com.netflix.astyanax.recipes.queue.shard;
+
+/**
+ * Shard reader policy that keeps state for each thread reading shards, such as a queue of shards
+ * the thread is going to read next.  A consumer thread that stops reading from the queue releases
+ * its state so that it doesn't outlive the thread.
+ */
+public interface ThreadAffineShardReaderPolicy extends ShardReaderPolicy {
+
+    /**
+     * Called on a consumer thread once it no longer reads from the queue.  Shards the thread was
+     * going to read are handed to the other threads.
+     */
+    void releaseCurrentThread();
+}
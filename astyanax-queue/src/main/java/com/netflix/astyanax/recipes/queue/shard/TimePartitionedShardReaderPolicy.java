@@ -129,6 +129,8 @@ public class TimePartitionedShardReaderPolicy implements ShardReaderPolicy {
 
     @Override
     public void releaseShard(MessageQueueShard shard, int messagesRead) {
+        shard.setLastCount(messagesRead);
+        
         // Shard is not in the current partition and we did't final any messages so let's just put in the
         // idle queue.  It'll be added back later when in this shard's time partition.
         // May want to randomly check an idle queue when there is nothing in the working queue
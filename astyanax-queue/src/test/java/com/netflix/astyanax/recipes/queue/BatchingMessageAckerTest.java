@@ -0,0 +1,164 @@
+package com.netflix.astyanax.recipes.queue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class BatchingMessageAckerTest {
+    private static final int SHARD_COUNT = 4;
+
+    private MockKeyspace keyspace;
+    private CountingQueueStats stats;
+    private ShardedDistributedMessageQueue queue;
+
+    @Before
+    public void setup() throws Exception {
+        keyspace = new MockKeyspace();
+        stats = new CountingQueueStats();
+        queue = new ShardedDistributedMessageQueue.Builder()
+            .withKeyspace(keyspace.get())
+            .withColumnFamily("Queue")
+            .withQueueName("TestQueue")
+            .withShardCount(SHARD_COUNT)
+            .withStats(stats)
+            .build();
+    }
+
+    @After
+    public void teardown() {
+        keyspace.shutdown();
+    }
+
+    private static MessageContext newContext() {
+        return new MessageContext().setMessage(BatchingMessageProducerTest.newMessage());
+    }
+
+    @Test(timeout = 10000)
+    public void testCoalescesByShard() throws Exception {
+        AsyncMessageAcker acker = queue.createAsyncAcker(1, TimeUnit.MINUTES, 1000, 0);
+        List<ListenableFuture<Void>> futures = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            futures.add(acker.ackMessageAsync(newContext()));
+        }
+        acker.flush();
+
+        for (ListenableFuture<Void> future : futures) {
+            future.get(0, TimeUnit.SECONDS);
+        }
+        Assert.assertTrue(keyspace.executeCount.get() <= SHARD_COUNT);
+        Assert.assertEquals(100, stats.getAckBatchMessageCount());
+        Assert.assertEquals(100, keyspace.rowCount.get());
+        acker.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testRetry() throws Exception {
+        AsyncMessageAcker acker = queue.createAsyncAcker(1, TimeUnit.MINUTES, 1000, 3);
+
+        keyspace.executeFailures.set(2);
+        ListenableFuture<Void> future = acker.ackMessageAsync(newContext());
+        acker.flush();
+
+        future.get(0, TimeUnit.SECONDS);
+        Assert.assertEquals(3, keyspace.executeCount.get());
+        Assert.assertEquals(0, stats.getAckErrorCount());
+        acker.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testRetriesExhausted() throws Exception {
+        AsyncMessageAcker acker = queue.createAsyncAcker(1, TimeUnit.MINUTES, 1000, 1);
+
+        keyspace.executeFailures.set(2);
+        ListenableFuture<Void> failed = acker.ackMessageAsync(newContext());
+        acker.flush();
+        BatchingMessageProducerTest.assertFailed(failed);
+        Assert.assertEquals(2, keyspace.executeCount.get());
+        Assert.assertEquals(1, stats.getAckErrorCount());
+
+        // The sender survived the failure
+        ListenableFuture<Void> acked = acker.ackMessageAsync(newContext());
+        acker.flush();
+        acked.get(0, TimeUnit.SECONDS);
+        acker.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testBuildFailureKeepsSending() throws Exception {
+        AsyncMessageAcker acker = queue.createAsyncAcker(1, TimeUnit.MINUTES, 1000, 3);
+
+        keyspace.buildFailures.set(1);
+        ListenableFuture<Void> failed = acker.ackMessageAsync(newContext());
+        acker.flush();
+        BatchingMessageProducerTest.assertFailed(failed);
+
+        ListenableFuture<Void> acked = acker.ackMessageAsync(newContext());
+        acker.flush();
+        acked.get(0, TimeUnit.SECONDS);
+        acker.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testSkipsMessagesWithoutToken() throws Exception {
+        AsyncMessageAcker acker = queue.createAsyncAcker(1, TimeUnit.MINUTES, 1000, 3);
+
+        acker.ackMessageAsync(new MessageContext().setMessage(new Message())).get(0, TimeUnit.SECONDS);
+        acker.flush();
+        Assert.assertEquals(0, keyspace.executeCount.get());
+        Assert.assertEquals(1, stats.getAckMessageCount());
+        acker.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testCloseWritesPending() throws Exception {
+        AsyncMessageAcker acker = queue.createAsyncAcker(1, TimeUnit.MINUTES, 1000, 3);
+        ListenableFuture<Void> future = acker.ackMessageAsync(newContext());
+        acker.close();
+
+        future.get(0, TimeUnit.SECONDS);
+        BatchingMessageProducerTest.assertFailed(acker.ackMessageAsync(newContext()));
+    }
+
+    @Test(timeout = 10000)
+    public void testCloseRetriesOnce() throws Exception {
+        AsyncMessageAcker acker = queue.createAsyncAcker(1, TimeUnit.MINUTES, 1000, 3);
+
+        keyspace.executeFailures.set(1);
+        ListenableFuture<Void> future = acker.ackMessageAsync(newContext());
+        acker.close();
+
+        // close() waits for the last attempt of the batch that failed
+        future.get(0, TimeUnit.SECONDS);
+        Assert.assertEquals(2, keyspace.executeCount.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testStatsWithoutAckerCounters() throws Exception {
+        ShardedDistributedMessageQueue plainQueue = new ShardedDistributedMessageQueue.Builder()
+            .withKeyspace(keyspace.get())
+            .withColumnFamily("Queue")
+            .withQueueName("TestQueue")
+            .withShardCount(SHARD_COUNT)
+            .withStats(BatchingMessageProducerTest.newPlainStats())
+            .build();
+
+        AsyncMessageAcker acker = plainQueue.createAsyncAcker(1, TimeUnit.MINUTES, 1000, 0);
+        ListenableFuture<Void> acked = acker.ackMessageAsync(newContext());
+        acker.flush();
+        acked.get(0, TimeUnit.SECONDS);
+
+        keyspace.executeFailures.set(1);
+        ListenableFuture<Void> failed = acker.ackMessageAsync(newContext());
+        acker.flush();
+        BatchingMessageProducerTest.assertFailed(failed);
+        acker.close();
+    }
+}
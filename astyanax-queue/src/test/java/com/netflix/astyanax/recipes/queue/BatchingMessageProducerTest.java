@@ -0,0 +1,216 @@
+package com.netflix.astyanax.recipes.queue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.netflix.astyanax.util.TimeUUIDUtils;
+
+public class BatchingMessageProducerTest {
+    private static final int SHARD_COUNT = 4;
+
+    private MockKeyspace keyspace;
+    private CountingQueueStats stats;
+    private ShardedDistributedMessageQueue queue;
+
+    @Before
+    public void setup() throws Exception {
+        keyspace = new MockKeyspace();
+        stats = new CountingQueueStats();
+        queue = new ShardedDistributedMessageQueue.Builder()
+            .withKeyspace(keyspace.get())
+            .withColumnFamily("Queue")
+            .withQueueName("TestQueue")
+            .withShardCount(SHARD_COUNT)
+            .withStats(stats)
+            .build();
+    }
+
+    @After
+    public void teardown() {
+        keyspace.shutdown();
+    }
+
+    static Message newMessage() {
+        return new Message(TimeUUIDUtils.getUniqueTimeUUIDinMicros(), TimeUUIDUtils.getUniqueTimeUUIDinMicros());
+    }
+
+    @Test(timeout = 10000)
+    public void testCoalescesByShard() throws Exception {
+        AsyncMessageProducer producer = queue.createAsyncProducer(1, TimeUnit.MINUTES, 1000);
+        List<ListenableFuture<String>> futures = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            futures.add(producer.sendMessageAsync(newMessage()));
+        }
+        producer.flush();
+
+        for (ListenableFuture<String> future : futures) {
+            Assert.assertNotNull(future.get(0, TimeUnit.SECONDS));
+        }
+        Assert.assertTrue(keyspace.executeCount.get() <= SHARD_COUNT);
+        Assert.assertEquals(100, stats.getProducerMessageCount());
+        producer.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testBatchSize() throws Exception {
+        AsyncMessageProducer producer = queue.createAsyncProducer(1, TimeUnit.MINUTES, 10);
+        List<ListenableFuture<String>> futures = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            futures.add(producer.sendMessageAsync(newMessage()));
+        }
+        producer.flush();
+
+        Assert.assertTrue(keyspace.executeCount.get() >= 10);
+        Assert.assertTrue(keyspace.executeCount.get() <= 10 + SHARD_COUNT);
+        producer.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testBuildFailureKeepsSending() throws Exception {
+        AsyncMessageProducer producer = queue.createAsyncProducer(1, TimeUnit.MINUTES, 1000);
+
+        keyspace.buildFailures.set(1);
+        ListenableFuture<String> failed = producer.sendMessageAsync(newMessage());
+        producer.flush();
+        assertFailed(failed);
+
+        // The sender survived the failure
+        ListenableFuture<String> sent = producer.sendMessageAsync(newMessage());
+        producer.flush();
+        Assert.assertNotNull(sent.get());
+        Assert.assertEquals(1, stats.getProducerErrorCount());
+        producer.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testExecuteFailure() throws Exception {
+        AsyncMessageProducer producer = queue.createAsyncProducer(1, TimeUnit.MINUTES, 1000);
+
+        keyspace.executeFailures.set(1);
+        ListenableFuture<String> failed = producer.sendMessageAsync(newMessage());
+        producer.flush();
+        assertFailed(failed);
+
+        ListenableFuture<String> sent = producer.sendMessageAsync(newMessage());
+        producer.flush();
+        Assert.assertNotNull(sent.get());
+        producer.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testCloseSendsPending() throws Exception {
+        AsyncMessageProducer producer = queue.createAsyncProducer(1, TimeUnit.MINUTES, 1000);
+        ListenableFuture<String> future = producer.sendMessageAsync(newMessage());
+        producer.close();
+
+        Assert.assertNotNull(future.get());
+        assertFailed(producer.sendMessageAsync(newMessage()));
+    }
+
+    /**
+     * Every message sent while the producer is being closed is either written or failed
+     */
+    @Test(timeout = 10000)
+    public void testCloseRace() throws Exception {
+        keyspace.latency = 1;
+        final AsyncMessageProducer producer = queue.createAsyncProducer(1, TimeUnit.MILLISECONDS, 10);
+        final List<ListenableFuture<String>> futures = Lists.newCopyOnWriteArrayList();
+        final AtomicBoolean stop = new AtomicBoolean();
+        final CountDownLatch started = new CountDownLatch(4);
+        List<Thread> threads = Lists.newArrayList();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    while (!stop.get()) {
+                        futures.add(producer.sendMessageAsync(newMessage()));
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+
+        started.await();
+        Thread.sleep(20);
+        producer.close();
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        int sent = 0;
+        for (ListenableFuture<String> future : futures) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                sent++;
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof MessageQueueException);
+            }
+        }
+        Assert.assertTrue(sent > 0);
+        Assert.assertEquals(sent, stats.getProducerMessageCount());
+    }
+
+    @Test(timeout = 10000)
+    public void testStatsWithoutProducerCounters() throws Exception {
+        ShardedDistributedMessageQueue plainQueue = new ShardedDistributedMessageQueue.Builder()
+            .withKeyspace(keyspace.get())
+            .withColumnFamily("Queue")
+            .withQueueName("TestQueue")
+            .withShardCount(SHARD_COUNT)
+            .withStats(newPlainStats())
+            .build();
+
+        AsyncMessageProducer producer = plainQueue.createAsyncProducer(1, TimeUnit.MINUTES, 1000);
+        ListenableFuture<String> sent = producer.sendMessageAsync(newMessage());
+        producer.flush();
+        Assert.assertNotNull(sent.get(5, TimeUnit.SECONDS));
+
+        keyspace.buildFailures.set(1);
+        ListenableFuture<String> failed = producer.sendMessageAsync(newMessage());
+        producer.flush();
+        assertFailed(failed);
+        producer.close();
+    }
+
+    /**
+     * @return Stats that only implement MessageQueueStats, like the ones written before the async
+     *         producer and acker existed
+     */
+    static MessageQueueStats newPlainStats() {
+        return (MessageQueueStats) Proxy.newProxyInstance(
+                MessageQueueStats.class.getClassLoader(),
+                new Class<?>[] { MessageQueueStats.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return method.getReturnType() == long.class ? Long.valueOf(0) : null;
+                    }
+                });
+    }
+
+    static void assertFailed(ListenableFuture<?> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof MessageQueueException);
+        }
+    }
+}
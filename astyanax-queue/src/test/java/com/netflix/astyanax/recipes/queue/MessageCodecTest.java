@@ -0,0 +1,129 @@
+package com.netflix.astyanax.recipes.queue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.netflix.astyanax.recipes.queue.triggers.RepeatingTrigger;
+import com.netflix.astyanax.recipes.queue.triggers.RunOnceTrigger;
+import com.netflix.astyanax.util.TimeUUIDUtils;
+
+public class MessageCodecTest {
+
+    static Message newMessage() {
+        return new Message(TimeUUIDUtils.getUniqueTimeUUIDinMicros(), TimeUUIDUtils.getUniqueTimeUUIDinMicros())
+            .setUniqueKey("customer:12345")
+            .setTaskClass("com.example.SendEmailTask")
+            .setTimeout(30, TimeUnit.SECONDS)
+            .setPriority((byte) 2)
+            .setKeepHistory(true)
+            .setTrigger(new RepeatingTrigger.Builder()
+                    .withInterval(1, TimeUnit.MINUTES)
+                    .withDelay(10, TimeUnit.SECONDS)
+                    .withRepeatCount(5)
+                    .build())
+            .addParameter("email", "someone@example.com")
+            .addParameter("attempt", 3)
+            .addParameter("accountId", 1234567890123L)
+            .addParameter("urgent", true)
+            .addParameter("score", 0.75)
+            .addParameter("none", null);
+    }
+
+    private static void assertMessageEquals(Message expected, Message actual) {
+        Assert.assertEquals(expected.getToken(), actual.getToken());
+        Assert.assertEquals(expected.getRandom(), actual.getRandom());
+        Assert.assertEquals(expected.getKey(), actual.getKey());
+        Assert.assertEquals(expected.hasUniqueKey(), actual.hasUniqueKey());
+        Assert.assertEquals(expected.getTaskClass(), actual.getTaskClass());
+        Assert.assertEquals(expected.getTimeout(), actual.getTimeout());
+        Assert.assertEquals(expected.getPriority(), actual.getPriority());
+        Assert.assertEquals(expected.isKeepHistory(), actual.isKeepHistory());
+        Assert.assertEquals(expected.isAutoCommitTrigger(), actual.isAutoCommitTrigger());
+        Assert.assertEquals(expected.getParameters(), actual.getParameters());
+        if (expected.hasTrigger()) {
+            Assert.assertEquals(expected.getTrigger().getClass(), actual.getTrigger().getClass());
+            Assert.assertEquals(expected.getTrigger().getTriggerTime(), actual.getTrigger().getTriggerTime());
+        }
+        else {
+            Assert.assertFalse(actual.hasTrigger());
+        }
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws Exception {
+        BinaryMessageCodec codec = BinaryMessageCodec.get();
+        Message message = newMessage();
+        byte[] data = codec.encode(message);
+
+        Assert.assertTrue(codec.canDecode(data));
+        Assert.assertFalse(JsonMessageCodec.get().canDecode(data));
+
+        Message decoded = codec.decode(data);
+        assertMessageEquals(message, decoded);
+
+        RepeatingTrigger expected = (RepeatingTrigger) message.getTrigger();
+        RepeatingTrigger actual   = (RepeatingTrigger) decoded.getTrigger();
+        Assert.assertEquals(expected.getInterval(),    actual.getInterval());
+        Assert.assertEquals(expected.getDelay(),       actual.getDelay());
+        Assert.assertEquals(expected.getRepeatCount(), actual.getRepeatCount());
+        Assert.assertEquals(expected.getEndTime(),     actual.getEndTime());
+
+        // Minimal message
+        Message empty = new Message().setTrigger(new RunOnceTrigger.Builder().build());
+        assertMessageEquals(empty, codec.decode(codec.encode(empty)));
+
+        Assert.assertTrue(data.length < JsonMessageCodec.get().encode(message).length / 2);
+    }
+
+    @Test
+    public void testComplexParametersFallBackToJson() throws Exception {
+        BinaryMessageCodec codec = BinaryMessageCodec.get();
+        List<String> recipients = Lists.newArrayList("a@example.com", "b@example.com");
+        Message message = newMessage().addParameter("recipients", recipients);
+
+        Map<String, Object> parameters = codec.decode(codec.encode(message)).getParameters();
+        Assert.assertEquals(recipients, parameters.get("recipients"));
+        Assert.assertEquals("someone@example.com", parameters.get("email"));
+    }
+
+    @Test
+    public void testJsonRoundTrip() throws Exception {
+        JsonMessageCodec codec = JsonMessageCodec.get();
+        Message message = newMessage();
+        message.getParameters().remove("accountId");
+        byte[] data = codec.encode(message);
+
+        Assert.assertTrue(codec.canDecode(data));
+        Assert.assertFalse(BinaryMessageCodec.get().canDecode(data));
+
+        // The JSON format doesn't record whether the key is unique
+        Message decoded = codec.decode(data);
+        Assert.assertEquals(message.getKey(), decoded.getKey());
+        Assert.assertEquals(message.getToken(), decoded.getToken());
+        Assert.assertEquals(message.getParameters(), decoded.getParameters());
+        Assert.assertEquals(message.getTrigger().getTriggerTime(), decoded.getTrigger().getTriggerTime());
+    }
+
+    @Test
+    public void testUnsupportedVersion() throws Exception {
+        byte[] data = BinaryMessageCodec.get().encode(newMessage());
+        data[1] = BinaryMessageCodec.VERSION + 1;
+        try {
+            BinaryMessageCodec.get().decode(data);
+            Assert.fail();
+        } catch (MessageQueueException e) {
+        }
+
+        try {
+            BinaryMessageCodec.get().decode(new byte[] { BinaryMessageCodec.MAGIC, BinaryMessageCodec.VERSION, 3 });
+            Assert.fail();
+        } catch (MessageQueueException e) {
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.netflix.astyanax.recipes.queue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.astyanax.Keyspace;
+import com.netflix.astyanax.MutationBatch;
+import com.netflix.astyanax.connectionpool.Host;
+import com.netflix.astyanax.connectionpool.exceptions.OperationTimeoutException;
+import com.netflix.astyanax.connectionpool.impl.OperationResultImpl;
+
+/**
+ * Keyspace for the queue tests that doesn't talk to cassandra.  Mutation batches count the rows they
+ * mutate and executeAsync completes them on a separate thread after the configured latency.  Failures
+ * can be injected when a batch is built or executed.  Anything else returns a stub that does nothing.
+ */
+class MockKeyspace {
+    /** Calls to executeAsync */
+    final AtomicInteger executeCount    = new AtomicInteger();
+    /** Batches that were executed without any rows */
+    final AtomicInteger emptyCount      = new AtomicInteger();
+    /** Rows mutated by the batches that executed successfully */
+    final AtomicInteger rowCount        = new AtomicInteger();
+    /** Number of withRow calls that fail with a RuntimeException */
+    final AtomicInteger buildFailures   = new AtomicInteger();
+    /** Number of executeAsync calls that fail */
+    final AtomicInteger executeFailures = new AtomicInteger();
+    /** Latency of executeAsync, in millis */
+    volatile long       latency         = 0;
+
+    private final ListeningExecutorService executor = MoreExecutors.listeningDecorator(Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("MockKeyspace-%d").build()));
+    private final Keyspace keyspace = stub(Keyspace.class, new InvocationHandler() {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("prepareMutationBatch"))
+                return newMutationBatch();
+            return defaultValue(proxy, method);
+        }
+    });
+
+    Keyspace get() {
+        return keyspace;
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private MutationBatch newMutationBatch() {
+        final AtomicInteger rows = new AtomicInteger();
+        return stub(MutationBatch.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("withRow")) {
+                    if (buildFailures.getAndDecrement() > 0)
+                        throw new RuntimeException("Injected failure building batch");
+                    rows.incrementAndGet();
+                }
+                else if (name.equals("isEmpty")) {
+                    return rows.get() == 0;
+                }
+                else if (name.equals("getRowCount")) {
+                    return rows.get();
+                }
+                else if (name.equals("executeAsync")) {
+                    executeCount.incrementAndGet();
+                    if (rows.get() == 0)
+                        emptyCount.incrementAndGet();
+                    if (executeFailures.getAndDecrement() > 0)
+                        return Futures.immediateFailedFuture(new OperationTimeoutException("Injected failure executing batch"));
+                    return executor.submit(new Callable<Object>() {
+                        @Override
+                        public Object call() throws Exception {
+                            if (latency > 0)
+                                Thread.sleep(latency);
+                            rowCount.addAndGet(rows.get());
+                            return new OperationResultImpl<Void>(Host.NO_HOST, null, 0);
+                        }
+                    });
+                }
+                return defaultValue(proxy, method);
+            }
+        });
+    }
+
+    /**
+     * Chained calls return the proxy itself, other interfaces get a stub of their own
+     */
+    private static Object defaultValue(Object proxy, Method method) {
+        Class<?> type = method.getReturnType();
+        if (type.isInstance(proxy))
+            return proxy;
+        if (type.isInterface())
+            return stub(type, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    return defaultValue(proxy, method);
+                }
+            });
+        if (type == boolean.class)
+            return false;
+        if (type == int.class)
+            return 0;
+        if (type == long.class)
+            return 0L;
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+}
@@ -0,0 +1,106 @@
+package com.netflix.astyanax.recipes.queue;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Sends messages from many threads through a batching producer against a keyspace stub with a fixed
+ * write latency and injected failures.  Reports the throughput and batch size and checks that every
+ * message was either written or failed, including the ones sent while the producer was closed.
+ */
+public class StressBatchingMessageProducer {
+    private static final Logger LOG = LoggerFactory.getLogger(StressBatchingMessageProducer.class);
+
+    private static final int  THREAD_COUNT = 16;
+    private static final int  SHARD_COUNT  = 8;
+    private static final long RUN_TIME     = 10;       // Seconds
+
+    public static void main(String[] args) throws Exception {
+        final MockKeyspace keyspace = new MockKeyspace();
+        keyspace.latency = 2;
+
+        final CountingQueueStats stats = new CountingQueueStats();
+        final ShardedDistributedMessageQueue queue = new ShardedDistributedMessageQueue.Builder()
+            .withKeyspace(keyspace.get())
+            .withColumnFamily("Queue")
+            .withQueueName("StressQueue")
+            .withShardCount(SHARD_COUNT)
+            .withStats(stats)
+            .build();
+
+        final AsyncMessageProducer producer = queue.createAsyncProducer(5, TimeUnit.MILLISECONDS, 100);
+        final AtomicBoolean stop   = new AtomicBoolean();
+        final AtomicLong    sent   = new AtomicLong();
+        final AtomicLong    failed = new AtomicLong();
+        final AtomicLong    lost   = new AtomicLong();
+
+        List<Thread> threads = Lists.newArrayList();
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    List<ListenableFuture<String>> futures = Lists.newArrayList();
+                    while (!stop.get()) {
+                        futures.add(producer.sendMessageAsync(BatchingMessageProducerTest.newMessage()));
+                        if (futures.size() == 1000) {
+                            check(futures);
+                        }
+                    }
+                    check(futures);
+                }
+
+                private void check(List<ListenableFuture<String>> futures) {
+                    for (ListenableFuture<String> future : futures) {
+                        try {
+                            future.get(10, TimeUnit.SECONDS);
+                            sent.incrementAndGet();
+                        } catch (ExecutionException e) {
+                            failed.incrementAndGet();
+                        } catch (Exception e) {
+                            lost.incrementAndGet();
+                        }
+                    }
+                    futures.clear();
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < RUN_TIME; i++) {
+            Thread.sleep(1000);
+            // Fail a batch now and then, both while building it and when writing it
+            keyspace.buildFailures.set(1);
+            keyspace.executeFailures.set(1);
+            LOG.info(String.format("sent=%d failed=%d batches=%d", sent.get(), failed.get(), keyspace.executeCount.get()));
+        }
+
+        // Close while the threads are still sending
+        producer.close();
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        LOG.info(String.format("%d messages/sec, %.1f messages/batch, sent=%d failed=%d lost=%d",
+                sent.get() * TimeUnit.NANOSECONDS.convert(1, TimeUnit.SECONDS) / elapsed,
+                (double) stats.getProducerMessageCount() / Math.max(1, stats.getProducerBatchCount()),
+                sent.get(), failed.get(), lost.get()));
+        LOG.info(stats.toString());
+        keyspace.shutdown();
+
+        if (lost.get() > 0)
+            throw new IllegalStateException(lost.get() + " messages were neither written nor failed");
+    }
+}
@@ -0,0 +1,59 @@
+package com.netflix.astyanax.recipes.queue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+import com.netflix.astyanax.util.TimeUUIDUtils;
+
+/**
+ * Compares the encode and decode throughput and the size of the JSON and binary message codecs
+ * for a small, a typical and a large message.
+ */
+public class StressMessageCodec {
+    private static final Logger LOG = LoggerFactory.getLogger(StressMessageCodec.class);
+
+    private static final int ITERATIONS = 200000;
+
+    public static void main(String[] args) throws Exception {
+        Message small = new Message(TimeUUIDUtils.getUniqueTimeUUIDinMicros(), TimeUUIDUtils.getUniqueTimeUUIDinMicros())
+            .setTimeout(30, TimeUnit.SECONDS);
+
+        Message typical = MessageCodecTest.newMessage();
+
+        Message large = MessageCodecTest.newMessage();
+        for (int i = 0; i < 50; i++) {
+            large.addParameter("param" + i, Strings.repeat("value" + i, 10));
+        }
+
+        MessageCodec[] codecs = { JsonMessageCodec.get(), BinaryMessageCodec.get() };
+        for (int round = 0; round < 3; round++) {
+            for (MessageCodec codec : codecs) {
+                run(codec, "small", small);
+                run(codec, "typical", typical);
+                run(codec, "large", large);
+            }
+        }
+    }
+
+    private static void run(MessageCodec codec, String name, Message message) throws Exception {
+        byte[] data = codec.encode(message);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            data = codec.encode(message);
+        }
+        long encodeTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            message = codec.decode(data);
+        }
+        long decodeTime = System.nanoTime() - start;
+
+        LOG.info(String.format("%-9s %-8s %5d bytes  encode %6d ns  decode %6d ns",
+                codec.getName(), name, data.length, encodeTime / ITERATIONS, decodeTime / ITERATIONS));
+    }
+}
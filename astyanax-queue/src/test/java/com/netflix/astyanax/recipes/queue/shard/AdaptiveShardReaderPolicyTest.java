@@ -0,0 +1,197 @@
+package com.netflix.astyanax.recipes.queue.shard;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+import com.netflix.astyanax.Clock;
+import com.netflix.astyanax.recipes.queue.MessageQueueMetadata;
+import com.netflix.astyanax.recipes.queue.MessageQueueShard;
+
+public class AdaptiveShardReaderPolicyTest {
+    /**
+     * Clock that only moves when the test advances it, so no test waits for a backoff to pass
+     */
+    private static class ManualClock implements Clock {
+        private volatile long now = 1000000;
+
+        @Override
+        public long getCurrentTime() {
+            return now;
+        }
+
+        void advance(long millis) {
+            now += millis;
+        }
+    }
+
+    private final ManualClock clock = new ManualClock();
+
+    private ShardReaderPolicy newPolicy(int shardCount, long minBackoff, long maxBackoff) {
+        MessageQueueMetadata metadata = new MessageQueueMetadata();
+        metadata.setQueueName("test");
+        metadata.setShardCount(shardCount);
+        return AdaptiveShardReaderPolicy.Factory.builder()
+                .withBackoff(minBackoff, maxBackoff, TimeUnit.MILLISECONDS)
+                .withStealInterval(0, TimeUnit.MILLISECONDS)
+                .withClock(clock)
+                .build()
+                .create(metadata);
+    }
+
+    @Test
+    public void testIdleShardsBackOff() throws Exception {
+        ShardReaderPolicy policy = newPolicy(2, 200, 800);
+
+        MessageQueueShard first  = policy.nextShard();
+        MessageQueueShard second = policy.nextShard();
+        Assert.assertNotNull(first);
+        Assert.assertNotNull(second);
+        Assert.assertNotSame(first, second);
+
+        policy.releaseShard(first, 0);
+        policy.releaseShard(second, 0);
+        Assert.assertEquals(2, policy.getIdleQueueDepth());
+        clock.advance(199);
+        Assert.assertNull(policy.nextShard());
+
+        // Back after the first backoff
+        clock.advance(1);
+        MessageQueueShard shard = policy.nextShard();
+        Assert.assertNotNull(shard);
+
+        // The second empty read doubles the backoff
+        policy.releaseShard(shard, 0);
+        Assert.assertNotSame(shard, policy.nextShard());
+        clock.advance(399);
+        Assert.assertNull(policy.nextShard());
+        clock.advance(1);
+        Assert.assertSame(shard, policy.nextShard());
+
+        // Backoff stops doubling at the max
+        for (int i = 0; i < 3; i++) {
+            policy.releaseShard(shard, 0);
+            clock.advance(799);
+            Assert.assertNull(policy.nextShard());
+            clock.advance(1);
+            Assert.assertSame(shard, policy.nextShard());
+        }
+    }
+
+    @Test
+    public void testBusyShardsAreReadAgain() throws Exception {
+        ShardReaderPolicy policy = newPolicy(1, 1000, 1000);
+
+        MessageQueueShard shard = policy.nextShard();
+        for (int i = 0; i < 5; i++) {
+            policy.releaseShard(shard, 10);
+            Assert.assertSame(shard, policy.nextShard());
+            clock.advance(10);
+        }
+        policy.releaseShard(shard, 10);
+
+        Assert.assertEquals(60, shard.getReadCount());
+        Assert.assertTrue(shard.getArrivalRate() > 0);
+        Assert.assertEquals(0, policy.getIdleQueueDepth());
+    }
+
+    @Test
+    public void testArrivalRateLimitsBackoff() throws Exception {
+        ShardReaderPolicy policy = newPolicy(1, 1, 1000);
+
+        // 100 messages every 100 ms
+        MessageQueueShard shard = policy.nextShard();
+        for (int i = 0; i < 10; i++) {
+            policy.releaseShard(shard, 100);
+            Assert.assertSame(shard, policy.nextShard());
+            clock.advance(100);
+        }
+        double rate = shard.getArrivalRate();
+        Assert.assertTrue(rate > 0);
+
+        // Without the rate the fifth empty read would back off for 16 ms
+        for (int i = 0; i < 10; i++) {
+            policy.releaseShard(shard, 0);
+            clock.advance((long) Math.ceil(500 / rate));
+            Assert.assertSame(shard, policy.nextShard());
+        }
+    }
+
+    @Test
+    public void testShardsAreStolen() throws Exception {
+        final ShardReaderPolicy policy = newPolicy(4, 1000, 1000);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // All shards end up in the ready queue of another thread
+            executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    Set<MessageQueueShard> shards = Sets.newHashSet();
+                    for (int i = 0; i < 4; i++) {
+                        shards.add(policy.nextShard());
+                    }
+                    for (MessageQueueShard shard : shards) {
+                        policy.releaseShard(shard, 1);
+                    }
+                    return null;
+                }
+            }).get();
+            Assert.assertEquals(4, policy.getWorkQueueDepth());
+
+            Set<MessageQueueShard> stolen = Sets.newHashSet();
+            for (int i = 0; i < 4; i++) {
+                stolen.add(policy.nextShard());
+            }
+            Assert.assertEquals(4, stolen.size());
+            Assert.assertEquals(0, policy.getWorkQueueDepth());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testStoppedThreadReleasesQueue() throws Exception {
+        final AdaptiveShardReaderPolicy policy = (AdaptiveShardReaderPolicy) newPolicy(4, 1000, 1000);
+        for (int round = 0; round < 5; round++) {
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                // Each consumer thread reads all shards and stops with them in its ready queue
+                executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        Set<MessageQueueShard> shards = Sets.newHashSet();
+                        for (int i = 0; i < 4; i++) {
+                            shards.add(policy.nextShard());
+                        }
+                        for (MessageQueueShard shard : shards) {
+                            policy.releaseShard(shard, 1);
+                        }
+                        policy.releaseCurrentThread();
+                        return null;
+                    }
+                }).get();
+            }
+            finally {
+                executor.shutdown();
+            }
+
+            // Only the queue of unassigned shards is left, and it holds the shards of the stopped thread
+            Assert.assertEquals(1, policy.readyQueues.size());
+            Assert.assertEquals(4, policy.getWorkQueueDepth());
+        }
+
+        Set<MessageQueueShard> shards = Sets.newHashSet();
+        for (int i = 0; i < 4; i++) {
+            shards.add(policy.nextShard());
+        }
+        Assert.assertEquals(4, shards.size());
+    }
+}
@@ -1,8 +1,10 @@
 package com.netflix.astyanax.thrift;
 
+import java.io.Closeable;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -42,10 +44,13 @@ import com.netflix.astyanax.recipes.queue.MessageProducer;
 import com.netflix.astyanax.recipes.queue.MessageQueue;
 import com.netflix.astyanax.recipes.queue.MessageQueueDispatcher;
 import com.netflix.astyanax.recipes.queue.MessageQueueException;
+import com.netflix.astyanax.recipes.queue.RenewableShardLockManager;
 import com.netflix.astyanax.recipes.queue.SendMessageResponse;
 import com.netflix.astyanax.recipes.queue.ShardLock;
-import com.netflix.astyanax.recipes.queue.ShardLockManager;
 import com.netflix.astyanax.recipes.queue.ShardedDistributedMessageQueue;
+import com.netflix.astyanax.recipes.queue.shard.AdaptiveShardReaderPolicy;
+import com.netflix.astyanax.recipes.queue.shard.ShardReaderPolicy;
+import com.netflix.astyanax.recipes.queue.shard.TimePartitionedShardReaderPolicy;
 import com.netflix.astyanax.recipes.queue.triggers.RepeatingTrigger;
 import com.netflix.astyanax.recipes.queue.triggers.RunOnceTrigger;
 import com.netflix.astyanax.util.SingletonEmbeddedCassandra;
@@ -742,10 +747,245 @@ public class QueueTest {
         }
     }
 
+    @Test
+    public void testShardLeases() throws Exception {
+        // Leases are only available with a lock manager
+        if (slm == null) {
+            return;
+        }
+
+        final CountingQueueStats stats = new CountingQueueStats();
+
+        final ShardedDistributedMessageQueue scheduler = new ShardedDistributedMessageQueue.Builder()
+                .withColumnFamily(SCHEDULER_NAME_CF_NAME)
+                .withQueueName("TestShardLeases" + qNameSfx)
+                .withKeyspace(keyspace)
+                .withConsistencyLevel(CONSISTENCY_LEVEL)
+                .withStats(stats)
+                .withShardCount(2)
+                .withShardReaderPolicy(TimePartitionedShardReaderPolicy.Factory.builder()
+                        .withPollingInterval(10, TimeUnit.MILLISECONDS)
+                        .build())
+                .withShardLockManager(slm)
+                .withShardLeaseTime(1L, TimeUnit.SECONDS)
+                .withPrefetchSize(10)
+                .build();
+        scheduler.deleteQueue();
+        scheduler.createQueue();
+
+        List<Message> messages = Lists.newArrayList();
+        for (int i = 0; i < 25; i++) {
+            messages.add(new Message().addParameter("body", "" + i).setTimeout(TIMEOUT, TimeUnit.SECONDS));
+        }
+        scheduler.createProducer().sendMessages(messages);
+
+        MessageConsumer consumer = scheduler.createConsumer();
+        List<MessageContext> read = Lists.newArrayList();
+        while (read.size() < messages.size()) {
+            List<MessageContext> batch = consumer.readMessages(3, 5, TimeUnit.SECONDS);
+            Assert.assertFalse(batch.isEmpty());
+            Assert.assertTrue(batch.size() <= 3);
+            read.addAll(batch);
+        }
+        consumer.ackMessages(read);
+
+        // Shards stay leased between reads, so there was no lock contention
+        Assert.assertEquals(0, stats.getLockCountentionCount());
+
+        // A second thread can only lock the shards once the leases are released
+        final String shard = scheduler.getShardStats().keySet().iterator().next();
+        Callable<Boolean> tryLock = new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                try {
+                    slm.releaseLock(slm.acquireLock(shard));
+                    return true;
+                } catch (BusyLockException e) {
+                    return false;
+                }
+            }
+        };
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ((Closeable)consumer).close();
+            Assert.assertTrue(executor.submit(tryLock).get());
+        }
+        finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(0, scheduler.getMessageCount());
+    }
+
+    @Test
+    public void testShardLeasesWithSeveralConsumers() throws Exception {
+        // Leases are only available with a lock manager
+        if (slm == null) {
+            return;
+        }
+
+        // Two queue instances stand for two processes that share the lock manager
+        final long leaseTime = 500;
+        ShardedDistributedMessageQueue[] queues   = new ShardedDistributedMessageQueue[2];
+        CountingQueueStats[]             allStats = new CountingQueueStats[2];
+        for (int i = 0; i < queues.length; i++) {
+            allStats[i] = new CountingQueueStats();
+            queues[i] = new ShardedDistributedMessageQueue.Builder()
+                    .withColumnFamily(SCHEDULER_NAME_CF_NAME)
+                    .withQueueName("TestShardLeasesWithSeveralConsumers" + qNameSfx)
+                    .withKeyspace(keyspace)
+                    .withConsistencyLevel(CONSISTENCY_LEVEL)
+                    .withStats(allStats[i])
+                    .withShardCount(1)
+                    .withShardReaderPolicy(TimePartitionedShardReaderPolicy.Factory.builder()
+                            .withPollingInterval(10, TimeUnit.MILLISECONDS)
+                            .build())
+                    .withShardLockManager(slm)
+                    .withShardLeaseTime(leaseTime, TimeUnit.MILLISECONDS)
+                    .build();
+            if (i == 0) {
+                queues[i].deleteQueue();
+                queues[i].createQueue();
+            }
+        }
+
+        // Locks are tied to the thread that acquired them so every consumer has its own thread
+        ExecutorService threadA = Executors.newSingleThreadExecutor();
+        ExecutorService threadB = Executors.newSingleThreadExecutor();
+        ExecutorService threadC = Executors.newSingleThreadExecutor();
+        try {
+            MessageConsumer consumerA = queues[0].createConsumer();
+            MessageConsumer consumerB = queues[1].createConsumer();
+            MessageConsumer consumerC = queues[0].createConsumer();
+
+            // A leases the shard
+            sendMessages(queues[0], 10);
+            List<MessageContext> read = readOn(threadA, consumerA, 10, 5000);
+            Assert.assertEquals(10, read.size());
+            consumerA.ackMessages(read);
+
+            sendMessages(queues[0], 10);
+
+            // C shares A's queue instance and skips the leased shard without trying its lock
+            Assert.assertTrue(readOn(threadC, consumerC, 10, 1000).isEmpty());
+            Assert.assertEquals(0, allStats[0].getLockCountentionCount());
+
+            // B only tries to lock the shard held by A once per lease time
+            long startTime = System.currentTimeMillis();
+            Assert.assertTrue(readOn(threadB, consumerB, 10, 1000).isEmpty());
+            long elapsed = System.currentTimeMillis() - startTime;
+            Assert.assertTrue(allStats[1].getLockCountentionCount() > 0);
+            Assert.assertTrue(allStats[1].getLockCountentionCount() <= 1 + elapsed / leaseTime);
+
+            // The shard moves to B once A is closed
+            closeOn(threadA, consumerA);
+            read = readOn(threadB, consumerB, 10, 5000);
+            Assert.assertEquals(10, read.size());
+            consumerB.ackMessages(read);
+
+            // B gives up the lease once the shard stayed empty for the lease time and C takes it over
+            Assert.assertTrue(readOn(threadB, consumerB, 1, 2 * leaseTime).isEmpty());
+            sendMessages(queues[0], 10);
+            read = readOn(threadC, consumerC, 10, 5000);
+            Assert.assertEquals(10, read.size());
+            consumerC.ackMessages(read);
+
+            closeOn(threadB, consumerB);
+            closeOn(threadC, consumerC);
+        }
+        finally {
+            threadA.shutdown();
+            threadB.shutdown();
+            threadC.shutdown();
+        }
+        Assert.assertEquals(0, queues[0].getMessageCount());
+    }
+
+    private static void sendMessages(MessageQueue queue, int count) throws MessageQueueException {
+        List<Message> messages = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            messages.add(new Message().addParameter("body", "" + i).setTimeout(TIMEOUT, TimeUnit.SECONDS));
+        }
+        queue.createProducer().sendMessages(messages);
+    }
+
+    /**
+     * Read up to count messages on the given thread, waiting at most timeout millis
+     */
+    private static List<MessageContext> readOn(ExecutorService thread, final MessageConsumer consumer, final int count, final long timeout) throws Exception {
+        return thread.submit(new Callable<List<MessageContext>>() {
+            @Override
+            public List<MessageContext> call() throws Exception {
+                List<MessageContext> read = Lists.newArrayList();
+                long timeoutTime = System.currentTimeMillis() + timeout;
+                long remaining;
+                while (read.size() < count && (remaining = timeoutTime - System.currentTimeMillis()) > 0) {
+                    read.addAll(consumer.readMessages(count - read.size(), remaining, TimeUnit.MILLISECONDS));
+                }
+                return read;
+            }
+        }).get();
+    }
+
+    private static void closeOn(ExecutorService thread, final MessageConsumer consumer) throws Exception {
+        thread.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                ((Closeable)consumer).close();
+                return null;
+            }
+        }).get();
+    }
+
+    @Test
+    public void testMessageAfterEmptyRead() throws Exception {
+        ShardReaderPolicy.Factory[] policies = new ShardReaderPolicy.Factory[] {
+                TimePartitionedShardReaderPolicy.Factory.builder()
+                        .withPollingInterval(10, TimeUnit.MILLISECONDS)
+                        .build(),
+                AdaptiveShardReaderPolicy.Factory.builder()
+                        .withBackoff(10, 100, TimeUnit.MILLISECONDS)
+                        .build()
+        };
+
+        for (int i = 0; i < policies.length; i++) {
+            final CountingQueueStats stats = new CountingQueueStats();
+
+            final ShardedDistributedMessageQueue scheduler = new ShardedDistributedMessageQueue.Builder()
+                    .withColumnFamily(SCHEDULER_NAME_CF_NAME)
+                    .withQueueName("TestMessageAfterEmptyRead" + i + qNameSfx)
+                    .withKeyspace(keyspace)
+                    .withConsistencyLevel(CONSISTENCY_LEVEL)
+                    .withStats(stats)
+                    .withShardCount(1)
+                    .withShardReaderPolicy(policies[i])
+                    .withShardLockManager(slm)
+                    .build();
+            scheduler.deleteQueue();
+            scheduler.createQueue();
+
+            // The shard is empty so the consumer only probes it from now on
+            MessageConsumer consumer = scheduler.createConsumer();
+            Assert.assertTrue(consumer.readMessages(1, 200, TimeUnit.MILLISECONDS).isEmpty());
+            Assert.assertTrue(stats.getEmptyPartitionCount() > 0);
+            Assert.assertEquals(0, scheduler.getShardStats().values().iterator().next().getLastReadCount());
+
+            // A message that arrives right after the empty read is found by the probe
+            scheduler.createProducer().sendMessage(
+                    new Message().addParameter("body", "after empty read").setTimeout(TIMEOUT, TimeUnit.SECONDS));
+            List<MessageContext> read = consumer.readMessages(1, 5, TimeUnit.SECONDS);
+            Assert.assertEquals(1, read.size());
+            Assert.assertEquals("after empty read", read.get(0).getMessage().getParameters().get("body"));
+            Assert.assertEquals(1, scheduler.getShardStats().values().iterator().next().getLastReadCount());
+
+            consumer.ackMessages(read);
+            Assert.assertEquals(0, scheduler.getMessageCount());
+        }
+    }
+
     /**
      * A shard lock manager implementation.
      */
-    static class ReentrantLockManager implements ShardLockManager {
+    static class ReentrantLockManager implements RenewableShardLockManager {
 
         private ConcurrentHashMap<String, ReentrantLock> locks = new ConcurrentHashMap<String, ReentrantLock>();
         private ConcurrentHashMap<String, AtomicInteger> busyLockCounts = new ConcurrentHashMap<String, AtomicInteger>();
@@ -777,6 +1017,14 @@ public class QueueTest {
             }
         }
 
+        @Override
+        public void renewLock(ShardLock lock) throws BusyLockException {
+            // Reentrant locks don't expire, check that the lock is still held
+            if (!((ReentrantShardLock) lock).getLock().isHeldByCurrentThread()) {
+                throw new BusyLockException("Shard " + lock.getShardName() + " is not locked by this thread");
+            }
+        }
+
         public Map<String,AtomicInteger> getBusyLockCounts() {
             return busyLockCounts;
         }
@@ -1,5 +1,411 @@
 package com.netflix.astyanax.recipes;
 
-public class DistributedMergeSort {
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.netflix.astyanax.Serializer;
+import com.netflix.astyanax.model.Row;
+import com.netflix.astyanax.recipes.reader.AllRowsReader;
+
+/**
+ * Recipe that produces a globally ordered export of a column family without holding all of it in the heap.
+ *
+ * 1. An {@link AllRowsReader} scans the token ranges in parallel.  Each row is mapped to a record, which is
+ *      typically the row key and the value of the column to sort by.  Rows that map to null are skipped.
+ * 2. Each scanning thread collects its records into a run.  Once a run exceeds its thread's share of the
+ *      memory limit the thread sorts it and spills it to a memory mapped temp file.
+ * 3. Once the scan is done all runs are merged with a heap and the records are passed to the callback in order.
+ *
+ * The size of a record in memory is estimated from its serialized size.  The sort can also be fed without a
+ * scan by calling {@link #add(Object)} from any number of threads followed by {@link #merge(Callback)}.
+ *
+ * <code>
+ *      DistributedMergeSort<String, String, Item> sort = new DistributedMergeSort.Builder<String, String, Item>(
+ *              new AllRowsReader.Builder<String, String>(keyspace, CF).withColumnSlice("price"),
+ *              TO_ITEM, ItemSerializer.get(), BY_PRICE)
+ *          .withMaxMemory(256 * 1024 * 1024)
+ *          .withCallback(new Callback<Item>() {...})
+ *          .build();
+ *      long count = sort.call();
+ * </code>
+ *
+ * @param <K>
+ * @param <C>
+ * @param <T> Type of the sorted records
+ */
+public class DistributedMergeSort<K, C, T> implements Callable<Long> {
+    private static final Logger LOG = LoggerFactory.getLogger(DistributedMergeSort.class);
+
+    public static final long DEFAULT_MAX_MEMORY   = 64 * 1024 * 1024;
+
+    /**
+     * Runs are mapped in one piece, so they must stay well below 2GB
+     */
+    private static final long MAX_RUN_SIZE        = 1024 * 1024 * 1024;
+
+    /**
+     * Rough per record overhead of the record object and its serialized form
+     */
+    private static final int  RECORD_OVERHEAD     = 64;
+
+    public static class Builder<K, C, T> {
+        private final AllRowsReader.Builder<K, C>   reader;
+        private final Function<Row<K, C>, T>        mapper;
+        private final Serializer<T>                 serializer;
+        private final Comparator<T>                 comparator;
+        private long                                maxMemory = DEFAULT_MAX_MEMORY;
+        private File                                tempDirectory = new File(System.getProperty("java.io.tmpdir"));
+        private Callback<T>                         callback;
+
+        /**
+         * @param reader        Reader for the rows to sort.  Its row function is replaced by the sort.
+         * @param mapper        Maps a row to the record that is sorted, or null to skip the row
+         * @param serializer    Used to spill records to disk
+         * @param comparator    Order of the records
+         */
+        public Builder(AllRowsReader.Builder<K, C> reader, Function<Row<K, C>, T> mapper,
+                Serializer<T> serializer, Comparator<T> comparator) {
+            this.reader     = reader;
+            this.mapper     = mapper;
+            this.serializer = serializer;
+            this.comparator = comparator;
+        }
+
+        /**
+         * Maximum estimated size of the records held in memory before runs are spilled to disk
+         * @param maxMemory     In bytes
+         */
+        public Builder<K, C, T> withMaxMemory(long maxMemory) {
+            this.maxMemory = maxMemory;
+            return this;
+        }
+
+        /**
+         * Directory for the spilled runs.  Defaults to java.io.tmpdir.
+         * @param tempDirectory
+         */
+        public Builder<K, C, T> withTempDirectory(File tempDirectory) {
+            this.tempDirectory = tempDirectory;
+            return this;
+        }
+
+        /**
+         * Callback that receives the records in order.  It is called from the thread that calls call().
+         * @param callback
+         */
+        public Builder<K, C, T> withCallback(Callback<T> callback) {
+            this.callback = callback;
+            return this;
+        }
+
+        public DistributedMergeSort<K, C, T> build() {
+            Preconditions.checkNotNull(callback, "Must provide a callback");
+            DistributedMergeSort<K, C, T> sort = new DistributedMergeSort<K, C, T>(serializer, comparator, maxMemory, tempDirectory);
+            sort.callback = callback;
+            sort.reader   = reader.forEachRow(sort.newRowFunction(mapper)).build();
+            return sort;
+        }
+    }
+
+    /**
+     * Records collected by one thread
+     */
+    private static class Run<T> {
+        final List<Record<T>> records = Lists.newArrayList();
+        long                  size    = 0;
+        long                  length  = 0;
+    }
+
+    /**
+     * Record of a run along with its serialized form, which was needed for the size of the run anyway
+     * and is written as is when the run is spilled
+     */
+    private static class Record<T> {
+        final T          value;
+        final ByteBuffer serialized;
+
+        Record(T value, ByteBuffer serialized) {
+            this.value      = value;
+            this.serialized = serialized;
+        }
+    }
+
+    /**
+     * Position in a sorted run during the merge
+     */
+    private interface RunCursor<T> {
+        T    current();
+        boolean next();
+    }
+
+    private final Serializer<T>     serializer;
+    private final Comparator<T>     comparator;
+    private final Comparator<Record<T>> recordComparator;
+    private final long              maxMemory;
+    private final File              tempDirectory;
+    private final ConcurrentMap<Thread, Run<T>> runs = Maps.newConcurrentMap();
+    private final ConcurrentLinkedQueue<File>   spilledRuns = new ConcurrentLinkedQueue<File>();
+    private final AtomicLong        spilledBytes = new AtomicLong();
+    private AllRowsReader<K, C>     reader;
+    private Callback<T>             callback;
+
+    /**
+     * Sort that is fed with {@link #add(Object)} instead of a scan
+     *
+     * @param serializer
+     * @param comparator
+     * @param maxMemory         In bytes
+     * @param tempDirectory
+     */
+    public DistributedMergeSort(Serializer<T> serializer, Comparator<T> comparator, long maxMemory, File tempDirectory) {
+        this.serializer    = serializer;
+        this.comparator    = comparator;
+        this.maxMemory     = maxMemory;
+        this.tempDirectory = tempDirectory;
+        this.recordComparator = new Comparator<Record<T>>() {
+            @Override
+            public int compare(Record<T> o1, Record<T> o2) {
+                return DistributedMergeSort.this.comparator.compare(o1.value, o2.value);
+            }
+        };
+    }
+
+    /**
+     * Scan the column family and pass all records to the callback in order
+     *
+     * @return Number of records
+     */
+    @Override
+    public Long call() throws Exception {
+        Preconditions.checkState(reader != null, "Sort was not created with a Builder");
+        try {
+            if (!reader.call())
+                throw new Exception("Scan didn't complete, nothing was merged");
+            return merge(callback);
+        }
+        finally {
+            clear();
+        }
+    }
+
+    /**
+     * Add a record.  May be called concurrently from any number of threads.
+     *
+     * @param record
+     * @throws IOException if a run could not be spilled
+     */
+    public void add(T record) throws IOException {
+        Run<T> run = runs.get(Thread.currentThread());
+        if (run == null) {
+            run = new Run<T>();
+            runs.put(Thread.currentThread(), run);
+        }
+
+        ByteBuffer serialized = serializer.toByteBuffer(record);
+        run.records.add(new Record<T>(record, serialized));
+        run.size   += serialized.remaining() + RECORD_OVERHEAD;
+        run.length += 4 + serialized.remaining();
+
+        // Each thread gets an equal share of the memory
+        if (run.size >= Math.min(MAX_RUN_SIZE, maxMemory / runs.size())) {
+            spill(run);
+        }
+    }
+
+    /**
+     * Merge all records added so far and pass them to the callback in order.  Must not be called while
+     * records are still being added.
+     *
+     * @param callback
+     * @return Number of records
+     * @throws IOException
+     */
+    public long merge(Callback<T> callback) throws IOException {
+        final List<RunCursor<T>> cursors = Lists.newArrayList();
+        try {
+            for (Run<T> run : runs.values()) {
+                if (!run.records.isEmpty()) {
+                    Collections.sort(run.records, recordComparator);
+                    cursors.add(new MemoryRunCursor<T>(run.records.iterator()));
+                }
+            }
+            for (File file : spilledRuns) {
+                cursors.add(new FileRunCursor<T>(file, serializer));
+            }
+            LOG.info(String.format("Merging %d runs, %d spilled with %d bytes", cursors.size(), spilledRuns.size(), spilledBytes.get()));
+
+            // Ties are broken by run so that the order is deterministic
+            PriorityQueue<Integer> heap = new PriorityQueue<Integer>(Math.max(1, cursors.size()), new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    int result = comparator.compare(cursors.get(o1).current(), cursors.get(o2).current());
+                    return result != 0 ? result : o1.compareTo(o2);
+                }
+            });
+            for (int i = 0; i < cursors.size(); i++) {
+                if (cursors.get(i).next())
+                    heap.add(i);
+            }
+
+            long count = 0;
+            while (!heap.isEmpty()) {
+                Integer index = heap.poll();
+                RunCursor<T> cursor = cursors.get(index);
+                callback.handle(cursor.current());
+                count++;
+                if (cursor.next())
+                    heap.add(index);
+            }
+            return count;
+        }
+        finally {
+            clear();
+        }
+    }
+
+    /**
+     * @return Number of runs that were spilled to disk so far
+     */
+    public int getSpilledRunCount() {
+        return spilledRuns.size();
+    }
+
+    /**
+     * @return Number of bytes that were spilled to disk so far
+     */
+    public long getSpilledBytes() {
+        return spilledBytes.get();
+    }
+
+    private Function<Row<K, C>, Boolean> newRowFunction(final Function<Row<K, C>, T> mapper) {
+        return new Function<Row<K, C>, Boolean>() {
+            @Override
+            public Boolean apply(Row<K, C> row) {
+                T record = mapper.apply(row);
+                if (record != null) {
+                    try {
+                        add(record);
+                    }
+                    catch (IOException e) {
+                        throw new RuntimeException("Failed to spill sorted run", e);
+                    }
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Sort the run and write it to a new temp file as a sequence of length prefixed records
+     */
+    private void spill(Run<T> run) throws IOException {
+        Collections.sort(run.records, recordComparator);
+
+        long length = run.length;
+        File file = File.createTempFile("mergesort-", ".run", tempDirectory);
+        file.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            MappedByteBuffer out = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            for (Record<T> record : run.records) {
+                ByteBuffer bb = record.serialized.duplicate();
+                out.putInt(bb.remaining());
+                out.put(bb);
+            }
+        }
+        finally {
+            raf.close();
+        }
+
+        spilledRuns.add(file);
+        spilledBytes.addAndGet(length);
+        run.records.clear();
+        run.size   = 0;
+        run.length = 0;
+    }
+
+    private void clear() {
+        runs.clear();
+        File file;
+        while ((file = spilledRuns.poll()) != null) {
+            if (!file.delete())
+                LOG.warn("Failed to delete " + file);
+        }
+    }
+
+    private static class MemoryRunCursor<T> implements RunCursor<T> {
+        private final Iterator<Record<T>> iter;
+        private T current;
+
+        MemoryRunCursor(Iterator<Record<T>> iter) {
+            this.iter = iter;
+        }
+
+        @Override
+        public T current() {
+            return current;
+        }
+
+        @Override
+        public boolean next() {
+            if (!iter.hasNext())
+                return false;
+            current = iter.next().value;
+            return true;
+        }
+    }
+
+    private static class FileRunCursor<T> implements RunCursor<T> {
+        private final MappedByteBuffer in;
+        private final Serializer<T>    serializer;
+        private T current;
+
+        FileRunCursor(File file, Serializer<T> serializer) throws IOException {
+            this.serializer = serializer;
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                this.in = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            }
+            finally {
+                raf.close();
+            }
+        }
+
+        @Override
+        public T current() {
+            return current;
+        }
+
+        @Override
+        public boolean next() {
+            if (!in.hasRemaining())
+                return false;
+            int length = in.getInt();
+            ByteBuffer bb = in.slice();
+            bb.limit(length);
+            in.position(in.position() + length);
+            current = serializer.fromByteBuffer(bb);
+            return true;
+        }
+    }
 }
@@ -284,8 +284,21 @@ public class ColumnPrefixDistributedRowLock<K> implements DistributedRowLock {
             throw new IllegalStateException("verifyLock() called without attempting to take the lock");
         
         // Read back all columns. There should be only 1 if we got the lock
-        Map<String, Long> lockResult = readLockColumns(readDataColumns);
+        verifyLock(curTimeInMicros, readLockColumns(readDataColumns));
+    }
 
+    /**
+     * Verify that the lock was acquired using lock columns that were already read, for example 
+     * together with the lock columns of other rows.
+     * 
+     * @param curTimeInMicros
+     * @param lockResult        Lock columns of the row and their expiration times
+     * @throws BusyLockException
+     */
+    public void verifyLock(long curTimeInMicros, Map<String, Long> lockResult) throws Exception, BusyLockException, StaleLockException {
+        if (lockColumn == null) 
+            throw new IllegalStateException("verifyLock() called without attempting to take the lock");
+        
         // Cleanup and check that we really got the lock
         for (Entry<String, Long> entry : lockResult.entrySet()) {
             // This is a stale lock that was never cleaned up
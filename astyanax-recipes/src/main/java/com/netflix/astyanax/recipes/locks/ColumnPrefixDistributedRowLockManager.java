@@ -0,0 +1,435 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.recipes.locks;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.astyanax.Keyspace;
+import com.netflix.astyanax.MutationBatch;
+import com.netflix.astyanax.model.Column;
+import com.netflix.astyanax.model.ColumnFamily;
+import com.netflix.astyanax.model.ConsistencyLevel;
+import com.netflix.astyanax.model.Row;
+import com.netflix.astyanax.model.Rows;
+import com.netflix.astyanax.retry.RetryPolicy;
+import com.netflix.astyanax.retry.RunOnce;
+import com.netflix.astyanax.util.RangeBuilder;
+
+/**
+ * Hands out {@link ColumnPrefixDistributedRowLock}s for the rows of one column family, coalescing the threads of
+ * this process that want the same row and keeping held locks alive with a heartbeat.
+ * 
+ * 1. Threads first take a local lock for the row, so only one thread per process at a time writes and reads
+ *      the lock columns of a row in Cassandra.  The others wait locally without any calls to Cassandra.
+ * 2. Several rows are locked with one mutation batch and verified with one multi row read.  The local locks of 
+ *      the rows are always taken in the same order so that two threads locking overlapping rows can't deadlock.
+ * 3. Lock columns are written with a short lease that is renewed by a background heartbeat for as long as the
+ *      lock is held, instead of an expiration long enough for the slowest holder.  A process that dies 
+ *      leaves a lock that expires after one lease.
+ * 
+ * <code>
+ *      ColumnPrefixDistributedRowLockManager<String> manager = new ColumnPrefixDistributedRowLockManager<String>(keyspace, columnFamily)
+ *          .withLeaseTime(10, TimeUnit.SECONDS);
+ *      ColumnPrefixDistributedRowLockManager<String>.Lease lease = manager.acquire(Arrays.asList("job1", "job2"));
+ *      try {
+ *          ...
+ *      }
+ *      finally {
+ *          lease.release();
+ *      }
+ * </code>
+ * 
+ * Local locks are striped by row key, so two rows may occasionally share a local lock.  They are not reentrant.
+ * 
+ * @param <K>
+ */
+public class ColumnPrefixDistributedRowLockManager<K> {
+    private static final Logger LOG = LoggerFactory.getLogger(ColumnPrefixDistributedRowLockManager.class);
+    
+    public static final int  DEFAULT_LEASE_TIME_SECONDS = 30;
+    public static final int  DEFAULT_LOCAL_STRIPES      = 1024;
+    public static final long DEFAULT_MAX_LOCAL_WAIT     = TimeUnit.MINUTES.toMillis(1);
+
+    private final Keyspace                 keyspace;
+    private final ColumnFamily<K, String>  columnFamily;
+    private final Striped<Semaphore>       localLocks;
+    
+    private String           prefix           = ColumnPrefixDistributedRowLock.DEFAULT_LOCK_PREFIX;
+    private ConsistencyLevel consistencyLevel = ConsistencyLevel.CL_LOCAL_QUORUM;
+    private long             leaseTime        = TimeUnit.SECONDS.toMillis(DEFAULT_LEASE_TIME_SECONDS);    // Millis
+    private long             heartbeatInterval = 0;                                                       // Millis, 0 for a third of the lease
+    private long             maxLocalWait     = DEFAULT_MAX_LOCAL_WAIT;                                   // Millis
+    private RetryPolicy      backoffPolicy    = RunOnce.get();
+    private ScheduledExecutorService heartbeatExecutor;
+    private boolean          ownsHeartbeatExecutor = false;
+
+    public ColumnPrefixDistributedRowLockManager(Keyspace keyspace, ColumnFamily<K, String> columnFamily) {
+        this(keyspace, columnFamily, DEFAULT_LOCAL_STRIPES);
+    }
+
+    /**
+     * @param keyspace
+     * @param columnFamily
+     * @param localStripes  Number of local locks the rows are spread over
+     */
+    public ColumnPrefixDistributedRowLockManager(Keyspace keyspace, ColumnFamily<K, String> columnFamily, int localStripes) {
+        this.keyspace     = keyspace;
+        this.columnFamily = columnFamily;
+        this.localLocks   = Striped.lazyWeakSemaphore(localStripes, 1);
+    }
+
+    public ColumnPrefixDistributedRowLockManager<K> withConsistencyLevel(ConsistencyLevel consistencyLevel) {
+        this.consistencyLevel = consistencyLevel;
+        return this;
+    }
+
+    public ColumnPrefixDistributedRowLockManager<K> withColumnPrefix(String prefix) {
+        this.prefix = prefix;
+        return this;
+    }
+
+    /**
+     * Time after which a lock that is no longer renewed expires.  The lock columns are written with a TTL of
+     * twice the lease.
+     * 
+     * @param leaseTime
+     * @param units
+     */
+    public ColumnPrefixDistributedRowLockManager<K> withLeaseTime(long leaseTime, TimeUnit units) {
+        this.leaseTime = units.toMillis(leaseTime);
+        return this;
+    }
+
+    /**
+     * Interval at which held locks are renewed.  Defaults to a third of the lease time.
+     * 
+     * @param interval
+     * @param units
+     */
+    public ColumnPrefixDistributedRowLockManager<K> withHeartbeatInterval(long interval, TimeUnit units) {
+        this.heartbeatInterval = units.toMillis(interval);
+        return this;
+    }
+
+    /**
+     * Maximum time to wait for other threads of this process that hold or are taking the lock on a row
+     * 
+     * @param maxWait
+     * @param units
+     */
+    public ColumnPrefixDistributedRowLockManager<K> withMaxLocalWait(long maxWait, TimeUnit units) {
+        this.maxLocalWait = units.toMillis(maxWait);
+        return this;
+    }
+
+    /**
+     * Policy for retrying when a row is locked by another process
+     * 
+     * @param policy
+     */
+    public ColumnPrefixDistributedRowLockManager<K> withBackoff(RetryPolicy policy) {
+        this.backoffPolicy = policy;
+        return this;
+    }
+
+    /**
+     * Use this executor for the heartbeats instead of a single thread owned by the manager
+     * 
+     * @param executor
+     */
+    public synchronized ColumnPrefixDistributedRowLockManager<K> withHeartbeatExecutor(ScheduledExecutorService executor) {
+        Preconditions.checkState(heartbeatExecutor == null, "Heartbeat executor already in use");
+        this.heartbeatExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Lock a single row
+     * 
+     * @param key
+     * @throws BusyLockException if the row is locked by another thread or process
+     * @throws Exception
+     */
+    public Lease acquire(K key) throws Exception {
+        return acquire(Collections.singletonList(key));
+    }
+
+    /**
+     * Lock several rows at once.  Either all of the rows are locked or none.
+     * 
+     * @param keys
+     * @throws BusyLockException if any of the rows is locked by another thread or process
+     * @throws Exception
+     */
+    public Lease acquire(Collection<K> keys) throws Exception {
+        Preconditions.checkArgument(!keys.isEmpty(), "No rows to lock");
+        List<K> rows = ImmutableList.copyOf(keys);
+        
+        List<Semaphore> taken = acquireLocal(rows);
+        boolean success = false;
+        try {
+            Lease lease = acquireRemote(rows, taken);
+            success = true;
+            return lease;
+        }
+        finally {
+            if (!success) 
+                releaseLocal(taken);
+        }
+    }
+
+    /**
+     * Stop the heartbeat thread, if it is owned by this manager.  Locks that are still held will expire.
+     */
+    public synchronized void shutdown() {
+        if (ownsHeartbeatExecutor && heartbeatExecutor != null) {
+            heartbeatExecutor.shutdownNow();
+            heartbeatExecutor = null;
+        }
+    }
+
+    /**
+     * Take the local locks of the rows in stripe order
+     */
+    private List<Semaphore> acquireLocal(List<K> rows) throws Exception {
+        // Rows that share a stripe only take it once
+        Set<Semaphore> distinct = Collections.newSetFromMap(new IdentityHashMap<Semaphore, Boolean>());
+        List<Semaphore> taken = Lists.newArrayList();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxLocalWait);
+        try {
+            for (Semaphore semaphore : localLocks.bulkGet(rows)) {
+                if (!distinct.add(semaphore))
+                    continue;
+                if (!semaphore.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS))
+                    throw new BusyLockException("Lock for rows " + rows + " is held by another thread");
+                taken.add(semaphore);
+            }
+            return taken;
+        }
+        catch (Exception e) {
+            releaseLocal(taken);
+            throw e;
+        }
+    }
+
+    private void releaseLocal(List<Semaphore> taken) {
+        for (Semaphore semaphore : taken) {
+            semaphore.release();
+        }
+    }
+
+    private Lease acquireRemote(List<K> rows, List<Semaphore> taken) throws Exception {
+        RetryPolicy retry = backoffPolicy.duplicate();
+        while (true) {
+            List<ColumnPrefixDistributedRowLock<K>> locks = Lists.newArrayListWithCapacity(rows.size());
+            for (K row : rows) {
+                locks.add(new ColumnPrefixDistributedRowLock<K>(keyspace, columnFamily, row)
+                    .withColumnPrefix(prefix)
+                    .withConsistencyLevel(consistencyLevel)
+                    .expireLockAfter(leaseTime, TimeUnit.MILLISECONDS));
+            }
+
+            long startTime = System.nanoTime();
+            long curTimeMicros = getCurrentTimeMicros();
+            MutationBatch m = keyspace.prepareMutationBatch().setConsistencyLevel(consistencyLevel);
+            for (ColumnPrefixDistributedRowLock<K> lock : locks) {
+                lock.fillLockMutation(m, curTimeMicros, getTtl());
+            }
+            m.execute();
+            
+            try {
+                Map<K, Map<String, Long>> lockColumns = readLockColumns(rows, locks.get(0));
+                for (ColumnPrefixDistributedRowLock<K> lock : locks) {
+                    lock.verifyLock(curTimeMicros, lockColumns.get(lock.getKey()));
+                }
+                return new Lease(locks, taken, startTime);
+            }
+            catch (BusyLockException e) {
+                releaseRemote(locks, null);
+                if (!retry.allowRetry())
+                    throw e;
+            }
+            catch (Exception e) {
+                releaseRemote(locks, null);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Read the lock columns of all rows with one query
+     */
+    private Map<K, Map<String, Long>> readLockColumns(List<K> rows, ColumnPrefixDistributedRowLock<K> lock) throws Exception {
+        Rows<K, String> result = keyspace
+            .prepareQuery(columnFamily)
+                .setConsistencyLevel(consistencyLevel)
+                .getKeySlice(rows)
+                .withColumnRange(new RangeBuilder().setStart(prefix + "\u0000").setEnd(prefix + "\uFFFF").build())
+            .execute()
+                .getResult();
+        
+        Map<K, Map<String, Long>> lockColumns = Maps.newHashMap();
+        for (K key : rows) {
+            Map<String, Long> columns = Maps.newLinkedHashMap();
+            Row<K, String> row = result.getRow(key);
+            if (row != null) {
+                for (Column<String> c : row.getColumns()) {
+                    columns.put(c.getName(), lock.readTimeoutValue(c));
+                }
+            }
+            lockColumns.put(key, columns);
+        }
+        return lockColumns;
+    }
+
+    private void releaseRemote(List<ColumnPrefixDistributedRowLock<K>> locks, MutationBatch m) throws Exception {
+        if (m == null)
+            m = keyspace.prepareMutationBatch();
+        m.setConsistencyLevel(consistencyLevel);
+        for (ColumnPrefixDistributedRowLock<K> lock : locks) {
+            lock.fillReleaseMutation(m, false);
+        }
+        m.execute();
+    }
+
+    private synchronized ScheduledExecutorService getHeartbeatExecutor() {
+        if (heartbeatExecutor == null) {
+            heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setDaemon(true).setNameFormat("RowLockHeartbeat-" + columnFamily.getName() + "-%d").build());
+            ownsHeartbeatExecutor = true;
+        }
+        return heartbeatExecutor;
+    }
+
+    private Integer getTtl() {
+        return (int) Math.max(2, 2 * TimeUnit.MILLISECONDS.toSeconds(leaseTime + 999));
+    }
+
+    private static long getCurrentTimeMicros() {
+        return TimeUnit.MICROSECONDS.convert(System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Locks held on one or more rows.  The locks are renewed until released.
+     */
+    public class Lease implements Runnable {
+        private final List<ColumnPrefixDistributedRowLock<K>> locks;
+        private final List<Semaphore>                         localLocks;
+        private final ScheduledFuture<?>                      heartbeat;
+        private volatile long                                 renewedAt;    // nanoTime
+        private boolean                                       released = false;
+
+        private Lease(List<ColumnPrefixDistributedRowLock<K>> locks, List<Semaphore> localLocks, long renewedAt) {
+            this.locks      = locks;
+            this.localLocks = localLocks;
+            this.renewedAt  = renewedAt;
+            
+            long interval = heartbeatInterval > 0 ? heartbeatInterval : Math.max(1, leaseTime / 3);
+            this.heartbeat = getHeartbeatExecutor().scheduleWithFixedDelay(this, interval, interval, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Renew the locks.  Called by the heartbeat.
+         */
+        @Override
+        public synchronized void run() {
+            if (released)
+                return;
+            
+            long startTime = System.nanoTime();
+            long curTimeMicros = getCurrentTimeMicros();
+            try {
+                MutationBatch m = keyspace.prepareMutationBatch().setConsistencyLevel(consistencyLevel);
+                for (ColumnPrefixDistributedRowLock<K> lock : locks) {
+                    lock.fillLockMutation(m, curTimeMicros, getTtl());
+                }
+                m.execute();
+                renewedAt = startTime;
+            }
+            catch (Exception e) {
+                LOG.warn("Failed to renew lock for rows " + getKeys(), e);
+            }
+        }
+
+        /**
+         * @return True if the locks were renewed within the lease time and haven't been released
+         */
+        public boolean isValid() {
+            return !released && System.nanoTime() - renewedAt < TimeUnit.MILLISECONDS.toNanos(leaseTime);
+        }
+
+        public List<K> getKeys() {
+            List<K> keys = Lists.newArrayListWithCapacity(locks.size());
+            for (ColumnPrefixDistributedRowLock<K> lock : locks) {
+                keys.add(lock.getKey());
+            }
+            return keys;
+        }
+
+        public List<ColumnPrefixDistributedRowLock<K>> getLocks() {
+            return locks;
+        }
+
+        /**
+         * Release all the locks with one mutation.  May be called from any thread.
+         * 
+         * @throws Exception
+         */
+        public void release() throws Exception {
+            releaseWithMutation(null);
+        }
+
+        /**
+         * Release all the locks as part of the provided mutation, to commit data along with the release
+         * 
+         * @param m
+         * @throws Exception
+         */
+        public void releaseWithMutation(MutationBatch m) throws Exception {
+            synchronized (this) {
+                if (released)
+                    return;
+                released = true;
+            }
+            heartbeat.cancel(false);
+            try {
+                releaseRemote(locks, m);
+            }
+            finally {
+                releaseLocal(localLocks);
+            }
+        }
+    }
+}
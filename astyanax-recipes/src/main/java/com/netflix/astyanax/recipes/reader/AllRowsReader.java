@@ -22,8 +22,6 @@ import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -33,8 +31,6 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Lists;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.netflix.astyanax.Keyspace;
 import com.netflix.astyanax.connectionpool.TokenRange;
 import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
@@ -50,6 +46,9 @@ import com.netflix.astyanax.query.ColumnFamilyQuery;
 import com.netflix.astyanax.query.RowSliceQuery;
 import com.netflix.astyanax.retry.RetryPolicy;
 import com.netflix.astyanax.shallows.EmptyCheckpointManager;
+import com.netflix.astyanax.util.AdaptivePageSize;
+import com.netflix.astyanax.util.ScanProgress;
+import com.netflix.astyanax.util.TokenRangeScanner;
 
 /**
  * Recipe that is used to read all rows from a column family.  
@@ -79,7 +78,11 @@ public class AllRowsReader<K, C> implements Callable<Boolean> {
     private final   String              startToken;
     private final   String              endToken;
     private final   Boolean             includeEmptyRows;  // Default to null will discard tombstones
-    private final   List<Future<Boolean>> futures = Lists.newArrayList();
+    private final   TokenRangeScanner   scanner;
+    private final   int                 maxInFlightPages;
+    private final   int                 minPageSize;
+    private final   int                 maxPageSize;
+    private volatile TokenRangeScanner.Scan scan;
     private final   AtomicBoolean       cancelling = new AtomicBoolean(false);
     private final   Partitioner         partitioner;
     private final   ConsistencyLevel	consistencyLevel;
@@ -110,6 +113,10 @@ public class AllRowsReader<K, C> implements Callable<Boolean> {
         private String				rack;
         private ConsistencyLevel	consistencyLevel = null;
         private RetryPolicy         retryPolicy;
+        private TokenRangeScanner   scanner;
+        private int                 maxInFlightPages;
+        private int                 minPageSize;
+        private int                 maxPageSize;
         
         public Builder(Keyspace ks, ColumnFamily<K, C> columnFamily) {
             this.keyspace     = ks;
@@ -207,8 +214,8 @@ public class AllRowsReader<K, C> implements Callable<Boolean> {
         /**
          * Split the query into N threads with each thread processing an equal size chunk from the token range.
          * 
-         * Note that the actual number of threads is still limited by the available threads in the thread
-         * pool that was set with the AstyanaxConfiguration.
+         * Unless an executor or scanner was provided the reader runs on its own pool of N threads
+         * when N is more than the shared pool of {@link TokenRangeScanner#getShared()} has.
          * 
          * @param numberOfThreads
          * @return
@@ -234,6 +241,50 @@ public class AllRowsReader<K, C> implements Callable<Boolean> {
             return this;
         }
         
+        /**
+         * Read the token ranges on the worker pool of this scanner.  By default all readers
+         * share {@link TokenRangeScanner#getShared()} unless an executor was provided or the
+         * concurrency level needs more threads than the shared pool has.
+         * 
+         * @param scanner
+         * @return
+         */
+        public Builder<K, C> withScanner(TokenRangeScanner scanner) {
+            Preconditions.checkArgument(scanner != null, "Supplied scanner must not be null");
+            this.scanner = scanner;
+            return this;
+        }
+        
+        /**
+         * Maximum number of pages that are read or being processed by the row function at any
+         * time.  Reading further pages is held back while the row function is busy.  Defaults to
+         * the lower of the number of token ranges and the number of threads of the scanner.
+         * 
+         * @param maxInFlightPages
+         * @return
+         */
+        public Builder<K, C> withMaxInFlightPages(int maxInFlightPages) {
+            Preconditions.checkArgument(maxInFlightPages >= 1, "Max in flight pages must be >= 1");
+            this.maxInFlightPages = maxInFlightPages;
+            return this;
+        }
+        
+        /**
+         * Adapt the page size of each token range to the observed row width and latency, starting
+         * at the page size.  See {@link AdaptivePageSize}
+         * 
+         * @param minPageSize
+         * @param maxPageSize
+         * @return
+         */
+        public Builder<K, C> withAdaptivePageSize(int minPageSize, int maxPageSize) {
+            Preconditions.checkArgument(minPageSize >= 1, "Min page size must be >= 1");
+            Preconditions.checkArgument(maxPageSize >= minPageSize, "Max page size must be >= min page size");
+            this.minPageSize = minPageSize;
+            this.maxPageSize = maxPageSize;
+            return this;
+        }
+        
         /**
          * Execute the operation on a specific token range, instead of the entire range.
          * Use this only is combination with setConcurrencyLevel being called otherwise
@@ -355,7 +406,11 @@ public class AllRowsReader<K, C> implements Callable<Boolean> {
                     dc,
                     rack,
                     consistencyLevel, 
-                    retryPolicy);
+                    retryPolicy,
+                    scanner,
+                    maxInFlightPages,
+                    minPageSize,
+                    maxPageSize);
         }
     }
     
@@ -376,6 +431,32 @@ public class AllRowsReader<K, C> implements Callable<Boolean> {
             String rack,
             ConsistencyLevel consistencyLevel,
             RetryPolicy retryPolicy) {
+        this(keyspace, columnFamily, concurrencyLevel, executor, checkpointManager, rowFunction, rowsFunction, 
+                columnSlice, startToken, endToken, includeEmptyRows, pageSize, repeatLastToken, partitioner, 
+                dc, rack, consistencyLevel, retryPolicy, null, 0, 0, 0);
+    }
+    
+    public AllRowsReader(Keyspace keyspace, ColumnFamily<K, C> columnFamily, 
+            Integer concurrencyLevel, 
+            ExecutorService executor,
+            CheckpointManager checkpointManager, 
+            Function<Row<K, C>, Boolean> rowFunction, 
+            Function<Rows<K, C>, Boolean> rowsFunction, 
+            ColumnSlice<C> columnSlice,
+            String startToken, 
+            String endToken, 
+            Boolean includeEmptyRows,
+            int pageSize,
+            boolean repeatLastToken,
+            Partitioner partitioner,
+            String dc,
+            String rack,
+            ConsistencyLevel consistencyLevel,
+            RetryPolicy retryPolicy,
+            TokenRangeScanner scanner,
+            int maxInFlightPages,
+            int minPageSize,
+            int maxPageSize) {
         super();
         this.keyspace           = keyspace;
         this.columnFamily       = columnFamily;
@@ -394,6 +475,10 @@ public class AllRowsReader<K, C> implements Callable<Boolean> {
         this.rack				= rack;
         this.consistencyLevel   = consistencyLevel;
         this.retryPolicy        = retryPolicy;
+        this.scanner            = scanner;
+        this.maxInFlightPages   = maxInFlightPages;
+        this.minPageSize        = minPageSize;
+        this.maxPageSize        = maxPageSize;
         
         // Flag explicitly set
         if (includeEmptyRows != null) 
@@ -415,109 +500,111 @@ public class AllRowsReader<K, C> implements Callable<Boolean> {
     	return query;
     }
 
-    private Callable<Boolean> makeTokenRangeTask(final String startToken, final String endToken) {
-        return new Callable<Boolean>() {
+    private TokenRangeScanner.PageReader makeTokenRangeReader(final String startToken, final String endToken) {
+        return new TokenRangeScanner.PageReader() {
+            private String currentToken;
+            private int rowsToSkip = 0;
+            
             @Override
-            public Boolean call() {
+            public boolean readPage(ScanProgress.RangeProgress progress) throws Exception {
                 try {
-                    String currentToken;
-                    try {
-                        currentToken = checkpointManager.getCheckpoint(startToken);
-                        if (currentToken == null) {
-                            currentToken = startToken;
-                        }
-                        else if (currentToken.equals(endToken)) {
-                            return true;
+                    if (currentToken == null) {
+                        try {
+                            currentToken = checkpointManager.getCheckpoint(startToken);
+                            if (currentToken == null) {
+                                currentToken = startToken;
+                            }
+                            else if (currentToken.equals(endToken)) {
+                                return false;
+                            }
+                        } catch (Exception e) {
+                            error.compareAndSet(null, e);
+                            LOG.error("Failed to get checkpoint for startToken " + startToken, e);
+                            cancel();
+                            throw new RuntimeException("Failed to get checkpoint for startToken " + startToken, e);
                         }
-                    } catch (Exception e) {
-                        error.compareAndSet(null, e);
-                        LOG.error("Failed to get checkpoint for startToken " + startToken, e);
+                    }
+                    
+                    if (cancelling.get()) {
                         cancel();
-                        throw new RuntimeException("Failed to get checkpoint for startToken " + startToken, e);
+                        return false;
                     }
                     
-                    int localPageSize = pageSize;
-                    int rowsToSkip = 0;
-                    while (!cancelling.get()) {
-                        RowSliceQuery<K, C> query = prepareQuery().getKeyRange(null, null, currentToken, endToken, localPageSize);
-                        
-                        if (columnSlice != null)
-                            query.withColumnSlice(columnSlice);
-                        
-                        Rows<K, C> rows = query.execute().getResult();
-                        if (!rows.isEmpty()) {
-                            try {
-                                if (rowsFunction != null) {
-                                    if (!rowsFunction.apply(rows)) {
+                    // Make sure the page reaches past the rows repeated from the previous page
+                    int localPageSize = Math.max(progress.getPageSize(), rowsToSkip + 1);
+                    RowSliceQuery<K, C> query = prepareQuery().getKeyRange(null, null, currentToken, endToken, localPageSize);
+                    
+                    if (columnSlice != null)
+                        query.withColumnSlice(columnSlice);
+                    
+                    Rows<K, C> rows = query.execute().getResult();
+                    progress.pageFetched(rows.size(), TokenRangeScanner.estimateSize(rows));
+                    if (!rows.isEmpty()) {
+                        try {
+                            if (rowsFunction != null) {
+                                if (!rowsFunction.apply(rows)) {
+                                    cancel();
+                                    return false;
+                                }
+                            }
+                            else {
+                                // Iterate through all the rows and notify the callback function
+                                for (Row<K,C> row : rows) {
+                                    if (cancelling.get())
+                                        break;
+                                    // When repeating the last row, rows to skip will be > 0 
+                                    // We skip the rows that were repeated from the previous query
+                                    if (rowsToSkip > 0) {
+                                        rowsToSkip--;
+                                        continue;
+                                    }
+                                    if (!includeEmptyRows && (row.getColumns() == null || row.getColumns().isEmpty()))
+                                        continue;
+                                    if (!rowFunction.apply(row)) {
                                         cancel();
                                         return false;
                                     }
                                 }
-                                else {
-                                    // Iterate through all the rows and notify the callback function
-                                    for (Row<K,C> row : rows) {
-                                        if (cancelling.get())
-                                            break;
-                                        // When repeating the last row, rows to skip will be > 0 
-                                        // We skip the rows that were repeated from the previous query
-                                        if (rowsToSkip > 0) {
-                                            rowsToSkip--;
-                                            continue;
-                                        }
-                                        if (!includeEmptyRows && (row.getColumns() == null || row.getColumns().isEmpty()))
-                                            continue;
-                                        if (!rowFunction.apply(row)) {
-                                            cancel();
-                                            return false;
-                                        }
-                                    }
-                                }
-                            }
-                            catch (Exception e) {
-                                error.compareAndSet(null, e);
-                                LOG.warn(e.getMessage(), e);
-                                cancel();
-                                throw new RuntimeException("Error processing row", e);
                             }
+                        }
+                        catch (Exception e) {
+                            error.compareAndSet(null, e);
+                            LOG.warn(e.getMessage(), e);
+                            cancel();
+                            throw new RuntimeException("Error processing row", e);
+                        }
+                            
+                        // Get the next block
+                        if (rows.size() == localPageSize) {
+                            Row<K, C> lastRow = rows.getRowByIndex(rows.size() - 1);
+                            String lastToken = partitioner.getTokenForKey(lastRow.getRawKey());
+                            checkpointManager.trackCheckpoint(startToken, currentToken);
+                            if (repeatLastToken) {
+                                // Start token is non-inclusive
+                                currentToken = partitioner.getTokenMinusOne(lastToken);
                                 
-                            // Get the next block
-                            if (rows.size() == localPageSize) {
-                                Row<K, C> lastRow = rows.getRowByIndex(rows.size() - 1);
-                                String lastToken = partitioner.getTokenForKey(lastRow.getRawKey());
-                                checkpointManager.trackCheckpoint(startToken, currentToken);
-                                if (repeatLastToken) {
-                                    // Start token is non-inclusive
-                                    currentToken = partitioner.getTokenMinusOne(lastToken);
-                                    
-                                    // Determine the number of rows to skip in the response.  Since we are repeating the
-                                    // last token it's possible (although unlikely) that there is more than one key mapping to the
-                                    // token.  We therefore count backwards the number of keys that have the same token and skip 
-                                    // that number in the next iteration of the loop.  If, for example, 3 keys matched but only 2 were
-                                    // returned in this iteration then the first 2 keys will be skipped from the next response.
-                                    rowsToSkip = 1;
-                                    for (int i = rows.size() - 2; i >= 0; i--, rowsToSkip++) {
-                                        if (!lastToken.equals(partitioner.getTokenForKey(rows.getRowByIndex(i).getRawKey()))) {
-                                            break;
-                                        }
+                                // Determine the number of rows to skip in the response.  Since we are repeating the
+                                // last token it's possible (although unlikely) that there is more than one key mapping to the
+                                // token.  We therefore count backwards the number of keys that have the same token and skip 
+                                // that number in the next iteration of the loop.  If, for example, 3 keys matched but only 2 were
+                                // returned in this iteration then the first 2 keys will be skipped from the next response.
+                                rowsToSkip = 1;
+                                for (int i = rows.size() - 2; i >= 0; i--, rowsToSkip++) {
+                                    if (!lastToken.equals(partitioner.getTokenForKey(rows.getRowByIndex(i).getRawKey()))) {
+                                        break;
                                     }
-
-                                    if (rowsToSkip == localPageSize) {
-                                        localPageSize++;
-                                    }
-                                }
-                                else {
-                                    currentToken = lastToken;
                                 }
-                                
-                                continue;
                             }
+                            else {
+                                currentToken = lastToken;
+                            }
+                            progress.setCurrentToken(currentToken);
+                            return true;
                         }
-                        
-                        // We're done!
-                        checkpointManager.trackCheckpoint(startToken, endToken);
-                        return true;
                     }
-                    cancel();
+                    
+                    // We're done!
+                    checkpointManager.trackCheckpoint(startToken, endToken);
                     return false;
                 } catch (Exception e) {
                     error.compareAndSet(null, e);
@@ -529,6 +616,32 @@ public class AllRowsReader<K, C> implements Callable<Boolean> {
         };
     }
     
+    private TokenRangeScanner newScanner() {
+        if (scanner != null || executor != null) {
+            TokenRangeScanner rangeScanner = (scanner != null) ? scanner : new TokenRangeScanner(executor);
+            if (concurrencyLevel != null && concurrencyLevel > rangeScanner.getThreadCount()) {
+                LOG.warn(String.format("Concurrency level %d is limited to the %d threads of the provided executor",
+                        concurrencyLevel, rangeScanner.getThreadCount()));
+            }
+            return rangeScanner;
+        }
+        return (concurrencyLevel != null) 
+                ? TokenRangeScanner.forConcurrencyLevel(concurrencyLevel) 
+                : TokenRangeScanner.getShared();
+    }
+    
+    private TokenRangeScanner.Scan newScan(TokenRangeScanner rangeScanner) {
+        TokenRangeScanner.Scan scan = rangeScanner.newScan()
+                .withMaxInFlightPages(maxInFlightPages);
+        if (minPageSize > 0 && maxPageSize > 0) {
+            scan.withAdaptivePageSize(pageSize, minPageSize, maxPageSize);
+        }
+        else {
+            scan.withPageSize(pageSize);
+        }
+        return scan;
+    }
+    
     /**
      * Main execution block for the all rows query.  
      */
@@ -536,8 +649,18 @@ public class AllRowsReader<K, C> implements Callable<Boolean> {
     public Boolean call() throws Exception {
         error.set(null);
         
-        List<Callable<Boolean>> subtasks = Lists.newArrayList();
-        
+        TokenRangeScanner rangeScanner = newScanner();
+        try {
+            return execute(newScan(rangeScanner));
+        }
+        finally {
+            if (rangeScanner != scanner) {
+                rangeScanner.shutdown();
+            }
+        }
+    }
+    
+    private Boolean execute(TokenRangeScanner.Scan scan) throws Exception {
         // We are iterating the entire ring using an arbitrary number of threads
         if (this.concurrencyLevel != null || startToken != null|| endToken != null) {
             List<TokenRange> tokens = partitioner.splitTokenRange(
@@ -546,42 +669,29 @@ public class AllRowsReader<K, C> implements Callable<Boolean> {
                     this.concurrencyLevel == null ? 1 : this.concurrencyLevel);
             
             for (TokenRange range : tokens) {
-                subtasks.add(makeTokenRangeTask(range.getStartToken(), range.getEndToken()));
+                scan.addRange(range.getStartToken(), range.getEndToken(), 
+                        makeTokenRangeReader(range.getStartToken(), range.getEndToken()));
             }
         }
         // We are iterating through each token range
         else {
             List<TokenRange> ranges = keyspace.describeRing(dc, rack);
             for (TokenRange range : ranges) {
-                if (range.getStartToken().equals(range.getEndToken())) 
-                    subtasks.add(makeTokenRangeTask(range.getStartToken(), range.getEndToken()));
-                else
-                    subtasks.add(makeTokenRangeTask(partitioner.getTokenMinusOne(range.getStartToken()), range.getEndToken()));
+                String rangeStart = range.getStartToken().equals(range.getEndToken()) 
+                        ? range.getStartToken() 
+                        : partitioner.getTokenMinusOne(range.getStartToken());
+                scan.addRange(rangeStart, range.getEndToken(), makeTokenRangeReader(rangeStart, range.getEndToken()));
             }
         }
         
+        this.scan = scan;
+        if (cancelling.get()) {
+            scan.cancel();
+        }
+        
         try {
-            // Use a local executor
-            if (executor == null) {
-                ExecutorService localExecutor = Executors
-                        .newFixedThreadPool(subtasks.size(),
-                            new ThreadFactoryBuilder().setDaemon(true)
-                                .setNameFormat("AstyanaxAllRowsReader-%d")
-                                .build());
-                
-                try {
-                    futures.addAll(startTasks(localExecutor, subtasks));
-                    return waitForTasksToFinish();
-                }
-                finally {
-                    localExecutor.shutdownNow();
-                }
-            }
-            // Use an externally provided executor
-            else {
-                futures.addAll(startTasks(executor, subtasks));
-                return waitForTasksToFinish();
-            }
+            boolean succeeded = scan.execute();
+            return waitForTasksToFinish(scan) && succeeded;
         }
         catch (Exception e) {
             error.compareAndSet(null, e);
@@ -593,12 +703,12 @@ public class AllRowsReader<K, C> implements Callable<Boolean> {
     }
     
     /**
-     * Wait for all tasks to finish.
+     * Collect the errors of all token ranges after the scan is done.
      * 
-     * @param futures
-     * @return true if all tasks returned true or false otherwise.  
+     * @param scan
+     * @return true if no token range failed
      */
-    private boolean waitForTasksToFinish() throws Exception {
+    private boolean waitForTasksToFinish(TokenRangeScanner.Scan scan) throws Exception {
         
         Boolean succeeded = true;
         
@@ -607,27 +717,19 @@ public class AllRowsReader<K, C> implements Callable<Boolean> {
         StringBuilder sb = new StringBuilder();
         int exCount = 0;
         
-        for (Future<Boolean> future : futures) {
-            try {
-                if (!future.get()) {
-                    cancel();
-                    succeeded = false;
-                }
-            }
-            catch (Exception e) {
-                error.compareAndSet(null, e);
-                cancel();
-                succeeded = false;
-                
-                exCount++;
-                sb.append("ex" + exCount + ": ").append(e.getMessage()).append("\n");
-                StackTraceElement[] stackTrace = e.getStackTrace();
-                if (stackTrace != null && stackTrace.length > 0) {
-                    StackTraceElement delimiterSE = new StackTraceElement("StackTrace: ex" + exCount, "", "", 0);
-                    stackTraces.add(delimiterSE);
-                    for (StackTraceElement se : stackTrace) {
-                        stackTraces.add(se);
-                    }
+        for (Exception e : scan.getErrors()) {
+            error.compareAndSet(null, e);
+            cancel();
+            succeeded = false;
+            
+            exCount++;
+            sb.append("ex" + exCount + ": ").append(e.getMessage()).append("\n");
+            StackTraceElement[] stackTrace = e.getStackTrace();
+            if (stackTrace != null && stackTrace.length > 0) {
+                StackTraceElement delimiterSE = new StackTraceElement("StackTrace: ex" + exCount, "", "", 0);
+                stackTraces.add(delimiterSE);
+                for (StackTraceElement se : stackTrace) {
+                    stackTraces.add(se);
                 }
             }
         }
@@ -645,27 +747,24 @@ public class AllRowsReader<K, C> implements Callable<Boolean> {
         }
         return succeeded;
     }
-
+    
     /**
-     * Submit all the callables to the executor by synchronize their execution so they all start
-     * AFTER the have all been submitted.
-     * @param executor
-     * @param callables
-     * @return
+     * @return Per token range progress and throughput of the running or last scan, or null if
+     *         call() was not invoked yet
      */
-    private List<Future<Boolean>> startTasks(ExecutorService executor, List<Callable<Boolean>> callables) {
-        List<Future<Boolean>> tasks = Lists.newArrayList();
-        for (Callable<Boolean> callable : callables) {
-            tasks.add(executor.submit(callable));
-        }
-        return tasks;
+    public ScanProgress getProgress() {
+        TokenRangeScanner.Scan scan = this.scan;
+        return scan != null ? scan.getProgress() : null;
     }
-    
+
     /**
      * Cancel all pending range iteration tasks.  This will cause all internal threads to exit and
      * call() to return false.
      */
     public synchronized void cancel() {
         cancelling.compareAndSet(false, true);
+        if (scan != null) {
+            scan.cancel();
+        }
     }
 }
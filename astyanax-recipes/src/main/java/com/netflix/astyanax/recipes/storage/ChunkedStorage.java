@@ -17,8 +17,29 @@ package com.netflix.astyanax.recipes.storage;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 public class ChunkedStorage {
+    /**
+     * Threads are created on demand and shared by all readers and writers that weren't given their own executor.
+     * Each reader and writer bounds the number of chunks it has in flight by its concurrency level.
+     */
+    private static class DefaultExecutorHolder {
+        private static final ExecutorService INSTANCE = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ChunkedStorage-%d").build());
+    }
+
+    /**
+     * @return Executor used to read and write chunks unless one is provided with withExecutor()
+     */
+    public static ExecutorService getDefaultExecutor() {
+        return DefaultExecutorHolder.INSTANCE;
+    }
+
     public static ObjectWriter newWriter(ChunkedStorageProvider provider, String objectName, InputStream is) {
         return new ObjectWriter(provider, objectName, is);
     }
@@ -27,6 +48,10 @@ public class ChunkedStorage {
         return new ObjectReader(provider, objectName, os);
     }
 
+    public static ObjectReader newReader(ChunkedStorageProvider provider, String objectName, WritableByteChannel channel) {
+        return new ObjectReader(provider, objectName, channel);
+    }
+
     public static ObjectDeleter newDeleter(ChunkedStorageProvider provider, String objectName) {
         return new ObjectDeleter(provider, objectName);
     }
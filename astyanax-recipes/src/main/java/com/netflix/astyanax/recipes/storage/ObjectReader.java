@@ -17,55 +17,81 @@ package com.netflix.astyanax.recipes.storage;
 
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.util.Collections;
-import java.util.List;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.TimeoutException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Lists;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.netflix.astyanax.connectionpool.exceptions.NotFoundException;
 import com.netflix.astyanax.retry.RetryPolicy;
 import com.netflix.astyanax.retry.RunOnce;
 
+/**
+ * Reads an object, or a byte range of it, from a {@link ChunkedStorageProvider}.  <br/> <br/>
+ *
+ * Chunks are fetched through a sliding window on a shared executor: up to concurrencyLevel chunks are in flight
+ * and each chunk is written out, in order, as soon as it and all the chunks before it have arrived.  When writing
+ * to a {@link WritableByteChannel}, or to an {@link OutputStream} with a heap buffer, the chunk is written without
+ * being copied.
+ */
 public class ObjectReader implements Callable<ObjectMetadata> {
     private static final Logger LOG = LoggerFactory.getLogger(ObjectReader.class);
 
     private static final int DEFAULT_CONCURRENCY_LEVEL = 4;
     private static final int MAX_WAIT_TIME_TO_FINISH = 60;
-    private static final int DEFAULT_BATCH_SIZE = 11;
 
     private final ChunkedStorageProvider provider;
     private final String objectName;
     private final OutputStream os;
+    private final WritableByteChannel channel;
 
     private int concurrencyLevel = DEFAULT_CONCURRENCY_LEVEL;
     private int maxWaitTimeInSeconds = MAX_WAIT_TIME_TO_FINISH;
-    private int batchSize = DEFAULT_BATCH_SIZE;
     private RetryPolicy retryPolicy;
     private ObjectReadCallback callback = new NoOpObjectReadCallback();
+    private ExecutorService executor = ChunkedStorage.getDefaultExecutor();
+    private long offset = 0;
+    private Long length = null;
 
     public ObjectReader(ChunkedStorageProvider provider, String objectName, OutputStream os) {
         this.provider = provider;
         this.objectName = objectName;
         this.os = os;
+        this.channel = null;
         this.retryPolicy = new RunOnce();
     }
 
+    public ObjectReader(ChunkedStorageProvider provider, String objectName, WritableByteChannel channel) {
+        this.provider = provider;
+        this.objectName = objectName;
+        this.os = null;
+        this.channel = channel;
+        this.retryPolicy = new RunOnce();
+    }
+
+    /**
+     * Does nothing.
+     *
+     * @deprecated Chunks are no longer read in batches.  The number of chunks held in memory is bounded
+     *             by the concurrency level, see {@link #withConcurrencyLevel(int)}.
+     */
+    @Deprecated
     public ObjectReader withBatchSize(int size) {
-        this.batchSize = size;
         return this;
     }
 
+    /**
+     * @param level Maximum number of chunks being fetched or waiting to be written
+     */
     public ObjectReader withConcurrencyLevel(int level) {
         this.concurrencyLevel = level;
         return this;
@@ -76,6 +102,9 @@ public class ObjectReader implements Callable<ObjectMetadata> {
         return this;
     }
 
+    /**
+     * @param maxWaitTimeInSeconds Maximum time to wait for any one chunk
+     */
     public ObjectReader withMaxWaitTime(int maxWaitTimeInSeconds) {
         this.maxWaitTimeInSeconds = maxWaitTimeInSeconds;
         return this;
@@ -86,12 +115,34 @@ public class ObjectReader implements Callable<ObjectMetadata> {
         return this;
     }
 
+    /**
+     * @param executor Executor on which chunks are fetched instead of {@link ChunkedStorage#getDefaultExecutor()}
+     */
+    public ObjectReader withExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Read only part of the object.  Only the chunks that overlap the range are fetched.
+     *
+     * @param offset    Position of the first byte to read
+     * @param length    Number of bytes to read, or fewer if the object ends before
+     */
+    public ObjectReader withRange(long offset, long length) {
+        Preconditions.checkArgument(offset >= 0, "Offset must not be negative");
+        Preconditions.checkArgument(length >= 0, "Length must not be negative");
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
     @Override
     public ObjectMetadata call() throws Exception {
         LOG.info("Reading: " + objectName);
 
         Preconditions.checkNotNull(objectName);
-        Preconditions.checkNotNull(os);
+        Preconditions.checkArgument(os != null || channel != null, "Must provide an output stream or channel");
 
         try {
             // Try to get the file metadata first. The entire file must be
@@ -115,82 +166,65 @@ public class ObjectReader implements Callable<ObjectMetadata> {
                 }
             } while (true);
 
-            final AtomicReference<Exception> exception = new AtomicReference<Exception>();
-            final AtomicLong totalBytesRead = new AtomicLong();
-            final AtomicLong totalBytesRead2 = new AtomicLong();
-
-            // Iterate sequentially building up the batches. Once a complete
-            // batch of ids is ready
-            // randomize fetching the chunks and then download them in parallel
-            List<Integer> idsToRead = Lists.newArrayList();
-            for (int block = 0; block < attributes.getChunkCount(); block++) {
-                idsToRead.add(block);
-
-                // Got a batch, or reached the end
-                if (idsToRead.size() == batchSize || block == attributes.getChunkCount() - 1) {
-
-                    // Read blocks in random order
-                    final int firstBlockId = idsToRead.get(0);
-                    Collections.shuffle(idsToRead);
-                    final AtomicReferenceArray<ByteBuffer> chunks = new AtomicReferenceArray<ByteBuffer>(
-                            idsToRead.size());
-                    ExecutorService executor = Executors.newFixedThreadPool(
-                            concurrencyLevel,
-                            new ThreadFactoryBuilder().setDaemon(true)
-                                    .setNameFormat("ChunkReader-" + objectName + "-%d").build());
-                    try {
-                        for (final int chunkId : idsToRead) {
-                            executor.submit(new Runnable() {
-                                @Override
-                                public void run() {
-                                    // Do the fetch
-                                    RetryPolicy retry = retryPolicy.duplicate();
-                                    while (exception.get() == null) {
-                                        try {
-                                            ByteBuffer chunk = provider.readChunk(objectName, chunkId);
-                                            totalBytesRead.addAndGet(chunk.remaining());
-                                            chunks.set(chunkId - firstBlockId, chunk);
-                                            callback.onChunk(chunkId, chunk);
-                                            break;
-                                        }
-                                        catch (Exception e) {
-                                            callback.onChunkException(chunkId, e);
-                                            if (retry.allowRetry())
-                                                continue;
-                                            exception.compareAndSet(null, e);
-                                        }
-                                    }
-                                }
-                            });
-                        }
-                    }
-                    finally {
-                        executor.shutdown();
-                        if (!executor.awaitTermination(maxWaitTimeInSeconds, TimeUnit.SECONDS)) {
-                            throw new Exception("Took too long to fetch object: " + objectName);
-                        }
+            long objectSize = attributes.getObjectSize();
+            int  chunkCount = attributes.getChunkCount();
+
+            // Work out which chunks, and which bytes of the first and last of them, are needed
+            long start = 0;
+            long end   = objectSize;
+            int  firstChunk = 0;
+            int  lastChunk  = chunkCount - 1;
+            if (length != null) {
+                Preconditions.checkNotNull(attributes.getChunkSize(), "Chunk size unknown, can't read a range of " + objectName);
+                Preconditions.checkArgument(offset <= objectSize, "Offset " + offset + " is beyond the end of " + objectName);
+                int chunkSize = attributes.getChunkSize();
+                start = offset;
+                end   = Math.min(objectSize, offset + length);
+                firstChunk = (int) (start / chunkSize);
+                lastChunk  = end == start ? firstChunk - 1 : (int) ((end - 1) / chunkSize);
+            }
+
+            long totalBytesRead    = 0;
+            long totalBytesWritten = 0;
+            long position          = start - (length == null ? 0 : firstChunk * (long) attributes.getChunkSize());
+
+            Deque<Future<ByteBuffer>> window = new ArrayDeque<Future<ByteBuffer>>();
+            int nextChunk = firstChunk;
+            try {
+                while (nextChunk <= lastChunk || !window.isEmpty()) {
+                    // Keep the window full
+                    while (nextChunk <= lastChunk && window.size() < Math.max(1, concurrencyLevel)) {
+                        window.addLast(executor.submit(new ChunkFetcher(nextChunk++)));
                     }
 
-                    if (exception.get() != null)
-                        throw exception.get();
-
-                    for (int i = 0; i < chunks.length(); i++) {
-                    	
-                        ByteBuffer bb = chunks.get(i);
-                        byte[] bytes = new byte[bb.remaining()];
-                        bb.get(bytes, 0, bytes.length);
-                        os.write(bytes);
-                        
-                        //os.write(chunks.get(i).array());
-                        os.flush();
+                    ByteBuffer chunk = waitForChunk(window.removeFirst());
+                    totalBytesRead += chunk.remaining();
+
+                    // Trim the chunk to the requested range
+                    if (position > 0) {
+                        chunk.position(chunk.position() + (int) Math.min(position, chunk.remaining()));
+                        position = 0;
+                    }
+                    if (chunk.remaining() > end - start - totalBytesWritten) {
+                        chunk.limit(chunk.position() + (int) (end - start - totalBytesWritten));
                     }
-                    idsToRead.clear();
+                    totalBytesWritten += chunk.remaining();
+                    write(chunk);
                 }
             }
-            
-            if (totalBytesRead.get() != attributes.getObjectSize()) {
-                throw new Exception("Bytes read (" + totalBytesRead.get() + ") does not match object size ("
-                        + attributes.getObjectSize() + ") for object " + objectName);
+            finally {
+                for (Future<ByteBuffer> future : window) {
+                    future.cancel(true);
+                }
+            }
+
+            if (length == null && totalBytesRead != objectSize) {
+                throw new Exception("Bytes read (" + totalBytesRead + ") does not match object size ("
+                        + objectSize + ") for object " + objectName);
+            }
+            if (totalBytesWritten != end - start) {
+                throw new Exception("Bytes read (" + totalBytesWritten + ") does not match requested length ("
+                        + (end - start) + ") for object " + objectName);
             }
             callback.onSuccess();
             return attributes;
@@ -200,4 +234,61 @@ public class ObjectReader implements Callable<ObjectMetadata> {
             throw e;
         }
     }
+
+    private ByteBuffer waitForChunk(Future<ByteBuffer> future) throws Exception {
+        try {
+            return future.get(maxWaitTimeInSeconds, TimeUnit.SECONDS);
+        }
+        catch (TimeoutException e) {
+            throw new Exception("Took too long to fetch object: " + objectName);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception)
+                throw (Exception) e.getCause();
+            throw e;
+        }
+    }
+
+    private void write(ByteBuffer chunk) throws Exception {
+        if (channel != null) {
+            while (chunk.hasRemaining()) {
+                channel.write(chunk);
+            }
+        }
+        else if (chunk.hasArray()) {
+            os.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+            os.flush();
+        }
+        else {
+            byte[] bytes = new byte[chunk.remaining()];
+            chunk.get(bytes, 0, bytes.length);
+            os.write(bytes);
+            os.flush();
+        }
+    }
+
+    private class ChunkFetcher implements Callable<ByteBuffer> {
+        private final int chunkId;
+
+        ChunkFetcher(int chunkId) {
+            this.chunkId = chunkId;
+        }
+
+        @Override
+        public ByteBuffer call() throws Exception {
+            RetryPolicy retry = retryPolicy.duplicate();
+            while (true) {
+                try {
+                    ByteBuffer chunk = provider.readChunk(objectName, chunkId);
+                    callback.onChunk(chunkId, chunk);
+                    return chunk;
+                }
+                catch (Exception e) {
+                    callback.onChunkException(chunkId, e);
+                    if (Thread.currentThread().isInterrupted() || !retry.allowRetry())
+                        throw e;
+                }
+            }
+        }
+    }
 }
@@ -20,7 +20,8 @@ import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -31,7 +32,6 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.netflix.astyanax.util.BlockingConcurrentWindowCounter;
 
 public class ObjectWriter implements Callable<ObjectMetadata> {
@@ -50,6 +50,7 @@ public class ObjectWriter implements Callable<ObjectMetadata> {
     private int concurrencyLevel = DEFAULT_CONCURRENCY_LEVEL;
     private int maxWaitTimeInSeconds = MAX_WAIT_TIME_TO_FINISH;
     private ObjectWriteCallback callback = new NoOpObjectWriteCallback();
+    private ExecutorService executor = ChunkedStorage.getDefaultExecutor();
 
     public ObjectWriter(ChunkedStorageProvider provider, String objectName, InputStream is) {
         this.provider = provider;
@@ -93,6 +94,14 @@ public class ObjectWriter implements Callable<ObjectMetadata> {
         return this;
     }
 
+    /**
+     * @param executor Executor on which chunks are written instead of {@link ChunkedStorage#getDefaultExecutor()}
+     */
+    public ObjectWriter withExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
     @Override
     public ObjectMetadata call() throws Exception {
         LOG.debug("Writing: " + objectName);
@@ -106,8 +115,8 @@ public class ObjectWriter implements Callable<ObjectMetadata> {
         final AtomicReference<Exception> exception = new AtomicReference<Exception>();
 
         try {
-            final ExecutorService executor = Executors.newFixedThreadPool(concurrencyLevel, new ThreadFactoryBuilder()
-                    .setDaemon(true).setNameFormat("ChunkWriter-" + objectName + "-%d").build());
+            // One permit per chunk being written, all of them are taken back once the last chunk is done
+            final Semaphore inFlight = new Semaphore(concurrencyLevel);
             final BlockingConcurrentWindowCounter chunkCounter = new BlockingConcurrentWindowCounter(concurrencyLevel);
             final AutoAllocatingLinkedBlockingQueue<ByteBuffer> blocks = new AutoAllocatingLinkedBlockingQueue<ByteBuffer>(
                     concurrencyLevel);
@@ -132,31 +141,42 @@ public class ObjectWriter implements Callable<ObjectMetadata> {
                     int nBytesRead = readFully(is, bb.array(), 0, chunkSize);
                     if (nBytesRead > 0) {
                         bb.limit(nBytesRead);
+                        inFlight.acquire();
 
                         // Send data in a worker thread
-                        executor.submit(new Runnable() {
-                            @Override
-                            public void run() {
-                                try {
-                                    if (exception.get() == null) {
-                                        LOG.debug("WRITE " + chunkNumber + " size=" + bb.limit());
-                                        provider.writeChunk(objectName, chunkNumber, bb, ttl);
-                                        callback.onChunk(chunkNumber, bb.limit());
-                                        nBytesWritten.addAndGet(bb.limit());
-                                        nChunksWritten.incrementAndGet();
+                        try {
+                            executor.submit(new Runnable() {
+                                @Override
+                                public void run() {
+                                    try {
+                                        if (exception.get() == null) {
+                                            LOG.debug("WRITE " + chunkNumber + " size=" + bb.limit());
+                                            provider.writeChunk(objectName, chunkNumber, bb, ttl);
+                                            callback.onChunk(chunkNumber, bb.limit());
+                                            nBytesWritten.addAndGet(bb.limit());
+                                            nChunksWritten.incrementAndGet();
+                                        }
+                                    }
+                                    catch (Exception e) {
+                                        LOG.error(e.getMessage());
+                                        exception.compareAndSet(null, e);
+                                        callback.onChunkException(chunkNumber, e);
+                                    }
+                                    finally {
+                                        blocks.add(bb);
+                                        chunkCounter.release(chunkNumber);
+                                        inFlight.release();
                                     }
                                 }
-                                catch (Exception e) {
-                                    LOG.error(e.getMessage());
-                                    exception.compareAndSet(null, e);
-                                    callback.onChunkException(chunkNumber, e);
-                                }
-                                finally {
-                                    blocks.add(bb);
-                                    chunkCounter.release(chunkNumber);
-                                }
-                            }
-                        });
+                            });
+                        }
+                        catch (RejectedExecutionException e) {
+                            // The chunk will never be written, give back what was taken for it
+                            blocks.add(bb);
+                            chunkCounter.release(chunkNumber);
+                            inFlight.release();
+                            throw e;
+                        }
                     }
                     else {
                         done = true;
@@ -164,8 +184,7 @@ public class ObjectWriter implements Callable<ObjectMetadata> {
                 }
             }
             finally {
-                executor.shutdown();
-                if (!executor.awaitTermination(maxWaitTimeInSeconds, TimeUnit.SECONDS)) {
+                if (!inFlight.tryAcquire(concurrencyLevel, maxWaitTimeInSeconds, TimeUnit.SECONDS)) {
                     throw new Exception("Took too long to write object: " + objectName);
                 }
                 // Rethrow any exception we got in a thread
@@ -0,0 +1,156 @@
+package com.netflix.astyanax.recipes;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+import com.netflix.astyanax.connectionpool.exceptions.NotFoundException;
+import com.netflix.astyanax.recipes.storage.ChunkedStorage;
+import com.netflix.astyanax.recipes.storage.ChunkedStorageProvider;
+import com.netflix.astyanax.recipes.storage.ObjectMetadata;
+
+public class ChunkedObjectStreamingTest {
+
+    private static final int CHUNK_SIZE = 100;
+
+    /**
+     * Keeps chunks in memory and returns them after a random delay so that they complete out of order
+     */
+    private static class InMemoryChunkedStorageProvider implements ChunkedStorageProvider {
+        private final Map<String, ByteBuffer> chunks = Maps.newConcurrentMap();
+        private final Map<String, ObjectMetadata> metadata = Maps.newConcurrentMap();
+        private final AtomicInteger chunkReads = new AtomicInteger();
+        private final Random random = new Random();
+
+        @Override
+        public int writeChunk(String objectName, int chunkId, ByteBuffer data, Integer ttl) throws Exception {
+            ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+            copy.put(data.duplicate());
+            copy.flip();
+            chunks.put(objectName + "$" + chunkId, copy);
+            return copy.remaining();
+        }
+
+        @Override
+        public ByteBuffer readChunk(String objectName, int chunkId) throws Exception {
+            chunkReads.incrementAndGet();
+            Thread.sleep(random.nextInt(5));
+            ByteBuffer chunk = chunks.get(objectName + "$" + chunkId);
+            if (chunk == null)
+                throw new NotFoundException("Chunk " + chunkId + " of " + objectName);
+            return chunk.duplicate();
+        }
+
+        @Override
+        public void deleteObject(String objectName, Integer chunkCount) throws Exception {
+        }
+
+        @Override
+        public void writeMetadata(String objectName, ObjectMetadata attr) throws Exception {
+            metadata.put(objectName, attr);
+        }
+
+        @Override
+        public ObjectMetadata readMetadata(String objectName) throws Exception {
+            ObjectMetadata attr = metadata.get(objectName);
+            if (attr == null)
+                throw new NotFoundException(objectName);
+            return attr;
+        }
+
+        @Override
+        public int getDefaultChunkSize() {
+            return CHUNK_SIZE;
+        }
+    }
+
+    private static byte[] newData(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void testReadInOrder() throws Exception {
+        InMemoryChunkedStorageProvider provider = new InMemoryChunkedStorageProvider();
+        byte[] data = newData(CHUNK_SIZE * 37 + 13);
+
+        ObjectMetadata meta = ChunkedStorage.newWriter(provider, "obj", new ByteArrayInputStream(data))
+                .withConcurrencyLevel(8).call();
+        Assert.assertEquals(38, meta.getChunkCount().intValue());
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ChunkedStorage.newReader(provider, "obj", os).withConcurrencyLevel(8).call();
+        Assert.assertTrue(Arrays.equals(data, os.toByteArray()));
+
+        ByteArrayOutputStream channelOs = new ByteArrayOutputStream();
+        ChunkedStorage.newReader(provider, "obj", Channels.newChannel(channelOs)).withConcurrencyLevel(3).call();
+        Assert.assertTrue(Arrays.equals(data, channelOs.toByteArray()));
+    }
+
+    @Test
+    public void testReadRange() throws Exception {
+        InMemoryChunkedStorageProvider provider = new InMemoryChunkedStorageProvider();
+        byte[] data = newData(CHUNK_SIZE * 10 + 50);
+        ChunkedStorage.newWriter(provider, "obj", new ByteArrayInputStream(data)).call();
+
+        int[][] ranges = { {0, 10}, {150, 100}, {99, 2}, {200, 300}, {1000, 500}, {1049, 1}, {1050, 10}, {0, 2000} };
+        for (int[] range : ranges) {
+            provider.chunkReads.set(0);
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            ChunkedStorage.newReader(provider, "obj", os).withRange(range[0], range[1]).call();
+
+            int end = Math.min(data.length, range[0] + range[1]);
+            Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(data, range[0], end), os.toByteArray()));
+
+            int expectedChunks = end == range[0] ? 0 : (end - 1) / CHUNK_SIZE - range[0] / CHUNK_SIZE + 1;
+            Assert.assertEquals(expectedChunks, provider.chunkReads.get());
+        }
+    }
+
+    @Test
+    public void testMissingChunk() throws Exception {
+        InMemoryChunkedStorageProvider provider = new InMemoryChunkedStorageProvider();
+        ChunkedStorage.newWriter(provider, "obj", new ByteArrayInputStream(newData(CHUNK_SIZE * 20))).call();
+        provider.chunks.remove("obj$7");
+
+        try {
+            ChunkedStorage.newReader(provider, "obj", new ByteArrayOutputStream()).call();
+            Assert.fail();
+        }
+        catch (NotFoundException e) {
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testRejectedChunkWrite() throws Exception {
+        InMemoryChunkedStorageProvider provider = new InMemoryChunkedStorageProvider();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+
+        // The rejected chunk gives back its permit, so the writer fails right away rather than timing out
+        try {
+            ChunkedStorage.newWriter(provider, "obj", new ByteArrayInputStream(newData(CHUNK_SIZE * 5)))
+                    .withConcurrencyLevel(2)
+                    .withMaxWaitTime(5)
+                    .withExecutor(executor)
+                    .call();
+            Assert.fail();
+        }
+        catch (RejectedExecutionException e) {
+        }
+    }
+}
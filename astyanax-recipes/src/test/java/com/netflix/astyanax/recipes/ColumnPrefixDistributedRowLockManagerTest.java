@@ -0,0 +1,456 @@
+package com.netflix.astyanax.recipes;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.netflix.astyanax.Keyspace;
+import com.netflix.astyanax.connectionpool.exceptions.OperationTimeoutException;
+import com.netflix.astyanax.model.ColumnFamily;
+import com.netflix.astyanax.recipes.locks.BusyLockException;
+import com.netflix.astyanax.recipes.locks.ColumnPrefixDistributedRowLockManager;
+import com.netflix.astyanax.serializers.LongSerializer;
+import com.netflix.astyanax.serializers.StringSerializer;
+
+/**
+ * Runs the lock manager against a keyspace stub that keeps the lock columns in memory
+ */
+public class ColumnPrefixDistributedRowLockManagerTest {
+    private static final ColumnFamily<String, String> LOCK_CF = ColumnFamily.newColumnFamily("LockCf",
+            StringSerializer.get(), StringSerializer.get(), LongSerializer.get());
+
+    /** Lock columns of each row */
+    private final ConcurrentMap<String, Map<String, ByteBuffer>> rows = Maps.newConcurrentMap();
+    /** Mutation batches executed */
+    private final AtomicInteger writeCount = new AtomicInteger();
+    /** Multi row reads, with the rows that were read */
+    private final List<List<String>> reads = Collections.synchronizedList(Lists.<List<String>>newArrayList());
+    private volatile boolean failWrites = false;
+
+    private Keyspace keyspace;
+
+    @Before
+    public void setup() {
+        keyspace = stub(Keyspace.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("prepareMutationBatch"))
+                    return newMutationBatch();
+                if (method.getName().equals("prepareQuery"))
+                    return newQuery();
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private ColumnPrefixDistributedRowLockManager<String> newManager() {
+        return new ColumnPrefixDistributedRowLockManager<String>(keyspace, LOCK_CF)
+                .withLeaseTime(10, TimeUnit.SECONDS);
+    }
+
+    @Test(timeout = 10000)
+    public void testLocksRowsWithOneWriteAndOneRead() throws Exception {
+        ColumnPrefixDistributedRowLockManager<String> manager = newManager();
+
+        ColumnPrefixDistributedRowLockManager<String>.Lease lease = manager.acquire(Arrays.asList("c", "a", "b"));
+        Assert.assertEquals(1, writeCount.get());
+        Assert.assertEquals(1, reads.size());
+        Assert.assertEquals(Arrays.asList("c", "a", "b"), reads.get(0));
+        Assert.assertEquals(Arrays.asList("c", "a", "b"), lease.getKeys());
+        Assert.assertTrue(lease.isValid());
+        for (String row : lease.getKeys()) {
+            Assert.assertEquals(1, rows.get(row).size());
+        }
+
+        lease.release();
+        Assert.assertFalse(lease.isValid());
+        for (String row : lease.getKeys()) {
+            Assert.assertTrue(rows.get(row).isEmpty());
+        }
+        manager.shutdown();
+    }
+
+    @Test(timeout = 10000)
+    public void testBusyInOtherProcess() throws Exception {
+        ColumnPrefixDistributedRowLockManager<String> manager1 = newManager();
+        ColumnPrefixDistributedRowLockManager<String> manager2 = newManager();
+
+        ColumnPrefixDistributedRowLockManager<String>.Lease lease = manager1.acquire(Arrays.asList("a", "b"));
+        try {
+            manager2.acquire(Arrays.asList("b", "c"));
+            Assert.fail();
+        }
+        catch (BusyLockException e) {
+        }
+        // None of the rows is left locked by the failed attempt
+        Assert.assertTrue(rows.get("c").isEmpty());
+        Assert.assertEquals(1, rows.get("b").size());
+
+        lease.release();
+        manager2.acquire(Arrays.asList("b", "c")).release();
+        manager1.shutdown();
+        manager2.shutdown();
+    }
+
+    /**
+     * Threads of one process wait for each other on the local lock without going to cassandra
+     */
+    @Test(timeout = 10000)
+    public void testLocalLockWaitsWithoutRemoteCalls() throws Exception {
+        final ColumnPrefixDistributedRowLockManager<String> manager = newManager()
+                .withMaxLocalWait(10, TimeUnit.MILLISECONDS);
+
+        ColumnPrefixDistributedRowLockManager<String>.Lease lease = manager.acquire("a");
+        int writes = writeCount.get();
+        int readCount = reads.size();
+
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    manager.acquire("a");
+                }
+                catch (Exception e) {
+                    failure.set(e);
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+
+        Assert.assertTrue(failure.get() instanceof BusyLockException);
+        Assert.assertEquals(writes, writeCount.get());
+        Assert.assertEquals(readCount, reads.size());
+
+        lease.release();
+        manager.acquire("a").release();
+        manager.shutdown();
+    }
+
+    /**
+     * Rows that share a stripe take its local lock only once instead of waiting for themselves
+     */
+    @Test(timeout = 10000)
+    public void testRowsSharingStripe() throws Exception {
+        ColumnPrefixDistributedRowLockManager<String> manager =
+                new ColumnPrefixDistributedRowLockManager<String>(keyspace, LOCK_CF, 1)
+                    .withMaxLocalWait(10, TimeUnit.MILLISECONDS);
+
+        ColumnPrefixDistributedRowLockManager<String>.Lease lease = manager.acquire(Arrays.asList("a", "b", "c"));
+        lease.release();
+        manager.shutdown();
+    }
+
+    /**
+     * Threads locking the same rows in opposite orders take the local locks in the same order and never deadlock
+     */
+    @Test(timeout = 30000)
+    public void testBulkGetOrdering() throws Exception {
+        final ColumnPrefixDistributedRowLockManager<String> manager =
+                new ColumnPrefixDistributedRowLockManager<String>(keyspace, LOCK_CF, 8)
+                    .withLeaseTime(10, TimeUnit.SECONDS)
+                    .withMaxLocalWait(20, TimeUnit.SECONDS);
+
+        final List<String> keys = Lists.newArrayList();
+        for (int i = 0; i < 20; i++) {
+            keys.add("row" + i);
+        }
+        final List<String> reversed = Lists.reverse(keys);
+
+        final int iterations = 200;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        List<Thread> threads = Lists.newArrayList();
+        for (int i = 0; i < 4; i++) {
+            final List<String> order = i % 2 == 0 ? keys : reversed;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < iterations; j++) {
+                            manager.acquire(order).release();
+                        }
+                    }
+                    catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertNull(failure.get());
+        // Only one thread at a time got to cassandra, so none of them ever saw another one's lock
+        Assert.assertEquals(4 * iterations, reads.size());
+        manager.shutdown();
+    }
+
+    @Test(timeout = 10000)
+    public void testHeartbeatRenewsLease() throws Exception {
+        ManualScheduler scheduler = new ManualScheduler();
+        ColumnPrefixDistributedRowLockManager<String> manager = newManager()
+                .withLeaseTime(10, TimeUnit.SECONDS)
+                .withHeartbeatInterval(1, TimeUnit.SECONDS)
+                .withHeartbeatExecutor(scheduler.get());
+
+        ColumnPrefixDistributedRowLockManager<String>.Lease lease = manager.acquire("a");
+        Assert.assertEquals(TimeUnit.SECONDS.toMillis(1), scheduler.delay);
+        long expiresAt = expiresAt("a");
+
+        Thread.sleep(10);
+        scheduler.command.run();
+        Assert.assertEquals(2, writeCount.get());
+        Assert.assertTrue(expiresAt("a") > expiresAt);
+        Assert.assertTrue(lease.isValid());
+
+        lease.release();
+        Assert.assertTrue(scheduler.cancelled);
+        // Heartbeats that were already scheduled don't put the lock back
+        scheduler.command.run();
+        Assert.assertTrue(rows.get("a").isEmpty());
+    }
+
+    /**
+     * A lease whose heartbeat stops expires after the lease time and the row can be locked by another process
+     */
+    @Test(timeout = 10000)
+    public void testLeaseExpiresWithoutHeartbeat() throws Exception {
+        ManualScheduler scheduler = new ManualScheduler();
+        ColumnPrefixDistributedRowLockManager<String> manager1 = newManager()
+                .withLeaseTime(100, TimeUnit.MILLISECONDS)
+                .withHeartbeatExecutor(scheduler.get());
+        ColumnPrefixDistributedRowLockManager<String> manager2 = newManager();
+
+        ColumnPrefixDistributedRowLockManager<String>.Lease lease = manager1.acquire("a");
+
+        // Renewals fail, so the lease runs out
+        failWrites = true;
+        Thread.sleep(200);
+        scheduler.command.run();
+        failWrites = false;
+        Assert.assertFalse(lease.isValid());
+
+        // The expired lock column is cleaned up by the next process to lock the row
+        ColumnPrefixDistributedRowLockManager<String>.Lease lease2 = manager2.acquire("a");
+        Assert.assertTrue(lease2.isValid());
+        lease2.release();
+        Assert.assertTrue(rows.get("a").isEmpty());
+        manager2.shutdown();
+    }
+
+    private long expiresAt(String row) {
+        Map<String, ByteBuffer> columns = rows.get(row);
+        Assert.assertEquals(1, columns.size());
+        return LongSerializer.get().fromByteBuffer(columns.values().iterator().next().duplicate());
+    }
+
+    /**
+     * Scheduler that keeps the heartbeat so the test can run it
+     */
+    private static class ManualScheduler {
+        volatile Runnable command;
+        volatile long     delay;
+        volatile boolean  cancelled;
+
+        ScheduledExecutorService get() {
+            return stub(ScheduledExecutorService.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if (method.getName().equals("scheduleWithFixedDelay")) {
+                        command = (Runnable) args[0];
+                        delay   = ((TimeUnit) args[3]).toMillis((Long) args[2]);
+                        return stub(ScheduledFuture.class, new InvocationHandler() {
+                            @Override
+                            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                                if (method.getName().equals("cancel"))
+                                    cancelled = true;
+                                if (method.getReturnType() == boolean.class)
+                                    return true;
+                                if (method.getName().equals("compareTo"))
+                                    return 0;
+                                if (method.getName().equals("getDelay"))
+                                    return 0L;
+                                return null;
+                            }
+                        });
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        }
+    }
+
+    private Object newMutationBatch() {
+        final List<Callable<Void>> mutations = Lists.newArrayList();
+        return stub(com.netflix.astyanax.MutationBatch.class, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object batch, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("withRow")) {
+                    final String row = (String) args[1];
+                    return stub(com.netflix.astyanax.ColumnListMutation.class, new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, final Object[] args) throws Throwable {
+                            if (method.getName().equals("putColumn")) {
+                                mutations.add(new Callable<Void>() {
+                                    @Override
+                                    public Void call() {
+                                        getRow(row).put((String) args[0], (ByteBuffer) args[1]);
+                                        return null;
+                                    }
+                                });
+                            }
+                            else if (method.getName().equals("deleteColumn")) {
+                                mutations.add(new Callable<Void>() {
+                                    @Override
+                                    public Void call() {
+                                        getRow(row).remove(args[0]);
+                                        return null;
+                                    }
+                                });
+                            }
+                            else {
+                                throw new UnsupportedOperationException(method.getName());
+                            }
+                            return proxy;
+                        }
+                    });
+                }
+                if (name.equals("execute")) {
+                    if (failWrites)
+                        throw new OperationTimeoutException("Injected failure");
+                    writeCount.incrementAndGet();
+                    for (Callable<Void> mutation : mutations) {
+                        mutation.call();
+                    }
+                    return null;
+                }
+                if (method.getReturnType().isInstance(batch))
+                    return batch;
+                throw new UnsupportedOperationException(name);
+            }
+        });
+    }
+
+    private Object newQuery() {
+        final List<String> keys = Lists.newArrayList();
+        return stub(com.netflix.astyanax.query.ColumnFamilyQuery.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object query, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("setConsistencyLevel"))
+                    return query;
+                if (method.getName().equals("getKeySlice")) {
+                    for (Object key : (Collection<?>) args[0]) {
+                        keys.add((String) key);
+                    }
+                    return stub(com.netflix.astyanax.query.RowSliceQuery.class, new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            if (method.getName().equals("withColumnRange"))
+                                return proxy;
+                            if (method.getName().equals("execute")) {
+                                reads.add(keys);
+                                return readRows(keys);
+                            }
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    /**
+     * @return Operation result with the lock columns of the rows
+     */
+    private Object readRows(List<String> keys) {
+        final Map<String, Object> result = Maps.newHashMap();
+        for (String key : keys) {
+            final List<Object> columns = Lists.newArrayList();
+            for (final Map.Entry<String, ByteBuffer> column : getRow(key).entrySet()) {
+                columns.add(stub(com.netflix.astyanax.model.Column.class, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("getName"))
+                            return column.getKey();
+                        if (method.getName().equals("getLongValue"))
+                            return LongSerializer.get().fromByteBuffer(column.getValue().duplicate());
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                }));
+            }
+            final Object columnList = stub(com.netflix.astyanax.model.ColumnList.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if (method.getName().equals("iterator"))
+                        return columns.iterator();
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+            result.put(key, stub(com.netflix.astyanax.model.Row.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if (method.getName().equals("getColumns"))
+                        return columnList;
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            }));
+        }
+
+        final Object rows = stub(com.netflix.astyanax.model.Rows.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getRow"))
+                    return result.get(args[0]);
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+        return stub(com.netflix.astyanax.connectionpool.OperationResult.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getResult"))
+                    return rows;
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private Map<String, ByteBuffer> getRow(String key) {
+        rows.putIfAbsent(key, Maps.<String, ByteBuffer>newConcurrentMap());
+        return rows.get(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+}
@@ -0,0 +1,115 @@
+package com.netflix.astyanax.recipes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.netflix.astyanax.serializers.AbstractSerializer;
+import com.netflix.astyanax.serializers.LongSerializer;
+
+public class DistributedMergeSortTest {
+
+    private static final File TEMP_DIR = new File(System.getProperty("java.io.tmpdir"));
+
+    private static List<Long> sort(final DistributedMergeSort<?, ?, Long> sort, final int numThreads, final int recordsPerThread) throws Exception {
+        final List<Long> sorted = Lists.newArrayList();
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<?>> futures = Lists.newArrayList();
+        for (int i = 0; i < numThreads; i++) {
+            final Random random = new Random(i);
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (int j = 0; j < recordsPerThread; j++) {
+                        sort.add(random.nextLong() % 1000);
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        sort.merge(new Callback<Long>() {
+            @Override
+            public void handle(Long object) {
+                sorted.add(object);
+            }
+        });
+        return sorted;
+    }
+
+    @Test
+    public void testInMemory() throws Exception {
+        DistributedMergeSort<Object, Object, Long> sort = new DistributedMergeSort<Object, Object, Long>(
+                LongSerializer.get(), Ordering.<Long>natural(), DistributedMergeSort.DEFAULT_MAX_MEMORY, TEMP_DIR);
+
+        List<Long> sorted = sort(sort, 4, 1000);
+        Assert.assertEquals(4000, sorted.size());
+        Assert.assertTrue(Ordering.natural().isOrdered(sorted));
+        Assert.assertEquals(0, sort.getSpilledRunCount());
+    }
+
+    @Test
+    public void testSpill() throws Exception {
+        final int[] spilledRuns = new int[1];
+        DistributedMergeSort<Object, Object, Long> sort = new DistributedMergeSort<Object, Object, Long>(
+                LongSerializer.get(), Ordering.<Long>natural(), 100 * 1024, TEMP_DIR) {
+            @Override
+            public long merge(Callback<Long> callback) throws IOException {
+                spilledRuns[0] = getSpilledRunCount();
+                return super.merge(callback);
+            }
+        };
+
+        List<Long> sorted = sort(sort, 8, 10000);
+        Assert.assertEquals(80000, sorted.size());
+        Assert.assertTrue(Ordering.natural().isOrdered(sorted));
+        Assert.assertTrue(spilledRuns[0] > 10);
+
+        // Spilled runs are deleted after the merge
+        Assert.assertEquals(0, sort.getSpilledRunCount());
+    }
+
+    @Test
+    public void testSerializesOnce() throws Exception {
+        final AtomicInteger serialized = new AtomicInteger();
+        AbstractSerializer<Long> serializer = new AbstractSerializer<Long>() {
+            @Override
+            public ByteBuffer toByteBuffer(Long obj) {
+                serialized.incrementAndGet();
+                return LongSerializer.get().toByteBuffer(obj);
+            }
+
+            @Override
+            public Long fromByteBuffer(ByteBuffer byteBuffer) {
+                return LongSerializer.get().fromByteBuffer(byteBuffer);
+            }
+        };
+        DistributedMergeSort<Object, Object, Long> sort = new DistributedMergeSort<Object, Object, Long>(
+                serializer, Ordering.<Long>natural(), 100 * 1024, TEMP_DIR);
+
+        List<Long> sorted = sort(sort, 2, 10000);
+        Assert.assertEquals(20000, sorted.size());
+        Assert.assertTrue(Ordering.natural().isOrdered(sorted));
+
+        // Spilled runs are written from the buffers the size estimate was made with
+        Assert.assertEquals(20000, serialized.get());
+    }
+}
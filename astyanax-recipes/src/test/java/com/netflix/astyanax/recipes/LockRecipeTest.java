@@ -1,5 +1,6 @@
 package com.netflix.astyanax.recipes;
 
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
 import junit.framework.Assert;
@@ -20,7 +21,9 @@ import com.netflix.astyanax.ddl.KeyspaceDefinition;
 import com.netflix.astyanax.impl.AstyanaxConfigurationImpl;
 import com.netflix.astyanax.model.ColumnFamily;
 import com.netflix.astyanax.model.ConsistencyLevel;
+import com.netflix.astyanax.recipes.locks.BusyLockException;
 import com.netflix.astyanax.recipes.locks.ColumnPrefixDistributedRowLock;
+import com.netflix.astyanax.recipes.locks.ColumnPrefixDistributedRowLockManager;
 import com.netflix.astyanax.recipes.locks.StaleLockException;
 import com.netflix.astyanax.serializers.LongSerializer;
 import com.netflix.astyanax.serializers.StringSerializer;
@@ -382,4 +385,61 @@ public class LockRecipeTest {
 //        Assert.assertEquals(value, columns.getIntegerValue(dataColumn, 0));
     }
     
+    @Test
+    public void testLockManagerMultipleRows() throws Exception {
+        ColumnPrefixDistributedRowLockManager<String> manager1 = 
+            new ColumnPrefixDistributedRowLockManager<String>(keyspace, LOCK_CF_LONG)
+                .withConsistencyLevel(ConsistencyLevel.CL_ONE)
+                .withLeaseTime(2, TimeUnit.SECONDS);
+        ColumnPrefixDistributedRowLockManager<String> manager2 = 
+            new ColumnPrefixDistributedRowLockManager<String>(keyspace, LOCK_CF_LONG)
+                .withConsistencyLevel(ConsistencyLevel.CL_ONE)
+                .withLeaseTime(2, TimeUnit.SECONDS);
+        
+        ColumnPrefixDistributedRowLockManager<String>.Lease lease = manager1.acquire(Arrays.asList("testManager1", "testManager2"));
+        try {
+            // Held past the lease by the heartbeat
+            Thread.sleep(5000);
+            Assert.assertTrue(lease.isValid());
+            
+            try {
+                manager2.acquire(Arrays.asList("testManager2", "testManager3")).release();
+                Assert.fail();
+            }
+            catch (BusyLockException e) {
+            }
+            
+            // Nothing left behind on the row that wasn't locked
+            Assert.assertEquals(0, new ColumnPrefixDistributedRowLock<String>(keyspace, LOCK_CF_LONG, "testManager3")
+                .withConsistencyLevel(ConsistencyLevel.CL_ONE).readLockColumns().size());
+        }
+        finally {
+            lease.release();
+        }
+        
+        manager2.acquire(Arrays.asList("testManager2", "testManager3")).release();
+        manager1.shutdown();
+        manager2.shutdown();
+    }
+    
+    @Test
+    public void testLockManagerLocalWait() throws Exception {
+        ColumnPrefixDistributedRowLockManager<String> manager = 
+            new ColumnPrefixDistributedRowLockManager<String>(keyspace, LOCK_CF_LONG)
+                .withConsistencyLevel(ConsistencyLevel.CL_ONE)
+                .withMaxLocalWait(100, TimeUnit.MILLISECONDS);
+        
+        ColumnPrefixDistributedRowLockManager<String>.Lease lease = manager.acquire("testManagerLocal");
+        try {
+            manager.acquire("testManagerLocal").release();
+            Assert.fail();
+        }
+        catch (BusyLockException e) {
+        }
+        finally {
+            lease.release();
+        }
+        manager.acquire("testManagerLocal").release();
+        manager.shutdown();
+    }
 }
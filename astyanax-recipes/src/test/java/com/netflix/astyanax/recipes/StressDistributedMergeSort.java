@@ -0,0 +1,83 @@
+package com.netflix.astyanax.recipes;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.netflix.astyanax.serializers.LongSerializer;
+
+/**
+ * Sorts a synthetic column family of 10M rows, fed by one thread per token range the way
+ * {@link DistributedMergeSort} is fed by the AllRowsReader, with memory limits from 16MB to 1GB.  Run from the
+ * command line, optionally passing the number of rows in millions.
+ */
+public class StressDistributedMergeSort {
+    private static final Logger LOG = LoggerFactory.getLogger(StressDistributedMergeSort.class);
+
+    private static final int    NUM_TOKEN_RANGES = 8;
+    private static final long[] MAX_MEMORY       = {16L << 20, 64L << 20, 256L << 20, 1024L << 20};
+
+    public static void main(String[] args) throws Exception {
+        int numRows = (args.length > 0 ? Integer.parseInt(args[0]) : 10) * 1000 * 1000;
+
+        for (long maxMemory : MAX_MEMORY) {
+            run(numRows, maxMemory);
+        }
+    }
+
+    private static void run(final int numRows, long maxMemory) throws Exception {
+        final DistributedMergeSort<Object, Object, Long> sort = new DistributedMergeSort<Object, Object, Long>(
+                LongSerializer.get(), Ordering.<Long>natural(), maxMemory, new File(System.getProperty("java.io.tmpdir")));
+
+        long startTime = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_TOKEN_RANGES);
+        List<Future<Void>> futures = Lists.newArrayList();
+        for (int i = 0; i < NUM_TOKEN_RANGES; i++) {
+            final Random random = new Random(i);
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (int j = 0; j < numRows / NUM_TOKEN_RANGES; j++) {
+                        sort.add(random.nextLong());
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        long scanTime = System.nanoTime() - startTime;
+        int  runs     = sort.getSpilledRunCount();
+        long spilled  = sort.getSpilledBytes();
+
+        final long[] last  = {Long.MIN_VALUE};
+        final long[] outOfOrder = {0};
+        long count = sort.merge(new Callback<Long>() {
+            @Override
+            public void handle(Long value) {
+                if (value < last[0])
+                    outOfOrder[0]++;
+                last[0] = value;
+            }
+        });
+        long totalTime = System.nanoTime() - startTime;
+
+        LOG.info(String.format("maxMemory=%-5dMB rows=%d spilledRuns=%d spilledMB=%d scan+spill=%dms merge=%dms rows/sec=%d outOfOrder=%d",
+                maxMemory >> 20, count, runs, spilled >> 20,
+                TimeUnit.NANOSECONDS.toMillis(scanTime), TimeUnit.NANOSECONDS.toMillis(totalTime - scanTime),
+                count * TimeUnit.SECONDS.toNanos(1) / totalTime, outOfOrder[0]));
+    }
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.thrift;
+
+import org.apache.cassandra.thrift.Cassandra;
+
+import com.netflix.astyanax.CassandraOperationTracer;
+import com.netflix.astyanax.connectionpool.Host;
+import com.netflix.astyanax.connectionpool.IdempotentOperation;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+
+/**
+ * Read that has no side effects, neither on the cluster nor on the query it was created by, and may
+ * therefore be sent to more than one host at a time.  The attempts that run at the same time are traced as
+ * a single operation.
+ *
+ * @param <R>
+ */
+public abstract class AbstractKeyspaceReadOperationImpl<R> extends AbstractKeyspaceOperationImpl<R>
+        implements IdempotentOperation<Cassandra.Client, R> {
+
+    /**
+     * Only the first of the attempts that overlap is traced as started.  The first success of the overlapping
+     * attempts is traced and a failure only once no other attempt is running and none succeeded, so the attempt
+     * that lost the race against a speculative read, and whose connection was closed, is not traced as a failure.
+     */
+    private static class OverlappingAttemptsTracer implements CassandraOperationTracer {
+        private final CassandraOperationTracer tracer;
+        private int     running   = 0;
+        private boolean succeeded = false;
+
+        OverlappingAttemptsTracer(CassandraOperationTracer tracer) {
+            this.tracer = tracer;
+        }
+
+        @Override
+        public synchronized CassandraOperationTracer start() {
+            if (running++ == 0) {
+                succeeded = false;
+                tracer.start();
+            }
+            return this;
+        }
+
+        @Override
+        public synchronized void success() {
+            running--;
+            if (!succeeded) {
+                succeeded = true;
+                tracer.success();
+            }
+        }
+
+        @Override
+        public synchronized void failure(ConnectionException e) {
+            running--;
+            if (!succeeded && running == 0)
+                tracer.failure(e);
+        }
+    }
+
+    public AbstractKeyspaceReadOperationImpl(CassandraOperationTracer tracer, Host pinnedHost, String keyspaceName) {
+        super(new OverlappingAttemptsTracer(tracer), pinnedHost, keyspaceName);
+    }
+
+    public AbstractKeyspaceReadOperationImpl(CassandraOperationTracer tracer, String keyspaceName) {
+        super(new OverlappingAttemptsTracer(tracer), keyspaceName);
+    }
+}
@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.thrift;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.thrift.TException;
+import org.apache.thrift.async.AsyncMethodCallback;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.netflix.astyanax.CassandraOperationTracer;
+import com.netflix.astyanax.connectionpool.ConnectionContext;
+import com.netflix.astyanax.connectionpool.Host;
+import com.netflix.astyanax.connectionpool.Operation;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+
+/**
+ * Base for operations that run on a non blocking {@link Cassandra.AsyncClient}.
+ *
+ * An operation issues exactly one thrift call in {@link #startCall(Cassandra.AsyncClient, AsyncMethodCallback)}
+ * and converts the response in {@link #getResult(Object)}.  The result is delivered from the
+ * selector thread of the {@link ThriftAsyncConnectionFactoryImpl} that owns the connection so callbacks
+ * must never block.
+ *
+ * @param <C>  Thrift generated call type, such as Cassandra.AsyncClient.get_slice_call
+ * @param <R>  Result type
+ *
+ * @see ThriftAsyncOperationExecutor
+ */
+public abstract class AbstractThriftAsyncOperationImpl<C, R> implements Operation<Cassandra.AsyncClient, R> {
+    private final CassandraOperationTracer tracer;
+    private final Host pinnedHost;
+    private final String keyspaceName;
+
+    public AbstractThriftAsyncOperationImpl(CassandraOperationTracer tracer, Host pinnedHost, String keyspaceName) {
+        this.tracer = tracer;
+        this.pinnedHost = pinnedHost;
+        this.keyspaceName = keyspaceName;
+    }
+
+    /**
+     * Issue the thrift call.  Must not block.
+     *
+     * @param client
+     * @param callback
+     * @throws TException
+     */
+    protected abstract void startCall(Cassandra.AsyncClient client, AsyncMethodCallback<C> callback) throws TException;
+
+    /**
+     * Convert the completed call into the operation result.  Thrift application exceptions
+     * (such as InvalidRequestException) are thrown from here.
+     *
+     * @param call
+     * @throws Exception
+     */
+    protected abstract R getResult(C call) throws Exception;
+
+    /**
+     * Start the operation on the client.  The callback is invoked exactly once, either from the
+     * selector thread or, if the call could not be started, from the calling thread.
+     *
+     * @param client
+     * @param callback
+     */
+    public void executeAsync(Cassandra.AsyncClient client, final FutureCallback<R> callback) {
+        tracer.start();
+        try {
+            startCall(client, new AsyncMethodCallback<C>() {
+                @Override
+                public void onComplete(C call) {
+                    R result;
+                    try {
+                        result = getResult(call);
+                    }
+                    catch (Exception e) {
+                        onError(e);
+                        return;
+                    }
+                    tracer.success();
+                    callback.onSuccess(result);
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    ConnectionException ce = ThriftConverter.ToConnectionPoolException(e);
+                    tracer.failure(ce);
+                    callback.onFailure(ce);
+                }
+            });
+        }
+        catch (Exception e) {
+            ConnectionException ce = ThriftConverter.ToConnectionPoolException(e);
+            tracer.failure(ce);
+            callback.onFailure(ce);
+        }
+    }
+
+    /**
+     * Blocking execution, for when the operation is run through ConnectionPool.executeWithFailover()
+     */
+    @Override
+    public R execute(Cassandra.AsyncClient client, ConnectionContext state) throws ConnectionException {
+        final SettableFuture<R> future = SettableFuture.create();
+        executeAsync(client, new FutureCallback<R>() {
+            @Override
+            public void onSuccess(R result) {
+                future.set(result);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                future.setException(t);
+            }
+        });
+
+        try {
+            return Uninterruptibles.getUninterruptibly(future);
+        }
+        catch (ExecutionException e) {
+            throw ThriftConverter.ToConnectionPoolException(e.getCause());
+        }
+    }
+
+    @Override
+    public ByteBuffer getRowKey() {
+        return null;
+    }
+
+    @Override
+    public String getKeyspace() {
+        return keyspaceName;
+    }
+
+    @Override
+    public Host getPinnedHost() {
+        return pinnedHost;
+    }
+}
@@ -241,7 +241,16 @@ public abstract class AbstractThriftMutationBatchImpl implements MutationBatch {
 
     @Override
     public void deserialize(ByteBuffer data) throws Exception {
-        ByteArrayInputStream in = new ByteArrayInputStream(data.array());
+        ByteArrayInputStream in;
+        if (data.hasArray()) {
+            in = new ByteArrayInputStream(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        }
+        else {
+            // e.g. a slice of a memory mapped file
+            byte[] bytes = new byte[data.remaining()];
+            data.duplicate().get(bytes);
+            in = new ByteArrayInputStream(bytes);
+        }
         TIOStreamTransport transport = new TIOStreamTransport(in);
         batch_mutate_args args = new batch_mutate_args();
 
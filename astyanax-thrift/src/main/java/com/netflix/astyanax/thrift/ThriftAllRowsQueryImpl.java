@@ -7,10 +7,9 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.atomic.AtomicReference;
 
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.ColumnOrSuperColumn;
 import org.apache.cassandra.thrift.ColumnParent;
 import org.apache.cassandra.thrift.KeyRange;
 import org.apache.cassandra.thrift.KeySlice;
@@ -43,6 +42,8 @@ import com.netflix.astyanax.query.AllRowsQuery;
 import com.netflix.astyanax.query.CheckpointManager;
 import com.netflix.astyanax.shallows.EmptyCheckpointManager;
 import com.netflix.astyanax.thrift.model.ThriftRowsSliceImpl;
+import com.netflix.astyanax.util.ScanProgress;
+import com.netflix.astyanax.util.TokenRangeScanner;
 
 public class ThriftAllRowsQueryImpl<K, C> implements AllRowsQuery<K, C> {
     private final static Logger LOG = LoggerFactory.getLogger(ThriftAllRowsQueryImpl.class);
@@ -56,6 +57,11 @@ public class ThriftAllRowsQueryImpl<K, C> implements AllRowsQuery<K, C> {
     private int     blockSize       = 100;
     private boolean repeatLastToken = true;
     private Integer nThreads;
+    private TokenRangeScanner scanner;
+    private int     maxInFlightPages;
+    private int     minPageSize;
+    private int     maxPageSize;
+    private volatile ScanProgress progress;
     private String  startToken      ;
     private String  endToken        ;
     private Boolean includeEmptyRows;
@@ -141,7 +147,6 @@ public class ThriftAllRowsQueryImpl<K, C> implements AllRowsQuery<K, C> {
     public void executeWithCallback(final RowCallback<K, C> callback) throws ConnectionException {
         final ThriftKeyspaceImpl keyspace = query.keyspace;
         final Partitioner partitioner = keyspace.getPartitioner();
-        final AtomicReference<ConnectionException> error = new AtomicReference<ConnectionException>();
         final boolean bIgnoreTombstones = shouldIgnoreEmptyRows();
 
         List<Pair<String, String>> ranges;
@@ -175,33 +180,32 @@ public class ThriftAllRowsQueryImpl<K, C> implements AllRowsQuery<K, C> {
                 }
             });
         }
-        final CountDownLatch doneSignal = new CountDownLatch(ranges.size());
+        final TokenRangeScanner rangeScanner = newScanner();
+        final TokenRangeScanner.Scan scan = newScan(rangeScanner);
+        this.progress = scan.getProgress();
 
         for (final Pair<String, String> tokenPair : ranges) {
             // Prepare the range of tokens for this token range
             final KeyRange range = new KeyRange()
-                    .setCount(getBlockSize())
                     .setStart_token(tokenPair.left)
                     .setEnd_token(tokenPair.right);
 
-            query.executor.submit(new Callable<Void>() {
+            scan.addRange(tokenPair.left, tokenPair.right, new TokenRangeScanner.PageReader() {
                 private boolean firstBlock = true;
                 
                 @Override
-                public Void call() throws Exception {
-                    if (error.get() == null && internalRun()) {
-                        query.executor.submit(this);
-                    }
-                    else {
-                        doneSignal.countDown();
-                    }
-                    return null;
-                }
-
-                private boolean internalRun() throws Exception {
+                public boolean readPage(ScanProgress.RangeProgress progress) throws Exception {
+                    // Make sure the page reaches past the row repeated from the previous page, otherwise a
+                    // page of 1 would only ever return that row
+                    final int pageSize = (getRepeatLastToken() && !firstBlock)
+                            ? Math.max(progress.getPageSize(), 2)
+                            : progress.getPageSize();
+                    range.setCount(pageSize);
+
+                    // Get the next block
+                    List<KeySlice> ks;
                     try {
-                        // Get the next block
-                        List<KeySlice> ks = keyspace.connectionPool.executeWithFailover(
+                        ks = keyspace.connectionPool.executeWithFailover(
                                 new AbstractKeyspaceOperationImpl<List<KeySlice>>(keyspace.tracerFactory
                                         .newTracer(CassandraOperationType.GET_ROWS_RANGE,
                                                 columnFamily), query.pinnedHost, keyspace
@@ -222,85 +226,146 @@ public class ThriftAllRowsQueryImpl<K, C> implements AllRowsQuery<K, C> {
                                         return null;
                                     }
                                 }, query.retry.duplicate()).getResult();
-
-                        // Notify the callback
-                        if (!ks.isEmpty()) {
-                            KeySlice lastRow = Iterables.getLast(ks);
-                            boolean bContinue = (ks.size() == getBlockSize());
-
-                            if (getRepeatLastToken()) {
-                                if (firstBlock) {
-                                    firstBlock = false;
-                                }
-                                else {
-                                    ks.remove(0);
-                                }
-                            }
-                            
-                            if (bIgnoreTombstones) {
-                                Iterator<KeySlice> iter = ks.iterator();
-                                while (iter.hasNext()) {
-                                    if (iter.next().getColumnsSize() == 0)
-                                        iter.remove();
-                                }
-                            }
-                            Rows<K, C> rows = new ThriftRowsSliceImpl<K, C>(ks, columnFamily
-                                    .getKeySerializer(), columnFamily.getColumnSerializer());
-                            try {
-                                callback.success(rows);
-                            }
-                            catch (Throwable t) {
-                                ConnectionException ce = ThriftConverter.ToConnectionPoolException(t);
-                                error.set(ce);
-                                return false;
-                            }
-                            
-                            if (bContinue) {
-                                // Determine the start token for the next page
-                                String token = partitioner.getTokenForKey(lastRow.bufferForKey()).toString();
-                                checkpointManager.trackCheckpoint(tokenPair.left, token);
-                                if (getRepeatLastToken()) {
-                                    range.setStart_token(partitioner.getTokenMinusOne(token));
-                                }
-                                else {
-                                    range.setStart_token(token);
-                                }
-                            }
-                            else {
-                                checkpointManager.trackCheckpoint(tokenPair.left, tokenPair.right);
-                                return false;
-                            }
-                        }
-                        else {
-                            checkpointManager.trackCheckpoint(tokenPair.left, tokenPair.right);
-                            return false;
-                        }
                     }
                     catch (Exception e) {
+                        // Retry the same page if the callback wants to continue
                         ConnectionException ce = ThriftConverter.ToConnectionPoolException(e);
                         if (!callback.failure(ce)) {
-                            error.set(ce);
-                            return false;
+                            throw ce;
                         }
+                        return true;
+                    }
+                    progress.pageFetched(ks.size(), sizeOf(ks));
+
+                    if (ks.isEmpty()) {
+                        checkpointManager.trackCheckpoint(tokenPair.left, tokenPair.right);
+                        return false;
                     }
 
+                    // Notify the callback
+                    KeySlice lastRow = Iterables.getLast(ks);
+                    boolean bContinue = (ks.size() == pageSize);
+
+                    if (getRepeatLastToken()) {
+                        if (firstBlock) {
+                            firstBlock = false;
+                        }
+                        else {
+                            ks.remove(0);
+                        }
+                    }
+                    
+                    if (bIgnoreTombstones) {
+                        Iterator<KeySlice> iter = ks.iterator();
+                        while (iter.hasNext()) {
+                            if (iter.next().getColumnsSize() == 0)
+                                iter.remove();
+                        }
+                    }
+                    Rows<K, C> rows = new ThriftRowsSliceImpl<K, C>(ks, columnFamily
+                            .getKeySerializer(), columnFamily.getColumnSerializer());
+                    try {
+                        callback.success(rows);
+                    }
+                    catch (Throwable t) {
+                        throw ThriftConverter.ToConnectionPoolException(t);
+                    }
+                    
+                    if (!bContinue) {
+                        checkpointManager.trackCheckpoint(tokenPair.left, tokenPair.right);
+                        return false;
+                    }
+                    
+                    // Determine the start token for the next page
+                    String token = partitioner.getTokenForKey(lastRow.bufferForKey()).toString();
+                    checkpointManager.trackCheckpoint(tokenPair.left, token);
+                    progress.setCurrentToken(token);
+                    if (getRepeatLastToken()) {
+                        range.setStart_token(partitioner.getTokenMinusOne(token));
+                    }
+                    else {
+                        range.setStart_token(token);
+                    }
                     return true;
                 }
             });
         }
-        // Block until all threads finish
+        
+        // Block until all ranges are done
         try {
-            doneSignal.await();
+            scan.execute();
         }
         catch (InterruptedException e) {
             LOG.debug("Execution interrupted on get all rows for keyspace " + keyspace.getKeyspaceName());
         }
+        finally {
+            if (rangeScanner != scanner) {
+                rangeScanner.shutdown();
+            }
+        }
 
-        if (error.get() != null) {
-            throw error.get();
+        List<Exception> errors = scan.getErrors();
+        if (!errors.isEmpty()) {
+            throw ThriftConverter.ToConnectionPoolException(errors.get(0));
         }
     }
     
+    private TokenRangeScanner newScanner() {
+        if (scanner != null) {
+            return scanner;
+        }
+        return getConcurrencyLevel() != null 
+                ? TokenRangeScanner.forConcurrencyLevel(getConcurrencyLevel()) 
+                : TokenRangeScanner.getShared();
+    }
+    
+    private TokenRangeScanner.Scan newScan(TokenRangeScanner rangeScanner) {
+        TokenRangeScanner.Scan scan = rangeScanner.newScan()
+                .withMaxInFlightPages(maxInFlightPages);
+        if (minPageSize > 0 && maxPageSize > 0) {
+            scan.withAdaptivePageSize(getBlockSize(), minPageSize, maxPageSize);
+        }
+        else {
+            scan.withPageSize(getBlockSize());
+        }
+        return scan;
+    }
+    
+    /**
+     * Size of the raw keys, names and values of a page
+     */
+    private static long sizeOf(List<KeySlice> slices) {
+        long bytes = 0;
+        for (KeySlice slice : slices) {
+            bytes += slice.bufferForKey().remaining();
+            if (slice.getColumns() == null)
+                continue;
+            for (ColumnOrSuperColumn cosc : slice.getColumns()) {
+                if (cosc.isSetColumn()) {
+                    bytes += sizeOf(cosc.getColumn());
+                }
+                else if (cosc.isSetCounter_column()) {
+                    bytes += cosc.getCounter_column().bufferForName().remaining() + 8;
+                }
+                else if (cosc.isSetSuper_column()) {
+                    bytes += cosc.getSuper_column().bufferForName().remaining();
+                    for (Column column : cosc.getSuper_column().getColumns()) {
+                        bytes += sizeOf(column);
+                    }
+                }
+                else if (cosc.isSetCounter_super_column()) {
+                    bytes += cosc.getCounter_super_column().bufferForName().remaining()
+                           + cosc.getCounter_super_column().getColumnsSize() * 16;
+                }
+            }
+        }
+        return bytes;
+    }
+    
+    private static long sizeOf(Column column) {
+        return column.bufferForName().remaining() + (column.isSetValue() ? column.bufferForValue().remaining() : 0);
+    }
+    
     public AllRowsQuery<K, C> setExceptionCallback(ExceptionCallback cb) {
         exceptionCallback = cb;
         return this;
@@ -323,6 +388,30 @@ public class ThriftAllRowsQueryImpl<K, C> implements AllRowsQuery<K, C> {
     }
 
 
+    @Override
+    public AllRowsQuery<K, C> withScanner(TokenRangeScanner scanner) {
+        this.scanner = scanner;
+        return this;
+    }
+
+    @Override
+    public AllRowsQuery<K, C> setMaxInFlightPages(int maxInFlightPages) {
+        this.maxInFlightPages = maxInFlightPages;
+        return this;
+    }
+
+    @Override
+    public AllRowsQuery<K, C> setAdaptivePageSize(int minPageSize, int maxPageSize) {
+        this.minPageSize = minPageSize;
+        this.maxPageSize = maxPageSize;
+        return this;
+    }
+
+    @Override
+    public ScanProgress getProgress() {
+        return progress;
+    }
+
     @Override
     public AllRowsQuery<K, C> setCheckpointManager(CheckpointManager manager) {
         this.checkpointManager = manager;
@@ -0,0 +1,475 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.thrift;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.cassandra.thrift.AuthenticationRequest;
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.thrift.TException;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.apache.thrift.async.TAsyncClientManager;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TNonblockingSocket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.netflix.astyanax.AstyanaxConfiguration;
+import com.netflix.astyanax.AuthenticationCredentials;
+import com.netflix.astyanax.CassandraOperationType;
+import com.netflix.astyanax.KeyspaceTracerFactory;
+import com.netflix.astyanax.connectionpool.Connection;
+import com.netflix.astyanax.connectionpool.ConnectionFactory;
+import com.netflix.astyanax.connectionpool.ConnectionPoolConfiguration;
+import com.netflix.astyanax.connectionpool.ConnectionPoolMonitor;
+import com.netflix.astyanax.connectionpool.Host;
+import com.netflix.astyanax.connectionpool.HostConnectionPool;
+import com.netflix.astyanax.connectionpool.Operation;
+import com.netflix.astyanax.connectionpool.OperationResult;
+import com.netflix.astyanax.connectionpool.RateLimiter;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.connectionpool.exceptions.IsTimeoutException;
+import com.netflix.astyanax.connectionpool.exceptions.ThrottledException;
+import com.netflix.astyanax.connectionpool.impl.OperationResultImpl;
+import com.netflix.astyanax.connectionpool.impl.SimpleRateLimiterImpl;
+import com.netflix.astyanax.shallows.EmptyKeyspaceTracerFactory;
+
+/**
+ * Connection factory for non blocking {@link Cassandra.AsyncClient} connections.
+ *
+ * <p>
+ * All connections created by this factory share a small number of {@link TAsyncClientManager}s, each
+ * of which runs a single selector thread.  A thrift async client can only have one outstanding call, so
+ * requests are not multiplexed over a connection and a connection rejects a second call while one is in
+ * flight.  Concurrency comes from the number of pooled connections, not from threads.  Thousands of requests
+ * may be in flight against a pool with a high maxConnsPerHost while only the selector threads are busy.
+ * </p>
+ *
+ * <p>
+ * Results are delivered on the selector threads.  Callbacks attached to futures completed by this
+ * factory's connections must therefore not block.  SSL is not supported by thrift's non blocking transport.
+ * </p>
+ *
+ * @see ThriftAsyncOperationExecutor
+ */
+public class ThriftAsyncConnectionFactoryImpl implements ConnectionFactory<Cassandra.AsyncClient> {
+    private static final String NAME_FORMAT = "ThriftAsyncConnection<%s-%d>";
+    private static final Logger LOG = LoggerFactory.getLogger(ThriftAsyncConnectionFactoryImpl.class);
+    private final static ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true)
+            .build());
+
+    public static final int DEFAULT_SELECTOR_THREAD_COUNT = 2;
+
+    private final AtomicLong idCounter = new AtomicLong(0);
+    private final AtomicInteger nextManager = new AtomicInteger(0);
+    private final TAsyncClientManager[] managers;
+    private final RateLimiter limiter;
+    private final ConnectionPoolConfiguration cpConfig;
+    private final KeyspaceTracerFactory tracerFactory;
+    private final ConnectionPoolMonitor monitor;
+    private final AstyanaxConfiguration asConfig;
+
+    public ThriftAsyncConnectionFactoryImpl(AstyanaxConfiguration asConfig, ConnectionPoolConfiguration cpConfig, KeyspaceTracerFactory tracerFactory,
+            ConnectionPoolMonitor monitor) {
+        this(asConfig, cpConfig, tracerFactory, monitor, DEFAULT_SELECTOR_THREAD_COUNT);
+    }
+
+    public ThriftAsyncConnectionFactoryImpl(AstyanaxConfiguration asConfig, ConnectionPoolConfiguration cpConfig, KeyspaceTracerFactory tracerFactory,
+            ConnectionPoolMonitor monitor, int selectorThreadCount) {
+        Preconditions.checkArgument(selectorThreadCount > 0, "selectorThreadCount must be >0");
+        Preconditions.checkArgument(cpConfig.getSSLConnectionContext() == null,
+                "SSL is not supported for non blocking thrift connections");
+        this.cpConfig = cpConfig;
+        this.asConfig = asConfig;
+        this.limiter = new SimpleRateLimiterImpl(cpConfig);
+        this.tracerFactory = tracerFactory;
+        this.monitor = monitor;
+        this.managers = new TAsyncClientManager[selectorThreadCount];
+        try {
+            for (int i = 0; i < selectorThreadCount; i++) {
+                managers[i] = new TAsyncClientManager();
+            }
+        }
+        catch (IOException e) {
+            shutdown();
+            throw new RuntimeException("Failed to start thrift selector thread", e);
+        }
+    }
+
+    @Override
+    public Connection<Cassandra.AsyncClient> createConnection(final HostConnectionPool<Cassandra.AsyncClient> pool)
+            throws ThrottledException {
+        if (limiter.check() == false) {
+            throw new ThrottledException("Too many connection attempts");
+        }
+
+        return new ThriftAsyncConnection(pool, managers[(nextManager.getAndIncrement() & Integer.MAX_VALUE) % managers.length]);
+    }
+
+    /**
+     * Stop the selector threads.  Any call still in flight will not complete.  Should be called
+     * after the connection pool using this factory has been shut down.
+     */
+    public void shutdown() {
+        for (TAsyncClientManager manager : managers) {
+            if (manager != null)
+                manager.stop();
+        }
+    }
+
+    public class ThriftAsyncConnection implements Connection<Cassandra.AsyncClient> {
+        private final long id = idCounter.incrementAndGet();
+        private final TAsyncClientManager manager;
+        private Cassandra.AsyncClient cassandraClient;
+        private TNonblockingSocket socket;
+        private AtomicLong operationCounter = new AtomicLong();
+        private AtomicBoolean closed = new AtomicBoolean(false);
+        private AtomicBoolean inFlight = new AtomicBoolean(false);
+
+        private volatile ConnectionException lastException = null;
+        private volatile String keyspaceName;
+
+        private final HostConnectionPool<Cassandra.AsyncClient> pool;
+
+        private Map<String, Object> metadata = Maps.newHashMap();
+
+        public ThriftAsyncConnection(HostConnectionPool<Cassandra.AsyncClient> pool, TAsyncClientManager manager) {
+            this.pool = pool;
+            this.manager = manager;
+        }
+
+        /**
+         * Blocking execution.  Must not be called from a selector thread.
+         */
+        @Override
+        public <R> OperationResult<R> execute(Operation<Cassandra.AsyncClient, R> op) throws ConnectionException {
+            if (!(op instanceof AbstractThriftAsyncOperationImpl)) {
+                throw ThriftConverter.ToConnectionPoolException(new UnsupportedOperationException(
+                        "Async connections can only execute " + AbstractThriftAsyncOperationImpl.class.getSimpleName()));
+            }
+
+            final SettableFuture<OperationResult<R>> future = SettableFuture.create();
+            executeAsync((AbstractThriftAsyncOperationImpl<?, R>) op, new FutureCallback<OperationResult<R>>() {
+                @Override
+                public void onSuccess(OperationResult<R> result) {
+                    future.set(result);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    future.setException(t);
+                }
+            });
+
+            try {
+                return Uninterruptibles.getUninterruptibly(future);
+            }
+            catch (ExecutionException e) {
+                throw ThriftConverter.ToConnectionPoolException(e.getCause());
+            }
+        }
+
+        /**
+         * Execute the operation without blocking.  The keyspace is set first if it changed.  The callback
+         * is invoked from the selector thread once the response has been read, or with a ConnectionException
+         * if the operation failed.  Fails if another call is still in flight on this connection.
+         *
+         * @param op
+         * @param done
+         */
+        public <R> void executeAsync(final AbstractThriftAsyncOperationImpl<?, R> op, final FutureCallback<OperationResult<R>> done) {
+            if (!inFlight.compareAndSet(false, true)) {
+                done.onFailure(ThriftConverter.ToConnectionPoolException(new IllegalStateException(
+                        "Connection " + this + " already has a call in flight")));
+                return;
+            }
+
+            final FutureCallback<OperationResult<R>> callback = new FutureCallback<OperationResult<R>>() {
+                @Override
+                public void onSuccess(OperationResult<R> result) {
+                    inFlight.set(false);
+                    done.onSuccess(result);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    inFlight.set(false);
+                    done.onFailure(t);
+                }
+            };
+
+            operationCounter.incrementAndGet();
+            lastException = null;
+
+            final String opKeyspace = op.getKeyspace();
+            if (opKeyspace == null || opKeyspace.equals(keyspaceName)) {
+                executeOperation(op, callback);
+                return;
+            }
+
+            // Set a new keyspace, and cql version if configured, before running the operation
+            executeOperation(new AbstractThriftAsyncOperationImpl<Cassandra.AsyncClient.set_keyspace_call, Void>(
+                    tracerFactory.newTracer(CassandraOperationType.SET_KEYSPACE), null, null) {
+                @Override
+                protected void startCall(Cassandra.AsyncClient client, AsyncMethodCallback<Cassandra.AsyncClient.set_keyspace_call> callback) throws TException {
+                    client.set_keyspace(opKeyspace, callback);
+                }
+
+                @Override
+                protected Void getResult(Cassandra.AsyncClient.set_keyspace_call call) throws Exception {
+                    call.getResult();
+                    return null;
+                }
+            }, new FutureCallback<OperationResult<Void>>() {
+                @Override
+                public void onSuccess(OperationResult<Void> result) {
+                    if (asConfig.getCqlVersion() == null) {
+                        keyspaceName = opKeyspace;
+                        executeOperation(op, callback);
+                        return;
+                    }
+
+                    executeOperation(new AbstractThriftAsyncOperationImpl<Cassandra.AsyncClient.set_cql_version_call, Void>(
+                            tracerFactory.newTracer(CassandraOperationType.SET_KEYSPACE), null, null) {
+                        @Override
+                        protected void startCall(Cassandra.AsyncClient client, AsyncMethodCallback<Cassandra.AsyncClient.set_cql_version_call> callback) throws TException {
+                            client.set_cql_version(asConfig.getCqlVersion(), callback);
+                        }
+
+                        @Override
+                        protected Void getResult(Cassandra.AsyncClient.set_cql_version_call call) throws Exception {
+                            call.getResult();
+                            return null;
+                        }
+                    }, new FutureCallback<OperationResult<Void>>() {
+                        @Override
+                        public void onSuccess(OperationResult<Void> result) {
+                            keyspaceName = opKeyspace;
+                            executeOperation(op, callback);
+                        }
+
+                        @Override
+                        public void onFailure(Throwable t) {
+                            callback.onFailure(t);
+                        }
+                    });
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    callback.onFailure(t);
+                }
+            });
+        }
+
+        private <R> void executeOperation(final AbstractThriftAsyncOperationImpl<?, R> op, final FutureCallback<OperationResult<R>> callback) {
+            final long startTime = System.nanoTime();
+            op.executeAsync(cassandraClient, new FutureCallback<R>() {
+                @Override
+                public void onSuccess(R result) {
+                    long now = System.nanoTime();
+                    long latency = now - startTime;
+                    pool.addLatencySample(latency, now);
+                    callback.onSuccess(new OperationResultImpl<R>(getHost(), result, latency));
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    long now = System.nanoTime();
+                    long latency = now - startTime;
+                    lastException = ThriftConverter.ToConnectionPoolException(t).setLatency(latency);
+                    if (lastException instanceof IsTimeoutException) {
+                        pool.addLatencySample(TimeUnit.NANOSECONDS.convert(cpConfig.getSocketTimeout(), TimeUnit.MILLISECONDS), now);
+                    }
+                    callback.onFailure(lastException);
+                }
+            });
+        }
+
+        @Override
+        public void open() throws ConnectionException {
+            if (cassandraClient != null) {
+                throw new IllegalStateException("Open called on already open connection");
+            }
+
+            long startTime = System.currentTimeMillis();
+            SocketChannel channel = null;
+            try {
+                // Connect up front, rather than lazily from the selector thread, so that connect
+                // errors and the connect timeout behave the same as for the sync connections
+                channel = SocketChannel.open();
+                channel.socket().setTcpNoDelay(true);
+                channel.socket().setKeepAlive(true);
+                channel.socket().setSoLinger(false, 0);
+                channel.socket().connect(new InetSocketAddress(getHost().getIpAddress(), getHost().getPort()),
+                        cpConfig.getConnectTimeout());
+                channel.configureBlocking(false);
+
+                socket = new TNonblockingSocket(channel);
+                cassandraClient = new Cassandra.AsyncClient(new TBinaryProtocol.Factory(), manager, socket);
+                cassandraClient.setTimeout(cpConfig.getSocketTimeout());
+                monitor.incConnectionCreated(getHost());
+
+                AuthenticationCredentials credentials = cpConfig.getAuthenticationCredentials();
+                if (credentials != null) {
+                    final Map<String, String> thriftCredentials = Maps.newHashMapWithExpectedSize(2);
+                    thriftCredentials.put("username", credentials.getUsername());
+                    thriftCredentials.put("password", credentials.getPassword());
+                    // Login is not traced, same as for the sync connections
+                    execute(new AbstractThriftAsyncOperationImpl<Cassandra.AsyncClient.login_call, Void>(
+                            EmptyKeyspaceTracerFactory.getInstance().newTracer(CassandraOperationType.SET_KEYSPACE), null, null) {
+                        @Override
+                        protected void startCall(Cassandra.AsyncClient client, AsyncMethodCallback<Cassandra.AsyncClient.login_call> callback) throws TException {
+                            client.login(new AuthenticationRequest(thriftCredentials), callback);
+                        }
+
+                        @Override
+                        protected Void getResult(Cassandra.AsyncClient.login_call call) throws Exception {
+                            call.getResult();
+                            return null;
+                        }
+                    });
+                }
+            }
+            catch (Exception e) {
+                pool.addLatencySample(TimeUnit.NANOSECONDS.convert(cpConfig.getSocketTimeout(), TimeUnit.MILLISECONDS), System.nanoTime());
+                closeClient(channel);
+                ConnectionException ce = ThriftConverter.ToConnectionPoolException(e).setHost(getHost())
+                        .setLatency(System.currentTimeMillis() - startTime);
+                monitor.incConnectionCreateFailed(getHost(), ce);
+                throw ce;
+            }
+            catch (Throwable t) {
+                LOG.error("Error creating connection", t);
+                pool.addLatencySample(TimeUnit.NANOSECONDS.convert(cpConfig.getSocketTimeout(), TimeUnit.MILLISECONDS), System.nanoTime());
+                closeClient(channel);
+                ConnectionException ce = ThriftConverter.ToConnectionPoolException(new RuntimeException("Error openning connection", t)).setHost(getHost())
+                        .setLatency(System.currentTimeMillis() - startTime);
+                monitor.incConnectionCreateFailed(getHost(), ce);
+                throw ce;
+            }
+        }
+
+        @Override
+        public void openAsync(final AsyncOpenCallback<Cassandra.AsyncClient> callback) {
+            final Connection<Cassandra.AsyncClient> This = this;
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        open();
+                        callback.success(This);
+                    }
+                    catch (Exception e) {
+                        pool.addLatencySample(TimeUnit.NANOSECONDS.convert(cpConfig.getSocketTimeout(), TimeUnit.MILLISECONDS), System.nanoTime());
+                        callback.failure(This, ThriftConverter.ToConnectionPoolException(e));
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                monitor.incConnectionClosed(getHost(), lastException);
+                closeClient(null);
+            }
+        }
+
+        private void closeClient(SocketChannel channel) {
+            if (socket != null) {
+                socket.close();
+                socket = null;
+            }
+            else if (channel != null) {
+                try {
+                    channel.close();
+                }
+                catch (Exception e) {
+                }
+            }
+        }
+
+        @Override
+        public HostConnectionPool<Cassandra.AsyncClient> getHostConnectionPool() {
+            return pool;
+        }
+
+        @Override
+        public ConnectionException getLastException() {
+            return lastException;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(NAME_FORMAT, getHost().getHostName(), id);
+        }
+
+        /**
+         * Compares the toString of these clients
+         */
+        @Override
+        public boolean equals(Object obj) {
+            return toString().equals(obj.toString());
+        }
+
+        @Override
+        public int hashCode() {
+            return toString().hashCode();
+        }
+
+        @Override
+        public long getOperationCount() {
+            return operationCounter.get();
+        }
+
+        @Override
+        public Host getHost() {
+            return pool.getHost();
+        }
+
+        @Override
+        public void setMetadata(String key, Object data) {
+            metadata.put(key, data);
+        }
+
+        @Override
+        public Object getMetadata(String key) {
+            return metadata.get(key);
+        }
+
+        @Override
+        public boolean hasMetadata(String key) {
+            return metadata.containsKey(key);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.thrift;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.cassandra.thrift.Cassandra;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.netflix.astyanax.connectionpool.Connection;
+import com.netflix.astyanax.connectionpool.ConnectionPool;
+import com.netflix.astyanax.connectionpool.ConnectionPoolConfiguration;
+import com.netflix.astyanax.connectionpool.ConnectionPoolMonitor;
+import com.netflix.astyanax.connectionpool.HostConnectionPool;
+import com.netflix.astyanax.connectionpool.OperationResult;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.connectionpool.exceptions.IsRetryableException;
+import com.netflix.astyanax.connectionpool.exceptions.NoAvailableHostsException;
+import com.netflix.astyanax.connectionpool.exceptions.OperationException;
+import com.netflix.astyanax.connectionpool.impl.TokenHostConnectionPoolPartition;
+import com.netflix.astyanax.retry.RetryPolicies;
+import com.netflix.astyanax.retry.RetryPolicy;
+import com.netflix.astyanax.shallows.EmptyOperationFilterFactory;
+import com.netflix.astyanax.thrift.ThriftAsyncConnectionFactoryImpl.ThriftAsyncConnection;
+
+/**
+ * Executes {@link AbstractThriftAsyncOperationImpl}s against a connection pool of non blocking
+ * connections created by {@link ThriftAsyncConnectionFactoryImpl}, with the same failover and
+ * retry semantics as ConnectionPool.executeWithFailover() but without holding a thread while the
+ * request is in flight.
+ *
+ * <ul>
+ * <li>Hosts are chosen from the token range of the operation's row key (all hosts if there is no row key),
+ *     or the pinned host.  Unsorted partitions are walked round robin.</li>
+ * <li>Retryable errors fail over to the next host up to maxFailoverCount times.</li>
+ * <li>Once failover is exhausted the {@link RetryPolicy} is consulted.  Its backoff is scheduled on
+ *     the connection pool's maintenance scheduler instead of sleeping.</li>
+ * </ul>
+ *
+ * The first attempt runs on the calling thread, which may block on borrowing a connection when the pool is
+ * exhausted, exactly like the sync path.  Follow up attempts are handed off to the supplied executor so that
+ * borrowing or opening a connection never happens on a selector thread.  The returned futures are completed
+ * from the selector threads.
+ *
+ * The executor is not created by AstyanaxContext or ThriftFamilyFactory.  Build a connection pool of
+ * {@link Cassandra.AsyncClient}s with a {@link ThriftAsyncConnectionFactoryImpl}, keep its hosts up to date
+ * alongside the regular pool and pass the executor to {@link ThriftKeyspaceImpl}.  Only mutation batches and
+ * single row slice queries run on it, everything else uses the regular pool.
+ *
+ * Operation filters are not applied to async operations, so a configuration with an operation filter
+ * factory is rejected.
+ */
+public class ThriftAsyncOperationExecutor {
+    private static final int MAX_RR_COUNTER = Integer.MAX_VALUE / 2;
+
+    private final ConnectionPool<Cassandra.AsyncClient> connectionPool;
+    private final ConnectionPoolConfiguration config;
+    private final ConnectionPoolMonitor monitor;
+    private final Executor executor;
+    private final AtomicInteger roundRobinCounter = new AtomicInteger(0);
+
+    /**
+     * @param connectionPool    Pool of connections created by a {@link ThriftAsyncConnectionFactoryImpl}
+     * @param config            Configuration of the pool
+     * @param monitor           Monitor of the pool
+     * @param executor          Executor for failover and retry attempts, such as AstyanaxConfiguration.getAsyncExecutor()
+     */
+    public ThriftAsyncOperationExecutor(ConnectionPool<Cassandra.AsyncClient> connectionPool, ConnectionPoolConfiguration config,
+            ConnectionPoolMonitor monitor, Executor executor) {
+        Preconditions.checkArgument(config.getOperationFilterFactory() == null
+                || config.getOperationFilterFactory() instanceof EmptyOperationFilterFactory,
+                "Operation filters are not supported for non blocking thrift connections");
+        this.connectionPool = connectionPool;
+        this.config = config;
+        this.monitor = monitor;
+        this.executor = executor;
+    }
+
+    /**
+     * Execute the operation with failover and retries.  Failures are reported through the future as
+     * a ConnectionException.
+     *
+     * @param op
+     * @param retry  Retry policy for this operation only.  The policy must not be shared with concurrent executions.
+     */
+    public <R> ListenableFuture<OperationResult<R>> execute(AbstractThriftAsyncOperationImpl<?, R> op, RetryPolicy retry) {
+        AsyncExecution<R> execution = new AsyncExecution<R>(op, retry);
+        execution.start();
+        return execution.future;
+    }
+
+    private int nextRoundRobinIndex() {
+        int index = roundRobinCounter.incrementAndGet();
+        if (index > MAX_RR_COUNTER) {
+            roundRobinCounter.set(0);
+        }
+        return index;
+    }
+
+    /**
+     * State of one call to execute().  Only one attempt is in flight at any time so the fields
+     * are handed from thread to thread through the executor, scheduler and selector thread.
+     */
+    private class AsyncExecution<R> {
+        private final AbstractThriftAsyncOperationImpl<?, R> op;
+        private final RetryPolicy retry;
+        private final SettableFuture<OperationResult<R>> future = SettableFuture.create();
+
+        private List<HostConnectionPool<Cassandra.AsyncClient>> pools;
+        private HostConnectionPool<Cassandra.AsyncClient> pool;
+        private int index;
+        private int retryCountdown;
+        private int waitDelta;
+        private int attemptCounter = 0;
+        private long startTime;
+        private long poolStartTime;
+
+        AsyncExecution(AbstractThriftAsyncOperationImpl<?, R> op, RetryPolicy retry) {
+            this.op = op;
+            this.retry = retry;
+        }
+
+        void start() {
+            retry.begin();
+            startFailover(true);
+        }
+
+        /**
+         * Start a new round of failover across the hosts of the partition
+         */
+        private void startFailover(boolean isCallerThread) {
+            try {
+                if (op.getPinnedHost() != null) {
+                    HostConnectionPool<Cassandra.AsyncClient> pinnedPool = connectionPool.getHostPool(op.getPinnedHost());
+                    if (pinnedPool == null) {
+                        throw new NoAvailableHostsException("Host " + op.getPinnedHost() + " not active");
+                    }
+                    pools = Collections.singletonList(pinnedPool);
+                    index = 0;
+                }
+                else {
+                    TokenHostConnectionPoolPartition<Cassandra.AsyncClient> partition = connectionPool.getTopology().getPartition(op.getRowKey());
+                    pools = partition.getPools();
+                    if (pools == null || pools.isEmpty()) {
+                        throw new NoAvailableHostsException("No hosts to borrow from");
+                    }
+                    index = partition.isSorted() ? 0 : nextRoundRobinIndex();
+                }
+            }
+            catch (ConnectionException e) {
+                monitor.incOperationFailure(e.getHost(), e);
+                onRetryableFailure(e);
+                return;
+            }
+
+            retryCountdown = Math.min(config.getMaxFailoverCount(), pools.size());
+            if (retryCountdown < 0)
+                retryCountdown = pools.size();
+            else if (retryCountdown == 0)
+                retryCountdown = 1;
+
+            waitDelta = config.getMaxTimeoutWhenExhausted() / retryCountdown;
+            attemptCounter = 0;
+            poolStartTime = System.currentTimeMillis();
+            tryNextHost(isCallerThread);
+        }
+
+        private void tryNextHost(boolean isCallerThread) {
+            attemptCounter++;
+            pool = pools.get(index % pools.size());
+            index++;
+            if (index < 0)
+                index = 0;
+
+            final Connection<Cassandra.AsyncClient> connection;
+            try {
+                // Only the calling thread may wait for a connection
+                connection = pool.borrowConnection(isCallerThread ? waitDelta : 0);
+            }
+            catch (ConnectionException e) {
+                onFailure(e);
+                return;
+            }
+
+            startTime = System.currentTimeMillis();
+            ((ThriftAsyncConnection) connection).executeAsync(op, new FutureCallback<OperationResult<R>>() {
+                @Override
+                public void onSuccess(OperationResult<R> result) {
+                    connection.getHostConnectionPool().returnConnection(connection);
+                    result.setAttemptsCount(attemptCounter);
+                    monitor.incOperationSuccess(pool.getHost(), result.getLatency());
+                    retry.success();
+                    future.set(result);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    connection.getHostConnectionPool().returnConnection(connection);
+                    AsyncExecution.this.onFailure(ThriftConverter.ToConnectionPoolException(t));
+                }
+            });
+        }
+
+        private void onFailure(ConnectionException ce) {
+            ce.setHost(pool.getHost())
+              .setLatency(System.currentTimeMillis() - startTime)
+              .setAttempt(attemptCounter)
+              .setLatencyWithPool(System.currentTimeMillis() - poolStartTime);
+
+            if (ce instanceof IsRetryableException && --retryCountdown > 0) {
+                monitor.incFailover(ce.getHost(), ce);
+                submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        tryNextHost(false);
+                    }
+                }, 0);
+                return;
+            }
+
+            monitor.incOperationFailure(pool.getHost(), ce);
+            if (ce instanceof OperationException) {
+                retry.failure(ce);
+                future.setException(ce);
+                return;
+            }
+            onRetryableFailure(ce);
+        }
+
+        private void onRetryableFailure(ConnectionException ce) {
+            long delay = RetryPolicies.nextRetryDelay(retry);
+            if (delay < 0) {
+                retry.failure(ce);
+                future.setException(ce);
+                return;
+            }
+
+            submit(new Runnable() {
+                @Override
+                public void run() {
+                    startFailover(false);
+                }
+            }, delay);
+        }
+
+        private void submit(final Runnable runnable, long delay) {
+            try {
+                if (delay > 0) {
+                    config.getMaintainanceScheduler().schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            submit(runnable, 0);
+                        }
+                    }, delay, TimeUnit.MILLISECONDS);
+                }
+                else {
+                    executor.execute(runnable);
+                }
+            }
+            catch (Exception e) {
+                future.setException(ThriftConverter.ToConnectionPoolException(e));
+            }
+        }
+    }
+}
@@ -32,23 +32,30 @@ import org.apache.cassandra.thrift.ColumnParent;
 import org.apache.cassandra.thrift.CounterSuperColumn;
 import org.apache.cassandra.thrift.KeyRange;
 import org.apache.cassandra.thrift.Mutation;
+import org.apache.cassandra.thrift.SlicePredicate;
 import org.apache.cassandra.thrift.SuperColumn;
+import org.apache.thrift.TException;
+import org.apache.thrift.async.AsyncMethodCallback;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.netflix.astyanax.CassandraOperationType;
 import com.netflix.astyanax.KeyspaceTracerFactory;
 import com.netflix.astyanax.RowCopier;
+import com.netflix.astyanax.TokenAwareMultigetConfiguration;
 import com.netflix.astyanax.connectionpool.ConnectionContext;
 import com.netflix.astyanax.connectionpool.ConnectionPool;
 import com.netflix.astyanax.connectionpool.Host;
+import com.netflix.astyanax.connectionpool.Operation;
 import com.netflix.astyanax.connectionpool.OperationResult;
 import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.connectionpool.impl.OperationResultImpl;
 import com.netflix.astyanax.model.Column;
 import com.netflix.astyanax.model.ColumnFamily;
 import com.netflix.astyanax.model.ColumnList;
@@ -122,7 +129,7 @@ public class ThriftColumnFamilyQueryImpl<K, C> implements ColumnFamilyQuery<K, C
                 return new ColumnQuery<C>() {
                     @Override
                     public OperationResult<Column<C>> execute() throws ConnectionException {
-                        return connectionPool.executeWithFailover(new AbstractKeyspaceOperationImpl<Column<C>>(
+                        return connectionPool.executeWithFailover(new AbstractKeyspaceReadOperationImpl<Column<C>>(
                                 tracerFactory.newTracer(CassandraOperationType.GET_COLUMN, columnFamily), pinnedHost,
                                 keyspace.getKeyspaceName()) {
                             @Override
@@ -181,6 +188,53 @@ public class ThriftColumnFamilyQueryImpl<K, C> implements ColumnFamilyQuery<K, C
                 };
             }
 
+            /**
+             * Wrap the slice returned by get_slice and advance the pagination state
+             */
+            private ColumnList<C> toColumnList(List<ColumnOrSuperColumn> columnList) {
+                // Special handling for pagination
+                if (isPaginating && predicate.isSetSlice_range()) {
+                    // Did we reach the end of the query.
+                    if (columnList.size() != predicate.getSlice_range().getCount()) {
+                        paginateNoMore = true;
+                    }
+
+                    // If this is the first page then adjust the
+                    // count so we fetch one extra column
+                    // that will later be dropped
+                    if (firstPage) {
+                        firstPage = false;
+                        if (predicate.getSlice_range().getCount() != Integer.MAX_VALUE)
+                            predicate.getSlice_range().setCount(predicate.getSlice_range().getCount() + 1);
+                    }
+                    else {
+                        if (!columnList.isEmpty())
+                            columnList.remove(0);
+                    }
+
+                    // Set the start column for the next page to
+                    // the last column of this page.
+                    // We will discard this column later.
+                    if (!columnList.isEmpty()) {
+                        ColumnOrSuperColumn last = Iterables.getLast(columnList);
+                        if (last.isSetColumn()) {
+                            predicate.getSlice_range().setStart(last.getColumn().getName());
+                        } else if (last.isSetCounter_column()) {
+                            predicate.getSlice_range().setStart(last.getCounter_column().getName());
+                        } else if (last.isSetSuper_column()) {
+                            // TODO: Super columns
+                            // should be deprecated
+                            predicate.getSlice_range().setStart(last.getSuper_column().getName());
+                        } else if (last.isSetCounter_super_column()) {
+                            // TODO: Super columns
+                            // should be deprecated
+                            predicate.getSlice_range().setStart(last.getCounter_super_column().getName());
+                        }
+                    }
+                }
+                return new ThriftColumnOrSuperColumnListImpl<C>(columnList, columnFamily.getColumnSerializer());
+            }
+
             @Override
             public OperationResult<ColumnList<C>> execute() throws ConnectionException {
                 return connectionPool.executeWithFailover(
@@ -202,50 +256,7 @@ public class ThriftColumnFamilyQueryImpl<K, C> implements ColumnFamilyQuery<K, C
                                         .toByteBuffer(rowKey), new ColumnParent().setColumn_family(columnFamily
                                         .getName()), predicate, ThriftConverter
                                         .ToThriftConsistencyLevel(consistencyLevel));
-
-                                // Special handling for pagination
-                                if (isPaginating && predicate.isSetSlice_range()) {
-                                    // Did we reach the end of the query.
-                                    if (columnList.size() != predicate.getSlice_range().getCount()) {
-                                        paginateNoMore = true;
-                                    }
-
-                                    // If this is the first page then adjust the
-                                    // count so we fetch one extra column
-                                    // that will later be dropped
-                                    if (firstPage) {
-                                        firstPage = false;
-                                        if (predicate.getSlice_range().getCount() != Integer.MAX_VALUE)
-                                            predicate.getSlice_range().setCount(predicate.getSlice_range().getCount() + 1);
-                                    }
-                                    else {
-                                        if (!columnList.isEmpty())
-                                            columnList.remove(0);
-                                    }
-
-                                    // Set the start column for the next page to
-                                    // the last column of this page.
-                                    // We will discard this column later.
-                                    if (!columnList.isEmpty()) {
-                                        ColumnOrSuperColumn last = Iterables.getLast(columnList);
-                                        if (last.isSetColumn()) {
-                                            predicate.getSlice_range().setStart(last.getColumn().getName());
-                                        } else if (last.isSetCounter_column()) {
-                                            predicate.getSlice_range().setStart(last.getCounter_column().getName());
-                                        } else if (last.isSetSuper_column()) {
-                                            // TODO: Super columns
-                                            // should be deprecated
-                                            predicate.getSlice_range().setStart(last.getSuper_column().getName());
-                                        } else if (last.isSetCounter_super_column()) {
-                                            // TODO: Super columns
-                                            // should be deprecated
-                                            predicate.getSlice_range().setStart(last.getCounter_super_column().getName());
-                                        }
-                                    }
-                                }
-                                ColumnList<C> result = new ThriftColumnOrSuperColumnListImpl<C>(columnList,
-                                        columnFamily.getColumnSerializer());
-                                return result;
+                                return toColumnList(columnList);
                             }
 
                             @Override
@@ -260,7 +271,7 @@ public class ThriftColumnFamilyQueryImpl<K, C> implements ColumnFamilyQuery<K, C
                 return new ColumnCountQuery() {
                     @Override
                     public OperationResult<Integer> execute() throws ConnectionException {
-                        return connectionPool.executeWithFailover(new AbstractKeyspaceOperationImpl<Integer>(
+                        return connectionPool.executeWithFailover(new AbstractKeyspaceReadOperationImpl<Integer>(
                                 tracerFactory.newTracer(CassandraOperationType.GET_COLUMN_COUNT, columnFamily),
                                 pinnedHost, keyspace.getKeyspaceName()) {
                             @Override
@@ -291,12 +302,40 @@ public class ThriftColumnFamilyQueryImpl<K, C> implements ColumnFamilyQuery<K, C
 
             @Override
             public ListenableFuture<OperationResult<ColumnList<C>>> executeAsync() throws ConnectionException {
-                return executor.submit(new Callable<OperationResult<ColumnList<C>>>() {
-                    @Override
-                    public OperationResult<ColumnList<C>> call() throws Exception {
-                        return execute();
-                    }
-                });
+                if (keyspace.asyncExecutor == null) {
+                    return executor.submit(new Callable<OperationResult<ColumnList<C>>>() {
+                        @Override
+                        public OperationResult<ColumnList<C>> call() throws Exception {
+                            return execute();
+                        }
+                    });
+                }
+
+                if (isPaginating && paginateNoMore) {
+                    return Futures.<OperationResult<ColumnList<C>>>immediateFuture(
+                            new OperationResultImpl<ColumnList<C>>(Host.NO_HOST, new EmptyColumnList<C>(), 0));
+                }
+
+                return keyspace.asyncExecutor.execute(
+                        new AbstractThriftAsyncOperationImpl<Cassandra.AsyncClient.get_slice_call, ColumnList<C>>(tracerFactory.newTracer(
+                                CassandraOperationType.GET_ROW, columnFamily), pinnedHost, keyspace.getKeyspaceName()) {
+                            @Override
+                            protected void startCall(Cassandra.AsyncClient client, AsyncMethodCallback<Cassandra.AsyncClient.get_slice_call> callback) throws TException {
+                                client.get_slice(columnFamily.getKeySerializer().toByteBuffer(rowKey), 
+                                        new ColumnParent().setColumn_family(columnFamily.getName()), predicate, 
+                                        ThriftConverter.ToThriftConsistencyLevel(consistencyLevel), callback);
+                            }
+
+                            @Override
+                            protected ColumnList<C> getResult(Cassandra.AsyncClient.get_slice_call call) throws Exception {
+                                return toColumnList(call.getResult());
+                            }
+
+                            @Override
+                            public ByteBuffer getRowKey() {
+                                return columnFamily.getKeySerializer().toByteBuffer(rowKey);
+                            }
+                        }, retry.duplicate());
             }
 
             @Override
@@ -395,7 +434,7 @@ public class ThriftColumnFamilyQueryImpl<K, C> implements ColumnFamilyQuery<K, C
             @Override
             public OperationResult<Rows<K, C>> execute() throws ConnectionException {
                 return connectionPool.executeWithFailover(
-                        new AbstractKeyspaceOperationImpl<Rows<K, C>>(tracerFactory.newTracer(
+                        new AbstractKeyspaceReadOperationImpl<Rows<K, C>>(tracerFactory.newTracer(
                                 CassandraOperationType.GET_ROWS_RANGE, columnFamily), pinnedHost, keyspace
                                 .getKeyspaceName()) {
                             @Override
@@ -454,8 +493,11 @@ public class ThriftColumnFamilyQueryImpl<K, C> implements ColumnFamilyQuery<K, C
         return new AbstractRowSliceQueryImpl<K, C>(columnFamily.getColumnSerializer()) {
             @Override
             public OperationResult<Rows<K, C>> execute() throws ConnectionException {
+                if (isTokenAwareMultiget()) {
+                    return multigetSlice(columnFamily.getKeySerializer().toBytesList(keys), predicate);
+                }
                 return connectionPool.executeWithFailover(
-                        new AbstractKeyspaceOperationImpl<Rows<K, C>>(tracerFactory.newTracer(
+                        new AbstractKeyspaceReadOperationImpl<Rows<K, C>>(tracerFactory.newTracer(
                                 CassandraOperationType.GET_ROWS_SLICE, columnFamily), pinnedHost, keyspace
                                 .getKeyspaceName()) {
                             @Override
@@ -490,8 +532,11 @@ public class ThriftColumnFamilyQueryImpl<K, C> implements ColumnFamilyQuery<K, C
                 return new RowSliceColumnCountQuery<K>() {
                     @Override
                     public OperationResult<Map<K, Integer>> execute() throws ConnectionException {
+                        if (isTokenAwareMultiget()) {
+                            return multigetCount(columnFamily.getKeySerializer().toBytesList(keys), predicate);
+                        }
                         return connectionPool.executeWithFailover(
-                                new AbstractKeyspaceOperationImpl<Map<K, Integer>>(tracerFactory.newTracer(
+                                new AbstractKeyspaceReadOperationImpl<Map<K, Integer>>(tracerFactory.newTracer(
                                         CassandraOperationType.GET_ROWS_SLICE, columnFamily), pinnedHost, keyspace
                                         .getKeyspaceName()) {
                                     @Override
@@ -535,8 +580,11 @@ public class ThriftColumnFamilyQueryImpl<K, C> implements ColumnFamilyQuery<K, C
         return new AbstractRowSliceQueryImpl<K, C>(columnFamily.getColumnSerializer()) {
             @Override
             public OperationResult<Rows<K, C>> execute() throws ConnectionException {
+                if (isTokenAwareMultiget()) {
+                    return multigetSlice(columnFamily.getKeySerializer().toBytesList(keys), predicate);
+                }
                 return connectionPool.executeWithFailover(
-                        new AbstractKeyspaceOperationImpl<Rows<K, C>>(tracerFactory.newTracer(
+                        new AbstractKeyspaceReadOperationImpl<Rows<K, C>>(tracerFactory.newTracer(
                                 CassandraOperationType.GET_ROWS_SLICE, columnFamily), pinnedHost, keyspace
                                 .getKeyspaceName()) {
                             @Override
@@ -578,8 +626,11 @@ public class ThriftColumnFamilyQueryImpl<K, C> implements ColumnFamilyQuery<K, C
                 return new RowSliceColumnCountQuery<K>() {
                     @Override
                     public OperationResult<Map<K, Integer>> execute() throws ConnectionException {
+                        if (isTokenAwareMultiget()) {
+                            return multigetCount(columnFamily.getKeySerializer().toBytesList(keys), predicate);
+                        }
                         return connectionPool.executeWithFailover(
-                                new AbstractKeyspaceOperationImpl<Map<K, Integer>>(tracerFactory.newTracer(
+                                new AbstractKeyspaceReadOperationImpl<Map<K, Integer>>(tracerFactory.newTracer(
                                         CassandraOperationType.GET_ROWS_SLICE, columnFamily), pinnedHost, keyspace
                                         .getKeyspaceName()) {
                                     @Override
@@ -619,6 +670,90 @@ public class ThriftColumnFamilyQueryImpl<K, C> implements ColumnFamilyQuery<K, C
         };
     }
 
+    /**
+     * @return true if multi row reads are split by token range, which is configured with 
+     * {@link TokenAwareMultigetConfiguration#getMaxKeysPerMultiget()} and doesn't apply to queries pinned to a host
+     */
+    private boolean isTokenAwareMultiget() {
+        return pinnedHost == null && getMaxKeysPerMultiget() > 0;
+    }
+
+    private int getMaxKeysPerMultiget() {
+        if (keyspace.config instanceof TokenAwareMultigetConfiguration)
+            return ((TokenAwareMultigetConfiguration)keyspace.config).getMaxKeysPerMultiget();
+        return 0;
+    }
+
+    private OperationResult<Rows<K, C>> multigetSlice(List<ByteBuffer> keys, final SlicePredicate predicate)
+            throws ConnectionException {
+        OperationResult<Map<ByteBuffer, List<ColumnOrSuperColumn>>> result = new TokenAwareMultiget<List<ColumnOrSuperColumn>>(
+                connectionPool, executor, retry, getMaxKeysPerMultiget()) {
+            @Override
+            protected Operation<Client, Map<ByteBuffer, List<ColumnOrSuperColumn>>> newOperation(final List<ByteBuffer> group) {
+                return new AbstractKeyspaceReadOperationImpl<Map<ByteBuffer, List<ColumnOrSuperColumn>>>(
+                        tracerFactory.newTracer(CassandraOperationType.GET_ROWS_SLICE, columnFamily), keyspace.getKeyspaceName()) {
+                    @Override
+                    public Map<ByteBuffer, List<ColumnOrSuperColumn>> internalExecute(Client client, ConnectionContext context) throws Exception {
+                        return client.multiget_slice(group, new ColumnParent().setColumn_family(columnFamily.getName()),
+                                predicate, ThriftConverter.ToThriftConsistencyLevel(consistencyLevel));
+                    }
+
+                    @Override
+                    public ByteBuffer getRowKey() {
+                        return group.isEmpty() ? null : group.get(0);
+                    }
+                };
+            }
+        }.execute(keys);
+
+        Map<ByteBuffer, List<ColumnOrSuperColumn>> cfmap = result.getResult();
+        Rows<K, C> rows;
+        if (cfmap == null || cfmap.isEmpty()) {
+            rows = new EmptyRowsImpl<K, C>();
+        }
+        else {
+            rows = new ThriftRowsListImpl<K, C>(cfmap, columnFamily.getKeySerializer(), columnFamily.getColumnSerializer());
+        }
+        OperationResultImpl<Rows<K, C>> rowsResult = new OperationResultImpl<Rows<K, C>>(result.getHost(), rows, result.getLatency());
+        rowsResult.setAttemptsCount(result.getAttemptsCount());
+        return rowsResult;
+    }
+
+    private OperationResult<Map<K, Integer>> multigetCount(List<ByteBuffer> keys, final SlicePredicate predicate)
+            throws ConnectionException {
+        OperationResult<Map<ByteBuffer, Integer>> result = new TokenAwareMultiget<Integer>(
+                connectionPool, executor, retry, getMaxKeysPerMultiget()) {
+            @Override
+            protected Operation<Client, Map<ByteBuffer, Integer>> newOperation(final List<ByteBuffer> group) {
+                return new AbstractKeyspaceReadOperationImpl<Map<ByteBuffer, Integer>>(
+                        tracerFactory.newTracer(CassandraOperationType.GET_ROWS_SLICE, columnFamily), keyspace.getKeyspaceName()) {
+                    @Override
+                    public Map<ByteBuffer, Integer> internalExecute(Client client, ConnectionContext context) throws Exception {
+                        return client.multiget_count(group, new ColumnParent().setColumn_family(columnFamily.getName()),
+                                predicate, ThriftConverter.ToThriftConsistencyLevel(consistencyLevel));
+                    }
+
+                    @Override
+                    public ByteBuffer getRowKey() {
+                        return group.isEmpty() ? null : group.get(0);
+                    }
+                };
+            }
+        }.execute(keys);
+
+        Map<ByteBuffer, Integer> cfmap = result.getResult();
+        Map<K, Integer> counts;
+        if (cfmap == null || cfmap.isEmpty()) {
+            counts = Maps.newHashMap();
+        }
+        else {
+            counts = columnFamily.getKeySerializer().fromBytesMap(cfmap);
+        }
+        OperationResultImpl<Map<K, Integer>> countsResult = new OperationResultImpl<Map<K, Integer>>(result.getHost(), counts, result.getLatency());
+        countsResult.setAttemptsCount(result.getAttemptsCount());
+        return countsResult;
+    }
+
     @Override
     public ColumnFamilyQuery<K, C> setConsistencyLevel(ConsistencyLevel consistencyLevel) {
         this.consistencyLevel = consistencyLevel;
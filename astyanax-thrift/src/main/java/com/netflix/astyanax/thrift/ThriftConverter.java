@@ -48,6 +48,7 @@ import org.apache.thrift.transport.TTransportException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
@@ -196,6 +197,14 @@ public class ThriftConverter {
             }
             return new TransportException(e);
         }
+        else if (e instanceof java.util.concurrent.TimeoutException) {
+            // Call timed out on a non blocking connection
+            return new TimeoutException(e);
+        }
+        else if (e instanceof IOException) {
+            // Socket error on a non blocking connection
+            return new TransportException(e);
+        }
         else {
             // e.getCause().printStackTrace();
             return new UnknownException(e);
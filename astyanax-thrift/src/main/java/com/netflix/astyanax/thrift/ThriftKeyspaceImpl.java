@@ -29,13 +29,17 @@ import org.apache.cassandra.thrift.Cassandra.Client;
 import org.apache.cassandra.thrift.CfDef;
 import org.apache.cassandra.thrift.CounterColumn;
 import org.apache.cassandra.thrift.KsDef;
+import org.apache.thrift.TException;
+import org.apache.thrift.async.AsyncMethodCallback;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Function;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
@@ -103,12 +107,30 @@ public final class ThriftKeyspaceImpl implements Keyspace {
     private Host                  ddlHost = null;
     private volatile Partitioner  partitioner;
     
+    final ThriftAsyncOperationExecutor asyncExecutor;
+    
+    public ThriftKeyspaceImpl(
+            String ksName, 
+            ConnectionPool<Cassandra.Client> pool, 
+            AstyanaxConfiguration config,
+            final KeyspaceTracerFactory tracerFactory) {
+        this(ksName, pool, null, config, tracerFactory);
+    }
+
+    /**
+     * @param asyncExecutor  Executor for a pool of non blocking connections created by {@link ThriftAsyncConnectionFactoryImpl}.
+     *                       When set, mutation batches and single row slice queries execute asynchronously without tying
+     *                       up a thread of the async executor for the duration of the call.  Other operations still use the
+     *                       regular pool.  May be null.
+     */
     public ThriftKeyspaceImpl(
             String ksName, 
             ConnectionPool<Cassandra.Client> pool, 
+            ThriftAsyncOperationExecutor asyncExecutor,
             AstyanaxConfiguration config,
             final KeyspaceTracerFactory tracerFactory) {
         this.connectionPool = pool;
+        this.asyncExecutor  = asyncExecutor;
         this.config         = config;
         this.ksName         = ksName;
         this.executor       = MoreExecutors.listeningDecorator(config.getAsyncExecutor());
@@ -178,10 +200,80 @@ public final class ThriftKeyspaceImpl implements Keyspace {
 
             @Override
             public ListenableFuture<OperationResult<Void>> executeAsync() throws ConnectionException {
-                return executor.submit(new Callable<OperationResult<Void>>() {
+                if (asyncExecutor == null) {
+                    return executor.submit(new Callable<OperationResult<Void>>() {
+                        @Override
+                        public OperationResult<Void> call() throws Exception {
+                            return execute();
+                        }
+                    });
+                }
+
+                final WriteAheadLog wal = getWriteAheadLog();
+                final WriteAheadEntry walEntry;
+                if (wal != null) {
+                    walEntry = wal.createEntry();
+                    walEntry.writeMutation(this);
+                }
+                else {
+                    walEntry = null;
+                }
+
+                final AbstractThriftMutationBatchImpl batch = this;
+                final ByteBuffer rowKey = getMutationMap().size() == 1 ? getMutationMap().keySet().iterator().next() : null;
+                final AbstractThriftAsyncOperationImpl<?, Void> op;
+                if (useAtomicBatch()) {
+                    op = new AbstractThriftAsyncOperationImpl<Cassandra.AsyncClient.atomic_batch_mutate_call, Void>(
+                            tracerFactory.newTracer(CassandraOperationType.ATOMIC_BATCH_MUTATE), getPinnedHost(), getKeyspaceName()) {
+                        @Override
+                        protected void startCall(Cassandra.AsyncClient client, AsyncMethodCallback<Cassandra.AsyncClient.atomic_batch_mutate_call> callback) throws TException {
+                            client.atomic_batch_mutate(getMutationMap(), ThriftConverter.ToThriftConsistencyLevel(getConsistencyLevel()), callback);
+                        }
+
+                        @Override
+                        protected Void getResult(Cassandra.AsyncClient.atomic_batch_mutate_call call) throws Exception {
+                            call.getResult();
+                            return null;
+                        }
+
+                        @Override
+                        public ByteBuffer getRowKey() {
+                            return rowKey;
+                        }
+                    };
+                }
+                else {
+                    op = new AbstractThriftAsyncOperationImpl<Cassandra.AsyncClient.batch_mutate_call, Void>(
+                            tracerFactory.newTracer(CassandraOperationType.BATCH_MUTATE), getPinnedHost(), getKeyspaceName()) {
+                        @Override
+                        protected void startCall(Cassandra.AsyncClient client, AsyncMethodCallback<Cassandra.AsyncClient.batch_mutate_call> callback) throws TException {
+                            client.batch_mutate(getMutationMap(), ThriftConverter.ToThriftConsistencyLevel(getConsistencyLevel()), callback);
+                        }
+
+                        @Override
+                        protected Void getResult(Cassandra.AsyncClient.batch_mutate_call call) throws Exception {
+                            call.getResult();
+                            return null;
+                        }
+
+                        @Override
+                        public ByteBuffer getRowKey() {
+                            return rowKey;
+                        }
+                    };
+                }
+
+                // The returned future only completes once the batch was discarded, the same as when the sync
+                // execute returns, so a caller may reuse the batch as soon as it is woken up
+                return Futures.transform(asyncExecutor.execute(op, getRetryPolicy().duplicate()),
+                        new Function<OperationResult<Void>, OperationResult<Void>>() {
                     @Override
-                    public OperationResult<Void> call() throws Exception {
-                        return execute();
+                    public OperationResult<Void> apply(OperationResult<Void> result) {
+                        batch.discardMutations();
+                        if (walEntry != null) {
+                            wal.removeEntry(walEntry);
+                        }
+                        return result;
                     }
                 });
             }
@@ -191,6 +283,12 @@ public final class ThriftKeyspaceImpl implements Keyspace {
 				// This is a no-op when using Thrift
 				return this;
 			}
+
+			@Override
+			public MutationBatch withTokenAwareSplitting(boolean condition) {
+				// This is a no-op when using Thrift
+				return this;
+			}
         };
     }
 
@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.thrift;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.cassandra.thrift.Cassandra;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.netflix.astyanax.connectionpool.ConnectionPool;
+import com.netflix.astyanax.connectionpool.Operation;
+import com.netflix.astyanax.connectionpool.OperationResult;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.connectionpool.exceptions.InterruptedOperationException;
+import com.netflix.astyanax.connectionpool.exceptions.OperationException;
+import com.netflix.astyanax.connectionpool.impl.OperationResultImpl;
+import com.netflix.astyanax.connectionpool.impl.Topology;
+import com.netflix.astyanax.retry.RetryPolicy;
+
+/**
+ * Scatter/gather execution of a multi row read.
+ * 
+ * The keys are grouped by the token range that owns them and each group is split into requests of at most
+ * maxKeys keys.  The requests are executed in parallel and each is routed to a replica of its range through
+ * its first key, so no coordinator has to fan out across the ring.  Each request fails over and retries on
+ * its own with a copy of the retry policy, so a failed group doesn't repeat the groups that succeeded.
+ * 
+ * The calling thread executes requests itself until none are left that haven't been picked up by the
+ * executor, so a saturated or shared executor delays the read but can't dead lock it.
+ * 
+ * @param <R> Type of the per row result
+ */
+public abstract class TokenAwareMultiget<R> {
+    private final ConnectionPool<Cassandra.Client> connectionPool;
+    private final ListeningExecutorService         executor;
+    private final RetryPolicy                      retry;
+    private final int                              maxKeys;
+
+    /**
+     * @param connectionPool
+     * @param executor      Executor for all but the first request
+     * @param retry         Retry policy which is duplicated for each request
+     * @param maxKeys       Maximum number of keys per request
+     */
+    public TokenAwareMultiget(ConnectionPool<Cassandra.Client> connectionPool, ListeningExecutorService executor,
+            RetryPolicy retry, int maxKeys) {
+        this.connectionPool = connectionPool;
+        this.executor       = executor;
+        this.retry          = retry;
+        this.maxKeys        = maxKeys;
+    }
+
+    /**
+     * Create the operation that reads one group of keys.  The operation's row key must be one of the keys
+     * so that it is routed to a replica of the group.
+     * 
+     * @param keys
+     */
+    protected abstract Operation<Cassandra.Client, Map<ByteBuffer, R>> newOperation(List<ByteBuffer> keys);
+
+    /**
+     * Read all keys and merge the results in the order of the keys
+     * 
+     * @param keys
+     * @return Host of the first request and the total latency
+     * @throws ConnectionException from the first request that failed after all its retries
+     */
+    public OperationResult<Map<ByteBuffer, R>> execute(List<ByteBuffer> keys) throws ConnectionException {
+        long startTime = System.nanoTime();
+
+        List<List<ByteBuffer>> groups = partition(connectionPool.getTopology(), keys, maxKeys);
+        if (groups.size() <= 1) {
+            return connectionPool.executeWithFailover(newOperation(keys), retry);
+        }
+
+        List<ListenableFutureTask<OperationResult<Map<ByteBuffer, R>>>> tasks = Lists.newArrayListWithCapacity(groups.size() - 1);
+        for (final List<ByteBuffer> group : groups.subList(1, groups.size())) {
+            ListenableFutureTask<OperationResult<Map<ByteBuffer, R>>> task = ListenableFutureTask.create(
+                    new Callable<OperationResult<Map<ByteBuffer, R>>>() {
+                        @Override
+                        public OperationResult<Map<ByteBuffer, R>> call() throws Exception {
+                            return connectionPool.executeWithFailover(newOperation(group), retry.duplicate());
+                        }
+                    });
+            tasks.add(task);
+            try {
+                executor.execute(task);
+            }
+            catch (RejectedExecutionException e) {
+                // Executed below by the calling thread
+            }
+        }
+
+        boolean success = false;
+        try {
+            OperationResult<Map<ByteBuffer, R>> first = connectionPool.executeWithFailover(
+                    newOperation(groups.get(0)), retry.duplicate());
+            Map<ByteBuffer, R> merged = Maps.newHashMapWithExpectedSize(keys.size());
+            merged.putAll(first.getResult());
+            int attempts = first.getAttemptsCount();
+
+            // A task that was already started by the executor doesn't run again
+            for (ListenableFutureTask<OperationResult<Map<ByteBuffer, R>>> task : tasks) {
+                task.run();
+            }
+            for (ListenableFutureTask<OperationResult<Map<ByteBuffer, R>>> task : tasks) {
+                OperationResult<Map<ByteBuffer, R>> result = task.get();
+                merged.putAll(result.getResult());
+                attempts = Math.max(attempts, result.getAttemptsCount());
+            }
+
+            Map<ByteBuffer, R> ordered = Maps.newLinkedHashMap();
+            for (ByteBuffer key : keys) {
+                R value = merged.get(key);
+                if (value != null)
+                    ordered.put(key, value);
+            }
+
+            OperationResultImpl<Map<ByteBuffer, R>> result = new OperationResultImpl<Map<ByteBuffer, R>>(
+                    first.getHost(), ordered, System.nanoTime() - startTime);
+            result.setAttemptsCount(attempts);
+            success = true;
+            return result;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedOperationException("Interrupted waiting for multiget", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof ConnectionException)
+                throw (ConnectionException) e.getCause();
+            throw new OperationException(e.getCause());
+        }
+        finally {
+            if (!success) {
+                for (ListenableFutureTask<OperationResult<Map<ByteBuffer, R>>> task : tasks) {
+                    task.cancel(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Group the keys by the token range that owns them and split each group into lists of at most maxKeys keys.
+     * Duplicate keys are dropped.  All keys end up in one group if the topology doesn't know the ring.
+     * 
+     * @param topology  May be null
+     * @param keys
+     * @param maxKeys   Maximum number of keys per group, 0 for no limit
+     */
+    public static List<List<ByteBuffer>> partition(Topology<?> topology, List<ByteBuffer> keys, int maxKeys) {
+        Map<Object, List<ByteBuffer>> byPartition = Maps.newLinkedHashMap();
+        Map<ByteBuffer, Boolean> seen = Maps.newHashMapWithExpectedSize(keys.size());
+        for (ByteBuffer key : keys) {
+            if (seen.put(key, Boolean.TRUE) != null)
+                continue;
+
+            Object partition = topology != null ? topology.getPartition(key) : null;
+            List<ByteBuffer> group = byPartition.get(partition);
+            if (group == null) {
+                group = Lists.newArrayList();
+                byPartition.put(partition, group);
+            }
+            group.add(key);
+        }
+
+        List<List<ByteBuffer>> groups = Lists.newArrayList();
+        for (List<ByteBuffer> group : byPartition.values()) {
+            if (maxKeys > 0 && group.size() > maxKeys)
+                groups.addAll(Lists.partition(group, maxKeys));
+            else
+                groups.add(group);
+        }
+        return groups;
+    }
+}
@@ -15,13 +15,14 @@
  ******************************************************************************/
 package com.netflix.astyanax.thrift.model;
 
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Set;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.netflix.astyanax.Serializer;
 import com.netflix.astyanax.model.AbstractColumnList;
 import com.netflix.astyanax.model.Column;
@@ -29,74 +30,78 @@ import com.netflix.astyanax.model.Column;
 /**
  * Wrapper for a simple list of columns where each column has a scalar value.
  * 
+ * Column names are only deserialized when they are accessed.  Lookups by name serialize the requested
+ * name and search the raw names, see {@link ThriftColumnNameIndex}.
+ * 
  * @author elandau
  * 
  * @param <C>
  */
 public class ThriftColumnListImpl<C> extends AbstractColumnList<C> {
     private final List<org.apache.cassandra.thrift.Column> columns;
-    private HashMap<C, org.apache.cassandra.thrift.Column> lookup;
+    private final ThriftColumnNameIndex nameIndex;
+    private Set<C> columnNames;
     private final Serializer<C> colSer;
 
-    public ThriftColumnListImpl(List<org.apache.cassandra.thrift.Column> columns, Serializer<C> colSer) {
+    public ThriftColumnListImpl(final List<org.apache.cassandra.thrift.Column> columns, Serializer<C> colSer) {
         Preconditions.checkArgument(columns != null, "Columns must not be null");
         Preconditions.checkArgument(colSer != null, "Serializer must not be null");
 
         this.colSer = colSer;
         this.columns = columns;
+        this.nameIndex = new ThriftColumnNameIndex(colSer.getComparatorType()) {
+            @Override
+            protected int size() {
+                return columns.size();
+            }
+
+            @Override
+            protected ByteBuffer getRawName(int idx) {
+                return columns.get(idx).bufferForName();
+            }
+        };
     }
 
     @Override
     public Iterator<Column<C>> iterator() {
-        class IteratorImpl implements Iterator<Column<C>> {
-            Iterator<org.apache.cassandra.thrift.Column> base;
+        return new IteratorImpl(columns.iterator());
+    }
 
-            public IteratorImpl(Iterator<org.apache.cassandra.thrift.Column> base) {
-                this.base = base;
-            }
+    private class IteratorImpl implements Iterator<Column<C>> {
+        private final Iterator<org.apache.cassandra.thrift.Column> base;
 
-            @Override
-            public boolean hasNext() {
-                return base.hasNext();
-            }
+        public IteratorImpl(Iterator<org.apache.cassandra.thrift.Column> base) {
+            this.base = base;
+        }
 
-            @Override
-            public Column<C> next() {
-                org.apache.cassandra.thrift.Column c = base.next();
-                return new ThriftColumnImpl<C>(colSer.fromBytes(c.getName()), c);
-            }
+        @Override
+        public boolean hasNext() {
+            return base.hasNext();
+        }
 
-            @Override
-            public void remove() {
-                throw new UnsupportedOperationException("Iterator is immutable");
-            }
+        @Override
+        public Column<C> next() {
+            return new ThriftColumnViewImpl<C>(colSer, base.next());
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Iterator is immutable");
         }
-        return new IteratorImpl(columns.iterator());
     }
 
     @Override
     public Column<C> getColumnByName(C columnName) {
-        constructColumnMap();
-        org.apache.cassandra.thrift.Column c = lookup.get(columnName);
-        if (c == null) {
+        int idx = nameIndex.indexOf(colSer.toByteBuffer(columnName));
+        if (idx < 0) {
             return null;
         }
-        return new ThriftColumnImpl<C>(colSer.fromBytes(c.getName()), c);
-    }
-    
-    private void constructColumnMap() {
-        if (lookup == null) {
-            lookup = Maps.newHashMap();;
-            for (org.apache.cassandra.thrift.Column column : columns) {
-                lookup.put(colSer.fromBytes(column.getName()), column);
-            }
-        }
+        return new ThriftColumnImpl<C>(columnName, columns.get(idx));
     }
 
     @Override
     public Column<C> getColumnByIndex(int idx) {
-        org.apache.cassandra.thrift.Column c = columns.get(idx);
-        return new ThriftColumnImpl<C>(colSer.fromBytes(c.getName()), c);
+        return new ThriftColumnViewImpl<C>(colSer, columns.get(idx));
     }
 
     public C getNameByIndex(int idx) {
@@ -131,8 +136,14 @@ public class ThriftColumnListImpl<C> extends AbstractColumnList<C> {
 
     @Override
     public Collection<C> getColumnNames() {
-        constructColumnMap();
-        return lookup.keySet();
+        if (columnNames == null) {
+            Set<C> names = Sets.newLinkedHashSetWithExpectedSize(columns.size());
+            for (org.apache.cassandra.thrift.Column column : columns) {
+                names.add(colSer.fromBytes(column.getName()));
+            }
+            columnNames = names;
+        }
+        return columnNames;
     }
 
 }
@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.thrift.model;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.netflix.astyanax.serializers.ComparatorType;
+
+/**
+ * Finds a column in a thrift column list by its serialized name, without deserializing any of the names
+ * in the list.
+ *
+ * Cassandra returns the columns of a slice sorted by the column family comparator (reversed for reversed
+ * slices).  For comparators that order the serialized names bytewise (BytesType, AsciiType, UTF8Type) or
+ * bytewise with a signed first byte (LongType, Int32Type) the list is binary searched.  The order is
+ * verified on the first lookup and lists that turn out not to be sorted, as well as all other comparators,
+ * fall back to a hash lookup of the raw names.
+ */
+abstract class ThriftColumnNameIndex {
+    private static final int UNKNOWN    = 0;
+    private static final int ASCENDING  = 1;
+    private static final int DESCENDING = 2;
+    private static final int UNSORTED   = 3;
+
+    private final boolean byteOrdered;
+    private final boolean signedFirstByte;
+    private int order = UNKNOWN;
+    private Map<ByteBuffer, Integer> lookup;
+
+    ThriftColumnNameIndex(ComparatorType comparatorType) {
+        if (comparatorType == null) {
+            byteOrdered = false;
+            signedFirstByte = false;
+            return;
+        }
+        switch (comparatorType) {
+        case BYTESTYPE:
+        case ASCIITYPE:
+        case UTF8TYPE:
+            byteOrdered = true;
+            signedFirstByte = false;
+            break;
+        case LONGTYPE:
+        case INT32TYPE:
+            byteOrdered = true;
+            signedFirstByte = true;
+            break;
+        default:
+            byteOrdered = false;
+            signedFirstByte = false;
+            break;
+        }
+    }
+
+    /**
+     * @return Number of columns in the list
+     */
+    protected abstract int size();
+
+    /**
+     * @param idx
+     * @return The serialized name of the column at idx.  Must not be modified.
+     */
+    protected abstract ByteBuffer getRawName(int idx);
+
+    /**
+     * @param name  Serialized column name
+     * @return Index of the column or -1 if it is not in the list
+     */
+    int indexOf(ByteBuffer name) {
+        if (name == null || size() == 0) {
+            return -1;
+        }
+
+        if (order == UNKNOWN) {
+            order = detectOrder();
+        }
+
+        if (order == UNSORTED) {
+            Integer idx = getLookup().get(name);
+            return idx == null ? -1 : idx;
+        }
+
+        int low  = 0;
+        int high = size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(getRawName(mid), name);
+            if (order == DESCENDING) {
+                cmp = -cmp;
+            }
+
+            if (cmp < 0) {
+                low = mid + 1;
+            }
+            else if (cmp > 0) {
+                high = mid - 1;
+            }
+            else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int detectOrder() {
+        if (!byteOrdered) {
+            return UNSORTED;
+        }
+
+        int direction = 0;
+        for (int i = 1; i < size(); i++) {
+            int cmp = compare(getRawName(i - 1), getRawName(i));
+            if (cmp == 0) {
+                return UNSORTED;
+            }
+            if (direction == 0) {
+                direction = cmp;
+            }
+            else if ((cmp < 0) != (direction < 0)) {
+                return UNSORTED;
+            }
+        }
+        return direction > 0 ? DESCENDING : ASCENDING;
+    }
+
+    private Map<ByteBuffer, Integer> getLookup() {
+        if (lookup == null) {
+            Map<ByteBuffer, Integer> map = new HashMap<ByteBuffer, Integer>(size() * 2);
+            for (int i = 0; i < size(); i++) {
+                map.put(getRawName(i), i);
+            }
+            lookup = map;
+        }
+        return lookup;
+    }
+
+    /**
+     * Compare the remaining bytes of the two buffers without changing their positions
+     */
+    private int compare(ByteBuffer b1, ByteBuffer b2) {
+        int p1 = b1.position();
+        int p2 = b2.position();
+        int l1 = b1.remaining();
+        int l2 = b2.remaining();
+
+        if (l1 == 0 || l2 == 0) {
+            return l1 - l2;
+        }
+
+        if (signedFirstByte) {
+            int diff = b1.get(p1) - b2.get(p2);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+
+        int length = Math.min(l1, l2);
+        for (int i = 0; i < length; i++) {
+            int diff = (b1.get(p1 + i) & 0xFF) - (b2.get(p2 + i) & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return l1 - l2;
+    }
+}
@@ -15,10 +15,11 @@
  ******************************************************************************/
 package com.netflix.astyanax.thrift.model;
 
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 import org.apache.cassandra.thrift.ColumnOrSuperColumn;
 import org.apache.cassandra.thrift.CounterColumn;
@@ -26,7 +27,7 @@ import org.apache.cassandra.thrift.CounterSuperColumn;
 import org.apache.cassandra.thrift.SuperColumn;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.netflix.astyanax.Serializer;
 import com.netflix.astyanax.model.AbstractColumnList;
 import com.netflix.astyanax.model.Column;
@@ -35,67 +36,82 @@ import com.netflix.astyanax.model.Column;
  * List of columns that can be either a list of super columns or standard
  * columns.
  * 
+ * Column names are only deserialized when they are accessed.  Lookups by name serialize the requested
+ * name and search the raw names, see {@link ThriftColumnNameIndex}.
+ * 
  * @author elandau
  * 
  * @param <C>
  */
 public class ThriftColumnOrSuperColumnListImpl<C> extends AbstractColumnList<C> {
     private final List<ColumnOrSuperColumn> columns;
-    private Map<C, ColumnOrSuperColumn> lookup;
+    private final ThriftColumnNameIndex nameIndex;
+    private Set<C> columnNames;
     private final Serializer<C> colSer;
 
-    public ThriftColumnOrSuperColumnListImpl(List<ColumnOrSuperColumn> columns, Serializer<C> colSer) {
+    public ThriftColumnOrSuperColumnListImpl(final List<ColumnOrSuperColumn> columns, Serializer<C> colSer) {
         Preconditions.checkArgument(columns != null, "Columns must not be null");
         Preconditions.checkArgument(colSer != null, "Serializer must not be null");
 
         this.columns = columns;
         this.colSer = colSer;
+        this.nameIndex = new ThriftColumnNameIndex(colSer.getComparatorType()) {
+            @Override
+            protected int size() {
+                return columns.size();
+            }
+
+            @Override
+            protected ByteBuffer getRawName(int idx) {
+                return ThriftColumnOrSuperColumnListImpl.getRawName(columns.get(idx));
+            }
+        };
     }
 
     @Override
     public Iterator<Column<C>> iterator() {
-        class IteratorImpl implements Iterator<Column<C>> {
-            Iterator<ColumnOrSuperColumn> base;
+        return new IteratorImpl(columns.iterator());
+    }
 
-            public IteratorImpl(Iterator<ColumnOrSuperColumn> base) {
-                this.base = base;
-            }
+    private class IteratorImpl implements Iterator<Column<C>> {
+        private final Iterator<ColumnOrSuperColumn> base;
 
-            @Override
-            public boolean hasNext() {
-                return base.hasNext();
-            }
+        public IteratorImpl(Iterator<ColumnOrSuperColumn> base) {
+            this.base = base;
+        }
 
-            @Override
-            public Column<C> next() {
-                ColumnOrSuperColumn column = base.next();
-                if (column.isSetSuper_column()) {
-                    SuperColumn sc = column.getSuper_column();
-                    return new ThriftSuperColumnImpl<C>(colSer.fromBytes(sc.getName()), sc);
-                }
-                else if (column.isSetCounter_column()) {
-                    CounterColumn cc = column.getCounter_column();
-                    return new ThriftCounterColumnImpl<C>(colSer.fromBytes(cc.getName()), cc);
-                }
-                else if (column.isSetCounter_super_column()) {
-                    CounterSuperColumn cc = column.getCounter_super_column();
-                    return new ThriftCounterSuperColumnImpl<C>(colSer.fromBytes(cc.getName()), cc);
-                }
-                else if (column.isSetColumn()) {
-                    org.apache.cassandra.thrift.Column c = column.getColumn();
-                    return new ThriftColumnImpl<C>(colSer.fromBytes(c.getName()), c);
-                }
-                else {
-                    throw new RuntimeException("Unknwon column type");
-                }
-            }
+        @Override
+        public boolean hasNext() {
+            return base.hasNext();
+        }
 
-            @Override
-            public void remove() {
-                throw new UnsupportedOperationException("Iterator is immutable");
+        @Override
+        public Column<C> next() {
+            ColumnOrSuperColumn column = base.next();
+            if (column.isSetSuper_column()) {
+                SuperColumn sc = column.getSuper_column();
+                return new ThriftSuperColumnImpl<C>(colSer.fromBytes(sc.getName()), sc);
+            }
+            else if (column.isSetCounter_column()) {
+                CounterColumn cc = column.getCounter_column();
+                return new ThriftCounterColumnImpl<C>(colSer.fromBytes(cc.getName()), cc);
+            }
+            else if (column.isSetCounter_super_column()) {
+                CounterSuperColumn cc = column.getCounter_super_column();
+                return new ThriftCounterSuperColumnImpl<C>(colSer.fromBytes(cc.getName()), cc);
+            }
+            else if (column.isSetColumn()) {
+                return new ThriftColumnViewImpl<C>(colSer, column.getColumn());
+            }
+            else {
+                throw new RuntimeException("Unknwon column type");
             }
         }
-        return new IteratorImpl(columns.iterator());
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Iterator is immutable");
+        }
     }
 
     @Override
@@ -121,7 +137,7 @@ public class ThriftColumnOrSuperColumnListImpl<C> extends AbstractColumnList<C>
             return null;
         }
         else if (column.isSetColumn()) {
-            return new ThriftColumnImpl<C>(this.colSer.fromBytes(column.getColumn().getName()), column.getColumn());
+            return new ThriftColumnViewImpl<C>(colSer, column.getColumn());
         }
         else if (column.isSetCounter_column()) {
             return new ThriftCounterColumnImpl<C>(this.colSer.fromBytes(column.getCounter_column().getName()),
@@ -186,36 +202,58 @@ public class ThriftColumnOrSuperColumnListImpl<C> extends AbstractColumnList<C>
     }
 
     private ColumnOrSuperColumn getColumn(C columnName) {
-        constructMap();
-        return lookup.get(columnName);
+        int idx = nameIndex.indexOf(colSer.toByteBuffer(columnName));
+        return idx < 0 ? null : columns.get(idx);
     }
-    
-    private void constructMap() {
-        if (lookup == null) {
-            lookup = Maps.newHashMap();
-            for (ColumnOrSuperColumn column : columns) {
-                if (column.isSetSuper_column()) {
-                    lookup.put(colSer.fromBytes(column.getSuper_column().getName()), column);
-                }
-                else if (column.isSetColumn()) {
-                    lookup.put(colSer.fromBytes(column.getColumn().getName()), column);
-                }
-                else if (column.isSetCounter_column()) {
-                    lookup.put(colSer.fromBytes(column.getCounter_column().getName()), column);
-                }
-                else if (column.isSetCounter_super_column()) {
-                    lookup.put(colSer.fromBytes(column.getCounter_super_column().getName()), column);
-                }
-                else {
-                    throw new UnsupportedOperationException("Unknown column type");
-                }
-            }
+
+    private static ByteBuffer getRawName(ColumnOrSuperColumn column) {
+        if (column.isSetSuper_column()) {
+            return column.getSuper_column().bufferForName();
+        }
+        else if (column.isSetColumn()) {
+            return column.getColumn().bufferForName();
+        }
+        else if (column.isSetCounter_column()) {
+            return column.getCounter_column().bufferForName();
+        }
+        else if (column.isSetCounter_super_column()) {
+            return column.getCounter_super_column().bufferForName();
+        }
+        else {
+            throw new UnsupportedOperationException("Unknown column type");
+        }
+    }
+
+    /**
+     * Copy of the name, which serializers may expect to wrap the whole array
+     */
+    private static byte[] getName(ColumnOrSuperColumn column) {
+        if (column.isSetSuper_column()) {
+            return column.getSuper_column().getName();
+        }
+        else if (column.isSetColumn()) {
+            return column.getColumn().getName();
+        }
+        else if (column.isSetCounter_column()) {
+            return column.getCounter_column().getName();
+        }
+        else if (column.isSetCounter_super_column()) {
+            return column.getCounter_super_column().getName();
+        }
+        else {
+            throw new UnsupportedOperationException("Unknown column type");
         }
     }
 
     @Override
     public Collection<C> getColumnNames() {
-        constructMap();
-        return lookup.keySet();
+        if (columnNames == null) {
+            Set<C> names = Sets.newLinkedHashSetWithExpectedSize(columns.size());
+            for (ColumnOrSuperColumn column : columns) {
+                names.add(colSer.fromBytes(getName(column)));
+            }
+            columnNames = names;
+        }
+        return columnNames;
     }
 }
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright 2011 Netflix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.netflix.astyanax.thrift.model;
+
+import java.nio.ByteBuffer;
+
+import com.netflix.astyanax.Serializer;
+import com.netflix.astyanax.model.AbstractColumnImpl;
+
+/**
+ * View of a thrift column that only deserializes the name when it is accessed.  Names and values are
+ * copied out of the thrift buffer before they are deserialized, like {@link ThriftColumnImpl} does, since
+ * serializers may expect a buffer that wraps the whole array.  Lookups by name compare the raw names
+ * without copying them.
+ *
+ * @param <C>
+ */
+public class ThriftColumnViewImpl<C> extends AbstractColumnImpl<C> {
+    private final Serializer<C> colSer;
+    private final org.apache.cassandra.thrift.Column column;
+
+    public ThriftColumnViewImpl(Serializer<C> colSer, org.apache.cassandra.thrift.Column column) {
+        this.colSer = colSer;
+        this.column = column;
+    }
+
+    @Override
+    protected C deserializeName() {
+        return colSer.fromBytes(column.getName());
+    }
+
+    @Override
+    public <V> V getValue(Serializer<V> valSer) {
+        return valSer.fromBytes(column.getValue());
+    }
+
+    @Override
+    public long getTimestamp() {
+        return column.getTimestamp();
+    }
+
+    @Override
+    public ByteBuffer getRawName() {
+        return column.bufferForName().duplicate();
+    }
+
+    @Override
+    public int getTtl() {
+        return column.isSetTtl() ? column.getTtl() : 0;
+    }
+
+    @Override
+    public boolean hasValue() {
+        return column.value != null && column.value.remaining() != 0;
+    }
+}
@@ -38,11 +38,11 @@ public class ThriftCqlRowsImpl<K, C> implements Rows<K, C> {
         for (CqlRow row : rows) {
             byte[] keyBytes = row.getKey();
             if (keyBytes == null || keyBytes.length == 0) {
-                this.rows.add(new ThriftRowImpl<K, C>(null, null,
+                this.rows.add(ThriftRowImpl.withLazyKey(keySer, null,
                         new ThriftColumnListImpl<C>(row.getColumns(), colSer)));
             } else {
-                this.rows.add(new ThriftRowImpl<K, C>(keySer
-                        .fromBytes(keyBytes), ByteBuffer.wrap(keyBytes),
+                this.rows.add(ThriftRowImpl.withLazyKey(keySer,
+                        ByteBuffer.wrap(keyBytes),
                         new ThriftColumnListImpl<C>(row.getColumns(), colSer)));
             }
         }
@@ -17,22 +17,42 @@ package com.netflix.astyanax.thrift.model;
 
 import java.nio.ByteBuffer;
 
+import com.netflix.astyanax.Serializer;
 import com.netflix.astyanax.model.ColumnList;
 import com.netflix.astyanax.model.Row;
 
 public class ThriftRowImpl<K, C> implements Row<K, C> {
     private final ColumnList<C> columns;
     private final ByteBuffer rawkey;
-    private final K key;
+    private final Serializer<K> keySer;
+    private K key;
 
     public ThriftRowImpl(K key, ByteBuffer byteBuffer, ColumnList<C> columns) {
+        this(key, null, byteBuffer, columns);
+    }
+
+    private ThriftRowImpl(K key, Serializer<K> keySer, ByteBuffer byteBuffer, ColumnList<C> columns) {
         this.key = key;
-        this.columns = columns;
+        this.keySer = keySer;
         this.rawkey = byteBuffer;
+        this.columns = columns;
+    }
+
+    /**
+     * Row with a key that is only deserialized when it is accessed
+     * @param keySer
+     * @param byteBuffer
+     * @param columns
+     */
+    public static <K, C> ThriftRowImpl<K, C> withLazyKey(Serializer<K> keySer, ByteBuffer byteBuffer, ColumnList<C> columns) {
+        return new ThriftRowImpl<K, C>(null, keySer, byteBuffer, columns);
     }
 
     @Override
     public K getKey() {
+        if (key == null && keySer != null && rawkey != null) {
+            key = keySer.fromByteBuffer(rawkey.duplicate());
+        }
         return key;
     }
 
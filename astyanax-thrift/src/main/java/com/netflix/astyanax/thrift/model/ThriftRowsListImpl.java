@@ -21,31 +21,43 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import org.apache.cassandra.thrift.ColumnOrSuperColumn;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.netflix.astyanax.Serializer;
 import com.netflix.astyanax.model.Row;
 import com.netflix.astyanax.model.Rows;
 
+/**
+ * Wrapper for a multiget response.
+ * 
+ * Row keys are only deserialized when they are accessed and the lookup by key is built lazily
+ * from the raw keys.
+ *
+ * @param <K>
+ * @param <C>
+ */
 public class ThriftRowsListImpl<K, C> implements Rows<K, C> {
-    private List<Row<K, C>>   rows;
-    private Map<K, Row<K, C>> lookup;
+    private final List<Row<K, C>>   rows;
+    private final Serializer<K>     keySer;
+    private Map<ByteBuffer, Row<K, C>> lookup;
+    private Set<K> keys;
 
     public ThriftRowsListImpl(Map<ByteBuffer, List<ColumnOrSuperColumn>> rows, Serializer<K> keySer, Serializer<C> colSer) {
         this.rows   = Lists.newArrayListWithCapacity(rows.size());
-        this.lookup = Maps.newLinkedHashMap();
+        this.keySer = keySer;
         
         for (Entry<ByteBuffer, List<ColumnOrSuperColumn>> row : rows.entrySet()) {
-            Row<K,C> thriftRow = new ThriftRowImpl<K, C>(
-                    keySer.fromByteBuffer(row.getKey().duplicate()), 
+            Row<K,C> thriftRow = ThriftRowImpl.withLazyKey(
+                    keySer,
                     row.getKey(),
                     new ThriftColumnOrSuperColumnListImpl<C>(row.getValue(), colSer));
 
             this.rows.add(thriftRow);
-            lookup.put(thriftRow.getKey(), thriftRow);
         }
     }
 
@@ -56,7 +68,8 @@ public class ThriftRowsListImpl<K, C> implements Rows<K, C> {
 
     @Override
     public Row<K, C> getRow(K key) {
-        return lookup.get(key);
+        lazyBuildLookup();
+        return lookup.get(keySer.toByteBuffer(key));
     }
 
     @Override
@@ -76,7 +89,23 @@ public class ThriftRowsListImpl<K, C> implements Rows<K, C> {
 
     @Override
     public Collection<K> getKeys() {
-        return lookup.keySet();
+        if (keys == null) {
+            Set<K> rowKeys = Sets.newLinkedHashSetWithExpectedSize(rows.size());
+            for (Row<K, C> row : rows) {
+                rowKeys.add(row.getKey());
+            }
+            keys = rowKeys;
+        }
+        return keys;
     }
 
+    private void lazyBuildLookup() {
+        if (lookup == null) {
+            Map<ByteBuffer, Row<K, C>> rowLookup = Maps.newHashMapWithExpectedSize(rows.size());
+            for (Row<K, C> row : rows) {
+                rowLookup.put(row.getRawKey(), row);
+            }
+            lookup = rowLookup;
+        }
+    }
 }
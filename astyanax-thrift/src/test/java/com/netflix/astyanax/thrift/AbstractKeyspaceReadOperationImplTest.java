@@ -0,0 +1,117 @@
+package com.netflix.astyanax.thrift;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.apache.cassandra.thrift.Cassandra;
+import org.junit.Test;
+
+import com.netflix.astyanax.CassandraOperationTracer;
+import com.netflix.astyanax.connectionpool.ConnectionContext;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.connectionpool.exceptions.OperationException;
+
+public class AbstractKeyspaceReadOperationImplTest {
+
+    private static class CountingTracer implements CassandraOperationTracer {
+        private final AtomicInteger starts    = new AtomicInteger();
+        private final AtomicInteger successes = new AtomicInteger();
+        private final AtomicInteger failures  = new AtomicInteger();
+
+        @Override
+        public CassandraOperationTracer start() {
+            starts.incrementAndGet();
+            return this;
+        }
+
+        @Override
+        public void success() {
+            successes.incrementAndGet();
+        }
+
+        @Override
+        public void failure(ConnectionException e) {
+            failures.incrementAndGet();
+        }
+    }
+
+    /**
+     * Read whose first execution blocks until it is released and then fails, the way an attempt fails
+     * once its connection is closed by a speculative read that won
+     */
+    private static class RacedRead extends AbstractKeyspaceReadOperationImpl<String> {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger  count   = new AtomicInteger();
+
+        RacedRead(CassandraOperationTracer tracer) {
+            super(tracer, "ks");
+        }
+
+        @Override
+        protected String internalExecute(Cassandra.Client client, ConnectionContext state) throws Exception {
+            if (count.getAndIncrement() == 0) {
+                started.countDown();
+                release.await();
+                throw new OperationException("Connection closed");
+            }
+            return "speculative";
+        }
+    }
+
+    @Test
+    public void testLoserIsNotTraced() throws Exception {
+        CountingTracer tracer = new CountingTracer();
+        final RacedRead read = new RacedRead(tracer);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> first = executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return read.execute(null, null);
+                }
+            });
+            read.started.await();
+
+            Assert.assertEquals("speculative", read.execute(null, null));
+            read.release.countDown();
+            try {
+                first.get();
+                Assert.fail();
+            } catch (Exception e) {
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        Assert.assertEquals(1, tracer.starts.get());
+        Assert.assertEquals(1, tracer.successes.get());
+        Assert.assertEquals(0, tracer.failures.get());
+    }
+
+    @Test
+    public void testRetriesAreTraced() throws Exception {
+        CountingTracer tracer = new CountingTracer();
+        RacedRead read = new RacedRead(tracer);
+        read.release.countDown();
+
+        try {
+            read.execute(null, null);
+            Assert.fail();
+        } catch (ConnectionException e) {
+        }
+        Assert.assertEquals("speculative", read.execute(null, null));
+
+        Assert.assertEquals(2, tracer.starts.get());
+        Assert.assertEquals(1, tracer.successes.get());
+        Assert.assertEquals(1, tracer.failures.get());
+    }
+}
@@ -0,0 +1,207 @@
+package com.netflix.astyanax.thrift;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import com.netflix.astyanax.MutationBatch;
+import com.netflix.astyanax.WriteAheadEntry;
+import com.netflix.astyanax.impl.AstyanaxConfigurationImpl;
+import com.netflix.astyanax.impl.MappedWriteAheadLog;
+import com.netflix.astyanax.impl.MappedWriteAheadLog.SyncPolicy;
+import com.netflix.astyanax.model.ColumnFamily;
+import com.netflix.astyanax.serializers.StringSerializer;
+import com.netflix.astyanax.shallows.EmptyKeyspaceTracerFactory;
+
+public class MappedWriteAheadLogTest {
+
+    private static final ColumnFamily<String, String> CF_WAL =
+            ColumnFamily.newColumnFamily("Wal", StringSerializer.get(), StringSerializer.get());
+
+    private final ThriftKeyspaceImpl keyspace = new ThriftKeyspaceImpl("WalTest", null,
+            new AstyanaxConfigurationImpl(), EmptyKeyspaceTracerFactory.getInstance());
+
+    private File directory;
+
+    @Before
+    public void setup() {
+        directory = Files.createTempDir();
+    }
+
+    @After
+    public void teardown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private MutationBatch mutation(String rowKey) {
+        MutationBatch m = keyspace.prepareMutationBatch();
+        m.withRow(CF_WAL, rowKey).putColumn("column", "value_" + rowKey);
+        return m;
+    }
+
+    private static String rowKey(MutationBatch m) {
+        return StringSerializer.get().fromByteBuffer(m.getRowKeys().keySet().iterator().next().duplicate());
+    }
+
+    private MappedWriteAheadLog open(SyncPolicy policy, int segmentSize) throws Exception {
+        return new MappedWriteAheadLog.Builder(directory)
+                .withSyncPolicy(policy)
+                .withSegmentSize(segmentSize)
+                .build();
+    }
+
+    @Test
+    public void testReplayEntriesThatWereNotRemoved() throws Exception {
+        MappedWriteAheadLog wal = open(SyncPolicy.GROUP, 4096);
+        List<WriteAheadEntry> entries = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            WriteAheadEntry entry = wal.createEntry();
+            entry.writeMutation(mutation("row" + i));
+            entries.add(entry);
+        }
+        Assert.assertTrue(wal.getSegmentCount() > 1);
+
+        // Entries written in this session are read back from the mapped segment
+        MutationBatch read = keyspace.prepareMutationBatch();
+        entries.get(3).readMutation(read);
+        Assert.assertEquals("row3", rowKey(read));
+
+        for (int i = 0; i < 100; i++) {
+            if (i % 10 != 0) {
+                wal.removeEntry(entries.get(i));
+            }
+        }
+        Assert.assertNull(wal.readNextEntry());
+        wal.close();
+
+        wal = open(SyncPolicy.GROUP, 4096);
+        Set<String> replayed = Sets.newLinkedHashSet();
+        WriteAheadEntry entry;
+        while (null != (entry = wal.readNextEntry())) {
+            MutationBatch m = keyspace.prepareMutationBatch();
+            entry.readMutation(m);
+            replayed.add(rowKey(m));
+            wal.removeEntry(entry);
+        }
+        Assert.assertEquals(Sets.newLinkedHashSet(Lists.newArrayList(
+                "row0", "row10", "row20", "row30", "row40", "row50", "row60", "row70", "row80", "row90")), replayed);
+
+        // New entries don't collide with the replayed ones
+        WriteAheadEntry newEntry = wal.createEntry();
+        newEntry.writeMutation(mutation("new"));
+        wal.close();
+
+        wal = open(SyncPolicy.NONE, 4096);
+        entry = wal.readNextEntry();
+        MutationBatch m = keyspace.prepareMutationBatch();
+        entry.readMutation(m);
+        Assert.assertEquals("new", rowKey(m));
+        Assert.assertNull(wal.readNextEntry());
+        wal.close();
+    }
+
+    @Test
+    public void testSegmentsAreRecycled() throws Exception {
+        MappedWriteAheadLog wal = open(SyncPolicy.NONE, 4096);
+        for (int i = 0; i < 1000; i++) {
+            WriteAheadEntry entry = wal.createEntry();
+            entry.writeMutation(mutation("row" + i));
+            wal.removeEntry(entry);
+        }
+        Assert.assertTrue(wal.getSegmentCount() <= 2);
+        Assert.assertTrue(directory.listFiles().length <= 4);
+        wal.close();
+
+        wal = open(SyncPolicy.NONE, 4096);
+        Assert.assertNull(wal.readNextEntry());
+        wal.close();
+    }
+
+    @Test
+    public void testOldestSegmentHoldsBackRecycling() throws Exception {
+        MappedWriteAheadLog wal = open(SyncPolicy.NONE, 4096);
+        WriteAheadEntry first = wal.createEntry();
+        first.writeMutation(mutation("first"));
+        for (int i = 0; i < 200; i++) {
+            WriteAheadEntry entry = wal.createEntry();
+            entry.writeMutation(mutation("row" + i));
+            wal.removeEntry(entry);
+        }
+        int segments = wal.getSegmentCount();
+        Assert.assertTrue(segments > 2);
+
+        wal.removeEntry(first);
+        wal.createEntry().writeMutation(mutation("last"));
+        Assert.assertTrue(wal.getSegmentCount() < segments);
+        wal.close();
+    }
+
+    @Test
+    public void testCorruptRecordEndsSegment() throws Exception {
+        MappedWriteAheadLog wal = open(SyncPolicy.GROUP, 1024 * 1024);
+        for (int i = 0; i < 3; i++) {
+            wal.createEntry().writeMutation(mutation("row" + i));
+        }
+        wal.close();
+
+        // Flip a byte in the payload of the last record
+        File segment = directory.listFiles()[0];
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        try {
+            long position = 0;
+            long last = 0;
+            while (true) {
+                raf.seek(position);
+                int length = raf.readInt();
+                raf.seek(position + 24);
+                if (raf.readByte() == 0)
+                    break;
+                last = position;
+                position += 25 + length;
+            }
+            raf.seek(last + 30);
+            byte b = raf.readByte();
+            raf.seek(last + 30);
+            raf.writeByte(b ^ 0xFF);
+        } finally {
+            raf.close();
+        }
+
+        wal = open(SyncPolicy.GROUP, 1024 * 1024);
+        int count = 0;
+        while (wal.readNextEntry() != null) {
+            count++;
+        }
+        Assert.assertEquals(2, count);
+        wal.close();
+    }
+
+    @Test
+    public void testRetryEntry() throws Exception {
+        MappedWriteAheadLog wal = open(SyncPolicy.PERIODIC, 4096);
+        WriteAheadEntry entry = wal.createEntry();
+        entry.writeMutation(mutation("retry"));
+        Assert.assertNull(wal.readNextEntry());
+
+        wal.retryEntry(entry);
+        Assert.assertSame(entry, wal.readNextEntry());
+        wal.removeEntry(entry);
+        wal.close();
+    }
+}
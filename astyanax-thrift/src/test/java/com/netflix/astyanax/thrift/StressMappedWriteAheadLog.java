@@ -0,0 +1,104 @@
+package com.netflix.astyanax.thrift;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.Files;
+import com.netflix.astyanax.MutationBatch;
+import com.netflix.astyanax.WriteAheadEntry;
+import com.netflix.astyanax.impl.AstyanaxConfigurationImpl;
+import com.netflix.astyanax.impl.MappedWriteAheadLog;
+import com.netflix.astyanax.impl.MappedWriteAheadLog.SyncPolicy;
+import com.netflix.astyanax.model.ColumnFamily;
+import com.netflix.astyanax.serializers.StringSerializer;
+import com.netflix.astyanax.shallows.EmptyKeyspaceTracerFactory;
+
+/**
+ * Throughput of {@link MappedWriteAheadLog} for each sync policy with a varying number of writer threads.
+ * Each writer appends a serialized mutation batch, then removes it like a successful write to cassandra would.
+ *
+ * Run from the command line with an optional directory for the segment files as the first argument.
+ */
+public class StressMappedWriteAheadLog {
+    private static final Logger LOG = LoggerFactory.getLogger(StressMappedWriteAheadLog.class);
+
+    private static final ColumnFamily<String, String> CF_WAL =
+            ColumnFamily.newColumnFamily("Wal", StringSerializer.get(), StringSerializer.get());
+
+    private static final int   COLUMNS_PER_MUTATION = 10;
+    private static final long  DURATION = 5000;
+    private static final int[] THREADS  = new int[] { 1, 4, 16 };
+
+    public static void main(String[] args) throws Exception {
+        File root = args.length > 0 ? new File(args[0]) : Files.createTempDir();
+
+        ThriftKeyspaceImpl keyspace = new ThriftKeyspaceImpl("WalStress", null,
+                new AstyanaxConfigurationImpl(), EmptyKeyspaceTracerFactory.getInstance());
+        MutationBatch m = keyspace.prepareMutationBatch();
+        for (int i = 0; i < COLUMNS_PER_MUTATION; i++) {
+            m.withRow(CF_WAL, "row_key").putColumn("column" + i, "value_value_value_value_value_" + i);
+        }
+        int mutationSize = m.serialize().remaining();
+
+        for (SyncPolicy policy : SyncPolicy.values()) {
+            for (int threads : THREADS) {
+                File directory = new File(root, policy.name().toLowerCase() + "-" + threads);
+                MappedWriteAheadLog wal = new MappedWriteAheadLog.Builder(directory)
+                        .withSyncPolicy(policy)
+                        .build();
+                try {
+                    long count = run(wal, m, threads);
+                    LOG.info(String.format("%-8s threads=%-3d entries/sec=%-10d MB/sec=%.1f segments=%d",
+                            policy, threads,
+                            count * 1000 / DURATION,
+                            count * mutationSize * 1000.0 / DURATION / 1024 / 1024,
+                            wal.getSegmentCount()));
+                } finally {
+                    wal.close();
+                    for (File file : directory.listFiles()) {
+                        file.delete();
+                    }
+                    directory.delete();
+                }
+            }
+        }
+    }
+
+    private static long run(final MappedWriteAheadLog wal, final MutationBatch m, int threads) throws Exception {
+        final AtomicLong count = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(threads);
+        final long endTime = System.currentTimeMillis() + DURATION;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (System.currentTimeMillis() < endTime) {
+                            WriteAheadEntry entry = wal.createEntry();
+                            entry.writeMutation(m);
+                            wal.removeEntry(entry);
+                            count.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        LOG.error("Failed to write WAL entry", e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        done.await();
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+        return count.get();
+    }
+}
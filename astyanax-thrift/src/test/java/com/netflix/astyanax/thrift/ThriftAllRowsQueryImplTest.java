@@ -0,0 +1,164 @@
+package com.netflix.astyanax.thrift;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.ColumnOrSuperColumn;
+import org.apache.cassandra.thrift.ColumnParent;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.KeyRange;
+import org.apache.cassandra.thrift.KeySlice;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.apache.thrift.TException;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.netflix.astyanax.Keyspace;
+import com.netflix.astyanax.RowCallback;
+import com.netflix.astyanax.connectionpool.ConnectionPool;
+import com.netflix.astyanax.connectionpool.Host;
+import com.netflix.astyanax.connectionpool.Operation;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.connectionpool.impl.OperationResultImpl;
+import com.netflix.astyanax.impl.AstyanaxConfigurationImpl;
+import com.netflix.astyanax.model.ColumnFamily;
+import com.netflix.astyanax.model.Row;
+import com.netflix.astyanax.model.Rows;
+import com.netflix.astyanax.partitioner.Murmur3Partitioner;
+import com.netflix.astyanax.query.AllRowsQuery;
+import com.netflix.astyanax.serializers.LongSerializer;
+import com.netflix.astyanax.serializers.StringSerializer;
+import com.netflix.astyanax.shallows.EmptyKeyspaceTracerFactory;
+
+/**
+ * Pages through the rows of a stub client that serves get_range_slices from memory
+ */
+public class ThriftAllRowsQueryImplTest {
+    private static final int ROW_COUNT = 20;
+
+    private static final ColumnFamily<Long, String> CF_ROWS = ColumnFamily.newColumnFamily("Rows",
+            LongSerializer.get(), StringSerializer.get());
+
+    private final AtomicInteger pageCount = new AtomicInteger();
+
+    private Keyspace keyspace;
+
+    @Before
+    public void setup() {
+        // Rows ordered by token, as cassandra returns them
+        final TreeMap<BigInteger, ByteBuffer> rows = new TreeMap<BigInteger, ByteBuffer>();
+        for (long i = 0; i < ROW_COUNT; i++) {
+            ByteBuffer key = LongSerializer.get().toByteBuffer(i);
+            rows.put(new BigInteger(Murmur3Partitioner.get().getTokenForKey(key)), key);
+        }
+
+        final Cassandra.Client client = new Cassandra.Client(null) {
+            @Override
+            public String describe_partitioner() throws TException {
+                return org.apache.cassandra.dht.Murmur3Partitioner.class.getCanonicalName();
+            }
+
+            @Override
+            public List<KeySlice> get_range_slices(ColumnParent parent, SlicePredicate predicate, KeyRange range,
+                    ConsistencyLevel cl) throws TException {
+                pageCount.incrementAndGet();
+                // The start token is exclusive and the end token inclusive
+                List<KeySlice> slices = Lists.newArrayList();
+                for (Map.Entry<BigInteger, ByteBuffer> row : rows.subMap(new BigInteger(range.getStart_token()), false,
+                        new BigInteger(range.getEnd_token()), true).entrySet()) {
+                    if (slices.size() == range.getCount())
+                        break;
+                    Column column = new Column(StringSerializer.get().toByteBuffer("a"))
+                            .setValue(StringSerializer.get().toByteBuffer("value")).setTimestamp(1);
+                    slices.add(new KeySlice(row.getValue().duplicate(),
+                            Lists.newArrayList(new ColumnOrSuperColumn().setColumn(column))));
+                }
+                return slices;
+            }
+        };
+
+        @SuppressWarnings("unchecked")
+        ConnectionPool<Cassandra.Client> pool = (ConnectionPool<Cassandra.Client>) Proxy.newProxyInstance(
+                ConnectionPool.class.getClassLoader(), new Class<?>[] { ConnectionPool.class }, new InvocationHandler() {
+                    @SuppressWarnings("unchecked")
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("executeWithFailover")) {
+                            Operation<Cassandra.Client, Object> op = (Operation<Cassandra.Client, Object>) args[0];
+                            return new OperationResultImpl<Object>(Host.NO_HOST, op.execute(client, null), 0);
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+
+        keyspace = new ThriftKeyspaceImpl("Keyspace", pool, new AstyanaxConfigurationImpl(),
+                EmptyKeyspaceTracerFactory.getInstance());
+    }
+
+    @Test(timeout = 10000)
+    public void testPageSizeOfOne() throws Exception {
+        Set<Long> keys = readAll(keyspace.prepareQuery(CF_ROWS).getAllRows()
+                .setConcurrencyLevel(1)
+                .setRowLimit(1));
+
+        Assert.assertEquals(ROW_COUNT, keys.size());
+        // One row per page after the first, plus the empty page at the end of the range
+        Assert.assertEquals(ROW_COUNT + 1, pageCount.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testAdaptivePageSizeOfOne() throws Exception {
+        Set<Long> keys = readAll(keyspace.prepareQuery(CF_ROWS).getAllRows()
+                .setConcurrencyLevel(1)
+                .setRowLimit(1)
+                .setAdaptivePageSize(1, 1));
+
+        Assert.assertEquals(ROW_COUNT, keys.size());
+    }
+
+    @Test(timeout = 10000)
+    public void testPageSizeOfOneWithoutRepeat() throws Exception {
+        Set<Long> keys = readAll(keyspace.prepareQuery(CF_ROWS).getAllRows()
+                .setConcurrencyLevel(1)
+                .setRowLimit(1)
+                .setRepeatLastToken(false));
+
+        Assert.assertEquals(ROW_COUNT, keys.size());
+    }
+
+    private static Set<Long> readAll(AllRowsQuery<Long, String> query) throws ConnectionException {
+        final Set<Long> keys = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+        final AtomicInteger duplicates = new AtomicInteger();
+        query.executeWithCallback(new RowCallback<Long, String>() {
+            @Override
+            public void success(Rows<Long, String> rows) {
+                for (Row<Long, String> row : rows) {
+                    if (!keys.add(row.getKey()))
+                        duplicates.incrementAndGet();
+                }
+            }
+
+            @Override
+            public boolean failure(ConnectionException e) {
+                return false;
+            }
+        });
+        Assert.assertEquals(0, duplicates.get());
+        return keys;
+    }
+}
@@ -0,0 +1,343 @@
+package com.netflix.astyanax.thrift;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.ColumnOrSuperColumn;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.InvalidRequestException;
+import org.apache.cassandra.thrift.Mutation;
+import org.apache.cassandra.thrift.TimedOutException;
+import org.apache.thrift.TException;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.apache.thrift.server.TNonblockingServer;
+import org.apache.thrift.transport.TNonblockingServerSocket;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.netflix.astyanax.CassandraOperationType;
+import com.netflix.astyanax.MutationBatch;
+import com.netflix.astyanax.connectionpool.Connection;
+import com.netflix.astyanax.connectionpool.OperationResult;
+import com.netflix.astyanax.connectionpool.SSLConnectionContext;
+import com.netflix.astyanax.connectionpool.impl.ConnectionPoolConfigurationImpl;
+import com.netflix.astyanax.connectionpool.impl.CountingConnectionPoolMonitor;
+import com.netflix.astyanax.connectionpool.impl.RateLimitingOperationFilterFactory;
+import com.netflix.astyanax.connectionpool.impl.RoundRobinConnectionPoolImpl;
+import com.netflix.astyanax.connectionpool.exceptions.BadRequestException;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.impl.AstyanaxConfigurationImpl;
+import com.netflix.astyanax.model.ColumnFamily;
+import com.netflix.astyanax.model.ColumnList;
+import com.netflix.astyanax.retry.ConstantBackoff;
+import com.netflix.astyanax.serializers.StringSerializer;
+import com.netflix.astyanax.shallows.EmptyKeyspaceTracerFactory;
+
+/**
+ * Runs the non blocking thrift connections against an in-process thrift server stub
+ */
+public class ThriftAsyncConnectionFactoryTest {
+    private static final String KEYSPACE_NAME = "AsyncKeyspace";
+    private static final ColumnFamily<String, String> CF_STANDARD = ColumnFamily.newColumnFamily("Standard1",
+            StringSerializer.get(), StringSerializer.get());
+
+    private final AtomicInteger setKeyspaceCount  = new AtomicInteger();
+    private final AtomicInteger batchMutateCount  = new AtomicInteger();
+    private final AtomicInteger timeoutsRemaining = new AtomicInteger();
+    private volatile CountDownLatch batchMutateLatch;
+
+    private TNonblockingServer server;
+    private Thread serverThread;
+    private ConnectionPoolConfigurationImpl cpConfig;
+    private AstyanaxConfigurationImpl asConfig;
+    private CountingConnectionPoolMonitor monitor;
+    private ThriftAsyncConnectionFactoryImpl factory;
+    private RoundRobinConnectionPoolImpl<Cassandra.AsyncClient> pool;
+
+    @Before
+    public void setup() throws Exception {
+        Cassandra.Iface stub = (Cassandra.Iface) Proxy.newProxyInstance(Cassandra.Iface.class.getClassLoader(),
+                new Class<?>[] { Cassandra.Iface.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        String name = method.getName();
+                        if (name.equals("set_keyspace")) {
+                            setKeyspaceCount.incrementAndGet();
+                            if (!args[0].equals(KEYSPACE_NAME))
+                                throw new InvalidRequestException("Keyspace " + args[0] + " does not exist");
+                            return null;
+                        }
+                        else if (name.equals("batch_mutate")) {
+                            if (batchMutateLatch != null)
+                                batchMutateLatch.await();
+                            if (timeoutsRemaining.getAndDecrement() > 0)
+                                throw new TimedOutException();
+                            batchMutateCount.incrementAndGet();
+                            return null;
+                        }
+                        else if (name.equals("get_slice")) {
+                            List<ColumnOrSuperColumn> columns = Lists.newArrayList();
+                            for (String columnName : new String[] { "a", "b", "c" }) {
+                                columns.add(new ColumnOrSuperColumn().setColumn(new Column(
+                                        StringSerializer.get().toByteBuffer(columnName))
+                                        .setValue(StringSerializer.get().toByteBuffer("value_" + columnName))
+                                        .setTimestamp(1)));
+                            }
+                            return columns;
+                        }
+                        throw new UnsupportedOperationException(name);
+                    }
+                });
+
+        int port;
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            port = socket.getLocalPort();
+        }
+        finally {
+            socket.close();
+        }
+
+        server = new TNonblockingServer(new TNonblockingServer.Args(new TNonblockingServerSocket(port))
+                .processor(new Cassandra.Processor<Cassandra.Iface>(stub)));
+        serverThread = new Thread() {
+            public void run() {
+                server.serve();
+            }
+        };
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        asConfig = new AstyanaxConfigurationImpl()
+                .setRetryPolicy(new ConstantBackoff(10, 3));
+        cpConfig = new ConnectionPoolConfigurationImpl("async_test")
+                .setSeeds("127.0.0.1:" + port)
+                .setMaxConnsPerHost(10)
+                .setMaxTimeoutWhenExhausted(5000)
+                .setSocketTimeout(5000);
+        cpConfig.initialize();
+        monitor = new CountingConnectionPoolMonitor();
+        factory = new ThriftAsyncConnectionFactoryImpl(asConfig, cpConfig, EmptyKeyspaceTracerFactory.getInstance(), monitor);
+        pool = new RoundRobinConnectionPoolImpl<Cassandra.AsyncClient>(cpConfig, factory, monitor);
+        pool.start();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        if (pool != null)
+            pool.shutdown();
+        if (factory != null)
+            factory.shutdown();
+        if (cpConfig != null)
+            cpConfig.shutdown();
+        if (server != null)
+            server.stop();
+        if (serverThread != null)
+            serverThread.join(5000);
+    }
+
+    private ThriftKeyspaceImpl newKeyspace(String keyspaceName) {
+        return new ThriftKeyspaceImpl(keyspaceName, null,
+                new ThriftAsyncOperationExecutor(pool, cpConfig, monitor, asConfig.getAsyncExecutor()),
+                asConfig, EmptyKeyspaceTracerFactory.getInstance());
+    }
+
+    @Test
+    public void testManyOutstandingMutations() throws Exception {
+        final int count = 500;
+        ThriftKeyspaceImpl keyspace = newKeyspace(KEYSPACE_NAME);
+
+        final ConcurrentLinkedQueue<String> threadNames = new ConcurrentLinkedQueue<String>();
+        final CountDownLatch latch = new CountDownLatch(count);
+        List<ListenableFuture<OperationResult<Void>>> futures = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            MutationBatch m = keyspace.prepareMutationBatch();
+            m.withRow(CF_STANDARD, "key" + i).putColumn("column", "value" + i);
+            ListenableFuture<OperationResult<Void>> future = m.executeAsync();
+            Futures.addCallback(future, new FutureCallback<OperationResult<Void>>() {
+                @Override
+                public void onSuccess(OperationResult<Void> result) {
+                    threadNames.add(Thread.currentThread().getName());
+                    latch.countDown();
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    latch.countDown();
+                }
+            });
+            futures.add(future);
+        }
+
+        Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
+        for (ListenableFuture<OperationResult<Void>> future : futures) {
+            Assert.assertNotNull(future.get().getHost());
+        }
+        Assert.assertEquals(count, batchMutateCount.get());
+        Assert.assertEquals(count, monitor.getOperationSuccessCount());
+
+        // Keyspace is only set once per connection and at most maxConnsPerHost connections exist
+        Assert.assertTrue(setKeyspaceCount.get() <= cpConfig.getMaxConnsPerHost());
+
+        // Callbacks that were not run inline by addCallback ran on the selector threads
+        // rather than on the async executor
+        for (String name : threadNames) {
+            Assert.assertFalse(name, name.startsWith("AstyanaxAsync"));
+        }
+    }
+
+    @Test
+    public void testAsyncRowQuery() throws Exception {
+        ThriftKeyspaceImpl keyspace = newKeyspace(KEYSPACE_NAME);
+
+        OperationResult<ColumnList<String>> result = keyspace.prepareQuery(CF_STANDARD).getKey("key1").executeAsync()
+                .get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(3, result.getResult().size());
+        Assert.assertEquals("value_b", result.getResult().getStringValue("b", null));
+    }
+
+    @Test
+    public void testBatchReusedAfterAsyncExecute() throws Exception {
+        ThriftKeyspaceImpl keyspace = newKeyspace(KEYSPACE_NAME);
+
+        MutationBatch m = keyspace.prepareMutationBatch();
+        m.withRow(CF_STANDARD, "key1").putColumn("column", "value");
+        m.executeAsync().get(10, TimeUnit.SECONDS);
+        // The batch was already discarded when the caller was woken up
+        Assert.assertTrue(m.isEmpty());
+
+        m.withRow(CF_STANDARD, "key2").putColumn("column", "value");
+        m.executeAsync().get(10, TimeUnit.SECONDS);
+        Assert.assertTrue(m.isEmpty());
+        Assert.assertEquals(2, batchMutateCount.get());
+    }
+
+    @Test
+    public void testRetryAfterTimeout() throws Exception {
+        ThriftKeyspaceImpl keyspace = newKeyspace(KEYSPACE_NAME);
+        timeoutsRemaining.set(2);
+
+        MutationBatch m = keyspace.prepareMutationBatch();
+        m.withRow(CF_STANDARD, "key1").putColumn("column", "value");
+        OperationResult<Void> result = m.executeAsync().get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(1, batchMutateCount.get());
+        Assert.assertEquals(1, result.getAttemptsCount());
+        Assert.assertEquals(2, monitor.getOperationFailureCount());
+    }
+
+    @Test
+    public void testBadRequestIsNotRetried() throws Exception {
+        ThriftKeyspaceImpl keyspace = newKeyspace("UnknownKeyspace");
+
+        MutationBatch m = keyspace.prepareMutationBatch();
+        m.withRow(CF_STANDARD, "key1").putColumn("column", "value");
+        try {
+            m.executeAsync().get(10, TimeUnit.SECONDS);
+            Assert.fail();
+        }
+        catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause().getClass().getName(), e.getCause() instanceof BadRequestException);
+        }
+        Assert.assertEquals(1, setKeyspaceCount.get());
+        Assert.assertEquals(0, batchMutateCount.get());
+    }
+
+    @Test
+    public void testOneCallInFlightPerConnection() throws Exception {
+        batchMutateLatch = new CountDownLatch(1);
+        Connection<Cassandra.AsyncClient> connection = pool.getPools().get(0).borrowConnection(5000);
+        try {
+            ThriftAsyncConnectionFactoryImpl.ThriftAsyncConnection asyncConnection = (ThriftAsyncConnectionFactoryImpl.ThriftAsyncConnection) connection;
+            SettableFuture<OperationResult<Void>> first = SettableFuture.create();
+            SettableFuture<OperationResult<Void>> second = SettableFuture.create();
+            asyncConnection.executeAsync(newBatchMutate(), callback(first));
+            asyncConnection.executeAsync(newBatchMutate(), callback(second));
+
+            // The second call is rejected right away rather than corrupting the first one
+            try {
+                second.get(0, TimeUnit.SECONDS);
+                Assert.fail();
+            }
+            catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof ConnectionException);
+            }
+
+            batchMutateLatch.countDown();
+            first.get(10, TimeUnit.SECONDS);
+
+            // Once the first call completed the connection can be used again
+            SettableFuture<OperationResult<Void>> third = SettableFuture.create();
+            asyncConnection.executeAsync(newBatchMutate(), callback(third));
+            third.get(10, TimeUnit.SECONDS);
+        }
+        finally {
+            batchMutateLatch.countDown();
+            connection.getHostConnectionPool().returnConnection(connection);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSslIsRejected() {
+        ConnectionPoolConfigurationImpl sslConfig = new ConnectionPoolConfigurationImpl("async_ssl")
+                .setSSLConnectionContext(new SSLConnectionContext("truststore", "password"));
+        new ThriftAsyncConnectionFactoryImpl(asConfig, sslConfig, EmptyKeyspaceTracerFactory.getInstance(), monitor);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOperationFiltersAreRejected() {
+        ConnectionPoolConfigurationImpl filterConfig = new ConnectionPoolConfigurationImpl("async_filter")
+                .setOperationFilterFactory(new RateLimitingOperationFilterFactory(RateLimitingOperationFilterFactory.Scope.GLOBAL, 100));
+        new ThriftAsyncOperationExecutor(pool, filterConfig, monitor, asConfig.getAsyncExecutor());
+    }
+
+    private static AbstractThriftAsyncOperationImpl<Cassandra.AsyncClient.batch_mutate_call, Void> newBatchMutate() {
+        return new AbstractThriftAsyncOperationImpl<Cassandra.AsyncClient.batch_mutate_call, Void>(
+                EmptyKeyspaceTracerFactory.getInstance().newTracer(CassandraOperationType.BATCH_MUTATE), null, null) {
+            @Override
+            protected void startCall(Cassandra.AsyncClient client, AsyncMethodCallback<Cassandra.AsyncClient.batch_mutate_call> callback) throws TException {
+                client.batch_mutate(Maps.<ByteBuffer, Map<String, List<Mutation>>>newHashMap(), ConsistencyLevel.ONE, callback);
+            }
+
+            @Override
+            protected Void getResult(Cassandra.AsyncClient.batch_mutate_call call) throws Exception {
+                call.getResult();
+                return null;
+            }
+        };
+    }
+
+    private static <R> FutureCallback<OperationResult<R>> callback(final SettableFuture<OperationResult<R>> future) {
+        return new FutureCallback<OperationResult<R>>() {
+            @Override
+            public void onSuccess(OperationResult<R> result) {
+                future.set(result);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                future.setException(t);
+            }
+        };
+    }
+}
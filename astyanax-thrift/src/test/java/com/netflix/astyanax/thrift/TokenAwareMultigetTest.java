@@ -0,0 +1,91 @@
+package com.netflix.astyanax.thrift;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.netflix.astyanax.connectionpool.impl.TokenHostConnectionPoolPartition;
+import com.netflix.astyanax.connectionpool.impl.TokenPartitionedTopology;
+import com.netflix.astyanax.partitioner.Murmur3Partitioner;
+import com.netflix.astyanax.shallows.EmptyLatencyScoreStrategyImpl;
+
+public class TokenAwareMultigetTest {
+
+    /**
+     * Topology that puts each key in the partition of its first byte modulo the number of partitions
+     */
+    private static class ModuloTopology extends TokenPartitionedTopology<Object> {
+        private final List<TokenHostConnectionPoolPartition<Object>> partitions = Lists.newArrayList();
+
+        ModuloTopology(int count) {
+            super(Murmur3Partitioner.get(), new EmptyLatencyScoreStrategyImpl());
+            for (int i = 0; i < count; i++) {
+                partitions.add(new TokenHostConnectionPoolPartition<Object>(BigInteger.valueOf(i), new EmptyLatencyScoreStrategyImpl()));
+            }
+        }
+
+        @Override
+        public TokenHostConnectionPoolPartition<Object> getPartition(ByteBuffer rowkey) {
+            return partitions.get(rowkey.get(rowkey.position()) % partitions.size());
+        }
+    }
+
+    private static List<ByteBuffer> makeKeys(int count) {
+        List<ByteBuffer> keys = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            keys.add(ByteBuffer.wrap(new byte[] { (byte)i, 1 }));
+        }
+        return keys;
+    }
+
+    @Test
+    public void testGroupsByPartition() {
+        List<ByteBuffer> keys = makeKeys(30);
+        List<List<ByteBuffer>> groups = TokenAwareMultiget.partition(new ModuloTopology(3), keys, 0);
+
+        Assert.assertEquals(3, groups.size());
+        for (int i = 0; i < groups.size(); i++) {
+            Assert.assertEquals(10, groups.get(i).size());
+            for (ByteBuffer key : groups.get(i)) {
+                Assert.assertEquals(i, key.get(0) % 3);
+            }
+        }
+    }
+
+    @Test
+    public void testSplitsLargeGroups() {
+        List<ByteBuffer> keys = makeKeys(30);
+        List<List<ByteBuffer>> groups = TokenAwareMultiget.partition(new ModuloTopology(2), keys, 4);
+
+        // 15 keys per partition in groups of 4, 4, 4, 3
+        Assert.assertEquals(8, groups.size());
+        int total = 0;
+        for (List<ByteBuffer> group : groups) {
+            Assert.assertTrue(group.size() <= 4);
+            total += group.size();
+        }
+        Assert.assertEquals(30, total);
+    }
+
+    @Test
+    public void testWithoutRing() {
+        List<ByteBuffer> keys = makeKeys(10);
+        keys.addAll(makeKeys(10));
+
+        // Duplicates are dropped and all keys share the partition of the whole ring
+        TokenPartitionedTopology<Object> topology = new TokenPartitionedTopology<Object>(
+                Murmur3Partitioner.get(), new EmptyLatencyScoreStrategyImpl());
+        List<List<ByteBuffer>> groups = TokenAwareMultiget.partition(topology, keys, 0);
+        Assert.assertEquals(1, groups.size());
+        Assert.assertEquals(keys.subList(0, 10), groups.get(0));
+
+        groups = TokenAwareMultiget.partition(null, keys, 3);
+        Assert.assertEquals(4, groups.size());
+        Assert.assertEquals(1, groups.get(3).size());
+    }
+}
@@ -0,0 +1,181 @@
+package com.netflix.astyanax.thrift.model;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.apache.cassandra.thrift.ColumnOrSuperColumn;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.netflix.astyanax.Serializer;
+import com.netflix.astyanax.model.Column;
+import com.netflix.astyanax.model.Row;
+import com.netflix.astyanax.serializers.AbstractSerializer;
+import com.netflix.astyanax.serializers.LongSerializer;
+import com.netflix.astyanax.serializers.StringSerializer;
+import com.netflix.astyanax.serializers.UUIDSerializer;
+
+public class ThriftColumnListImplTest {
+
+    private static <C> List<org.apache.cassandra.thrift.Column> columns(Serializer<C> ser, List<C> names) {
+        List<org.apache.cassandra.thrift.Column> columns = Lists.newArrayList();
+        for (C name : names) {
+            columns.add(new org.apache.cassandra.thrift.Column(ser.toByteBuffer(name))
+                    .setValue(StringSerializer.get().toByteBuffer("value_" + name))
+                    .setTimestamp(1));
+        }
+        return columns;
+    }
+
+    private static List<ColumnOrSuperColumn> wrap(List<org.apache.cassandra.thrift.Column> columns) {
+        List<ColumnOrSuperColumn> result = Lists.newArrayList();
+        for (org.apache.cassandra.thrift.Column column : columns) {
+            result.add(new ColumnOrSuperColumn().setColumn(column));
+        }
+        return result;
+    }
+
+    private static List<String> names(int count) {
+        List<String> names = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            names.add(String.format("column_%05d", i));
+        }
+        return names;
+    }
+
+    @Test
+    public void testLookupAscending() {
+        List<String> names = names(1000);
+        ThriftColumnListImpl<String> list = new ThriftColumnListImpl<String>(columns(StringSerializer.get(), names), StringSerializer.get());
+        for (String name : names) {
+            Assert.assertEquals("value_" + name, list.getColumnByName(name).getStringValue());
+        }
+        Assert.assertNull(list.getColumnByName("column_"));
+        Assert.assertNull(list.getColumnByName("column_99999"));
+        Assert.assertNull(list.getColumnByName(""));
+    }
+
+    @Test
+    public void testLookupReversed() {
+        List<String> names = names(100);
+        Collections.reverse(names);
+        ThriftColumnOrSuperColumnListImpl<String> list = new ThriftColumnOrSuperColumnListImpl<String>(
+                wrap(columns(StringSerializer.get(), names)), StringSerializer.get());
+        for (String name : names) {
+            Assert.assertEquals("value_" + name, list.getColumnByName(name).getStringValue());
+        }
+        Assert.assertNull(list.getColumnByName("missing"));
+        Assert.assertEquals(names, Lists.newArrayList(list.getColumnNames()));
+    }
+
+    @Test
+    public void testLookupUnsorted() {
+        List<String> names = Lists.newArrayList("b", "c", "a", "d");
+        ThriftColumnListImpl<String> list = new ThriftColumnListImpl<String>(columns(StringSerializer.get(), names), StringSerializer.get());
+        for (String name : names) {
+            Assert.assertEquals("value_" + name, list.getColumnByName(name).getStringValue());
+        }
+        Assert.assertNull(list.getColumnByName("e"));
+    }
+
+    @Test
+    public void testLookupSignedLongs() {
+        List<Long> names = Lists.newArrayList(Long.MIN_VALUE, -1000L, -1L, 0L, 1L, 1000L, Long.MAX_VALUE);
+        ThriftColumnOrSuperColumnListImpl<Long> list = new ThriftColumnOrSuperColumnListImpl<Long>(
+                wrap(columns(LongSerializer.get(), names)), LongSerializer.get());
+        for (Long name : names) {
+            Assert.assertEquals("value_" + name, list.getColumnByName(name).getStringValue());
+        }
+        Assert.assertNull(list.getColumnByName(5L));
+        Assert.assertNull(list.getColumnByName(-5L));
+    }
+
+    @Test
+    public void testLookupHashedComparator() {
+        List<java.util.UUID> names = Lists.newArrayList();
+        for (int i = 0; i < 10; i++) {
+            names.add(java.util.UUID.randomUUID());
+        }
+        ThriftColumnListImpl<java.util.UUID> list = new ThriftColumnListImpl<java.util.UUID>(
+                columns(UUIDSerializer.get(), names), UUIDSerializer.get());
+        for (java.util.UUID name : names) {
+            Assert.assertEquals(name, list.getColumnByName(name).getName());
+        }
+        Assert.assertNull(list.getColumnByName(java.util.UUID.randomUUID()));
+    }
+
+    @Test
+    public void testIteration() {
+        List<String> names = names(10);
+        ThriftColumnOrSuperColumnListImpl<String> list = new ThriftColumnOrSuperColumnListImpl<String>(
+                wrap(columns(StringSerializer.get(), names)), StringSerializer.get());
+
+        List<Column<String>> kept = Lists.newArrayList(list);
+        for (int i = 0; i < names.size(); i++) {
+            Assert.assertEquals(names.get(i), kept.get(i).getName());
+            Assert.assertEquals("value_" + names.get(i), kept.get(i).getStringValue());
+            Assert.assertEquals(names.get(i), list.getColumnByIndex(i).getName());
+        }
+    }
+
+    /**
+     * Serializer that decodes the whole backing array, like serializers written for buffers that wrap it
+     */
+    private static class WholeArraySerializer extends AbstractSerializer<String> {
+        @Override
+        public ByteBuffer toByteBuffer(String obj) {
+            return StringSerializer.get().toByteBuffer(obj);
+        }
+
+        @Override
+        public String fromByteBuffer(ByteBuffer byteBuffer) {
+            return StringSerializer.get().fromBytes(byteBuffer.array());
+        }
+    }
+
+    @Test
+    public void testNamesFromSharedFrame() {
+        // Thrift reads all names out of one frame, so each name wraps the frame at an offset
+        List<String> names = names(5);
+        byte[] frame = StringSerializer.get().toBytes(names.toString());
+        List<org.apache.cassandra.thrift.Column> columns = Lists.newArrayList();
+        for (String name : names) {
+            int offset = names.toString().indexOf(name);
+            columns.add(new org.apache.cassandra.thrift.Column(ByteBuffer.wrap(frame, offset, name.length()))
+                    .setValue(StringSerializer.get().toByteBuffer("value_" + name))
+                    .setTimestamp(1));
+        }
+
+        WholeArraySerializer ser = new WholeArraySerializer();
+        ThriftColumnListImpl<String> list = new ThriftColumnListImpl<String>(columns, ser);
+        ThriftColumnOrSuperColumnListImpl<String> superList = new ThriftColumnOrSuperColumnListImpl<String>(wrap(columns), ser);
+        Assert.assertEquals(names, Lists.newArrayList(list.getColumnNames()));
+        Assert.assertEquals(names, Lists.newArrayList(superList.getColumnNames()));
+        for (int i = 0; i < names.size(); i++) {
+            Assert.assertEquals(names.get(i), list.getNameByIndex(i));
+            Assert.assertEquals(names.get(i), list.getColumnByIndex(i).getName());
+            Assert.assertEquals(names.get(i), superList.getColumnByIndex(i).getName());
+            Assert.assertEquals("value_" + names.get(i), list.getColumnByName(names.get(i)).getStringValue());
+        }
+    }
+
+    @Test
+    public void testRowsList() {
+        Map<ByteBuffer, List<ColumnOrSuperColumn>> rows = Maps.newLinkedHashMap();
+        for (String key : new String[] { "c", "a", "b" }) {
+            rows.put(StringSerializer.get().toByteBuffer(key), wrap(columns(StringSerializer.get(), names(3))));
+        }
+        ThriftRowsListImpl<String, String> list = new ThriftRowsListImpl<String, String>(rows, StringSerializer.get(), StringSerializer.get());
+        Assert.assertEquals(Lists.newArrayList("c", "a", "b"), Lists.newArrayList(list.getKeys()));
+
+        Row<String, String> row = list.getRow("a");
+        Assert.assertEquals("a", row.getKey());
+        Assert.assertEquals(3, row.getColumns().size());
+        Assert.assertNull(list.getRow("d"));
+    }
+}